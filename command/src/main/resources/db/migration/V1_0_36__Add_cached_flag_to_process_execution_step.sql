@@ -0,0 +1,4 @@
+ALTER TABLE public.process_execution_step
+   ADD COLUMN cached boolean NOT NULL DEFAULT false;
+COMMENT ON COLUMN public.process_execution_step.cached
+  IS 'A flag that marks a step whose outputs were reused from a previous execution (instead of running the step)';
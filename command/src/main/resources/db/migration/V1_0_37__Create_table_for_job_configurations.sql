@@ -0,0 +1,12 @@
+CREATE TABLE rpc.job_configuration
+(
+  "hash" character(64) NOT NULL,
+  "tool" character varying(32),
+  "content" text NOT NULL,
+  "created_on" timestamp with time zone NOT NULL DEFAULT now(),
+
+  CONSTRAINT job_configuration_pkey PRIMARY KEY (hash)
+);
+
+COMMENT ON TABLE rpc.job_configuration
+  IS 'Configurations of processing jobs, keyed by the (SHA-256) digest of their content. A job only receives the digest as a parameter.';
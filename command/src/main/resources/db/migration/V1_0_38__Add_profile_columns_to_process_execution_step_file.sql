@@ -0,0 +1,14 @@
+ALTER TABLE public.process_execution_step_file
+   ADD COLUMN checksum character(64),
+   ADD COLUMN triple_count bigint,
+   ADD COLUMN distinct_subject_count bigint,
+   ADD COLUMN predicate_histogram character varying;
+
+COMMENT ON COLUMN public.process_execution_step_file.checksum
+  IS 'The SHA-256 checksum (hex-encoded) of an output file (computed by profiling the output)';
+COMMENT ON COLUMN public.process_execution_step_file.triple_count
+  IS 'The number of triples of an RDF output file';
+COMMENT ON COLUMN public.process_execution_step_file.distinct_subject_count
+  IS 'The number of distinct subjects of an RDF output file (may be an estimate for very large files)';
+COMMENT ON COLUMN public.process_execution_step_file.predicate_histogram
+  IS 'A JSON object with the number of triples per predicate of an RDF output file';
@@ -0,0 +1,11 @@
+ALTER TABLE public.process_execution_map_export
+   ADD COLUMN lease_owner character varying(64),
+   ADD COLUMN lease_expires_on timestamp with time zone;
+
+COMMENT ON COLUMN public.process_execution_map_export.lease_owner
+  IS 'The id of the worker (webapp instance) that has claimed a running map export task';
+COMMENT ON COLUMN public.process_execution_map_export.lease_expires_on
+  IS 'The time after which a running map export task may be claimed by another worker (unless renewed)';
+
+CREATE INDEX process_execution_map_export_status_idx
+  ON public.process_execution_map_export (status, created_on);
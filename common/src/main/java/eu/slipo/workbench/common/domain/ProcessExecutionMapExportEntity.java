@@ -65,6 +65,12 @@ public class ProcessExecutionMapExportEntity
     @Column(name = "status", nullable = false)
     private EnumMapExportStatus status = EnumMapExportStatus.PENDING;
 
+    @Column(name = "lease_owner", length = 64)
+    private String leaseOwner;
+
+    @Column(name = "lease_expires_on")
+    private ZonedDateTime leaseExpiresOn;
+
     public ProcessExecutionEntity getWorkflow() {
         return workflow;
     }
@@ -105,6 +111,22 @@ public class ProcessExecutionMapExportEntity
         this.status = status;
     }
 
+    public String getLeaseOwner() {
+        return leaseOwner;
+    }
+
+    public void setLeaseOwner(String leaseOwner) {
+        this.leaseOwner = leaseOwner;
+    }
+
+    public ZonedDateTime getLeaseExpiresOn() {
+        return leaseExpiresOn;
+    }
+
+    public void setLeaseExpiresOn(ZonedDateTime leaseExpiresOn) {
+        this.leaseExpiresOn = leaseExpiresOn;
+    }
+
     public long getId() {
         return id;
     }
@@ -100,6 +100,10 @@ public class ProcessExecutionStepEntity
     @Column(name = "error_message", length = 2048)
     private String errorMessage;
 
+    @NotNull
+    @Column(name = "cached", nullable = false, updatable = false)
+    private boolean cached = false;
+
     @OneToMany(mappedBy = "step", fetch = FetchType.LAZY, cascade = CascadeType.ALL, orphanRemoval = true)
     List<ProcessExecutionStepFileEntity> files = new ArrayList<>();
 
@@ -250,6 +254,16 @@ public class ProcessExecutionStepEntity
         this.errorMessage = errorMessage;
     }
 
+    public boolean isCached()
+    {
+        return cached;
+    }
+
+    public void setCached(boolean cached)
+    {
+        this.cached = cached;
+    }
+
     public List<ProcessExecutionStepFileEntity> getFiles() 
     {
         return files;
@@ -294,6 +308,7 @@ public class ProcessExecutionStepEntity
         stepRecord.setCompletedOn(completedOn);
         stepRecord.setErrorMessage(errorMessage);
         stepRecord.setStatus(status);
+        stepRecord.setCached(cached);
 
         for (ProcessExecutionStepFileEntity f: files) {
             if (includeNonVerifiedFiles || f.isVerified())
@@ -1,8 +1,10 @@
 package eu.slipo.workbench.common.domain;
 
+import java.util.Map;
 import java.util.UUID;
 
 import javax.persistence.Column;
+import javax.persistence.Convert;
 import javax.persistence.Entity;
 import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
@@ -22,6 +24,7 @@ import org.hibernate.annotations.NaturalId;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.vividsolutions.jts.geom.Geometry;
 
+import eu.slipo.workbench.common.domain.attributeconverter.LongValuedMapConverter;
 import eu.slipo.workbench.common.model.poi.EnumDataFormat;
 import eu.slipo.workbench.common.model.poi.EnumTool;
 import eu.slipo.workbench.common.model.process.EnumStepFile;
@@ -133,6 +136,31 @@ public class ProcessExecutionStepFileEntity {
     @Column(name = "layer_style", updatable = true, nullable = true)
     JsonNode style;
 
+    /**
+     * The SHA-256 checksum (hex-encoded) of the file (computed when profiling an output file)
+     */
+    @Column(name = "checksum", length = 64)
+    String checksum;
+
+    /**
+     * The number of triples (relevant only to RDF output files)
+     */
+    @Column(name = "triple_count")
+    Long tripleCount;
+
+    /**
+     * The number of distinct subjects (relevant only to RDF output files)
+     */
+    @Column(name = "distinct_subject_count")
+    Long distinctSubjectCount;
+
+    /**
+     * The number of triples per predicate (relevant only to RDF output files)
+     */
+    @Column(name = "predicate_histogram")
+    @Convert(converter = LongValuedMapConverter.class)
+    Map<String, Long> predicateHistogram;
+
     protected ProcessExecutionStepFileEntity() {}
 
     public ProcessExecutionStepFileEntity(
@@ -146,6 +174,10 @@ public class ProcessExecutionStepFileEntity {
         this.boundingBox = record.getBoundingBox();
         this.tableName = record.getTableName();
         this.outputPartKey = record.getOutputPartKey();
+        this.checksum = record.getChecksum();
+        this.tripleCount = record.getTripleCount();
+        this.distinctSubjectCount = record.getDistinctSubjectCount();
+        this.predicateHistogram = record.getPredicateHistogram();
         this.verified = false;
     }
 
@@ -303,6 +335,46 @@ public class ProcessExecutionStepFileEntity {
         this.style = style;
     }
 
+    public String getChecksum()
+    {
+        return checksum;
+    }
+
+    public void setChecksum(String checksum)
+    {
+        this.checksum = checksum;
+    }
+
+    public Long getTripleCount()
+    {
+        return tripleCount;
+    }
+
+    public void setTripleCount(Long tripleCount)
+    {
+        this.tripleCount = tripleCount;
+    }
+
+    public Long getDistinctSubjectCount()
+    {
+        return distinctSubjectCount;
+    }
+
+    public void setDistinctSubjectCount(Long distinctSubjectCount)
+    {
+        this.distinctSubjectCount = distinctSubjectCount;
+    }
+
+    public Map<String, Long> getPredicateHistogram()
+    {
+        return predicateHistogram;
+    }
+
+    public void setPredicateHistogram(Map<String, Long> predicateHistogram)
+    {
+        this.predicateHistogram = predicateHistogram;
+    }
+
     public ProcessExecutionStepFileRecord toProcessExecutionStepFileRecord()
     {
         ProcessExecutionStepFileRecord fileRecord =
@@ -319,6 +391,10 @@ public class ProcessExecutionStepFileEntity {
         fileRecord.setTableName(tableName);
         fileRecord.setStyle(style);
         fileRecord.setRowCount(rowCount);
+        fileRecord.setChecksum(checksum);
+        fileRecord.setTripleCount(tripleCount);
+        fileRecord.setDistinctSubjectCount(distinctSubjectCount);
+        fileRecord.setPredicateHistogram(predicateHistogram);
 
         return fileRecord;
     }
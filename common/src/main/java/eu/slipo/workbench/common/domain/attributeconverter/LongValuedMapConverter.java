@@ -0,0 +1,56 @@
+package eu.slipo.workbench.common.domain.attributeconverter;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.persistence.AttributeConverter;
+import javax.persistence.Converter;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Convert a map of counters (e.g. a histogram) to a JSON object
+ */
+@Converter
+public class LongValuedMapConverter implements AttributeConverter<Map<String, Long>, String> {
+
+    private static final Logger logger = LoggerFactory.getLogger(LongValuedMapConverter.class);
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static final TypeReference<TreeMap<String, Long>> typeReference =
+        new TypeReference<TreeMap<String, Long>>() {};
+
+    @Override
+    public String convertToDatabaseColumn(Map<String, Long> attribute) {
+        if (attribute == null) {
+            return null;
+        }
+        try {
+            return objectMapper.writeValueAsString(new TreeMap<>(attribute));
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Failed to write JSON data", e);
+        }
+    }
+
+    @Override
+    public Map<String, Long> convertToEntityAttribute(String dbData) {
+        if (StringUtils.isBlank(dbData)) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(dbData, typeReference);
+        } catch (IOException e) {
+            logger.error("Failed to read JSON data", e);
+        }
+        return null;
+    }
+
+}
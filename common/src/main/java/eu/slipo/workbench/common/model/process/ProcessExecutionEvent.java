@@ -0,0 +1,141 @@
+package eu.slipo.workbench.common.model.process;
+
+import java.io.Serializable;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Represent a state transition of a process execution, or of one of its steps. An event is only
+ * published after the transition is recorded in the repository (so a receiver may safely read the
+ * execution record).
+ */
+public class ProcessExecutionEvent implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private final long sequence;
+
+    private final long executionId;
+
+    private final long processId;
+
+    private final long processVersion;
+
+    private final Integer createdBy;
+
+    private final Integer stepKey;
+
+    private final EnumProcessExecutionStatus status;
+
+    private final long timestamp;
+
+    @JsonCreator
+    public ProcessExecutionEvent(
+        @JsonProperty("sequence") long sequence,
+        @JsonProperty("executionId") long executionId,
+        @JsonProperty("processId") long processId,
+        @JsonProperty("processVersion") long processVersion,
+        @JsonProperty("createdBy") Integer createdBy,
+        @JsonProperty("stepKey") Integer stepKey,
+        @JsonProperty("status") EnumProcessExecutionStatus status,
+        @JsonProperty("timestamp") long timestamp)
+    {
+        this.sequence = sequence;
+        this.executionId = executionId;
+        this.processId = processId;
+        this.processVersion = processVersion;
+        this.createdBy = createdBy;
+        this.stepKey = stepKey;
+        this.status = status;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Copy an event under a (publisher-assigned) sequence number
+     */
+    public ProcessExecutionEvent(ProcessExecutionEvent other, long sequence)
+    {
+        this(sequence, other.executionId, other.processId, other.processVersion,
+            other.createdBy, other.stepKey, other.status, other.timestamp);
+    }
+
+    /**
+     * The sequence number of this event (increasing in order of publishing)
+     */
+    @JsonProperty("sequence")
+    public long getSequence()
+    {
+        return sequence;
+    }
+
+    @JsonProperty("executionId")
+    public long getExecutionId()
+    {
+        return executionId;
+    }
+
+    @JsonProperty("processId")
+    public long getProcessId()
+    {
+        return processId;
+    }
+
+    @JsonProperty("processVersion")
+    public long getProcessVersion()
+    {
+        return processVersion;
+    }
+
+    /**
+     * The id of the user owning the process
+     */
+    @JsonProperty("createdBy")
+    public Integer getCreatedBy()
+    {
+        return createdBy;
+    }
+
+    /**
+     * The key of the step, or <tt>null</tt> if this event refers to the entire execution
+     */
+    @JsonProperty("stepKey")
+    public Integer getStepKey()
+    {
+        return stepKey;
+    }
+
+    @JsonProperty("status")
+    public EnumProcessExecutionStatus getStatus()
+    {
+        return status;
+    }
+
+    /**
+     * The time (epoch milliseconds) of the transition
+     */
+    @JsonProperty("timestamp")
+    public long getTimestamp()
+    {
+        return timestamp;
+    }
+
+    /**
+     * Check if this event signals the end of an execution
+     */
+    @JsonIgnore
+    public boolean isTerminal()
+    {
+        return stepKey == null && status != EnumProcessExecutionStatus.RUNNING &&
+            status != EnumProcessExecutionStatus.UNKNOWN;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format(
+            "ProcessExecutionEvent [sequence=%d, executionId=%d, process=%d@%d, stepKey=%s, status=%s]",
+            sequence, executionId, processId, processVersion, stepKey, status);
+    }
+}
@@ -3,6 +3,7 @@ package eu.slipo.workbench.common.model.process;
 import java.io.Serializable;
 import java.net.URI;
 import java.nio.file.Path;
+import java.util.Map;
 import java.util.UUID;
 
 import com.fasterxml.jackson.databind.JsonNode;
@@ -37,6 +38,20 @@ public class ProcessExecutionStepFileRecord implements Serializable
 
     private JsonNode style;
 
+    /**
+     * The SHA-256 checksum (hex-encoded) of the file
+     */
+    private String checksum;
+
+    private Long tripleCount;
+
+    private Long distinctSubjectCount;
+
+    /**
+     * The number of triples keyed by predicate
+     */
+    private Map<String, Long> predicateHistogram;
+
     protected ProcessExecutionStepFileRecord() {}
 
     public ProcessExecutionStepFileRecord(EnumStepFile type, String path, Long size)
@@ -87,6 +102,10 @@ public class ProcessExecutionStepFileRecord implements Serializable
         this.tableName = record.tableName;
         this.outputPartKey = record.outputPartKey;
         this.rowCount = record.rowCount;
+        this.checksum = record.checksum;
+        this.tripleCount = record.tripleCount;
+        this.distinctSubjectCount = record.distinctSubjectCount;
+        this.predicateHistogram = record.predicateHistogram;
     }
 
     public long getId()
@@ -200,6 +219,46 @@ public class ProcessExecutionStepFileRecord implements Serializable
         this.rowCount = rowCount;
     }
 
+    public String getChecksum()
+    {
+        return checksum;
+    }
+
+    public void setChecksum(String checksum)
+    {
+        this.checksum = checksum;
+    }
+
+    public Long getTripleCount()
+    {
+        return tripleCount;
+    }
+
+    public void setTripleCount(Long tripleCount)
+    {
+        this.tripleCount = tripleCount;
+    }
+
+    public Long getDistinctSubjectCount()
+    {
+        return distinctSubjectCount;
+    }
+
+    public void setDistinctSubjectCount(Long distinctSubjectCount)
+    {
+        this.distinctSubjectCount = distinctSubjectCount;
+    }
+
+    public Map<String, Long> getPredicateHistogram()
+    {
+        return predicateHistogram;
+    }
+
+    public void setPredicateHistogram(Map<String, Long> predicateHistogram)
+    {
+        this.predicateHistogram = predicateHistogram;
+    }
+
     @Override
     public String toString()
     {
@@ -43,6 +43,8 @@ public class ProcessExecutionStepRecord implements Serializable
 
     private String errorMessage;
 
+    private boolean cached = false;
+
     private List<ProcessExecutionStepFileRecord> files;
     
     private List<ProcessExecutionStepLogsRecord> logs;
@@ -80,6 +82,7 @@ public class ProcessExecutionStepRecord implements Serializable
         this.startedOn = record.startedOn;
         this.completedOn = record.completedOn;
         this.errorMessage = record.errorMessage;
+        this.cached = record.cached;
         this.files = copyFileRecords?
             (record.files.stream().map(ProcessExecutionStepFileRecord::new)
                 .collect(Collectors.toList())):
@@ -178,6 +181,22 @@ public class ProcessExecutionStepRecord implements Serializable
         this.errorMessage = errorMessage;
     }
 
+    /**
+     * Check if the outputs of this step were reused instead of being produced by running the step,
+     * either from the output cache (a step with identical tool, configuration and input) or from
+     * an unchanged step of a completed execution of a previous revision. The job execution id of
+     * such a step refers to the job execution that originally produced the outputs.
+     */
+    public boolean isCached()
+    {
+        return cached;
+    }
+
+    public void setCached(boolean cached)
+    {
+        this.cached = cached;
+    }
+
     public int numberOfFiles()
     {
         return this.files.size();
@@ -259,7 +278,7 @@ public class ProcessExecutionStepRecord implements Serializable
     public String toString()
     {
         return String.format(
-            "ProcessExecutionStepRecord [id=%s, key=%s, name=%s, jobExecutionId=%s, status=%s]",
-            id, key, name, jobExecutionId, status);
+            "ProcessExecutionStepRecord [id=%s, key=%s, name=%s, jobExecutionId=%s, status=%s, cached=%s]",
+            id, key, name, jobExecutionId, status, cached);
     }
 }
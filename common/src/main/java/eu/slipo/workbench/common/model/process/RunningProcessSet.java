@@ -0,0 +1,78 @@
+package eu.slipo.workbench.common.model.process;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Represent the set of processes (revisions) with a running execution, along with a version of
+ * this set. The version increases every time a process starts or stops running, so a caller can
+ * cache a set until a different version is reported.
+ * <p>
+ * A set may be returned as <em>unchanged</em> (i.e. carrying only a version), meaning that the caller
+ * already has the set for this version.
+ */
+public class RunningProcessSet implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private final long version;
+
+    private final Set<ProcessIdentifier> processes;
+
+    @JsonCreator
+    public RunningProcessSet(
+        @JsonProperty("version") long version,
+        @JsonProperty("processes") Collection<ProcessIdentifier> processes)
+    {
+        this.version = version;
+        this.processes = processes == null?
+            null : Collections.unmodifiableSet(new HashSet<>(processes));
+    }
+
+    public static RunningProcessSet unchanged(long version)
+    {
+        return new RunningProcessSet(version, null);
+    }
+
+    @JsonProperty("version")
+    public long getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * Get the identifiers of running processes
+     *
+     * @return an unmodifiable set, or <tt>null</tt> if this is an unchanged set
+     */
+    @JsonProperty("processes")
+    public Set<ProcessIdentifier> getProcesses()
+    {
+        return processes;
+    }
+
+    @JsonIgnore
+    public boolean isUnchanged()
+    {
+        return processes == null;
+    }
+
+    public boolean contains(long id, long version)
+    {
+        return processes != null && processes.contains(ProcessIdentifier.of(id, version));
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("RunningProcessSet [version=%d, processes=%s]",
+            version, processes == null? "(unchanged)" : processes);
+    }
+}
@@ -786,6 +786,16 @@ public class DefaultProcessRepository implements ProcessRepository
         executionStepEntity.setTool(record.getTool());
         executionStepEntity.setStartedOn(record.getStartedOn());
         executionStepEntity.setJobExecutionId(record.getJobExecutionId());
+        executionStepEntity.setCached(record.isCached());
+
+        if (record.isCached()) {
+            // A reused step is created as completed (its outputs are already produced)
+            Assert.state(record.getStatus() == EnumProcessExecutionStatus.COMPLETED,
+                "A reused step is expected to be COMPLETED");
+            Assert.state(record.getCompletedOn() != null,
+                "A reused step is expected to have a completion timestamp");
+            executionStepEntity.setCompletedOn(record.getCompletedOn());
+        }
 
         // Add file entities associated with this step
 
@@ -855,6 +865,10 @@ public class DefaultProcessRepository implements ProcessRepository
             fileEntity.setSize(fileRecord.getFileSize());
             fileEntity.setBoundingBox(fileRecord.getBoundingBox());
             fileEntity.setTableName(fileRecord.getTableName());
+            fileEntity.setChecksum(fileRecord.getChecksum());
+            fileEntity.setTripleCount(fileRecord.getTripleCount());
+            fileEntity.setDistinctSubjectCount(fileRecord.getDistinctSubjectCount());
+            fileEntity.setPredicateHistogram(fileRecord.getPredicateHistogram());
             fileEntity.setVerified(verified);
             ResourceIdentifier resourceIdentifier = fileRecord.getResource();
             fileEntity.setResource(
@@ -377,6 +377,11 @@ public interface ProcessRepository
     /**
      * Add a processing step to an existing execution.
      *
+     * <p>The completion timestamp of the record is only taken into account for a reused step
+     * (i.e. a record marked as {@link ProcessExecutionStepRecord#isCached() cached}), which is
+     * created as already {@link EnumProcessExecutionStatus#COMPLETED}. For any other step, it is
+     * set later by {@link ProcessRepository#updateExecutionStep(long, int, ProcessExecutionStepRecord)}.
+     *
      * @param executionId The execution id of a process revision
      * @param record A record holding updatable metadata of a step execution
      * @return A record representing the updated state of the (parent) execution entity
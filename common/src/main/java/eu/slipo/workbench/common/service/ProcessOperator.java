@@ -8,6 +8,7 @@ import eu.slipo.workbench.common.model.process.ProcessExecutionStartException;
 import eu.slipo.workbench.common.model.process.ProcessExecutionStopException;
 import eu.slipo.workbench.common.model.process.ProcessIdentifier;
 import eu.slipo.workbench.common.model.process.ProcessNotFoundException;
+import eu.slipo.workbench.common.model.process.RunningProcessSet;
 
 public interface ProcessOperator
 { 
@@ -84,4 +85,24 @@ public interface ProcessOperator
     {
         return list(false);
     }
+
+    /**
+     * Get the set of processes with a running execution, along with its version. This is
+     * meant for callers that cache the set: if the caller already holds the current version,
+     * an unchanged set (carrying only the version) is returned.
+     *
+     * @param knownVersion The version of the set held by the caller, or a negative number if
+     *   none is held
+     * @return the running set, or an unchanged set (see {@link RunningProcessSet#isUnchanged()})
+     *   if its version equals <tt>knownVersion</tt>
+     */
+    RunningProcessSet listRunning(long knownVersion);
+
+    /**
+     * @see ProcessOperator#listRunning(long)
+     */
+    default RunningProcessSet listRunning()
+    {
+        return listRunning(-1L);
+    }
 }
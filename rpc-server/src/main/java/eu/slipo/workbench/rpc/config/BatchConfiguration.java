@@ -1,20 +1,41 @@
 package eu.slipo.workbench.rpc.config;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
 
 import org.springframework.batch.core.configuration.JobRegistry;
+import org.springframework.batch.core.configuration.annotation.BatchConfigurer;
 import org.springframework.batch.core.configuration.annotation.EnableBatchProcessing;
 import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.explore.support.JobExplorerFactoryBean;
 import org.springframework.batch.core.launch.JobLauncher;
 import org.springframework.batch.core.launch.JobOperator;
 import org.springframework.batch.core.launch.support.SimpleJobLauncher;
 import org.springframework.batch.core.launch.support.SimpleJobOperator;
 import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.repository.dao.ExecutionContextDao;
+import org.springframework.batch.core.repository.support.JobRepositoryFactoryBean;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.batch.BasicBatchConfigurer;
+import org.springframework.boot.autoconfigure.batch.BatchProperties;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.transaction.TransactionManagerCustomizers;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.DependsOn;
 import org.springframework.context.annotation.Primary;
 import org.springframework.core.task.TaskExecutor;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import eu.slipo.workbench.rpc.service.ChangeTrackingExecutionContextDao;
+import eu.slipo.workbench.rpc.service.CompactExecutionContextSerializer;
 
 @Configuration
 @EnableBatchProcessing
@@ -30,9 +51,105 @@ public class BatchConfiguration
     @Autowired
     JobRegistry registry;
 
+    /**
+     * A batch configurer that persists execution contexts in a compact (compressed) encoding, and
+     * skips rewriting contexts that are unchanged.
+     *
+     * @see CompactExecutionContextSerializer
+     * @see ChangeTrackingExecutionContextDao
+     */
+    static class CompactContextBatchConfigurer extends BasicBatchConfigurer
+    {
+        private final BatchProperties properties;
+
+        private final DataSource dataSource;
+
+        private final boolean usesJpa;
+
+        private final CompactExecutionContextSerializer serializer;
+
+        CompactContextBatchConfigurer(
+            BatchProperties properties, DataSource dataSource, EntityManagerFactory entityManagerFactory,
+            TransactionManagerCustomizers transactionManagerCustomizers, CompactExecutionContextSerializer serializer)
+        {
+            super(properties, dataSource, entityManagerFactory, transactionManagerCustomizers);
+            this.properties = properties;
+            this.dataSource = dataSource;
+            this.usesJpa = entityManagerFactory != null;
+            this.serializer = serializer;
+        }
+
+        @Override
+        protected JobRepository createJobRepository() throws Exception
+        {
+            // The underlying DAO writes the output prepared while checking a context for changes
+            final ChangeTrackingExecutionContextDao.PreparedSerializer preparedSerializer =
+                new ChangeTrackingExecutionContextDao.PreparedSerializer(serializer);
+
+            JobRepositoryFactoryBean factory = new JobRepositoryFactoryBean()
+            {
+                @Override
+                protected ExecutionContextDao createExecutionContextDao() throws Exception
+                {
+                    return new ChangeTrackingExecutionContextDao(super.createExecutionContextDao(), preparedSerializer);
+                }
+            };
+            if (usesJpa) {
+                // JPA does not support custom isolation levels
+                factory.setIsolationLevelForCreate("ISOLATION_DEFAULT");
+            }
+            factory.setDataSource(dataSource);
+            if (StringUtils.hasText(properties.getTablePrefix()))
+                factory.setTablePrefix(properties.getTablePrefix());
+            factory.setTransactionManager(getTransactionManager());
+            factory.setSerializer(preparedSerializer);
+            factory.afterPropertiesSet();
+            return factory.getObject();
+        }
+
+        @Override
+        protected JobExplorer createJobExplorer() throws Exception
+        {
+            JobExplorerFactoryBean factory = new JobExplorerFactoryBean();
+            factory.setDataSource(dataSource);
+            if (StringUtils.hasText(properties.getTablePrefix()))
+                factory.setTablePrefix(properties.getTablePrefix());
+            factory.setSerializer(serializer);
+            factory.afterPropertiesSet();
+            return factory.getObject();
+        }
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "slipo.rpc-server.batch.execution-context.compact", havingValue = "true")
+    CompactExecutionContextSerializer executionContextSerializer(
+        @Value("#{T(java.nio.file.Paths).get('${slipo.rpc-server.jobs.data-dir}')}") Path jobDataDir,
+        @Value("${slipo.rpc-server.batch.execution-context.blob-dir:}") String blobDirName,
+        @Value("${slipo.rpc-server.batch.execution-context.large-value-threshold-kbytes:16}") Integer thresholdKbytes)
+    {
+        // Keep large values next to job data
+        final Path blobDir = blobDirName.isEmpty()?
+            jobDataDir.resolveSibling("batch-context-blobs") : Paths.get(blobDirName);
+        Assert.isTrue(blobDir.isAbsolute(), "Expected an absolute path for the blob directory");
+        return new CompactExecutionContextSerializer(blobDir, thresholdKbytes * 1024);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "slipo.rpc-server.batch.execution-context.compact", havingValue = "true")
+    BatchConfigurer batchConfigurer(
+        BatchProperties properties,
+        DataSource dataSource,
+        ObjectProvider<EntityManagerFactory> entityManagerFactory,
+        ObjectProvider<TransactionManagerCustomizers> transactionManagerCustomizers,
+        CompactExecutionContextSerializer serializer)
+    {
+        return new CompactContextBatchConfigurer(properties, dataSource,
+            entityManagerFactory.getIfAvailable(), transactionManagerCustomizers.getIfAvailable(), serializer);
+    }
+
     @Bean({ "jobLauncher", "defaultJobLauncher", "asyncJobLauncher"})
     @Primary
-    JobLauncher jobLauncher(TaskExecutor taskExecutor)
+    JobLauncher jobLauncher(@Qualifier("taskExecutor") TaskExecutor taskExecutor)
     {
         // Setup with our task executor (default is SyncTaskExecutor)
         SimpleJobLauncher launcher = new SimpleJobLauncher();
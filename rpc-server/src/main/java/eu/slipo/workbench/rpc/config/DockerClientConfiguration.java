@@ -2,6 +2,7 @@ package eu.slipo.workbench.rpc.config;
 
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -9,6 +10,10 @@ import com.spotify.docker.client.DefaultDockerClient;
 import com.spotify.docker.client.DockerClient;
 import com.spotify.docker.client.exceptions.DockerCertificateException;
 
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerLogCollector;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerMonitor;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerResourceLedger;
+
 @Configuration
 public class DockerClientConfiguration
 {
@@ -26,4 +31,55 @@ public class DockerClientConfiguration
             .connectTimeoutMillis(2000L)
             .build();
     }
-}
\ No newline at end of file
+
+    /**
+     * A shared monitor for container completion (driven by the docker event stream)
+     */
+    @ConditionalOnProperty(name = "slipo.rpc-server.docker.monitor.enabled", havingValue = "true")
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public ContainerMonitor containerMonitor(
+        DockerClient docker,
+        @Value("${slipo.rpc-server.docker.monitor.reconcile-interval-millis:30000}") Long reconcileInterval)
+    {
+        ContainerMonitor monitor = new ContainerMonitor(docker);
+        monitor.setReconcileInterval(reconcileInterval);
+        return monitor;
+    }
+
+    /**
+     * A node-wide ledger of resources (memory/CPU) reserved by running containers
+     */
+    @ConditionalOnProperty(name = "slipo.rpc-server.docker.resources.enabled", havingValue = "true")
+    @Bean
+    public ContainerResourceLedger containerResourceLedger(
+        @Value("${slipo.rpc-server.docker.resources.memory-capacity-mbytes}") Long memoryCapacityMbytes,
+        @Value("${slipo.rpc-server.docker.resources.cpu-capacity:}") Float cpuCapacity,
+        @Value("${slipo.rpc-server.docker.resources.policy:FIFO}") String policyName)
+    {
+        if (cpuCapacity == null)
+            cpuCapacity = (float) Runtime.getRuntime().availableProcessors();
+
+        return new ContainerResourceLedger(
+            memoryCapacityMbytes * 1024L * 1024L,
+            cpuCapacity,
+            ContainerResourceLedger.Policy.valueOf(policyName.toUpperCase()));
+    }
+
+    /**
+     * A collector for streaming container logs into (size-capped) files
+     */
+    @ConditionalOnProperty(name = "slipo.rpc-server.docker.logs.enabled", havingValue = "true", matchIfMissing = true)
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public ContainerLogCollector containerLogCollector(
+        DockerClient docker,
+        @Value("${slipo.rpc-server.docker.logs.max-file-size-kbytes:8192}") Long maxFileSizeKbytes,
+        @Value("${slipo.rpc-server.docker.logs.max-backups:1}") Integer maxBackups,
+        @Value("${slipo.rpc-server.docker.logs.compress:false}") Boolean compress)
+    {
+        ContainerLogCollector collector = new ContainerLogCollector(docker);
+        collector.setMaxFileSize(maxFileSizeKbytes * 1024L);
+        collector.setMaxBackups(maxBackups);
+        collector.setCompress(compress);
+        return collector;
+    }
+}
@@ -2,14 +2,18 @@ package eu.slipo.workbench.rpc.config;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 
 import javax.annotation.PostConstruct;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.util.Assert;
 
+import eu.slipo.workbench.rpc.service.DownloadCache;
+
 @Configuration
 public class JobDataConfiguration
 {
@@ -30,4 +34,19 @@ public class JobDataConfiguration
     {
         return dataDir;
     }
+    
+    /**
+     * A cache for files downloaded from remote URLs (reused while the remote entity is unchanged)
+     */
+    @Bean(initMethod = "initialize")
+    @ConditionalOnProperty(name = "slipo.rpc-server.jobs.download-cache.enabled", havingValue = "true")
+    DownloadCache downloadCache(
+        @Value("${slipo.rpc-server.jobs.download-cache.dir:}") String dirName,
+        @Value("${slipo.rpc-server.jobs.download-cache.max-size-mbytes:10240}") Long maxSizeMbytes)
+    {
+        // Use a directory next to job data, so that downloads can be hard-linked
+        final Path dir = dirName.isEmpty()? dataDir.resolveSibling("jobs-download-cache") : Paths.get(dirName);
+        Assert.isTrue(dir.isAbsolute(), "Expected an absolute path for the download cache directory");
+        return new DownloadCache(dir, maxSizeMbytes * 1024L * 1024L);
+    }
 }
@@ -1,14 +1,17 @@
 package eu.slipo.workbench.rpc.config;
 
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.core.task.TaskExecutor;
 import org.springframework.scheduling.TaskScheduler;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 
+import eu.slipo.workbench.rpc.service.TaskExecutorRegistry;
+
 @Configuration
 @EnableScheduling
 public class TaskExecutorConfiguration
@@ -22,8 +25,11 @@ public class TaskExecutorConfiguration
     @Value("${slipo.rpc-server.task-executor.await-termination-timeout:10}")
     Integer awaitTerminationTimeout;
     
+    /**
+     * The executor for launching jobs 
+     */
     @Bean
-    TaskExecutor taskExecutor() 
+    ThreadPoolTaskExecutor taskExecutor() 
     {                
         ThreadPoolTaskExecutor p = new ThreadPoolTaskExecutor();
         p.setCorePoolSize(corePoolSize);
@@ -36,6 +42,78 @@ public class TaskExecutorConfiguration
         return p;
     }
     
+    /**
+     * The executor for the bookkeeping of process executions (i.e. recording the status of
+     * execution steps), kept apart from the threads launching jobs
+     */
+    @Bean
+    ThreadPoolTaskExecutor bookkeepingTaskExecutor(
+        @Value("${slipo.rpc-server.task-executor.bookkeeping.pool-size:2}") Integer poolSize)
+    {
+        ThreadPoolTaskExecutor p = new ThreadPoolTaskExecutor();
+        p.setCorePoolSize(poolSize);
+        p.setMaxPoolSize(poolSize);
+        p.setThreadNamePrefix("bookkeeping-");
+
+        p.setWaitForTasksToCompleteOnShutdown(true);
+        p.setAwaitTerminationSeconds(awaitTerminationTimeout);
+
+        return p;
+    }
+
+    /**
+     * The executor for fetching byte ranges of downloads, shared among all (concurrent) downloads
+     * so that the total number of connections is bounded
+     */
+    @Bean
+    ThreadPoolTaskExecutor downloadTaskExecutor(
+        @Value("${slipo.rpc-server.jobs.download-file.pool-size:4}") Integer poolSize)
+    {
+        ThreadPoolTaskExecutor p = new ThreadPoolTaskExecutor();
+        p.setCorePoolSize(poolSize);
+        p.setMaxPoolSize(poolSize);
+        p.setThreadNamePrefix("download-");
+
+        p.setWaitForTasksToCompleteOnShutdown(false);
+
+        return p;
+    }
+
+    /**
+     * The executor for transferring input files (at their offsets) when concatenating files in
+     * parallel, shared among all (concurrent) concatenations
+     */
+    @Bean
+    ThreadPoolTaskExecutor concatenateTaskExecutor(
+        @Value("${slipo.rpc-server.jobs.concatenate-files.pool-size:4}") Integer poolSize)
+    {
+        ThreadPoolTaskExecutor p = new ThreadPoolTaskExecutor();
+        p.setCorePoolSize(poolSize);
+        p.setMaxPoolSize(poolSize);
+        p.setThreadNamePrefix("concatenate-");
+
+        p.setWaitForTasksToCompleteOnShutdown(false);
+
+        return p;
+    }
+
+    /**
+     * A registry of executors for partition steps (one per tool family). The registry also reports 
+     * on the job launcher executor.
+     */
+    @Bean(initMethod = "initialize", destroyMethod = "shutdown")
+    @ConfigurationProperties(prefix = "slipo.rpc-server.task-executor.partition")
+    TaskExecutorRegistry taskExecutorRegistry(
+        @Qualifier("taskExecutor") ThreadPoolTaskExecutor taskExecutor,
+        @Qualifier("bookkeepingTaskExecutor") ThreadPoolTaskExecutor bookkeepingTaskExecutor)
+    {
+        TaskExecutorRegistry registry = new TaskExecutorRegistry();
+        registry.setAwaitTerminationSeconds(awaitTerminationTimeout);
+        registry.register("launcher", taskExecutor);
+        registry.register("bookkeeping", bookkeepingTaskExecutor);
+        return registry;
+    }
+    
     @Bean
     TaskScheduler taskScheduler() 
     {        
@@ -2,14 +2,18 @@ package eu.slipo.workbench.rpc.config;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 
 import javax.annotation.PostConstruct;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.util.Assert;
 
+import eu.slipo.workbench.rpc.service.OutputProfiler;
+import eu.slipo.workbench.rpc.service.StepOutputCache;
 import eu.slipo.workflows.WorkflowBuilderFactory;
 
 @Configuration
@@ -40,4 +44,32 @@ public class WorkflowBuilderFactoryConfiguration
         factory.setDataDirectory(dataDir);
         return factory;
     }
-}
\ No newline at end of file
+    
+    /**
+     * A cache for outputs of processing steps (reused by steps with identical tool, configuration
+     * and input)
+     */
+    @Bean(initMethod = "initialize")
+    @ConditionalOnProperty(name = "slipo.rpc-server.workflows.output-cache.enabled", havingValue = "true")
+    StepOutputCache stepOutputCache(
+        @Value("${slipo.rpc-server.workflows.output-cache.dir:}") String dirName,
+        @Value("${slipo.rpc-server.workflows.output-cache.max-size-mbytes:10240}") Long maxSizeMbytes)
+    {
+        // Use a directory next to workflow data, so that outputs can be hard-linked
+        final Path dir = dirName.isEmpty()? dataDir.resolveSibling("workflows-output-cache") : Paths.get(dirName);
+        Assert.isTrue(dir.isAbsolute(), "Expected an absolute path for the output cache directory");
+        return new StepOutputCache(dir, maxSizeMbytes * 1024L * 1024L);
+    }
+    
+    /**
+     * A background profiler for outputs of completed steps
+     */
+    @Bean(initMethod = "initialize", destroyMethod = "shutdown")
+    @ConditionalOnProperty(name = "slipo.rpc-server.workflows.output-profiling.enabled", havingValue = "true")
+    OutputProfiler outputProfiler(
+        @Value("${slipo.rpc-server.workflows.output-profiling.pool-size:2}") Integer poolSize,
+        @Value("${slipo.rpc-server.workflows.output-profiling.queue-capacity:100}") Integer queueCapacity)
+    {
+        return new OutputProfiler(poolSize, queueCapacity);
+    }
+}
@@ -0,0 +1,30 @@
+package eu.slipo.workbench.rpc.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import eu.slipo.workbench.common.model.BasicErrorCode;
+import eu.slipo.workbench.common.model.RestResponse;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerResourceLedger;
+
+@RestController
+@RequestMapping(produces = "application/json")
+public class ContainerResourceController
+{
+    @Autowired(required = false)
+    private ContainerResourceLedger ledger;
+
+    /**
+     * Report the resources reserved by running containers, and the requests waiting to be granted.
+     */
+    @GetMapping(value = "/api/resources/containers")
+    public RestResponse<ContainerResourceLedger.Report> report()
+    {
+        if (ledger == null)
+            return RestResponse.error(BasicErrorCode.NOT_SUPPORTED, "Resources for containers are not managed");
+
+        return RestResponse.result(ledger.report());
+    }
+}
@@ -7,12 +7,15 @@ import javax.validation.Validator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import eu.slipo.workbench.common.model.ApplicationException;
 import eu.slipo.workbench.common.model.BasicErrorCode;
@@ -26,6 +29,7 @@ import eu.slipo.workbench.common.model.process.ProcessNotFoundException;
 import eu.slipo.workbench.common.model.process.ProcessRecord;
 import eu.slipo.workbench.common.repository.ProcessRepository;
 import eu.slipo.workbench.common.service.ProcessOperator;
+import eu.slipo.workbench.rpc.service.ProcessExecutionEventPublisher;
 
 @RestController
 @RequestMapping(produces = "application/json")
@@ -42,6 +46,9 @@ public class ProcessController
     @Autowired
     private Validator validator;
 
+    @Autowired
+    private ProcessExecutionEventPublisher eventPublisher;
+
     @PostMapping(value = "/api/proc/create")
     public RestResponse<ProcessRecord> createProcFromDefinition(
         @RequestParam("creator") Integer creatorId,
@@ -113,4 +120,15 @@ public class ProcessController
     {
         return RestResponse.result(processOperator.list(true));
     }
+
+    /**
+     * Stream state transitions of process executions (as server-sent events). A subscriber that
+     * reconnects should send the id of the last event received (as <tt>Last-Event-ID</tt>).
+     */
+    @GetMapping(value = "/api/proc/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamEvents(
+        @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId)
+    {
+        return eventPublisher.subscribe(lastEventId);
+    }
 }
@@ -0,0 +1,28 @@
+package eu.slipo.workbench.rpc.controller;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import eu.slipo.workbench.common.model.RestResponse;
+import eu.slipo.workbench.rpc.service.TaskExecutorRegistry;
+
+@RestController
+@RequestMapping(produces = "application/json")
+public class TaskExecutorController
+{
+    @Autowired
+    private TaskExecutorRegistry taskExecutorRegistry;
+
+    /**
+     * Report the state (pool size, active threads, queue depth) of each executor
+     */
+    @GetMapping(value = "/api/executors")
+    public RestResponse<Map<String, TaskExecutorRegistry.Stats>> stats()
+    {
+        return RestResponse.result(taskExecutorRegistry.stats());
+    }
+}
@@ -0,0 +1,63 @@
+package eu.slipo.workbench.rpc.domain;
+
+import java.time.ZonedDateTime;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.validation.constraints.NotNull;
+
+import org.hibernate.validator.constraints.NotEmpty;
+
+/**
+ * A (serialized) configuration for a processing job, keyed by the digest of its content.
+ */
+@Entity(name = "JobConfiguration")
+@Table(name = "job_configuration", schema = "rpc")
+public class JobConfigurationEntity
+{
+    @Id
+    @Column(name = "hash", length = 64, updatable = false)
+    private String hash;
+
+    @Column(name = "tool", updatable = false)
+    private String tool;
+
+    @Column(name = "content", nullable = false, updatable = false)
+    @NotEmpty
+    private String content;
+
+    @NotNull
+    @Column(name = "created_on", nullable = false, updatable = false)
+    private ZonedDateTime createdOn = ZonedDateTime.now();
+
+    protected JobConfigurationEntity() {}
+
+    public JobConfigurationEntity(String hash, String tool, String content)
+    {
+        this.hash = hash;
+        this.tool = tool;
+        this.content = content;
+    }
+
+    public String getHash()
+    {
+        return hash;
+    }
+
+    public String getTool()
+    {
+        return tool;
+    }
+
+    public String getContent()
+    {
+        return content;
+    }
+
+    public ZonedDateTime getCreatedOn()
+    {
+        return createdOn;
+    }
+}
@@ -18,6 +18,7 @@ import org.springframework.util.StringUtils;
 
 import eu.slipo.workbench.common.service.util.PropertiesConverterService;
 import eu.slipo.workbench.rpc.service.ConfigurationGeneratorService;
+import eu.slipo.workbench.rpc.service.JobConfigurationStore;
 
 class BaseJobConfiguration
 {
@@ -42,6 +43,9 @@ class BaseJobConfiguration
     @Autowired
     protected Path jobDataDirectory;
 
+    @Autowired
+    protected JobConfigurationStore configurationStore;
+
     /**
      * The root directory under which a job-specific data are stored
      */
@@ -2,19 +2,18 @@ package eu.slipo.workbench.rpc.jobs;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
-import java.nio.file.OpenOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
 
 import javax.annotation.PostConstruct;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.batch.core.Step;
 import org.springframework.batch.core.StepContribution;
 import org.springframework.batch.core.StepExecution;
@@ -25,17 +24,39 @@ import org.springframework.batch.core.scope.context.ChunkContext;
 import org.springframework.batch.core.step.tasklet.Tasklet;
 import org.springframework.batch.item.ExecutionContext;
 import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
 
 import eu.slipo.workbench.rpc.jobs.listener.ExecutionContextPromotionListeners;
+import eu.slipo.workbench.rpc.jobs.tasklet.FileConcatenator;
 
 @Component
 public class ConcatenateFilesJobConfiguration extends BaseJobConfiguration
 {
+    private static final Logger logger = LoggerFactory.getLogger(ConcatenateFilesJobConfiguration.class);
+
+    /**
+     * The maximum number of input files to be transferred concurrently (at precomputed offsets)
+     * into the output file. A value of 1 means that input is transferred sequentially.
+     */
+    private int parallelism = 1;
+
+    @Autowired
+    private void setParallelism(
+        @Value("${slipo.rpc-server.jobs.concatenate-files.parallelism:1}") Integer parallelism)
+    {
+        this.parallelism = parallelism;
+    }
+
+    @Autowired
+    @Qualifier("concatenateTaskExecutor")
+    private ThreadPoolTaskExecutor concatenateTaskExecutor;
+
     @PostConstruct
     private void setupDataDirectory() throws IOException
     {
@@ -50,7 +71,20 @@ public class ConcatenateFilesJobConfiguration extends BaseJobConfiguration
 
         private final String outputName;
 
+        private final boolean compress;
+
         public ConcatenateFilesTasklet(List<Path> input, Path outputDir, String outputName)
+        {
+            this(input, outputDir, outputName, false);
+        }
+
+        /**
+         * @param input A list of input files
+         * @param outputDir The output directory
+         * @param outputName The name of the output file
+         * @param compress A flag to indicate that the output should be GZIP-compressed
+         */
+        public ConcatenateFilesTasklet(List<Path> input, Path outputDir, String outputName, boolean compress)
         {
             Assert.notNull(outputDir, "An output directory is required");
             Assert.isTrue(outputDir.isAbsolute(), "The output directory is expected as an absolute path");
@@ -59,6 +93,7 @@ public class ConcatenateFilesJobConfiguration extends BaseJobConfiguration
             this.input = input;
             this.outputDir = outputDir;
             this.outputName = outputName;
+            this.compress = compress;
         }
 
         @Override
@@ -83,18 +118,24 @@ public class ConcatenateFilesJobConfiguration extends BaseJobConfiguration
 
             Path output = outputDir.resolve(outputName);
 
-            OpenOption[] outputOptions =
-                new StandardOpenOption[] { StandardOpenOption.WRITE, StandardOpenOption.CREATE };
+            final long startTime = System.currentTimeMillis();
+            final FileConcatenator concatenator =
+                new FileConcatenator(parallelism, compress, concatenateTaskExecutor.getThreadPoolExecutor());
+            final long size = concatenator.concatenate(input, output);
+            final long duration = System.currentTimeMillis() - startTime;
 
-            try (OutputStream out = Files.newOutputStream(output, outputOptions)) {
-                for (Path inputPath: input)
-                    Files.copy(inputPath, out);
-            }
+            // Throughput (MB/s) is measured on input bytes
+            final double throughput = (size / 1048576.0) / (Math.max(duration, 1L) / 1000.0);
+            logger.info("Concatenated {} files ({} bytes) into {} in {}ms ({} MB/s)",
+                input.size(), size, output, duration, String.format("%.1f", throughput));
 
             // Update execution context
 
             executionContext.put("outputDir", outputDir.toString());
             executionContext.put("outputName", outputName);
+            executionContext.putLong("size", size);
+            executionContext.putLong("duration", duration);
+            executionContext.putDouble("throughput", throughput);
 
             return RepeatStatus.FINISHED;
         }
@@ -105,13 +146,14 @@ public class ConcatenateFilesJobConfiguration extends BaseJobConfiguration
     public ConcatenateFilesTasklet  concatenateFilesTasklet(
         @Value("#{jobParameters['input']}") String input,
         @Value("#{jobParameters['outputName']}") String outputName,
+        @Value("#{jobParameters['compress']}") String compress,
         @Value("#{jobExecution.jobInstance.id}") Long jobId)
     {
         List<Path> inputPaths = Arrays.stream(input.split(File.pathSeparator))
             .collect(Collectors.mapping(Paths::get, Collectors.toList()));
 
         Path outputDir = dataDir.resolve(String.valueOf(jobId));
-        return new ConcatenateFilesTasklet(inputPaths, outputDir, outputName);
+        return new ConcatenateFilesTasklet(inputPaths, outputDir, outputName, Boolean.parseBoolean(compress));
     }
 
     @Bean("concatenateFiles.step")
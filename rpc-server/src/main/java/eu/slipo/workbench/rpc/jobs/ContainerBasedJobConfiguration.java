@@ -1,18 +1,62 @@
 package eu.slipo.workbench.rpc.jobs;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.List;
 
+import org.springframework.batch.core.repository.JobRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.util.Assert;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.spotify.docker.client.DockerClient;
 
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerLogCollector;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerMonitor;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerResourceLedger;
+import eu.slipo.workbench.rpc.service.TaskExecutorRegistry;
+
 public class ContainerBasedJobConfiguration extends BaseJobConfiguration
 {
     @Autowired
     protected DockerClient docker;
 
+    @Autowired
+    protected ObjectMapper objectMapper;
+
+    @Autowired
+    protected JobRepository jobRepository;
+
+    /**
+     * A registry providing a separate executor for the partition steps of each tool
+     */
+    @Autowired
+    protected TaskExecutorRegistry taskExecutorRegistry;
+
+    /**
+     * A monitor to be notified on container completion (if <tt>null</tt>, containers are polled)
+     */
+    @Autowired(required = false)
+    protected ContainerMonitor containerMonitor;
+
+    /**
+     * A ledger to reserve resources from, before a container is started (if <tt>null</tt>,
+     * containers are started immediately)
+     */
+    @Autowired(required = false)
+    protected ContainerResourceLedger containerResourceLedger;
+
+    /**
+     * A collector for container logs (if <tt>null</tt>, logs are kept into step context)
+     */
+    @Autowired(required = false)
+    protected ContainerLogCollector containerLogCollector;
+
     /**
      * The docker image on which the container is based
      */
@@ -43,10 +87,101 @@ public class ContainerBasedJobConfiguration extends BaseJobConfiguration
      */
     protected long memorySwapLimit = -1L;
 
+    /**
+     * The priority of a container when waiting for resources (higher is served first)
+     */
+    protected int containerPriority = 0;
+
+    /**
+     * Resolve the path of the file holding the logs of a container
+     *
+     * @param workDir The working directory of a job
+     * @param name A name for the log file (without extension)
+     */
+    protected Path resolveLogFile(Path workDir, String name)
+    {
+        return workDir.resolve(Paths.get("logs", name + ".log"));
+    }
+
+    /**
+     * Create a builder for a partitioned flow, pre-configured for containers of this job (i.e.
+     * for timeouts, monitoring, logs, resources). Parts are executed on the partition executor
+     * dedicated to this job (see {@link TaskExecutorRegistry#getPartitionExecutor(String)}).
+     *
+     * @param name The name of the job
+     */
+    protected PartitionedContainerFlowBuilder partitionedFlowBuilder(String name)
+    {
+        return new PartitionedContainerFlowBuilder(name)
+            .stepBuilderFactory(stepBuilderFactory)
+            .jobRepository(jobRepository)
+            .taskExecutor(taskExecutorRegistry.getPartitionExecutor(name))
+            .client(docker)
+            .checkInterval(checkInterval)
+            .timeout(runTimeout)
+            .monitor(containerMonitor)
+            .resources(containerResourceLedger, containerPriority)
+            .logs(containerLogCollector, this::resolveLogFile);
+    }
+
     protected void setContainerDataDirectory(String dir)
     {
         Path dirPath = Paths.get(dir);
         Assert.isTrue(dirPath.isAbsolute(), "Expected an absolute path (inside a container)");
         this.containerDataDir = dirPath;
     }
+
+    /**
+     * Merge JSON documents produced by partial runs of a tool (e.g. metadata, analytics) into a
+     * single document.
+     * <p>
+     * Objects are merged recursively, numeric fields are summed up (e.g. counts of records or
+     * triples), and for any other field the value of the first document is kept. Missing sources
+     * are ignored.
+     *
+     * @param sources The list of JSON files to merge
+     * @param target The file to write the merged document into
+     * @throws IOException
+     */
+    protected void mergeJsonFiles(List<Path> sources, Path target) throws IOException
+    {
+        ObjectNode result = null;
+        for (Path source: sources) {
+            if (!Files.exists(source) || Files.size(source) == 0) {
+                continue;
+            }
+            JsonNode node = objectMapper.readTree(source.toFile());
+            if (!node.isObject()) {
+                continue;
+            }
+            if (result == null) {
+                result = (ObjectNode) node;
+            } else {
+                mergeJsonObject(result, (ObjectNode) node);
+            }
+        }
+
+        if (result != null) {
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(target.toFile(), result);
+        }
+    }
+
+    private static void mergeJsonObject(ObjectNode result, ObjectNode node)
+    {
+        for (Iterator<String> it = node.fieldNames(); it.hasNext(); ) {
+            String fieldName = it.next();
+            JsonNode value = result.get(fieldName), other = node.get(fieldName);
+            if (value == null) {
+                result.set(fieldName, other);
+            } else if (value.isObject() && other.isObject()) {
+                mergeJsonObject((ObjectNode) value, (ObjectNode) other);
+            } else if (value.isNumber() && other.isNumber()) {
+                if (value.isIntegralNumber() && other.isIntegralNumber()) {
+                    result.put(fieldName, value.longValue() + other.longValue());
+                } else {
+                    result.put(fieldName, value.doubleValue() + other.doubleValue());
+                }
+            }
+        }
+    }
 }
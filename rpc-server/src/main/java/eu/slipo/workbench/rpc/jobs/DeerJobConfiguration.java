@@ -1,13 +1,17 @@
 package eu.slipo.workbench.rpc.jobs;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import javax.annotation.PostConstruct;
 import javax.validation.ConstraintViolation;
@@ -15,12 +19,18 @@ import javax.validation.ConstraintViolation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
 import org.springframework.batch.core.Step;
 import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
 import org.springframework.batch.core.configuration.JobFactory;
 import org.springframework.batch.core.configuration.annotation.JobScope;
 import org.springframework.batch.core.job.builder.FlowBuilder;
 import org.springframework.batch.core.job.flow.Flow;
+import org.springframework.batch.core.job.flow.FlowExecutionStatus;
+import org.springframework.batch.core.job.flow.JobExecutionDecider;
+import org.springframework.batch.core.job.flow.support.SimpleFlow;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
 import org.springframework.batch.core.scope.context.ChunkContext;
 import org.springframework.batch.core.scope.context.StepContext;
@@ -30,6 +40,8 @@ import org.springframework.batch.repeat.RepeatStatus;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Component;
@@ -39,9 +51,12 @@ import org.springframework.util.StringUtils;
 import eu.slipo.workbench.common.model.poi.EnumDataFormat;
 import eu.slipo.workbench.common.model.tool.DeerConfiguration;
 import eu.slipo.workbench.common.model.tool.InvalidConfigurationException;
+import eu.slipo.workbench.rpc.jobs.PartitionedContainerFlowBuilder.Partition;
 import eu.slipo.workbench.rpc.jobs.listener.ExecutionContextPromotionListeners;
 import eu.slipo.workbench.rpc.jobs.listener.LoggingJobExecutionListener;
+import eu.slipo.workbench.rpc.jobs.tasklet.HashPartitionTasklet;
 import eu.slipo.workbench.rpc.jobs.tasklet.PrepareWorkingDirectoryTasklet;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerConfigurer;
 import eu.slipo.workbench.rpc.jobs.tasklet.docker.CreateContainerTasklet;
 import eu.slipo.workbench.rpc.jobs.tasklet.docker.RunContainerTasklet;
 
@@ -52,6 +67,10 @@ public class DeerJobConfiguration extends ContainerBasedJobConfiguration
 
     private static final String JOB_NAME = "deer";
 
+    public static final String FLOW_SIMPLE = "SIMPLE";
+
+    public static final String FLOW_PARTITIONING = "PARTITIONING";
+
     /**
      * The default timeout (milliseconds) for a container run
      */
@@ -64,6 +83,8 @@ public class DeerJobConfiguration extends ContainerBasedJobConfiguration
 
     public static final long DEFAULT_MEMORY_LIMIT = 536870912L;
 
+    public static final String ANALYTICS_FILE_NAME = "deer-analytics.json";
+
     @Override
     @Autowired
     protected void setContainerDataDirectory(
@@ -106,6 +127,13 @@ public class DeerJobConfiguration extends ContainerBasedJobConfiguration
         this.memorySwapLimit = kbytes == null? -1L : kbytes.longValue() * 1024;
     }
 
+    @Autowired
+    private void setPriority(
+        @Value("${slipo.rpc-server.tools.deer.docker.container.priority:0}") Integer priority)
+    {
+        this.containerPriority = priority;
+    }
+
     @PostConstruct
     private void setMemoryLimitsIfNeeded()
     {
@@ -122,6 +150,66 @@ public class DeerJobConfiguration extends ContainerBasedJobConfiguration
         super.setupDataDirectory("deer");
     }
 
+    /**
+     * Represent the factors (e.g. thresholds) that affect the decision on choosing a partitioning flow
+     */
+    public static class PartitioningDecisionFactors
+    {
+        /**
+         * A threshold number for the size (in bytes) of the input file
+         */
+        long inputSizeThreshold = -1L;
+
+        /**
+         * The maximum number of partitions to be created
+         */
+        int maxNumberOfPartitions = 4;
+
+        /**
+         * The number of times a failed part is retried
+         */
+        int retryLimit = PartitionedContainerFlowBuilder.DEFAULT_RETRY_LIMIT;
+
+        public long getInputSizeThreshold()
+        {
+            return inputSizeThreshold;
+        }
+
+        public void setInputSizeThresholdKbytes(long inputSizeThresholdKbytes)
+        {
+            this.inputSizeThreshold = inputSizeThresholdKbytes * 1024L;
+        }
+
+        public int getMaxNumberOfPartitions()
+        {
+            return maxNumberOfPartitions;
+        }
+
+        public void setMaxNumberOfPartitions(int maxNumberOfPartitions)
+        {
+            this.maxNumberOfPartitions = maxNumberOfPartitions;
+        }
+
+        public int getRetryLimit()
+        {
+            return retryLimit;
+        }
+
+        public void setRetryLimit(int retryLimit)
+        {
+            Assert.isTrue(retryLimit >= 0, "Expected a non-negative number");
+            this.retryLimit = retryLimit;
+        }
+    }
+
+    @ConditionalOnProperty(name = "slipo.rpc-server.tools.deer.flow", havingValue = "partition-if-needed")
+    @ConfigurationProperties(prefix = "slipo.rpc-server.tools.deer.flow.partition-if-needed")
+    @Bean("deer.partitioningDecisionFactors")
+    public PartitioningDecisionFactors partitioningDecisionFactors()
+    {
+       return new PartitioningDecisionFactors();
+    }
+
     public class ConfigureTasklet implements Tasklet
     {
         @Override
@@ -130,7 +218,7 @@ public class DeerJobConfiguration extends ContainerBasedJobConfiguration
         {
             StepContext stepContext = chunkContext.getStepContext();
             ExecutionContext executionContext = stepContext.getStepExecution().getExecutionContext();
-            Map<String, ?> parameters = stepContext.getJobParameters();
+            Map<String, ?> parameters = configurationStore.resolve(stepContext.getJobParameters());
 
             // Read given parameters
 
@@ -164,6 +252,54 @@ public class DeerJobConfiguration extends ContainerBasedJobConfiguration
         }
     }
 
+    public class DecideIfPartitioningTasklet implements Tasklet
+    {
+        private final PartitioningDecisionFactors factors;
+
+        private final Path inputFile;
+
+        private final EnumDataFormat inputFormat;
+
+        private final EnumDataFormat outputFormat;
+
+        public DecideIfPartitioningTasklet(
+            PartitioningDecisionFactors factors, Path inputFile, EnumDataFormat inputFormat, EnumDataFormat outputFormat)
+        {
+            this.factors = factors;
+            this.inputFile = inputFile;
+            this.inputFormat = inputFormat;
+            this.outputFormat = outputFormat;
+        }
+
+        @Override
+        public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext)
+            throws Exception
+        {
+            StepContext stepContext = chunkContext.getStepContext();
+            ExecutionContext executionContext = stepContext.getStepExecution().getExecutionContext();
+
+            final long inputSize = Files.size(inputFile);
+
+            // Decide if partitioning is needed; if yes, also determine the number of partitions.
+            // Only N-TRIPLES can be partitioned by subject (and only N-TRIPLES output can be
+            // concatenated back).
+            int numberOfPartitions = -1; // a negative value means no partitioning
+            if (inputFormat == EnumDataFormat.N_TRIPLES && outputFormat == EnumDataFormat.N_TRIPLES
+                    && factors.maxNumberOfPartitions > 1) {
+                if (factors.inputSizeThreshold > 0 && inputSize > factors.inputSizeThreshold) {
+                    long n = (inputSize + factors.inputSizeThreshold - 1) / factors.inputSizeThreshold;
+                    numberOfPartitions = (int) Math.min(n, factors.maxNumberOfPartitions);
+                }
+            }
+
+            // Update execution context with available facts
+            executionContext.putLong("inputSize", inputSize);
+            executionContext.putInt("numberOfPartitions", numberOfPartitions);
+
+            return null;
+        }
+    }
+
     /**
      * A tasklet that reads job parameters to a configuration bean into execution-context.
      */
@@ -243,7 +379,7 @@ public class DeerJobConfiguration extends ContainerBasedJobConfiguration
 
         final EnumDataFormat outputFormat = EnumDataFormat.valueOf(outputFormatName);
         final String resultFileName = "enriched" + "." + outputFormat.getFilenameExtension();
-        final String statsFileName = "deer-analytics.json";
+        final String statsFileName = ANALYTICS_FILE_NAME;
 
         // At container creation, we need to bind-mount the two (empty) output files: enrichment result and
         // analytics. The files need to exist (before container creation) in order to convince Docker to
@@ -254,6 +390,7 @@ public class DeerJobConfiguration extends ContainerBasedJobConfiguration
         // Create container
         return CreateContainerTasklet.builder()
             .client(docker)
+            .resources(containerResourceLedger)
             .name(containerName)
             .container(configurer -> configurer
                 .image(imageName)
@@ -289,14 +426,19 @@ public class DeerJobConfiguration extends ContainerBasedJobConfiguration
     @Bean("deer.runContainerTasklet")
     @JobScope
     public RunContainerTasklet runContainerTasklet(
+        @Value("#{T(java.nio.file.Paths).get(jobExecutionContext['workDir'])}") Path workDir,
         @Value("#{jobExecutionContext['containerName']}") String containerName)
     {
         return RunContainerTasklet.builder()
             .client(docker)
+            .resources(containerResourceLedger)
+            .priority(containerPriority)
             .checkInterval(checkInterval)
             .timeout(runTimeout)
             .container(containerName)
             .removeOnFinished(false)
+            .monitor(containerMonitor)
+            .logs(containerLogCollector, resolveLogFile(workDir, "run-container"))
             .build();
     }
 
@@ -310,11 +452,211 @@ public class DeerJobConfiguration extends ContainerBasedJobConfiguration
             .build();
     }
 
+    @ConditionalOnProperty(name = "slipo.rpc-server.tools.deer.flow", havingValue = "partition-if-needed")
+    @Bean("deer.examineIfPartitioningTasklet")
+    @JobScope
+    public Tasklet examineIfPartitioningTasklet(
+        PartitioningDecisionFactors factors,
+        @Value("#{jobExecutionContext['inputFormat']}") String inputFormatName,
+        @Value("#{jobExecutionContext['outputFormat']}") String outputFormatName,
+        @Value("#{T(java.nio.file.Paths).get(jobExecutionContext['inputDir'])}") Path inputDir,
+        @Value("#{jobExecutionContext['inputFiles']}") List<String> inputFiles)
+    {
+        Assert.isTrue(inputFiles.size() == 1, "Expected a single input file");
+
+        return new DecideIfPartitioningTasklet(factors,
+            inputDir.resolve(inputFiles.get(0)),
+            EnumDataFormat.valueOf(inputFormatName),
+            EnumDataFormat.valueOf(outputFormatName));
+    }
+
+    @ConditionalOnProperty(name = "slipo.rpc-server.tools.deer.flow", havingValue = "partition-if-needed")
+    @Bean("deer.examineIfPartitioningStep")
+    public Step examineIfPartitioningStep(@Qualifier("deer.examineIfPartitioningTasklet") Tasklet tasklet)
+    {
+        final StepExecutionListener stepExecutionListener = ExecutionContextPromotionListeners.builder()
+            .keys("inputSize", "numberOfPartitions")
+            .build();
+
+        return stepBuilderFactory.get("deer.examineIfPartitioning")
+            .tasklet(tasklet)
+            .listener(stepExecutionListener)
+            .build();
+    }
+
+    @ConditionalOnProperty(name = "slipo.rpc-server.tools.deer.flow", havingValue = "partition-if-needed")
+    @Bean("deer.flowDecider")
+    @JobScope
+    public JobExecutionDecider flowDecider(
+        @Value("#{jobExecutionContext['numberOfPartitions'] ?: -1}") Integer numberOfPartitions)
+    {
+        return new JobExecutionDecider()
+        {
+            @Override
+            public FlowExecutionStatus decide(JobExecution jobExecution, StepExecution stepExecution)
+            {
+                String status = numberOfPartitions > 1? FLOW_PARTITIONING : FLOW_SIMPLE;
+                return new FlowExecutionStatus(status);
+            }
+        };
+    }
+
+    /**
+     * A tasklet to partition the (N-TRIPLES) input by hashing the subject of each triple. The i-th
+     * part is placed under <tt>partitions/partition_i/input</tt> (keeping the file name).
+     */
+    @ConditionalOnProperty(name = "slipo.rpc-server.tools.deer.flow", havingValue = "partition-if-needed")
+    @Bean("deer.partitionInputTasklet")
+    @JobScope
+    public HashPartitionTasklet partitionInputTasklet(
+        @Value("#{T(java.nio.file.Paths).get(jobExecutionContext['workDir'])}") Path workDir,
+        @Value("#{T(java.nio.file.Paths).get(jobExecutionContext['inputDir'])}") Path inputDir,
+        @Value("#{jobExecutionContext['inputFiles']}") List<String> inputFiles,
+        @Value("#{jobExecutionContext['numberOfPartitions'] ?: -1}") Integer numberOfPartitions)
+    {
+        Assert.isTrue(numberOfPartitions >= 2, "The number of partitions should be greater or equal to 2");
+        Assert.isTrue(inputFiles.size() == 1, "Expected a single input file");
+
+        return HashPartitionTasklet.builder()
+            .input(Collections.singletonList(inputDir.resolve(inputFiles.get(0))))
+            .targetDirectory(workDir.resolve("partitions"))
+            .numberOfParts(numberOfPartitions)
+            .build();
+    }
+
+    @ConditionalOnProperty(name = "slipo.rpc-server.tools.deer.flow", havingValue = "partition-if-needed")
+    @Bean("deer.partitionInputStep")
+    public Step partitionInputStep(@Qualifier("deer.partitionInputTasklet") HashPartitionTasklet tasklet)
+    {
+        return stepBuilderFactory.get("deer.partitionInput")
+            .tasklet(tasklet)
+            .build();
+    }
+
+    /**
+     * Configure the container for a part (as partitioned by {@link #partitionInputTasklet}).
+     */
+    private void configureContainerForPart(Partition partition, ContainerConfigurer configurer)
+        throws IOException
+    {
+        final int partitionNumber = partition.getNumber();
+        final ExecutionContext jobExecutionContext = partition.getJobExecutionContext();
+        final Path workDir = partition.getWorkDirectory();
+
+        final String outputFormatName = jobExecutionContext.getString("outputFormat");
+        @SuppressWarnings("unchecked")
+        final List<String> inputFiles = (List<String>) jobExecutionContext.get("inputFiles");
+        @SuppressWarnings("unchecked")
+        final Map<String, String> configFileByName =
+            (Map<String, String>) jobExecutionContext.get("configFileByName");
+
+        Assert.isTrue(inputFiles.size() == 1, "Expected a single input file");
+        final String inputFileName = inputFiles.get(0);
+        final String configFileName = configFileByName.get("config");
+
+        Path partitionDir = partition.getDirectory();
+        Path partitionInputFile = partitionDir.resolve(Paths.get("input", inputFileName));
+        if (!Files.isRegularFile(partitionInputFile)) {
+            throw new IllegalStateException(
+                "The input for partition #" + partitionNumber + " is missing: " + partitionInputFile);
+        }
+
+        // Create directory for the output of this partition
+        Path partitionOutputDir = partitionDir.resolve("output");
+        Files.createDirectories(partitionOutputDir, DEFAULT_DIRECTORY_ATTRIBUTE);
+
+        final EnumDataFormat outputFormat = EnumDataFormat.valueOf(outputFormatName);
+        final String resultFileName = "enriched" + "." + outputFormat.getFilenameExtension();
+        final String statsFileName = ANALYTICS_FILE_NAME;
+
+        // The output files must exist before container creation (see createContainerTasklet)
+        Files.write(partitionOutputDir.resolve(resultFileName), new byte[0]);
+        Files.write(partitionOutputDir.resolve(statsFileName), new byte[0]);
+
+        configurer
+            .image(imageName)
+            .volume(partitionInputFile, containerDataDir.resolve(Paths.get("input", inputFileName)), true)
+            .volume(workDir.resolve(configFileName), containerDataDir.resolve("config.ttl"), true)
+            .volume(partitionOutputDir.resolve(resultFileName), containerDataDir.resolve(Paths.get("output", resultFileName)))
+            .volume(partitionOutputDir.resolve(statsFileName), containerDataDir.resolve(statsFileName))
+            // Set environment
+            .env("INPUT_FILE", containerDataDir.resolve(Paths.get("input", inputFileName)))
+            .env("OUTPUT_FORMAT", outputFormatName)
+            .env("OUTPUT_DIR", containerDataDir.resolve("output"))
+            .env("OUTPUT_NAME", "enriched")
+            .env("CONFIG_FILE", containerDataDir.resolve("config.ttl"))
+            // Set resource limits
+            .memory(memoryLimit)
+            .memoryAndSwap(memorySwapLimit);
+    }
+
+    /**
+     * A tasklet to merge partial results (of partitions) into the output directory.
+     * <p>
+     * The enriched (N-TRIPLES) parts are concatenated, and the analytics are merged (numeric
+     * fields are summed up).
+     */
+    @ConditionalOnProperty(name = "slipo.rpc-server.tools.deer.flow", havingValue = "partition-if-needed")
+    @Bean("deer.mergeOutputTasklet")
+    @JobScope
+    public Tasklet mergeOutputTasklet(
+        @Value("#{jobExecutionContext['outputFormat']}") String outputFormatName,
+        @Value("#{T(java.nio.file.Paths).get(jobExecutionContext['workDir'])}") Path workDir,
+        @Value("#{T(java.nio.file.Paths).get(jobExecutionContext['outputDir'])}") Path outputDir,
+        @Value("#{jobExecutionContext['numberOfPartitions'] ?: -1}") Integer numberOfPartitions)
+    {
+        Assert.isTrue(numberOfPartitions >= 2, "The number of partitions should be greater or equal to 2");
+
+        final EnumDataFormat outputFormat = EnumDataFormat.valueOf(outputFormatName);
+        Assert.state(outputFormat == EnumDataFormat.N_TRIPLES,
+            "The given output format does not support concatenation of results!");
+        final String resultFileName = "enriched" + "." + outputFormat.getFilenameExtension();
+
+        final List<Path> partialOutputDirs = IntStream.rangeClosed(1, numberOfPartitions)
+            .mapToObj(i -> workDir.resolve(Paths.get("partitions", String.format("partition_%d", i), "output")))
+            .collect(Collectors.toList());
+
+        return new Tasklet()
+        {
+            @Override
+            public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext)
+                throws Exception
+            {
+                try (OutputStream out = Files.newOutputStream(outputDir.resolve(resultFileName))) {
+                    for (Path dir: partialOutputDirs) {
+                        Files.copy(dir.resolve(resultFileName), out);
+                    }
+                }
+
+                Path statsFile = outputDir.resolve(ANALYTICS_FILE_NAME);
+                Files.deleteIfExists(statsFile);
+                mergeJsonFiles(
+                    partialOutputDirs.stream().map(dir -> dir.resolve(ANALYTICS_FILE_NAME)).collect(Collectors.toList()),
+                    statsFile);
+                if (!Files.exists(statsFile)) {
+                    Files.write(statsFile, new byte[0]);
+                }
+
+                return null;
+            }
+        };
+    }
+
+    @ConditionalOnProperty(name = "slipo.rpc-server.tools.deer.flow", havingValue = "partition-if-needed")
+    @Bean("deer.mergeOutputStep")
+    public Step mergeOutputStep(@Qualifier("deer.mergeOutputTasklet") Tasklet tasklet)
+        throws Exception
+    {
+        return stepBuilderFactory.get("deer.mergeOutput")
+            .tasklet(tasklet).build();
+    }
+
     /**
      * Create flow for a job expecting and reading configuration via normal {@link JobParameters}.
      */
+    @ConditionalOnProperty(name = "slipo.rpc-server.tools.deer.flow", havingValue = "simple", matchIfMissing = true)
     @Bean("deer.flow")
-    public Flow flow(
+    public Flow simpleFlow(
         @Qualifier("deer.configureStep") Step configureStep,
         @Qualifier("deer.prepareWorkingDirectoryStep") Step prepareWorkingDirectoryStep,
         @Qualifier("deer.createContainerStep") Step createContainerStep,
@@ -328,6 +670,52 @@ public class DeerJobConfiguration extends ContainerBasedJobConfiguration
             .build();
     }
 
+    /**
+     * Create flow for a job expecting and reading configuration via normal {@link JobParameters}.
+     * <p>
+     * This is a flow branching to either a simple execution or a partitioning execution. The decision
+     * is based on the size of the given input (and only N-TRIPLES input is partitioned). A partitioning
+     * execution partitions input by subject into N parts, invokes N instances of Deer, and merges
+     * partial results.
+     */
+    @ConditionalOnProperty(name = "slipo.rpc-server.tools.deer.flow", havingValue = "partition-if-needed")
+    @Bean("deer.flow")
+    public Flow partitioningFlow(
+        PartitioningDecisionFactors factors,
+        @Qualifier("deer.configureStep") Step configureStep,
+        @Qualifier("deer.prepareWorkingDirectoryStep") Step prepareWorkingDirectoryStep,
+        @Qualifier("deer.examineIfPartitioningStep") Step examineIfPartitioningStep,
+        @Qualifier("deer.flowDecider") JobExecutionDecider flowDecider,
+        /* steps that comprise the simple flow */
+        @Qualifier("deer.createContainerStep") Step createContainerStep,
+        @Qualifier("deer.runContainerStep") Step runContainerStep,
+        /* steps that comprise the partitioning flow */
+        @Qualifier("deer.partitionInputStep") Step partitionInputStep,
+        @Qualifier("deer.mergeOutputStep") Step mergeOutputStep)
+    {
+        Flow simpleFlow = new FlowBuilder<SimpleFlow>("deer.simpleFlow")
+            .start(createContainerStep)
+            .next(runContainerStep)
+            .build();
+
+        Flow partitioningFlow = partitionedFlowBuilder("deer")
+            .splitter(partitionInputStep)
+            .container(this::configureContainerForPart)
+            .merger(mergeOutputStep)
+            .retryLimit(factors.retryLimit)
+            .build();
+
+        return new FlowBuilder<Flow>("deer.flow")
+            .start(configureStep)
+            .next(prepareWorkingDirectoryStep)
+            .next(examineIfPartitioningStep)
+            .next(flowDecider)
+                .on(FLOW_PARTITIONING).to(partitioningFlow)
+            .from(flowDecider)
+                .on("*").to(simpleFlow)
+            .build();
+    }
+
     @Bean("deer.job")
     public Job job(@Qualifier("deer.flow") Flow flow)
     {
@@ -9,12 +9,13 @@ import java.nio.file.FileSystemException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 
 import javax.annotation.PostConstruct;
 
 import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.batch.core.Step;
 import org.springframework.batch.core.StepContribution;
 import org.springframework.batch.core.StepExecution;
@@ -25,18 +26,49 @@ import org.springframework.batch.core.scope.context.ChunkContext;
 import org.springframework.batch.core.step.tasklet.Tasklet;
 import org.springframework.batch.item.ExecutionContext;
 import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
 import eu.slipo.workbench.rpc.jobs.listener.ExecutionContextPromotionListeners;
+import eu.slipo.workbench.rpc.jobs.tasklet.FileDownloader;
+import eu.slipo.workbench.rpc.service.DownloadCache;
 
 @Component
 public class DownloadFileJobConfiguration extends BaseJobConfiguration
 {
+    private static final Logger logger = LoggerFactory.getLogger(DownloadFileJobConfiguration.class);
+
+    /**
+     * The maximum number of ranges of a (large) download to be fetched concurrently
+     */
+    @Value("${slipo.rpc-server.jobs.download-file.parallelism:1}")
+    private int parallelism;
+
+    /**
+     * The minimum size of a range to be fetched concurrently
+     */
+    @Value("${slipo.rpc-server.jobs.download-file.min-range-size-mbytes:64}")
+    private long minRangeSizeMbytes;
+
+    @Value("${slipo.rpc-server.jobs.download-file.connect-timeout-seconds:30}")
+    private int connectTimeoutSeconds;
+
+    @Value("${slipo.rpc-server.jobs.download-file.read-timeout-seconds:120}")
+    private int readTimeoutSeconds;
+
+    @Autowired(required = false)
+    private DownloadCache downloadCache;
+
+    @Autowired
+    @Qualifier("downloadTaskExecutor")
+    private ThreadPoolTaskExecutor downloadTaskExecutor;
+
     @PostConstruct
     private void setupDataDirectory() throws IOException
     {
@@ -44,8 +76,12 @@ public class DownloadFileJobConfiguration extends BaseJobConfiguration
     }
 
     /**
-     * A simple tasklet that downloads a URL to a local output file.
-     * <p>The download is not resumable (if failed or interrupted will start from the beginning).
+     * A tasklet that downloads a URL to a local output file.
+     * <p>An HTTP download is resumable (if failed or interrupted will continue from the partial
+     * download), provided that the server supports byte ranges. If a download cache is configured,
+     * an unchanged remote entity (i.e. with the same <tt>ETag</tt> or <tt>Last-Modified</tt> header)
+     * is served from the cache.
+     * @see FileDownloader
      */
     public class DownloadFileTasklet implements Tasklet
     {
@@ -111,22 +147,11 @@ public class DownloadFileJobConfiguration extends BaseJobConfiguration
             Assert.state(Files.isDirectory(outputDir) && Files.isWritable(outputDir),
                 "Expected outputDir to be a writable directory");
 
-            // Download file
+            // Download and verify file
 
             final Path target = outputDir.resolve(outputName);
             downloadToTarget(target);
 
-            // Verify download
-
-            if (checksum != null) {
-                String computedChecksum = null;
-                try (InputStream s = Files.newInputStream(target, StandardOpenOption.READ)) {
-                    computedChecksum = DigestUtils.sha256Hex(s);
-                }
-                if (!checksum.equalsIgnoreCase(computedChecksum))
-                    throw new IllegalStateException("checksum verification has failed");
-            }
-
             // Update execution context
 
             executionContext.put("outputDir", outputDir.toString());
@@ -135,6 +160,32 @@ public class DownloadFileJobConfiguration extends BaseJobConfiguration
             return RepeatStatus.FINISHED;
         }
 
+        /**
+         * Verify the checksum of a downloaded file (if a checksum is expected)
+         *
+         * @param target The downloaded file
+         * @param computedChecksum The SHA-256 checksum of the file, or <tt>null</tt> if not computed
+         * @return <tt>true</tt> if verification has succeeded (or no checksum is expected)
+         */
+        private boolean verify(Path target, String computedChecksum) throws IOException
+        {
+            if (checksum == null)
+                return true;
+
+            if (computedChecksum == null) {
+                try (InputStream s = Files.newInputStream(target, StandardOpenOption.READ)) {
+                    computedChecksum = DigestUtils.sha256Hex(s);
+                }
+            }
+            return checksum.equalsIgnoreCase(computedChecksum);
+        }
+
+        /**
+         * Download to target file, and verify the result. A download is stored into the download
+         * cache only after it is verified.
+         *
+         * @throws IllegalStateException if checksum verification has failed
+         */
         private void downloadToTarget(Path target) throws IOException
         {
             // If URL represents a local file, first try to link
@@ -148,13 +199,46 @@ public class DownloadFileJobConfiguration extends BaseJobConfiguration
                 }
             }
 
-            // If no link was created, fallback to plain copying
+            if (link != null) {
+                if (!verify(target, null))
+                    throw new IllegalStateException("checksum verification has failed");
+                return;
+            }
 
-            if (link == null) {
-                try (InputStream in = url.openStream()) {
-                    Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+            // Try the download cache, if the version of the remote entity can be identified
+
+            final FileDownloader downloader = new FileDownloader(
+                parallelism, minRangeSizeMbytes * 1024L * 1024L, downloadTaskExecutor.getThreadPoolExecutor());
+            downloader.setConnectTimeout(connectTimeoutSeconds * 1000);
+            downloader.setReadTimeout(readTimeoutSeconds * 1000);
+            final FileDownloader.RemoteEntity entity = downloader.probe(url);
+            final String validator = entity.getValidator();
+
+            if (downloadCache != null && validator != null) {
+                Files.deleteIfExists(target);
+                DownloadCache.Entry entry = downloadCache.materialize(url, validator, target);
+                if (entry != null) {
+                    if (verify(target, entry.getChecksum()))
+                        return;
+                    // The cached entry does not match the expected content: discard it
+                    logger.warn("Cached download {} has failed checksum verification", entry);
+                    downloadCache.invalidate(url, validator);
+                    Files.delete(target);
                 }
             }
+
+            // Download (or resume downloading) from remote
+
+            final long startTime = System.currentTimeMillis();
+            final FileDownloader.Result result = downloader.download(url, entity, target);
+            logger.info("Downloaded {} into {}: {} bytes ({} transferred) in {}ms", url, target,
+                result.getSize(), result.getTransferred(), System.currentTimeMillis() - startTime);
+
+            if (!verify(target, result.getChecksum()))
+                throw new IllegalStateException("checksum verification has failed");
+
+            if (downloadCache != null && validator != null)
+                downloadCache.store(url, validator, target, result.getChecksum());
         }
     }
 
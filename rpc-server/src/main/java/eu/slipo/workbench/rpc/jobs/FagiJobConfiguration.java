@@ -10,22 +10,17 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.util.Arrays;
-import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.function.Function;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import javax.annotation.PostConstruct;
 import javax.validation.ConstraintViolation;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.batch.core.BatchStatus;
 import org.springframework.batch.core.Job;
 import org.springframework.batch.core.JobExecution;
 import org.springframework.batch.core.JobParameters;
@@ -35,15 +30,12 @@ import org.springframework.batch.core.StepExecution;
 import org.springframework.batch.core.StepExecutionListener;
 import org.springframework.batch.core.configuration.JobFactory;
 import org.springframework.batch.core.configuration.annotation.JobScope;
-import org.springframework.batch.core.configuration.annotation.StepScope;
 import org.springframework.batch.core.job.builder.FlowBuilder;
 import org.springframework.batch.core.job.flow.Flow;
 import org.springframework.batch.core.job.flow.FlowExecutionStatus;
 import org.springframework.batch.core.job.flow.JobExecutionDecider;
 import org.springframework.batch.core.job.flow.support.SimpleFlow;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
-import org.springframework.batch.core.partition.support.Partitioner;
-import org.springframework.batch.core.partition.support.StepExecutionAggregator;
 import org.springframework.batch.core.scope.context.ChunkContext;
 import org.springframework.batch.core.scope.context.StepContext;
 import org.springframework.batch.core.step.tasklet.Tasklet;
@@ -56,7 +48,6 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.core.io.Resource;
-import org.springframework.core.task.TaskExecutor;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
@@ -69,11 +60,14 @@ import com.google.common.collect.Maps;
 import eu.slipo.workbench.common.model.poi.EnumDataFormat;
 import eu.slipo.workbench.common.model.tool.FagiConfiguration;
 import eu.slipo.workbench.common.model.tool.InvalidConfigurationException;
+import eu.slipo.workbench.rpc.jobs.PartitionedContainerFlowBuilder.Partition;
 import eu.slipo.workbench.rpc.jobs.listener.ExecutionContextPromotionListeners;
 import eu.slipo.workbench.rpc.jobs.listener.LoggingJobExecutionListener;
 import eu.slipo.workbench.rpc.jobs.tasklet.PrepareWorkingDirectoryTasklet;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerConfigurer;
 import eu.slipo.workbench.rpc.jobs.tasklet.docker.CreateContainerTasklet;
 import eu.slipo.workbench.rpc.jobs.tasklet.docker.RunContainerTasklet;
+import eu.slipo.workbench.rpc.service.OutputProfiler;
 
 @Component
 public class FagiJobConfiguration extends ContainerBasedJobConfiguration
@@ -113,14 +107,6 @@ public class FagiJobConfiguration extends ContainerBasedJobConfiguration
 
     public static final long DEFAULT_MEMORY_LIMIT_FOR_MERGING = 536870912L;
 
-    /**
-     * The maximum number of partitions (i.e. the partition size) to be created, if a job instance
-     * decides to proceed with partitioning.
-     * <p>
-     * Note that current implementation of partitioning steps will not work for sizes > 9.
-     */
-    private static final int MAX_NUMBER_OF_PARTITIONS = 8;
-
     private String imageNameForPartitioning;
 
     private String imageNameForMerging;
@@ -148,8 +134,12 @@ public class FagiJobConfiguration extends ContainerBasedJobConfiguration
     private static final List<String> blacklistedParameterKeys =
         ImmutableList.of("level", "left.path", "right.path", "links.path");
 
-    @Autowired
-    private TaskExecutor taskExecutor;
+    /**
+     * A profiler for outputs of steps (if enabled); a profile of an input may spare us from counting
+     * links
+     */
+    @Autowired(required = false)
+    private OutputProfiler outputProfiler;
 
     @Override
     @Autowired
@@ -257,6 +247,13 @@ public class FagiJobConfiguration extends ContainerBasedJobConfiguration
         this.memorySwapLimit = kbytes == null? -1L : kbytes.longValue() * 1024;
     }
 
+    @Autowired
+    private void setPriority(
+        @Value("${slipo.rpc-server.tools.fagi.docker.container.priority:0}") Integer priority)
+    {
+        this.containerPriority = priority;
+    }
+
     @Autowired
     private void setMemorySwapLimitForPartitioning(
         @Value("${slipo.rpc-server.tools.fagi-partitioner.docker.container.memoryswap-limit-kbytes:}") Long kbytes)
@@ -311,6 +308,16 @@ public class FagiJobConfiguration extends ContainerBasedJobConfiguration
          */
         long inputSizeThreshold = -1L;
 
+        /**
+         * The maximum number of partitions to be created
+         */
+        int maxNumberOfPartitions = 8;
+
+        /**
+         * The number of times a failed part is retried
+         */
+        int retryLimit = PartitionedContainerFlowBuilder.DEFAULT_RETRY_LIMIT;
+
         public long getInputSizeThreshold()
         {
             return inputSizeThreshold;
@@ -330,6 +337,28 @@ public class FagiJobConfiguration extends ContainerBasedJobConfiguration
         {
             this.inputSizeThreshold = inputSizeThresholdKbytes * 1024L;
         }
+
+        public int getMaxNumberOfPartitions()
+        {
+            return maxNumberOfPartitions;
+        }
+
+        public void setMaxNumberOfPartitions(int maxNumberOfPartitions)
+        {
+            Assert.isTrue(maxNumberOfPartitions > 1, "Expected a number greater than 1");
+            this.maxNumberOfPartitions = maxNumberOfPartitions;
+        }
+
+        public int getRetryLimit()
+        {
+            return retryLimit;
+        }
+
+        public void setRetryLimit(int retryLimit)
+        {
+            Assert.isTrue(retryLimit >= 0, "Expected a non-negative number");
+            this.retryLimit = retryLimit;
+        }
     }
 
     @ConditionalOnProperty(name = "slipo.rpc-server.tools.fagi.flow", havingValue = "partition-if-needed")
@@ -348,7 +377,7 @@ public class FagiJobConfiguration extends ContainerBasedJobConfiguration
         {
             StepContext stepContext = chunkContext.getStepContext();
             ExecutionContext executionContext = stepContext.getStepExecution().getExecutionContext();
-            Map<String, ?> parameters = stepContext.getJobParameters();
+            Map<String, ?> parameters = configurationStore.resolve(stepContext.getJobParameters());
 
             // Read given parameters
 
@@ -431,10 +460,18 @@ public class FagiJobConfiguration extends ContainerBasedJobConfiguration
             // Note: A more precise fact would be the number of triples contained in a dataset
             final long inputSize = Math.max(leftSize, rightSize);
 
-            // Count number of links; for a file formatted as N-TRIPLE is same as the number of lines
+            // Count number of links; for a file formatted as N-TRIPLE is same as the number of lines.
+            // If the links are an output of a previous step (linked as input), it may be already profiled.
             int numberOfLinks = -1;
             if (inputFormat == EnumDataFormat.N_TRIPLES) {
-                numberOfLinks = (int) Files.lines(linksFile).count();
+                OutputProfiler.Profile profile = outputProfiler == null? null : outputProfiler.find(linksFile);
+                if (profile != null && profile.getTripleCount() != null) {
+                    numberOfLinks = profile.getTripleCount().intValue();
+                } else {
+                    try (Stream<String> lines = Files.lines(linksFile)) {
+                        numberOfLinks = (int) lines.count();
+                    }
+                }
             }
 
             // Decide if partitioning is needed; if yes, also determine the number of partitions needed
@@ -445,7 +482,7 @@ public class FagiJobConfiguration extends ContainerBasedJobConfiguration
                     (factors.numberOfLinksThreshold > 0 && numberOfLinks > factors.numberOfLinksThreshold))
                 {
                     numberOfPartitions = constrainToRange(
-                        numberOfLinks / factors.numberOfLinksThreshold, 2, MAX_NUMBER_OF_PARTITIONS);
+                        numberOfLinks / factors.numberOfLinksThreshold, 2, factors.maxNumberOfPartitions);
                 }
             }
 
@@ -602,6 +639,7 @@ public class FagiJobConfiguration extends ContainerBasedJobConfiguration
 
         return CreateContainerTasklet.builder()
             .client(docker)
+            .resources(containerResourceLedger)
             .name(containerName)
             .container(configurer -> configurer
                 .image(imageName)
@@ -653,14 +691,19 @@ public class FagiJobConfiguration extends ContainerBasedJobConfiguration
     @Bean("fagi.runContainerTasklet")
     @JobScope
     public RunContainerTasklet runContainerTasklet(
+        @Value("#{T(java.nio.file.Paths).get(jobExecutionContext['workDir'])}") Path workDir,
         @Value("#{jobExecutionContext['containerName']}") String containerName)
     {
         return RunContainerTasklet.builder()
             .client(docker)
+            .resources(containerResourceLedger)
+            .priority(containerPriority)
             .checkInterval(checkInterval)
             .timeout(runTimeout)
             .container(containerName)
             .removeOnFinished(false)
+            .monitor(containerMonitor)
+            .logs(containerLogCollector, resolveLogFile(workDir, "run-container"))
             .build();
     }
 
@@ -704,6 +747,7 @@ public class FagiJobConfiguration extends ContainerBasedJobConfiguration
 
         return CreateContainerTasklet.builder()
             .client(docker)
+            .resources(containerResourceLedger)
             .name(containerName)
             .container(configurer -> configurer
                 .image(imageNameForPartitioning)
@@ -744,14 +788,19 @@ public class FagiJobConfiguration extends ContainerBasedJobConfiguration
     @Bean("fagi.runContainerForPartitioningTasklet")
     @JobScope
     public RunContainerTasklet runContainerForPartitioningTasklet(
+        @Value("#{T(java.nio.file.Paths).get(jobExecutionContext['workDir'])}") Path workDir,
         @Value("#{jobExecutionContext['partitioner.containerName']}") String containerName)
     {
         return RunContainerTasklet.builder()
             .client(docker)
+            .resources(containerResourceLedger)
+            .priority(containerPriority)
             .checkInterval(checkIntervalForPartitioning)
             .timeout(runTimeoutForPartitioning)
             .container(containerName)
             .removeOnFinished(false)
+            .monitor(containerMonitor)
+            .logs(containerLogCollector, resolveLogFile(workDir, "run-container-for-partitioning"))
             .build();
     }
 
@@ -766,21 +815,24 @@ public class FagiJobConfiguration extends ContainerBasedJobConfiguration
             .build();
     }
 
-    @ConditionalOnProperty(name = "slipo.rpc-server.tools.fagi.flow", havingValue = "partition-if-needed")
-    @Bean("fagi.createContainerForPartTasklet")
-    @StepScope
-    public CreateContainerTasklet createContainerForPartTasklet(
-        @Value("#{stepExecution.jobExecution.jobInstance.id}") Long jobId,
-        @Value("#{jobExecutionContext['spec']}") FagiConfiguration spec,
-        @Value("#{T(java.nio.file.Paths).get(jobExecutionContext['workDir'])}") Path workDir,
-        @Value("#{jobExecutionContext['configFileByName']}") Map<String, String> configFileByName,
-        @Value("#{stepExecutionContext['partitionNumber']}") Integer partitionNumber)
+    /**
+     * Configure the container for a part (as created by the partitioner container). The input of
+     * the i-th part is found under <tt>partitions/partition_i</tt> as <tt>A{i}</tt>, <tt>B{i}</tt>
+     * and <tt>links_{i}.nt</tt>.
+     */
+    private void configureContainerForPart(Partition partition, ContainerConfigurer configurer)
         throws IOException
     {
-        String containerName = String.format("fagi-%05x-partition-%x", jobId, partitionNumber);
+        final int partitionNumber = partition.getNumber();
+        final ExecutionContext jobExecutionContext = partition.getJobExecutionContext();
+        final Path workDir = partition.getWorkDirectory();
+
+        final FagiConfiguration spec = (FagiConfiguration) jobExecutionContext.get("spec");
+        @SuppressWarnings("unchecked")
+        final Map<String, String> configFileByName =
+            (Map<String, String>) jobExecutionContext.get("configFileByName");
 
-        String partitionDirName = String.format("partition_%d", partitionNumber);
-        Path partitionDir = workDir.resolve(Paths.get("partitions", partitionDirName));
+        Path partitionDir = partition.getDirectory();
         if (!Files.isDirectory(partitionDir)) {
             throw new IllegalStateException(
                 "The input directory for partition #" + partitionNumber + " is missing: " + partitionDir);
@@ -805,209 +857,45 @@ public class FagiJobConfiguration extends ContainerBasedJobConfiguration
         FagiConfiguration.Links linksSpec = spec.getLinks();
         FagiConfiguration.Output targetSpec = spec.getTarget();
 
-        return CreateContainerTasklet.builder()
-            .client(docker)
-            .name(containerName)
-            .container(configurer -> configurer
-                .image(imageName)
-                .volume(partitionDir.resolve(leftFileName),
-                    containerDataDir.resolve(Paths.get("input", leftFileName)), true)
-                .volume(partitionDir.resolve(rightFileName),
-                    containerDataDir.resolve(Paths.get("input", rightFileName)), true)
-                .volume(partitionDir.resolve(linksFileName),
-                    containerDataDir.resolve(Paths.get("input", linksFileName)), true)
-                .volume(partitionOutputDir, containerDataDir.resolve("output"))
-                .volume(workDir.resolve(rulesFileName), containerDataDir.resolve("rules.xml"), true)
-                // Set environment
-                .env("VERBOSE", spec.isVerbose())
-                .env("LOCALE", spec.getLang())
-                .env("INPUT_FORMAT", spec.getInputFormatAsString())
-                .env("OUTPUT_FORMAT", spec.getOutputFormatAsString())
-                .env("SIMILARITY", spec.getSimilarityAsString())
-                .env("RULES_FILE", containerDataDir.resolve("rules.xml"))
-                .env("USE_ML_RULES", spec.isEnableMLRules()? "true" : "false")
-                .env("LEFT_ID", leftSpec.getId())
-                .env("LEFT_FILE", containerDataDir.resolve(Paths.get("input", leftFileName)))
-                .env("LEFT_DATE", Optional.ofNullable(leftSpec.getDate())
-                    .map(LocalDate::toString).orElse(""))
-                .env("RIGHT_ID", rightSpec.getId())
-                .env("RIGHT_FILE", containerDataDir.resolve(Paths.get("input", rightFileName)))
-                .env("RIGHT_DATE", Optional.ofNullable(rightSpec.getDate())
-                    .map(LocalDate::toString).orElse(""))
-                .env("LINKS_ID", linksSpec.getId())
-                .env("LINKS_FILE", containerDataDir.resolve(Paths.get("input", linksFileName)))
-                .env("LINKS_FORMAT", spec.getLinksFormatAsString())
-                .env("TARGET_ID", targetSpec.getId())
-                .env("TARGET_MODE", targetSpec.getModeAsString())
-                .env("TARGET_FUSED_NAME", FagiConfiguration.Output.DEFAULT_FUSED_NAME)
-                .env("TARGET_REMAINING_NAME", FagiConfiguration.Output.DEFAULT_REMAINING_NAME)
-                .env("TARGET_REVIEW_NAME", FagiConfiguration.Output.DEFAULT_REVIEW_NAME)
-                .env("TARGET_STATS_NAME", FagiConfiguration.Output.DEFAULT_STATS_NAME)
-                .env("OUTPUT_DIR", containerDataDir.resolve("output"))
-                // Set resource limits
-                .memory(memoryLimit)
-                .memoryAndSwap(memorySwapLimit))
-            .build();
-    }
-
-    @ConditionalOnProperty(name = "slipo.rpc-server.tools.fagi.flow", havingValue = "partition-if-needed")
-    @Bean("fagi.createContainerForPartStep")
-    public Step createContainerForPartStep(
-        @Qualifier("fagi.createContainerForPartTasklet") Tasklet tasklet)
-    {
-        return stepBuilderFactory.get("fagi.createContainerForPart")
-            .tasklet(tasklet)
-            .build();
-    }
-
-    @ConditionalOnProperty(name = "slipo.rpc-server.tools.fagi.flow", havingValue = "partition-if-needed")
-    @Bean("fagi.stepPartitioner")
-    @JobScope
-    public Partitioner stepPartitioner(
-        @Value("#{jobExecutionContext['numberOfPartitions'] ?: -1}") Integer numberOfPartitions)
-    {
-        Assert.isTrue(numberOfPartitions >= 2, "The number of partitions should be greater or equal to 2");
-
-        return new Partitioner()
-        {
-            @Override
-            public Map<String, ExecutionContext> partition(int gridSize)
-            {
-                Map<String, ExecutionContext> parts = new HashMap<>();
-                for (int i = 1; i <= numberOfPartitions; i++) {
-                    ExecutionContext executionContext = new ExecutionContext();
-                    executionContext.put("partitionNumber", i);
-                    parts.put("partition" + i, executionContext);
-                }
-                return parts;
-            }
-        };
-    }
-
-    @ConditionalOnProperty(name = "slipo.rpc-server.tools.fagi.flow", havingValue = "partition-if-needed")
-    @Bean("fagi.createContainerForEachPartStepAggregator")
-    @JobScope
-    public StepExecutionAggregator createContainerForEachPartStepAggregator(
-        @Value("#{jobExecutionContext['numberOfPartitions'] ?: -1}") Integer numberOfPartitions)
-    {
-        Assert.isTrue(numberOfPartitions >= 2, "The number of partitions should be greater or equal to 2");
-
-        return new StepExecutionAggregator()
-        {
-            @Override
-            public void aggregate(StepExecution result, Collection<StepExecution> executions)
-            {
-                final ExecutionContext resultContext = result.getExecutionContext();
-
-                for (StepExecution stepExecution: executions) {
-                    final ExecutionContext partialContext = stepExecution.getExecutionContext();
-                    final int i = partialContext.getInt("partitionNumber");
-                    // Aggregate status into result: a failed part marks the result as failed
-                    BatchStatus status = stepExecution.getStatus();
-                    result.setStatus(BatchStatus.max(result.getStatus(), status));
-                    // Merge entries for `container{Name,Id}` into result execution context
-                    if (status == BatchStatus.COMPLETED) {
-                        String containerName = partialContext.getString("containerName");
-                        String containerId = partialContext.getString("containerId");
-                        resultContext.putString("partition" + i + ".containerName", containerName);
-                        resultContext.putString("partition" + i + ".containerId", containerId);
-                    }
-                }
-
-                if (result.getStatus() != BatchStatus.COMPLETED) {
-                    return;
-                }
-
-                // The master step is complete (all partition steps are complete)
-
-                Map<Integer,String> containerNameByPartitionNumber = IntStream.rangeClosed(1, numberOfPartitions)
-                    .boxed()
-                    .collect(Collectors.toMap(Function.identity(),
-                        i -> resultContext.getString("partition" + i + ".containerName")));
-
-                Map<Integer, String> containerIdByPartitionNumber = IntStream.rangeClosed(1, numberOfPartitions)
-                    .boxed()
-                    .collect(Collectors.toMap(Function.identity(),
-                        i -> resultContext.getString("partition" + i + ".containerId")));
-
-                resultContext.put("containerNameByPartitionNumber", containerNameByPartitionNumber);
-                resultContext.put("containerIdByPartitionNumber", containerIdByPartitionNumber);
-
-                // Todo Aggregate container logs
-                // If container logs are written under `command.output` entry, they must be also
-                // be aggregated and stored under master execution context.
-
-                return;
-            }
-        };
-    }
-
-    @ConditionalOnProperty(name = "slipo.rpc-server.tools.fagi.flow", havingValue = "partition-if-needed")
-    @Bean("fagi.createContainerForEachPartStep")
-    public Step createContainerForEachPartStep(
-        @Qualifier("fagi.createContainerForPartStep") Step createContainerForPartStep,
-        @Qualifier("fagi.stepPartitioner") Partitioner stepPartitioner,
-        @Qualifier("fagi.createContainerForEachPartStepAggregator") StepExecutionAggregator aggregator)
-    {
-        // Build the master step to fork/join to N partition steps (creating N containers)
-
-        final StepExecutionListener stepExecutionListener = ExecutionContextPromotionListeners.builder()
-            .keys("containerNameByPartitionNumber", "containerIdByPartitionNumber")
-            .build();
-
-        return stepBuilderFactory.get("fagi.createContainerForEachPart")
-            .partitioner("fagi.createContainerForPart", stepPartitioner)
-            .aggregator(aggregator)
-            .step(createContainerForPartStep)
-            .taskExecutor(taskExecutor)
-            .listener(stepExecutionListener)
-            .build();
-    }
-
-    @ConditionalOnProperty(name = "slipo.rpc-server.tools.fagi.flow", havingValue = "partition-if-needed")
-    @Bean("fagi.runContainerForPartTasklet")
-    @StepScope
-    public RunContainerTasklet runContainerForPartTasklet(
-        @Value("#{jobExecutionContext['containerNameByPartitionNumber']}") Map<Integer,String> containerNameByPartitionNumber,
-        @Value("#{stepExecutionContext['partitionNumber']}") Integer partitionNumber)
-    {
-        String containerName = containerNameByPartitionNumber.get(partitionNumber);
-        if (StringUtils.isEmpty(containerName)) {
-            throw new IllegalStateException("No entry for container for partition #" + partitionNumber);
-        }
-
-        return RunContainerTasklet.builder()
-            .client(docker)
-            .checkInterval(checkInterval)
-            .timeout(runTimeout)
-            .container(containerName)
-            .removeOnFinished(false)
-            .build();
-    }
-
-    @ConditionalOnProperty(name = "slipo.rpc-server.tools.fagi.flow", havingValue = "partition-if-needed")
-    @Bean("fagi.runContainerForPartStep")
-    public Step runContainerForPartStep(
-        @Qualifier("fagi.runContainerForPartTasklet") RunContainerTasklet tasklet)
-    {
-        return stepBuilderFactory.get("fagi.runContainerForPart")
-            .tasklet(tasklet)
-            .build();
-    }
-
-    @ConditionalOnProperty(name = "slipo.rpc-server.tools.fagi.flow", havingValue = "partition-if-needed")
-    @Bean("fagi.runContainerForEachPartStep")
-    public Step runContainerForEachPartStep(
-        @Qualifier("fagi.runContainerForPartStep") Step runContainerForPartStep,
-        @Qualifier("fagi.stepPartitioner") Partitioner stepPartitioner)
-    {
-        // Build the master step to fork/join to N partition steps (running N containers)
-
-        return stepBuilderFactory.get("fagi.runContainerForEachPart")
-            .partitioner("fagi.runContainerForPart", stepPartitioner)
-            .step(runContainerForPartStep)
-            .taskExecutor(taskExecutor)
-            .build();
+        configurer
+            .image(imageName)
+            .volume(partitionDir.resolve(leftFileName),
+                containerDataDir.resolve(Paths.get("input", leftFileName)), true)
+            .volume(partitionDir.resolve(rightFileName),
+                containerDataDir.resolve(Paths.get("input", rightFileName)), true)
+            .volume(partitionDir.resolve(linksFileName),
+                containerDataDir.resolve(Paths.get("input", linksFileName)), true)
+            .volume(partitionOutputDir, containerDataDir.resolve("output"))
+            .volume(workDir.resolve(rulesFileName), containerDataDir.resolve("rules.xml"), true)
+            // Set environment
+            .env("VERBOSE", spec.isVerbose())
+            .env("LOCALE", spec.getLang())
+            .env("INPUT_FORMAT", spec.getInputFormatAsString())
+            .env("OUTPUT_FORMAT", spec.getOutputFormatAsString())
+            .env("SIMILARITY", spec.getSimilarityAsString())
+            .env("RULES_FILE", containerDataDir.resolve("rules.xml"))
+            .env("USE_ML_RULES", spec.isEnableMLRules()? "true" : "false")
+            .env("LEFT_ID", leftSpec.getId())
+            .env("LEFT_FILE", containerDataDir.resolve(Paths.get("input", leftFileName)))
+            .env("LEFT_DATE", Optional.ofNullable(leftSpec.getDate())
+                .map(LocalDate::toString).orElse(""))
+            .env("RIGHT_ID", rightSpec.getId())
+            .env("RIGHT_FILE", containerDataDir.resolve(Paths.get("input", rightFileName)))
+            .env("RIGHT_DATE", Optional.ofNullable(rightSpec.getDate())
+                .map(LocalDate::toString).orElse(""))
+            .env("LINKS_ID", linksSpec.getId())
+            .env("LINKS_FILE", containerDataDir.resolve(Paths.get("input", linksFileName)))
+            .env("LINKS_FORMAT", spec.getLinksFormatAsString())
+            .env("TARGET_ID", targetSpec.getId())
+            .env("TARGET_MODE", targetSpec.getModeAsString())
+            .env("TARGET_FUSED_NAME", FagiConfiguration.Output.DEFAULT_FUSED_NAME)
+            .env("TARGET_REMAINING_NAME", FagiConfiguration.Output.DEFAULT_REMAINING_NAME)
+            .env("TARGET_REVIEW_NAME", FagiConfiguration.Output.DEFAULT_REVIEW_NAME)
+            .env("TARGET_STATS_NAME", FagiConfiguration.Output.DEFAULT_STATS_NAME)
+            .env("OUTPUT_DIR", containerDataDir.resolve("output"))
+            // Set resource limits
+            .memory(memoryLimit)
+            .memoryAndSwap(memorySwapLimit);
     }
 
     @ConditionalOnProperty(name = "slipo.rpc-server.tools.fagi.flow", havingValue = "partition-if-needed")
@@ -1038,6 +926,7 @@ public class FagiJobConfiguration extends ContainerBasedJobConfiguration
 
         return CreateContainerTasklet.builder()
             .client(docker)
+            .resources(containerResourceLedger)
             .name(containerName)
             .container(configurer -> configurer
                 .image(imageNameForMerging)
@@ -1087,14 +976,19 @@ public class FagiJobConfiguration extends ContainerBasedJobConfiguration
     @Bean("fagi.runContainerForMergingTasklet")
     @JobScope
     public RunContainerTasklet runContainerForMergingTasklet(
+        @Value("#{T(java.nio.file.Paths).get(jobExecutionContext['workDir'])}") Path workDir,
         @Value("#{jobExecutionContext['merger.containerName']}") String containerName)
     {
         return RunContainerTasklet.builder()
             .client(docker)
+            .resources(containerResourceLedger)
+            .priority(containerPriority)
             .checkInterval(checkIntervalForMerging)
             .timeout(runTimeoutForMerging)
             .container(containerName)
             .removeOnFinished(false)
+            .monitor(containerMonitor)
+            .logs(containerLogCollector, resolveLogFile(workDir, "run-container-for-merging"))
             .build();
     }
 
@@ -1138,6 +1032,7 @@ public class FagiJobConfiguration extends ContainerBasedJobConfiguration
     @ConditionalOnProperty(name = "slipo.rpc-server.tools.fagi.flow", havingValue = "partition-if-needed")
     @Bean("fagi.flow")
     public Flow partitioningFlow(
+        PartitioningDecisionFactors factors,
         @Qualifier("fagi.configureStep") Step configureStep,
         @Qualifier("fagi.prepareWorkingDirectoryStep") Step prepareWorkingDirectoryStep,
         @Qualifier("fagi.examineIfPartitioningStep") Step examineIfPartitioningStep,
@@ -1148,8 +1043,6 @@ public class FagiJobConfiguration extends ContainerBasedJobConfiguration
         /* steps that comprise the partitioning flow */
         @Qualifier("fagi.createContainerForPartitioningStep") Step createContainerForPartitioningStep,
         @Qualifier("fagi.runContainerForPartitioningStep") Step runContainerForPartitioningStep,
-        @Qualifier("fagi.createContainerForEachPartStep") Step createContainerForEachPartStep,
-        @Qualifier("fagi.runContainerForEachPartStep") Step runContainerForEachPartStep,
         @Qualifier("fagi.createContainerForMergingStep") Step createContainerForMergingStep,
         @Qualifier("fagi.runContainerForMergingStep") Step runContainerForMergingStep)
     {
@@ -1158,13 +1051,11 @@ public class FagiJobConfiguration extends ContainerBasedJobConfiguration
             .next(runContainerStep)
             .build();
 
-        Flow partitioningFlow = new FlowBuilder<SimpleFlow>("fagi.partitioningFlow")
-            .start(createContainerForPartitioningStep)
-            .next(runContainerForPartitioningStep)
-            .next(createContainerForEachPartStep)
-            .next(runContainerForEachPartStep)
-            .next(createContainerForMergingStep)
-            .next(runContainerForMergingStep)
+        Flow partitioningFlow = partitionedFlowBuilder("fagi")
+            .splitter(createContainerForPartitioningStep, runContainerForPartitioningStep)
+            .container(this::configureContainerForPart)
+            .merger(createContainerForMergingStep, runContainerForMergingStep)
+            .retryLimit(factors.retryLimit)
             .build();
 
         return new FlowBuilder<Flow>("fagi.flow")
@@ -3,12 +3,14 @@ package eu.slipo.workbench.rpc.jobs;
 import static org.springframework.util.StringUtils.stripFilenameExtension;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import javax.annotation.PostConstruct;
 import javax.validation.ConstraintViolation;
@@ -16,13 +18,19 @@ import javax.validation.ConstraintViolation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
 import org.springframework.batch.core.JobParameters;
 import org.springframework.batch.core.Step;
 import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
 import org.springframework.batch.core.configuration.JobFactory;
 import org.springframework.batch.core.configuration.annotation.JobScope;
 import org.springframework.batch.core.job.builder.FlowBuilder;
 import org.springframework.batch.core.job.flow.Flow;
+import org.springframework.batch.core.job.flow.FlowExecutionStatus;
+import org.springframework.batch.core.job.flow.JobExecutionDecider;
+import org.springframework.batch.core.job.flow.support.SimpleFlow;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
 import org.springframework.batch.core.scope.context.ChunkContext;
 import org.springframework.batch.core.scope.context.StepContext;
@@ -32,6 +40,8 @@ import org.springframework.batch.repeat.RepeatStatus;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
@@ -40,12 +50,17 @@ import org.springframework.util.StringUtils;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Maps;
 
+import eu.slipo.workbench.common.model.poi.EnumDataFormat;
 import eu.slipo.workbench.common.model.tool.EnumConfigurationFormat;
 import eu.slipo.workbench.common.model.tool.InvalidConfigurationException;
 import eu.slipo.workbench.common.model.tool.LimesConfiguration;
+import eu.slipo.workbench.rpc.jobs.PartitionedContainerFlowBuilder.Partition;
 import eu.slipo.workbench.rpc.jobs.listener.ExecutionContextPromotionListeners;
 import eu.slipo.workbench.rpc.jobs.listener.LoggingJobExecutionListener;
+import eu.slipo.workbench.rpc.jobs.tasklet.DistinctLinesMerger;
 import eu.slipo.workbench.rpc.jobs.tasklet.PrepareWorkingDirectoryTasklet;
+import eu.slipo.workbench.rpc.jobs.tasklet.SpatialTilingTasklet;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerConfigurer;
 import eu.slipo.workbench.rpc.jobs.tasklet.docker.CreateContainerTasklet;
 import eu.slipo.workbench.rpc.jobs.tasklet.docker.RunContainerTasklet;
 
@@ -56,6 +71,10 @@ public class LimesJobConfiguration extends ContainerBasedJobConfiguration
 
     private static final String JOB_NAME = "limes";
 
+    public static final String FLOW_SIMPLE = "SIMPLE";
+
+    public static final String FLOW_PARTITIONING = "PARTITIONING";
+
     /**
      * The default timeout (milliseconds) for a container run
      */
@@ -116,6 +135,13 @@ public class LimesJobConfiguration extends ContainerBasedJobConfiguration
         this.memorySwapLimit = kbytes == null? -1L : kbytes.longValue() * 1024;
     }
 
+    @Autowired
+    private void setPriority(
+        @Value("${slipo.rpc-server.tools.limes.docker.container.priority:0}") Integer priority)
+    {
+        this.containerPriority = priority;
+    }
+
     @PostConstruct
     private void setMemoryLimitsIfNeeded()
     {
@@ -133,6 +159,85 @@ public class LimesJobConfiguration extends ContainerBasedJobConfiguration
         super.setupDataDirectory("limes");
     }
 
+    /**
+     * Represent the parameters of a partitioning (tiled) flow, and the factors (e.g. thresholds)
+     * that affect the decision on choosing such a flow
+     */
+    public static class PartitioningDecisionFactors
+    {
+        /**
+         * A threshold number for the size (in bytes) of the largest dataset (between source and target)
+         */
+        long inputSizeThreshold = -1L;
+
+        /**
+         * The size of a (square) tile, in units of the reference system (i.e. degrees for WGS84)
+         */
+        double tileSize = 1.0;
+
+        /**
+         * The width of the buffer zone around an entity, in units of the reference system. An entity
+         * is copied to every tile intersecting its (buffered) envelope.
+         */
+        double tileBuffer = 0.01;
+
+        /**
+         * The number of times a failed tile is retried
+         */
+        int retryLimit = PartitionedContainerFlowBuilder.DEFAULT_RETRY_LIMIT;
+
+        public long getInputSizeThreshold()
+        {
+            return inputSizeThreshold;
+        }
+
+        public void setInputSizeThresholdKbytes(long inputSizeThresholdKbytes)
+        {
+            this.inputSizeThreshold = inputSizeThresholdKbytes * 1024L;
+        }
+
+        public double getTileSize()
+        {
+            return tileSize;
+        }
+
+        public void setTileSize(double tileSize)
+        {
+            Assert.isTrue(tileSize > 0, "Expected a positive tile size");
+            this.tileSize = tileSize;
+        }
+
+        public double getTileBuffer()
+        {
+            return tileBuffer;
+        }
+
+        public void setTileBuffer(double tileBuffer)
+        {
+            Assert.isTrue(tileBuffer >= 0, "Expected a non-negative buffer");
+            this.tileBuffer = tileBuffer;
+        }
+
+        public int getRetryLimit()
+        {
+            return retryLimit;
+        }
+
+        public void setRetryLimit(int retryLimit)
+        {
+            Assert.isTrue(retryLimit >= 0, "Expected a non-negative number");
+            this.retryLimit = retryLimit;
+        }
+    }
+
+    @ConditionalOnProperty(name = "slipo.rpc-server.tools.limes.flow", havingValue = "partition-if-needed")
+    @ConfigurationProperties(prefix = "slipo.rpc-server.tools.limes.flow.partition-if-needed")
+    @Bean("limes.partitioningDecisionFactors")
+    public PartitioningDecisionFactors partitioningDecisionFactors()
+    {
+       return new PartitioningDecisionFactors();
+    }
+
     public class ConfigureTasklet implements Tasklet
     {
         @Override
@@ -141,7 +246,7 @@ public class LimesJobConfiguration extends ContainerBasedJobConfiguration
         {
             StepContext stepContext = chunkContext.getStepContext();
             ExecutionContext executionContext = stepContext.getStepExecution().getExecutionContext();
-            Map<String, ?> parameters = stepContext.getJobParameters();
+            Map<String, ?> parameters = configurationStore.resolve(stepContext.getJobParameters());
 
             // Read given parameters
 
@@ -260,6 +365,7 @@ public class LimesJobConfiguration extends ContainerBasedJobConfiguration
 
         return CreateContainerTasklet.builder()
             .client(docker)
+            .resources(containerResourceLedger)
             .name(containerName)
             .container(configurer -> configurer
                 .image(imageName)
@@ -295,14 +401,19 @@ public class LimesJobConfiguration extends ContainerBasedJobConfiguration
     @Bean("limes.runContainerTasklet")
     @JobScope
     public RunContainerTasklet runContainerTasklet(
+        @Value("#{T(java.nio.file.Paths).get(jobExecutionContext['workDir'])}") Path workDir,
         @Value("#{jobExecutionContext['containerName']}") String containerName)
     {
         return RunContainerTasklet.builder()
             .client(docker)
+            .resources(containerResourceLedger)
+            .priority(containerPriority)
             .checkInterval(checkInterval)
             .timeout(runTimeout)
             .container(containerName)
             .removeOnFinished(false)
+            .monitor(containerMonitor)
+            .logs(containerLogCollector, resolveLogFile(workDir, "run-container"))
             .build();
     }
 
@@ -316,11 +427,225 @@ public class LimesJobConfiguration extends ContainerBasedJobConfiguration
             .build();
     }
 
+    @ConditionalOnProperty(name = "slipo.rpc-server.tools.limes.flow", havingValue = "partition-if-needed")
+    @Bean("limes.examineIfPartitioningTasklet")
+    @JobScope
+    public Tasklet examineIfPartitioningTasklet(
+        PartitioningDecisionFactors factors,
+        @Value("#{jobExecutionContext['inputFormat']}") String inputFormatName,
+        @Value("#{T(java.nio.file.Paths).get(jobExecutionContext['inputDir'])}") Path inputDir,
+        @Value("#{jobExecutionContext['inputFiles']}") List<String> inputFiles)
+    {
+        Assert.isTrue(inputFiles.size() == 2, "Expected exactly 2 input files");
+
+        final EnumDataFormat inputFormat = EnumDataFormat.valueOf(inputFormatName);
+        final Path sourceFile = inputDir.resolve(inputFiles.get(0));
+        final Path targetFile = inputDir.resolve(inputFiles.get(1));
+
+        return new Tasklet()
+        {
+            @Override
+            public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext)
+                throws Exception
+            {
+                ExecutionContext executionContext =
+                    chunkContext.getStepContext().getStepExecution().getExecutionContext();
+
+                // The input size is the size (bytes) of largest input dataset
+                final long inputSize = Math.max(Files.size(sourceFile), Files.size(targetFile));
+
+                // Only N-Triples input can be streamed (and bucketed into tiles)
+                final boolean partitioning = inputFormat == EnumDataFormat.N_TRIPLES &&
+                    factors.inputSizeThreshold > 0 && inputSize > factors.inputSizeThreshold;
+
+                executionContext.putLong("inputSize", inputSize);
+                executionContext.putString("flow", partitioning? FLOW_PARTITIONING : FLOW_SIMPLE);
+
+                return null;
+            }
+        };
+    }
+
+    @ConditionalOnProperty(name = "slipo.rpc-server.tools.limes.flow", havingValue = "partition-if-needed")
+    @Bean("limes.examineIfPartitioningStep")
+    public Step examineIfPartitioningStep(@Qualifier("limes.examineIfPartitioningTasklet") Tasklet tasklet)
+    {
+        final StepExecutionListener stepExecutionListener = ExecutionContextPromotionListeners.builder()
+            .keys("inputSize", "flow")
+            .build();
+
+        return stepBuilderFactory.get("limes.examineIfPartitioning")
+            .tasklet(tasklet)
+            .listener(stepExecutionListener)
+            .build();
+    }
+
+    @ConditionalOnProperty(name = "slipo.rpc-server.tools.limes.flow", havingValue = "partition-if-needed")
+    @Bean("limes.flowDecider")
+    @JobScope
+    public JobExecutionDecider flowDecider(@Value("#{jobExecutionContext['flow']}") String flow)
+    {
+        return new JobExecutionDecider()
+        {
+            @Override
+            public FlowExecutionStatus decide(JobExecution jobExecution, StepExecution stepExecution)
+            {
+                return new FlowExecutionStatus(FLOW_PARTITIONING.equals(flow)? FLOW_PARTITIONING : FLOW_SIMPLE);
+            }
+        };
+    }
+
+    /**
+     * A tasklet to bucket entities of both (source and target) datasets into spatial tiles. Each
+     * tile is placed under <tt>tiles/tile_i_j</tt> (keeping the names of input files).
+     */
+    @ConditionalOnProperty(name = "slipo.rpc-server.tools.limes.flow", havingValue = "partition-if-needed")
+    @Bean("limes.tileInputTasklet")
+    @JobScope
+    public SpatialTilingTasklet tileInputTasklet(
+        PartitioningDecisionFactors factors,
+        @Value("#{T(java.nio.file.Paths).get(jobExecutionContext['workDir'])}") Path workDir,
+        @Value("#{T(java.nio.file.Paths).get(jobExecutionContext['inputDir'])}") Path inputDir,
+        @Value("#{jobExecutionContext['inputFiles']}") List<String> inputFiles)
+    {
+        Assert.isTrue(inputFiles.size() == 2, "Expected exactly 2 input files");
+        String sourceFileName = inputFiles.get(0);
+        String targetFileName = inputFiles.get(1);
+
+        return SpatialTilingTasklet.builder()
+            .input(sourceFileName, inputDir.resolve(sourceFileName))
+            .input(targetFileName, inputDir.resolve(targetFileName))
+            .targetDirectory(workDir.resolve("tiles"))
+            .tileSize(factors.tileSize)
+            .buffer(factors.tileBuffer)
+            .build();
+    }
+
+    @ConditionalOnProperty(name = "slipo.rpc-server.tools.limes.flow", havingValue = "partition-if-needed")
+    @Bean("limes.tileInputStep")
+    public Step tileInputStep(@Qualifier("limes.tileInputTasklet") SpatialTilingTasklet tasklet)
+    {
+        final StepExecutionListener stepExecutionListener = ExecutionContextPromotionListeners.builder()
+            .keys(SpatialTilingTasklet.Keys.TILE_NAMES, SpatialTilingTasklet.Keys.NUMBER_OF_TILES)
+            .build();
+
+        return stepBuilderFactory.get("limes.tileInput")
+            .tasklet(tasklet)
+            .listener(stepExecutionListener)
+            .build();
+    }
+
+    /**
+     * Configure the container for a tile (as bucketed by {@link #tileInputTasklet}). The i-th part
+     * corresponds to the i-th entry of the (sorted) list of tile names.
+     */
+    private void configureContainerForTile(Partition partition, ContainerConfigurer configurer)
+        throws IOException
+    {
+        final ExecutionContext jobExecutionContext = partition.getJobExecutionContext();
+        final Path workDir = partition.getWorkDirectory();
+
+        @SuppressWarnings("unchecked")
+        final List<String> tileNames =
+            (List<String>) jobExecutionContext.get(SpatialTilingTasklet.Keys.TILE_NAMES);
+        @SuppressWarnings("unchecked")
+        final List<String> inputFiles = (List<String>) jobExecutionContext.get("inputFiles");
+        @SuppressWarnings("unchecked")
+        final Map<String, String> configFileByName =
+            (Map<String, String>) jobExecutionContext.get("configFileByName");
+        final LimesConfiguration config = (LimesConfiguration) jobExecutionContext.get("config");
+
+        final String tileName = tileNames.get(partition.getNumber() - 1);
+        Path tileDir = workDir.resolve(Paths.get("tiles", tileName));
+        if (!Files.isDirectory(tileDir)) {
+            throw new IllegalStateException("The input directory for tile " + tileName + " is missing");
+        }
+
+        // Create directory for the output of this tile
+        Path tileOutputDir = tileDir.resolve("output");
+        Files.createDirectories(tileOutputDir, DEFAULT_DIRECTORY_ATTRIBUTE);
+
+        String sourceFileName = inputFiles.get(0);
+        String targetFileName = inputFiles.get(1);
+        String configFileName = configFileByName.get("config");
+
+        String acceptedFileName = Paths.get(config.getAcceptedPath()).getFileName().toString();
+        String reviewFileName = Paths.get(config.getReviewPath()).getFileName().toString();
+
+        configurer
+            .image(imageName)
+            .volume(tileDir.resolve(sourceFileName),
+                containerDataDir.resolve(Paths.get("input", sourceFileName)), true)
+            .volume(tileDir.resolve(targetFileName),
+                containerDataDir.resolve(Paths.get("input", targetFileName)), true)
+            .volume(tileOutputDir, containerDataDir.resolve("output"))
+            .volume(workDir.resolve(configFileName), containerDataDir.resolve("config.xml"), true)
+            // Set environment
+            .env("SOURCE_FILE", containerDataDir.resolve(Paths.get("input", sourceFileName)))
+            .env("TARGET_FILE", containerDataDir.resolve(Paths.get("input", targetFileName)))
+            .env("CONFIG_FILE", containerDataDir.resolve("config.xml"))
+            .env("OUTPUT_DIR", containerDataDir.resolve("output"))
+            .env("ACCEPTED_NAME", stripFilenameExtension(acceptedFileName))
+            .env("REVIEW_NAME", stripFilenameExtension(reviewFileName))
+            // Set resource limits
+            .memory(memoryLimit)
+            .memoryAndSwap(memorySwapLimit);
+    }
+
+    /**
+     * A tasklet to merge (and deduplicate) the links found on each tile. Since entities near a
+     * tile border are copied to neighbouring tiles, the same link may be found more than once.
+     */
+    @ConditionalOnProperty(name = "slipo.rpc-server.tools.limes.flow", havingValue = "partition-if-needed")
+    @Bean("limes.mergeOutputTasklet")
+    @JobScope
+    public Tasklet mergeOutputTasklet(
+        @Value("#{T(java.nio.file.Paths).get(jobExecutionContext['workDir'])}") Path workDir,
+        @Value("#{T(java.nio.file.Paths).get(jobExecutionContext['outputDir'])}") Path outputDir,
+        @Value("#{jobExecutionContext['tileNames']}") List<String> tileNames,
+        @Value("#{jobExecutionContext['config']}") LimesConfiguration config)
+    {
+        final String acceptedFileName = Paths.get(config.getAcceptedPath()).getFileName().toString();
+        final String reviewFileName = Paths.get(config.getReviewPath()).getFileName().toString();
+
+        final List<Path> partialOutputDirs = tileNames.stream()
+            .map(tileName -> workDir.resolve(Paths.get("tiles", tileName, "output")))
+            .collect(Collectors.toList());
+
+        final DistinctLinesMerger merger = new DistinctLinesMerger();
+
+        return new Tasklet()
+        {
+            @Override
+            public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext)
+                throws Exception
+            {
+                for (String fileName: Arrays.asList(acceptedFileName, reviewFileName)) {
+                    final List<Path> partialFiles = partialOutputDirs.stream()
+                        .map(dir -> dir.resolve(fileName))
+                        .filter(Files::exists)
+                        .collect(Collectors.toList());
+                    merger.merge(partialFiles, outputDir.resolve(fileName), workDir.resolve("merge"));
+                }
+                return null;
+            }
+        };
+    }
+
+    @ConditionalOnProperty(name = "slipo.rpc-server.tools.limes.flow", havingValue = "partition-if-needed")
+    @Bean("limes.mergeOutputStep")
+    public Step mergeOutputStep(@Qualifier("limes.mergeOutputTasklet") Tasklet tasklet)
+    {
+        return stepBuilderFactory.get("limes.mergeOutput")
+            .tasklet(tasklet).build();
+    }
+
     /**
      * Create flow for a job expecting and reading configuration via normal {@link JobParameters}.
      */
+    @ConditionalOnProperty(name = "slipo.rpc-server.tools.limes.flow", havingValue = "simple", matchIfMissing = true)
     @Bean("limes.flow")
-    public Flow flow(
+    public Flow simpleFlow(
         @Qualifier("limes.configureStep") Step configureStep,
         @Qualifier("limes.prepareWorkingDirectoryStep") Step prepareWorkingDirectoryStep,
         @Qualifier("limes.createContainerStep") Step createContainerStep,
@@ -334,6 +659,53 @@ public class LimesJobConfiguration extends ContainerBasedJobConfiguration
             .build();
     }
 
+    /**
+     * Create flow for a job expecting and reading configuration via normal {@link JobParameters}.
+     * <p>
+     * This is a flow branching to either a simple execution or a tiled execution. The decision is
+     * based on the size of the given input (and only N-Triples input is tiled). A tiled execution
+     * buckets entities into spatial tiles, invokes an instance of Limes per tile (on the bounded
+     * executor for Limes partitions), and merges partial results.
+     */
+    @ConditionalOnProperty(name = "slipo.rpc-server.tools.limes.flow", havingValue = "partition-if-needed")
+    @Bean("limes.flow")
+    public Flow partitioningFlow(
+        PartitioningDecisionFactors factors,
+        @Qualifier("limes.configureStep") Step configureStep,
+        @Qualifier("limes.prepareWorkingDirectoryStep") Step prepareWorkingDirectoryStep,
+        @Qualifier("limes.examineIfPartitioningStep") Step examineIfPartitioningStep,
+        @Qualifier("limes.flowDecider") JobExecutionDecider flowDecider,
+        /* steps that comprise the simple flow */
+        @Qualifier("limes.createContainerStep") Step createContainerStep,
+        @Qualifier("limes.runContainerStep") Step runContainerStep,
+        /* steps that comprise the tiled flow */
+        @Qualifier("limes.tileInputStep") Step tileInputStep,
+        @Qualifier("limes.mergeOutputStep") Step mergeOutputStep)
+    {
+        Flow simpleFlow = new FlowBuilder<SimpleFlow>("limes.simpleFlow")
+            .start(createContainerStep)
+            .next(runContainerStep)
+            .build();
+
+        Flow partitioningFlow = partitionedFlowBuilder("limes")
+            .splitter(tileInputStep)
+            .numberOfPartitionsKey(SpatialTilingTasklet.Keys.NUMBER_OF_TILES)
+            .container(this::configureContainerForTile)
+            .merger(mergeOutputStep)
+            .retryLimit(factors.retryLimit)
+            .build();
+
+        return new FlowBuilder<Flow>("limes.flow")
+            .start(configureStep)
+            .next(prepareWorkingDirectoryStep)
+            .next(examineIfPartitioningStep)
+            .next(flowDecider)
+                .on(FLOW_PARTITIONING).to(partitioningFlow)
+            .from(flowDecider)
+                .on("*").to(simpleFlow)
+            .build();
+    }
+
     @Bean("limes.job")
     public Job job(@Qualifier("limes.flow") Flow flow)
     {
@@ -0,0 +1,715 @@
+package eu.slipo.workbench.rpc.jobs;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionException;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.job.builder.FlowBuilder;
+import org.springframework.batch.core.job.flow.Flow;
+import org.springframework.batch.core.job.flow.support.SimpleFlow;
+import org.springframework.batch.core.partition.StepExecutionSplitter;
+import org.springframework.batch.core.partition.support.DefaultStepExecutionAggregator;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.core.partition.support.SimpleStepExecutionSplitter;
+import org.springframework.batch.core.partition.support.StepExecutionAggregator;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.util.Assert;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.DockerClient.RemoveContainerParam;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.ContainerCreation;
+
+import eu.slipo.workbench.rpc.jobs.listener.ExecutionContextPromotionListeners;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerConfigurer;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerLogCollector;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerMonitor;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerResourceLedger;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.CreateContainerTasklet;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.RunContainerTasklet;
+
+/**
+ * A builder for a flow that partitions the input of a container-based tool, runs a container
+ * for each part (in parallel), and merges partial results.
+ * <p>
+ * The flow is composed of a sequence of splitter steps, a master (partitioned) step, and a sequence
+ * of merger steps. The splitter steps are responsible for creating the parts, and must leave the
+ * number of parts in the job execution context (see {@link #numberOfPartitionsKey(String)}). The master
+ * step forks to a worker step for each part: a worker creates a container (configured by a
+ * {@link PartConfigurer}), runs it, and retries it (in a new container) if it fails.
+ * <p>
+ * The execution contexts of the worker steps are aggregated into the master step, and are promoted
+ * to the job execution context as maps keyed on the partition number (see {@link Keys}). On a restart
+ * of a failed job, only the failed parts are executed again.
+ */
+public class PartitionedContainerFlowBuilder
+{
+    private static final Logger logger = LoggerFactory.getLogger(PartitionedContainerFlowBuilder.class);
+
+    public static final String DEFAULT_NUMBER_OF_PARTITIONS_KEY = "numberOfPartitions";
+
+    public static final int DEFAULT_RETRY_LIMIT = 1;
+
+    public static class Keys
+    {
+        /**
+         * The partition number (1-based) in the context of a worker step
+         */
+        public static final String PARTITION_NUMBER = "partitionNumber";
+
+        /**
+         * The number of attempts in the context of a worker step
+         */
+        public static final String ATTEMPTS = "attempts";
+
+        /**
+         * The log files of each failed attempt (keyed by attempt number) in the context of a
+         * worker step
+         */
+        public static final String OUTPUT_FILES_BY_ATTEMPT = "outputFilesByAttempt";
+
+        public static final String CONTAINER_NAME_BY_PARTITION_NUMBER = "containerNameByPartitionNumber";
+
+        public static final String CONTAINER_ID_BY_PARTITION_NUMBER = "containerIdByPartitionNumber";
+
+        public static final String EXIT_CODE_BY_PARTITION_NUMBER = "exitCodeByPartitionNumber";
+
+        public static final String ATTEMPTS_BY_PARTITION_NUMBER = "attemptsByPartitionNumber";
+    }
+
+    /**
+     * Represent a part (partition) as seen by a worker step
+     */
+    public static class Partition
+    {
+        private final long jobId;
+
+        private final int number;
+
+        private final int numberOfPartitions;
+
+        private final int attempt;
+
+        private final ExecutionContext jobExecutionContext;
+
+        private Partition(
+            long jobId, int number, int numberOfPartitions, int attempt, ExecutionContext jobExecutionContext)
+        {
+            this.jobId = jobId;
+            this.number = number;
+            this.numberOfPartitions = numberOfPartitions;
+            this.attempt = attempt;
+            this.jobExecutionContext = jobExecutionContext;
+        }
+
+        public long getJobId()
+        {
+            return jobId;
+        }
+
+        /**
+         * The partition number (1-based)
+         */
+        public int getNumber()
+        {
+            return number;
+        }
+
+        public int getNumberOfPartitions()
+        {
+            return numberOfPartitions;
+        }
+
+        /**
+         * The attempt (1-based) to execute this part
+         */
+        public int getAttempt()
+        {
+            return attempt;
+        }
+
+        /**
+         * The (read-only) execution context of the job
+         */
+        public ExecutionContext getJobExecutionContext()
+        {
+            return jobExecutionContext;
+        }
+
+        /**
+         * The working directory of the job (i.e. the <tt>workDir</tt> entry of the job context)
+         */
+        public Path getWorkDirectory()
+        {
+            String workDir = jobExecutionContext.getString("workDir", null);
+            Assert.state(workDir != null, "The working directory is missing from job context");
+            return Paths.get(workDir);
+        }
+
+        /**
+         * The conventional directory of this part, i.e. <tt>partitions/partition_&lt;i&gt;</tt> under
+         * the working directory.
+         */
+        public Path getDirectory()
+        {
+            return getWorkDirectory().resolve(
+                Paths.get("partitions", String.format("partition_%d", number)));
+        }
+    }
+
+    /**
+     * Configure the container for a part
+     */
+    @FunctionalInterface
+    public interface PartConfigurer
+    {
+        /**
+         * Configure the container for a part. Any preparation (e.g. creating an output directory)
+         * should also take place here, since this is invoked just before the container is created.
+         *
+         * @param partition The part
+         * @param configurer The configurer for the container
+         * @throws IOException
+         */
+        void configure(Partition partition, ContainerConfigurer configurer) throws IOException;
+    }
+
+    private final String name;
+
+    private StepBuilderFactory stepBuilderFactory;
+
+    private JobRepository jobRepository;
+
+    private DockerClient docker;
+
+    private TaskExecutor taskExecutor;
+
+    private List<Step> splitterSteps = new ArrayList<>();
+
+    private List<Step> mergerSteps = new ArrayList<>();
+
+    private PartConfigurer partConfigurer;
+
+    private String numberOfPartitionsKey = DEFAULT_NUMBER_OF_PARTITIONS_KEY;
+
+    private int retryLimit = DEFAULT_RETRY_LIMIT;
+
+    private long checkInterval = -1L;
+
+    private long timeout = -1L;
+
+    private ContainerMonitor monitor;
+
+    private ContainerResourceLedger ledger;
+
+    private int priority = 0;
+
+    private ContainerLogCollector logCollector;
+
+    private BiFunction<Path, String, Path> logFileResolver;
+
+    /**
+     * Create a builder
+     *
+     * @param name A name for the flow. It is used as a prefix for the names of steps and containers,
+     *   so it should be the name of the job (e.g. <tt>fagi</tt>).
+     */
+    public PartitionedContainerFlowBuilder(String name)
+    {
+        Assert.hasText(name, "A non-empty name is expected");
+        this.name = name;
+    }
+
+    public PartitionedContainerFlowBuilder stepBuilderFactory(StepBuilderFactory stepBuilderFactory)
+    {
+        this.stepBuilderFactory = stepBuilderFactory;
+        return this;
+    }
+
+    public PartitionedContainerFlowBuilder jobRepository(JobRepository jobRepository)
+    {
+        this.jobRepository = jobRepository;
+        return this;
+    }
+
+    public PartitionedContainerFlowBuilder client(DockerClient docker)
+    {
+        this.docker = docker;
+        return this;
+    }
+
+    /**
+     * Set the executor for worker steps (it also controls the number of parts running in parallel)
+     * @param taskExecutor
+     */
+    public PartitionedContainerFlowBuilder taskExecutor(TaskExecutor taskExecutor)
+    {
+        this.taskExecutor = taskExecutor;
+        return this;
+    }
+
+    /**
+     * Set the steps that split the input into parts
+     * @param steps
+     */
+    public PartitionedContainerFlowBuilder splitter(Step ...steps)
+    {
+        this.splitterSteps = Arrays.asList(steps);
+        return this;
+    }
+
+    /**
+     * Set the steps that merge the partial results (these may also include any step that
+     * should follow a merge)
+     * @param steps
+     */
+    public PartitionedContainerFlowBuilder merger(Step ...steps)
+    {
+        Assert.notEmpty(steps, "Expected a non-empty list of steps");
+        this.mergerSteps = Arrays.asList(steps);
+        return this;
+    }
+
+    public PartitionedContainerFlowBuilder container(PartConfigurer configurer)
+    {
+        Assert.notNull(configurer, "A non-null configurer is expected");
+        this.partConfigurer = configurer;
+        return this;
+    }
+
+    /**
+     * Set the key (in job execution context) of the number of parts
+     * @param key
+     */
+    public PartitionedContainerFlowBuilder numberOfPartitionsKey(String key)
+    {
+        Assert.hasText(key, "A non-empty key is expected");
+        this.numberOfPartitionsKey = key;
+        return this;
+    }
+
+    /**
+     * Set the number of times a failed part is retried (in a new container) before the
+     * partitioned step is marked as failed.
+     * @param retryLimit
+     */
+    public PartitionedContainerFlowBuilder retryLimit(int retryLimit)
+    {
+        Assert.isTrue(retryLimit >= 0, "Expected a non-negative retry limit");
+        this.retryLimit = retryLimit;
+        return this;
+    }
+
+    public PartitionedContainerFlowBuilder checkInterval(long checkInterval)
+    {
+        this.checkInterval = checkInterval;
+        return this;
+    }
+
+    public PartitionedContainerFlowBuilder timeout(long timeout)
+    {
+        this.timeout = timeout;
+        return this;
+    }
+
+    public PartitionedContainerFlowBuilder monitor(ContainerMonitor monitor)
+    {
+        this.monitor = monitor;
+        return this;
+    }
+
+    /**
+     * Reserve resources for each container (part) from a ledger
+     *
+     * @param ledger The ledger (if <tt>null</tt>, containers are started immediately)
+     * @param priority The priority of containers when waiting for resources
+     */
+    public PartitionedContainerFlowBuilder resources(ContainerResourceLedger ledger, int priority)
+    {
+        this.ledger = ledger;
+        this.priority = priority;
+        return this;
+    }
+
+    /**
+     * Collect logs of containers into files
+     *
+     * @param collector The log collector (if <tt>null</tt>, logs are kept into step context)
+     * @param resolver A function to resolve a log file from the working directory and a name
+     */
+    public PartitionedContainerFlowBuilder logs(
+        ContainerLogCollector collector, BiFunction<Path, String, Path> resolver)
+    {
+        this.logCollector = collector;
+        this.logFileResolver = resolver;
+        return this;
+    }
+
+    public Flow build()
+    {
+        Assert.state(stepBuilderFactory != null, "A step builder factory is required");
+        Assert.state(jobRepository != null, "A job repository is required");
+        Assert.state(docker != null, "A docker client is required");
+        Assert.state(taskExecutor != null, "A task executor is required");
+        Assert.state(partConfigurer != null, "A configurer for the container of a part is required");
+        Assert.state(!mergerSteps.isEmpty(), "The merger steps are required");
+
+        final String workerStepName = name + ".runContainerForPart";
+
+        final PartTasklet tasklet = new PartTasklet();
+
+        final Step workerStep = stepBuilderFactory.get(workerStepName)
+            .tasklet(tasklet)
+            .listener(tasklet)
+            .build();
+
+        final StepExecutionListener promotionListener = ExecutionContextPromotionListeners.builder()
+            .keys(
+                Keys.CONTAINER_NAME_BY_PARTITION_NUMBER,
+                Keys.CONTAINER_ID_BY_PARTITION_NUMBER,
+                Keys.EXIT_CODE_BY_PARTITION_NUMBER,
+                Keys.ATTEMPTS_BY_PARTITION_NUMBER)
+            .build();
+
+        final Step masterStep = stepBuilderFactory.get(name + ".runContainerForEachPart")
+            .partitioner(workerStep)
+            .splitter(new Splitter(workerStepName))
+            .aggregator(new Aggregator(workerStepName))
+            .taskExecutor(taskExecutor)
+            .listener(promotionListener)
+            .build();
+
+        final List<Step> steps = new ArrayList<>(splitterSteps);
+        steps.add(masterStep);
+        steps.addAll(mergerSteps);
+
+        final Iterator<Step> stepIterator = steps.iterator();
+        final FlowBuilder<SimpleFlow> flowBuilder =
+            new FlowBuilder<SimpleFlow>(name + ".partitioningFlow");
+        flowBuilder.start(stepIterator.next());
+        while (stepIterator.hasNext()) {
+            flowBuilder.next(stepIterator.next());
+        }
+
+        return flowBuilder.build();
+    }
+
+    private static String partitionName(int partitionNumber)
+    {
+        return "partition" + partitionNumber;
+    }
+
+    /**
+     * Generate the name of the container for an attempt to execute a part.
+     * <p>
+     * Every retry is given its own name (suffixed by the attempt number), so that a new container
+     * can be created even if the container of a failed attempt could not be removed.
+     *
+     * @param name The name of the flow
+     * @param jobId The job id
+     * @param partitionNumber The partition number (1-based)
+     * @param attempt The attempt (1-based)
+     */
+    public static String containerName(String name, long jobId, int partitionNumber, int attempt)
+    {
+        Assert.isTrue(partitionNumber > 0, "Expected a positive partition number");
+        Assert.isTrue(attempt > 0, "Expected a positive attempt number");
+
+        final String containerName = String.format("%s-%05x-partition-%x", name, jobId, partitionNumber);
+        return attempt > 1? String.format("%s-attempt-%d", containerName, attempt) : containerName;
+    }
+
+    /**
+     * A splitter that reads the number of parts from the job execution context.
+     * <p>
+     * The number of parts is only known at runtime (i.e. after the splitter steps are complete), so
+     * a {@link Partitioner} is created on every invocation.
+     */
+    private class Splitter implements StepExecutionSplitter
+    {
+        private final String stepName;
+
+        private Splitter(String stepName)
+        {
+            this.stepName = stepName;
+        }
+
+        @Override
+        public String getStepName()
+        {
+            return stepName;
+        }
+
+        @Override
+        public Set<StepExecution> split(StepExecution stepExecution, int gridSize)
+            throws JobExecutionException
+        {
+            final ExecutionContext jobExecutionContext = stepExecution.getJobExecution().getExecutionContext();
+            final int numberOfPartitions = jobExecutionContext.getInt(numberOfPartitionsKey, -1);
+            Assert.state(numberOfPartitions >= 0,
+                "The number of parts (" + numberOfPartitionsKey + ") is missing from job context");
+
+            final Partitioner partitioner = n -> {
+                Map<String, ExecutionContext> parts = new HashMap<>();
+                for (int i = 1; i <= numberOfPartitions; i++) {
+                    ExecutionContext executionContext = new ExecutionContext();
+                    executionContext.putInt(Keys.PARTITION_NUMBER, i);
+                    parts.put(partitionName(i), executionContext);
+                }
+                return parts;
+            };
+
+            return new SimpleStepExecutionSplitter(jobRepository, false, stepName, partitioner)
+                .split(stepExecution, gridSize);
+        }
+    }
+
+    /**
+     * An aggregator that also collects (part-specific) entries of worker contexts into maps keyed
+     * on the partition number.
+     */
+    private class Aggregator implements StepExecutionAggregator
+    {
+        private final String stepName;
+
+        private final StepExecutionAggregator delegate = new DefaultStepExecutionAggregator();
+
+        private Aggregator(String stepName)
+        {
+            this.stepName = stepName;
+        }
+
+        @Override
+        public void aggregate(StepExecution result, Collection<StepExecution> executions)
+        {
+            delegate.aggregate(result, executions);
+
+            if (result.getStatus() != BatchStatus.COMPLETED) {
+                return;
+            }
+
+            // The master step is complete. Note that, on a restart, the given executions only
+            // include the parts executed again, so collect the last execution of every part.
+
+            final JobExecution jobExecution = result.getJobExecution();
+            final int numberOfPartitions = jobExecution.getExecutionContext().getInt(numberOfPartitionsKey);
+
+            final Map<Integer, String> containerNameByPartitionNumber = new HashMap<>();
+            final Map<Integer, String> containerIdByPartitionNumber = new HashMap<>();
+            final Map<Integer, Long> exitCodeByPartitionNumber = new HashMap<>();
+            final Map<Integer, Integer> attemptsByPartitionNumber = new HashMap<>();
+
+            for (int i = 1; i <= numberOfPartitions; i++) {
+                StepExecution stepExecution = jobRepository.getLastStepExecution(
+                    jobExecution.getJobInstance(), stepName + ":" + partitionName(i));
+                if (stepExecution == null) {
+                    continue;
+                }
+                ExecutionContext partialContext = stepExecution.getExecutionContext();
+                containerNameByPartitionNumber.put(i,
+                    partialContext.getString(CreateContainerTasklet.Keys.CONTAINER_NAME, null));
+                containerIdByPartitionNumber.put(i,
+                    partialContext.getString(CreateContainerTasklet.Keys.CONTAINER_ID, null));
+                exitCodeByPartitionNumber.put(i,
+                    partialContext.getLong(RunContainerTasklet.Keys.COMMAND_EXIT_CODE, -1L));
+                attemptsByPartitionNumber.put(i,
+                    partialContext.getInt(Keys.ATTEMPTS, 1));
+            }
+
+            final ExecutionContext resultContext = result.getExecutionContext();
+            resultContext.put(Keys.CONTAINER_NAME_BY_PARTITION_NUMBER, containerNameByPartitionNumber);
+            resultContext.put(Keys.CONTAINER_ID_BY_PARTITION_NUMBER, containerIdByPartitionNumber);
+            resultContext.put(Keys.EXIT_CODE_BY_PARTITION_NUMBER, exitCodeByPartitionNumber);
+            resultContext.put(Keys.ATTEMPTS_BY_PARTITION_NUMBER, attemptsByPartitionNumber);
+        }
+    }
+
+    /**
+     * A tasklet that creates and runs the container for a part.
+     * <p>
+     * A single instance serves all (concurrent) worker steps, so the state of a running container
+     * is kept per step execution.
+     */
+    private class PartTasklet implements Tasklet, StepExecutionListener
+    {
+        private final Map<Long, RunContainerTasklet> runners = new ConcurrentHashMap<>();
+
+        private Partition partitionOf(StepExecution stepExecution)
+        {
+            final JobExecution jobExecution = stepExecution.getJobExecution();
+            final ExecutionContext jobExecutionContext = jobExecution.getExecutionContext();
+            final ExecutionContext executionContext = stepExecution.getExecutionContext();
+
+            return new Partition(
+                jobExecution.getJobId(),
+                executionContext.getInt(Keys.PARTITION_NUMBER),
+                jobExecutionContext.getInt(numberOfPartitionsKey),
+                executionContext.getInt(Keys.ATTEMPTS, 1),
+                jobExecutionContext);
+        }
+
+        private String containerName(Partition partition)
+        {
+            return PartitionedContainerFlowBuilder.containerName(
+                name, partition.getJobId(), partition.getNumber(), partition.getAttempt());
+        }
+
+        private RunContainerTasklet createRunner(Partition partition)
+        {
+            RunContainerTasklet.Builder builder = RunContainerTasklet.builder()
+                .client(docker)
+                .container(containerName(partition))
+                .removeOnFinished(false)
+                .monitor(monitor)
+                .resources(ledger)
+                .priority(priority);
+
+            if (checkInterval > 0)
+                builder.checkInterval(checkInterval);
+            if (timeout > 0)
+                builder.timeout(timeout);
+
+            if (logCollector != null) {
+                String logName = partition.getAttempt() > 1?
+                    String.format("run-container-for-part-%d-attempt-%d", partition.getNumber(), partition.getAttempt()) :
+                    String.format("run-container-for-part-%d", partition.getNumber());
+                builder.logs(logCollector, logFileResolver.apply(partition.getWorkDirectory(), logName));
+            }
+
+            return builder.build();
+        }
+
+        private void createContainer(Partition partition, ExecutionContext executionContext)
+            throws IOException, DockerException, InterruptedException
+        {
+            final String containerName = containerName(partition);
+
+            ContainerConfigurer configurer = new ContainerConfigurer();
+            partConfigurer.configure(partition, configurer);
+
+            ContainerCreation creation = docker.createContainer(configurer.buildConfiguration(), containerName);
+            logger.info("Created container {} for part #{} of {}", creation.id(), partition.getNumber(), name);
+
+            executionContext.putString(CreateContainerTasklet.Keys.CONTAINER_ID, creation.id());
+            executionContext.putString(CreateContainerTasklet.Keys.CONTAINER_NAME, containerName);
+        }
+
+        private void removeContainer(String containerId)
+        {
+            try {
+                docker.removeContainer(containerId, RemoveContainerParam.forceKill());
+            } catch (DockerException | InterruptedException ex) {
+                logger.warn("Failed to remove container {}: {}", containerId, ex.getMessage());
+            }
+        }
+
+        @Override
+        public void beforeStep(StepExecution stepExecution)
+        {
+            final Partition partition = partitionOf(stepExecution);
+            final RunContainerTasklet runner = createRunner(partition);
+            runners.put(stepExecution.getId(), runner);
+            runner.beforeStep(stepExecution);
+        }
+
+        @Override
+        public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext)
+            throws Exception
+        {
+            final StepExecution stepExecution = chunkContext.getStepContext().getStepExecution();
+            final ExecutionContext executionContext = stepExecution.getExecutionContext();
+            final Partition partition = partitionOf(stepExecution);
+
+            if (!executionContext.containsKey(CreateContainerTasklet.Keys.CONTAINER_ID)) {
+                createContainer(partition, executionContext);
+            }
+
+            final RunContainerTasklet runner = runners.get(stepExecution.getId());
+            final RepeatStatus status = runner.execute(contribution, chunkContext);
+
+            if (status.isContinuable() || stepExecution.getStatus() != BatchStatus.FAILED) {
+                return status;
+            }
+
+            // The container has failed: retry (in a new container) if attempts are not exhausted
+
+            final int attempt = partition.getAttempt();
+            if (attempt > retryLimit) {
+                return status;
+            }
+
+            logger.warn("The part #{} of {} has failed (attempt {}): retrying",
+                partition.getNumber(), name, attempt);
+
+            runner.afterStep(stepExecution); // drain logs of the failed attempt, release resources
+            keepOutputFiles(executionContext, attempt);
+            removeContainer(executionContext.getString(CreateContainerTasklet.Keys.CONTAINER_ID));
+            executionContext.remove(CreateContainerTasklet.Keys.CONTAINER_ID);
+            executionContext.remove(CreateContainerTasklet.Keys.CONTAINER_NAME);
+            executionContext.putInt(Keys.ATTEMPTS, attempt + 1);
+
+            final RunContainerTasklet nextRunner = createRunner(partitionOf(stepExecution));
+            runners.put(stepExecution.getId(), nextRunner);
+            nextRunner.beforeStep(stepExecution); // reset state of failed run
+
+            stepExecution.setStatus(BatchStatus.STARTED);
+            contribution.setExitStatus(ExitStatus.EXECUTING);
+            return RepeatStatus.CONTINUABLE;
+        }
+
+        /**
+         * Keep the log files of a failed attempt under {@link Keys#OUTPUT_FILES_BY_ATTEMPT}, since
+         * they are removed from the context when the state of the failed run is reset.
+         */
+        @SuppressWarnings("unchecked")
+        private void keepOutputFiles(ExecutionContext executionContext, int attempt)
+        {
+            final List<String> fileNames =
+                (List<String>) executionContext.get(RunContainerTasklet.Keys.COMMAND_OUTPUT_FILES);
+            if (fileNames == null) {
+                return;
+            }
+
+            final Map<Integer, List<String>> outputFilesByAttempt = new HashMap<>();
+            if (executionContext.containsKey(Keys.OUTPUT_FILES_BY_ATTEMPT)) {
+                outputFilesByAttempt.putAll(
+                    (Map<Integer, List<String>>) executionContext.get(Keys.OUTPUT_FILES_BY_ATTEMPT));
+            }
+            outputFilesByAttempt.put(attempt, new ArrayList<>(fileNames));
+            executionContext.put(Keys.OUTPUT_FILES_BY_ATTEMPT, outputFilesByAttempt);
+        }
+
+        @Override
+        public ExitStatus afterStep(StepExecution stepExecution)
+        {
+            final RunContainerTasklet runner = runners.remove(stepExecution.getId());
+            return runner == null? null : runner.afterStep(stepExecution);
+        }
+    }
+}
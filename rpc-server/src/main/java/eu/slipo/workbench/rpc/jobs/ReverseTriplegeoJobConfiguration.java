@@ -126,6 +126,13 @@ public class ReverseTriplegeoJobConfiguration extends ContainerBasedJobConfigura
         this.memorySwapLimit = kbytes == null? -1L : kbytes.longValue() * 1024L;
     }
 
+    @Autowired
+    private void setPriority(
+        @Value("${slipo.rpc-server.tools.reverse-triplegeo.docker.container.priority:0}") Integer priority)
+    {
+        this.containerPriority = priority;
+    }
+
     @PostConstruct
     private void setMemoryLimitsIfNeeded()
     {
@@ -150,7 +157,7 @@ public class ReverseTriplegeoJobConfiguration extends ContainerBasedJobConfigura
         {
             StepContext stepContext = chunkContext.getStepContext();
             ExecutionContext executionContext = stepContext.getStepExecution().getExecutionContext();
-            Map<String, Object> parameters = stepContext.getJobParameters();
+            Map<String, ?> parameters = configurationStore.resolve(stepContext.getJobParameters());
 
             // Read given parameters
 
@@ -284,6 +291,7 @@ public class ReverseTriplegeoJobConfiguration extends ContainerBasedJobConfigura
 
         return CreateContainerTasklet.builder()
             .client(docker)
+            .resources(containerResourceLedger)
             .name(containerName)
             .container(configurer -> configurer
                 .image(imageName)
@@ -319,14 +327,19 @@ public class ReverseTriplegeoJobConfiguration extends ContainerBasedJobConfigura
     @Bean("reverseTriplegeo.runContainerTasklet")
     @JobScope
     public RunContainerTasklet runContainerTasklet(
+        @Value("#{T(java.nio.file.Paths).get(jobExecutionContext['workDir'])}") Path workDir,
         @Value("#{jobExecutionContext['containerName']}") String containerName)
     {
         return RunContainerTasklet.builder()
             .client(docker)
+            .resources(containerResourceLedger)
+            .priority(containerPriority)
             .checkInterval(checkInterval)
             .timeout(runTimeout)
             .container(containerName)
             .removeOnFinished(false)
+            .monitor(containerMonitor)
+            .logs(containerLogCollector, resolveLogFile(workDir, "run-container"))
             .build();
     }
 
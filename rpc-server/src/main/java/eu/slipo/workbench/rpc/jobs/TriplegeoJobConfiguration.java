@@ -1,16 +1,25 @@
 package eu.slipo.workbench.rpc.jobs;
 
+import static com.google.common.primitives.Ints.constrainToRange;
+
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import javax.annotation.PostConstruct;
 import javax.validation.ConstraintViolation;
@@ -18,13 +27,19 @@ import javax.validation.ConstraintViolation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
 import org.springframework.batch.core.JobParameters;
 import org.springframework.batch.core.Step;
 import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
 import org.springframework.batch.core.configuration.JobFactory;
 import org.springframework.batch.core.configuration.annotation.JobScope;
 import org.springframework.batch.core.job.builder.FlowBuilder;
 import org.springframework.batch.core.job.flow.Flow;
+import org.springframework.batch.core.job.flow.FlowExecutionStatus;
+import org.springframework.batch.core.job.flow.JobExecutionDecider;
+import org.springframework.batch.core.job.flow.support.SimpleFlow;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
 import org.springframework.batch.core.scope.context.ChunkContext;
 import org.springframework.batch.core.scope.context.StepContext;
@@ -34,6 +49,8 @@ import org.springframework.batch.repeat.RepeatStatus;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Component;
@@ -50,9 +67,13 @@ import eu.slipo.workbench.common.model.poi.EnumDataFormat;
 import eu.slipo.workbench.common.model.tool.EnumConfigurationFormat;
 import eu.slipo.workbench.common.model.tool.InvalidConfigurationException;
 import eu.slipo.workbench.common.model.tool.TriplegeoConfiguration;
+import eu.slipo.workbench.rpc.jobs.PartitionedContainerFlowBuilder.Partition;
 import eu.slipo.workbench.rpc.jobs.listener.ExecutionContextPromotionListeners;
 import eu.slipo.workbench.rpc.jobs.listener.LoggingJobExecutionListener;
+import eu.slipo.workbench.rpc.jobs.tasklet.FileConcatenator;
 import eu.slipo.workbench.rpc.jobs.tasklet.PrepareWorkingDirectoryTasklet;
+import eu.slipo.workbench.rpc.jobs.tasklet.SplitFileTasklet;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerConfigurer;
 import eu.slipo.workbench.rpc.jobs.tasklet.docker.CreateContainerTasklet;
 import eu.slipo.workbench.rpc.jobs.tasklet.docker.RunContainerTasklet;
 
@@ -64,6 +85,10 @@ public class TriplegeoJobConfiguration extends ContainerBasedJobConfiguration
 
     private static final String JOB_NAME = "triplegeo";
 
+    public static final String FLOW_SIMPLE = "SIMPLE";
+
+    public static final String FLOW_PARTITIONING = "PARTITIONING";
+
     /**
      * The default timeout (milliseconds) for a container run
      */
@@ -128,6 +153,13 @@ public class TriplegeoJobConfiguration extends ContainerBasedJobConfiguration
         this.memorySwapLimit = kbytes == null? -1L : kbytes.longValue() * 1024L;
     }
 
+    @Autowired
+    private void setPriority(
+        @Value("${slipo.rpc-server.tools.triplegeo.docker.container.priority:0}") Integer priority)
+    {
+        this.containerPriority = priority;
+    }
+
     @PostConstruct
     private void setMemoryLimitsIfNeeded()
     {
@@ -145,6 +177,66 @@ public class TriplegeoJobConfiguration extends ContainerBasedJobConfiguration
         super.setupDataDirectory("triplegeo");
     }
 
+    /**
+     * Represent the factors (e.g. thresholds) that affect the decision on choosing a partitioning flow
+     */
+    public static class PartitioningDecisionFactors
+    {
+        /**
+         * A threshold number for the (total) size (in bytes) of input files
+         */
+        long inputSizeThreshold = -1L;
+
+        /**
+         * The maximum number of partitions to be created
+         */
+        int maxNumberOfPartitions = 4;
+
+        /**
+         * The number of times a failed part is retried
+         */
+        int retryLimit = PartitionedContainerFlowBuilder.DEFAULT_RETRY_LIMIT;
+
+        public long getInputSizeThreshold()
+        {
+            return inputSizeThreshold;
+        }
+
+        public void setInputSizeThresholdKbytes(long inputSizeThresholdKbytes)
+        {
+            this.inputSizeThreshold = inputSizeThresholdKbytes * 1024L;
+        }
+
+        public int getMaxNumberOfPartitions()
+        {
+            return maxNumberOfPartitions;
+        }
+
+        public void setMaxNumberOfPartitions(int maxNumberOfPartitions)
+        {
+            this.maxNumberOfPartitions = maxNumberOfPartitions;
+        }
+
+        public int getRetryLimit()
+        {
+            return retryLimit;
+        }
+
+        public void setRetryLimit(int retryLimit)
+        {
+            Assert.isTrue(retryLimit >= 0, "Expected a non-negative number");
+            this.retryLimit = retryLimit;
+        }
+    }
+
+    @ConditionalOnProperty(name = "slipo.rpc-server.tools.triplegeo.flow", havingValue = "partition-if-needed")
+    @ConfigurationProperties(prefix = "slipo.rpc-server.tools.triplegeo.flow.partition-if-needed")
+    @Bean("triplegeo.partitioningDecisionFactors")
+    public PartitioningDecisionFactors partitioningDecisionFactors()
+    {
+       return new PartitioningDecisionFactors();
+    }
+
     public class ConfigureTasklet implements Tasklet
     {
         @Override
@@ -153,7 +245,7 @@ public class TriplegeoJobConfiguration extends ContainerBasedJobConfiguration
         {
             StepContext stepContext = chunkContext.getStepContext();
             ExecutionContext executionContext = stepContext.getStepExecution().getExecutionContext();
-            Map<String, Object> parameters = stepContext.getJobParameters();
+            Map<String, ?> parameters = configurationStore.resolve(stepContext.getJobParameters());
 
             // Read given parameters
 
@@ -206,6 +298,53 @@ public class TriplegeoJobConfiguration extends ContainerBasedJobConfiguration
         }
     }
 
+    public class DecideIfPartitioningTasklet implements Tasklet
+    {
+        private final PartitioningDecisionFactors factors;
+
+        private final List<Path> inputFiles;
+
+        private final EnumDataFormat inputFormat;
+
+        public DecideIfPartitioningTasklet(
+            PartitioningDecisionFactors factors, List<Path> inputFiles, EnumDataFormat inputFormat)
+        {
+            this.factors = factors;
+            this.inputFiles = inputFiles;
+            this.inputFormat = inputFormat;
+        }
+
+        @Override
+        public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext)
+            throws Exception
+        {
+            StepContext stepContext = chunkContext.getStepContext();
+            ExecutionContext executionContext = stepContext.getStepExecution().getExecutionContext();
+
+            long inputSize = 0;
+            for (Path inputFile: inputFiles) {
+                inputSize += Files.size(inputFile);
+            }
+
+            // Decide if partitioning is needed; if yes, also determine the number of partitions.
+            // Only line-oriented (i.e. CSV) input can be split into record-aligned parts.
+            int numberOfPartitions = -1; // a negative value means no partitioning
+            if (inputFormat == EnumDataFormat.CSV && factors.maxNumberOfPartitions > 1) {
+                if (factors.inputSizeThreshold > 0 && inputSize > factors.inputSizeThreshold) {
+                    long n = (inputSize + factors.inputSizeThreshold - 1) / factors.inputSizeThreshold;
+                    numberOfPartitions = constrainToRange(
+                        (int) Math.min(n, Integer.MAX_VALUE), 2, factors.maxNumberOfPartitions);
+                }
+            }
+
+            // Update execution context with available facts
+            executionContext.putLong("inputSize", inputSize);
+            executionContext.putInt("numberOfPartitions", numberOfPartitions);
+
+            return null;
+        }
+    }
+
     /**
      * A tasklet that reads job parameters to a configuration bean into execution-context.
      */
@@ -296,6 +435,7 @@ public class TriplegeoJobConfiguration extends ContainerBasedJobConfiguration
 
         return CreateContainerTasklet.builder()
             .client(docker)
+            .resources(containerResourceLedger)
             .name(containerName)
             .container(configurer -> configurer
                 .image(imageName)
@@ -331,14 +471,19 @@ public class TriplegeoJobConfiguration extends ContainerBasedJobConfiguration
     @Bean("triplegeo.runContainerTasklet")
     @JobScope
     public RunContainerTasklet runContainerTasklet(
+        @Value("#{T(java.nio.file.Paths).get(jobExecutionContext['workDir'])}") Path workDir,
         @Value("#{jobExecutionContext['containerName']}") String containerName)
     {
         return RunContainerTasklet.builder()
             .client(docker)
+            .resources(containerResourceLedger)
+            .priority(containerPriority)
             .checkInterval(checkInterval)
             .timeout(runTimeout)
             .container(containerName)
             .removeOnFinished(false)
+            .monitor(containerMonitor)
+            .logs(containerLogCollector, resolveLogFile(workDir, "run-container"))
             .build();
     }
 
@@ -352,8 +497,293 @@ public class TriplegeoJobConfiguration extends ContainerBasedJobConfiguration
             .build();
     }
 
+    @ConditionalOnProperty(name = "slipo.rpc-server.tools.triplegeo.flow", havingValue = "partition-if-needed")
+    @Bean("triplegeo.examineIfPartitioningTasklet")
+    @JobScope
+    public Tasklet examineIfPartitioningTasklet(
+        PartitioningDecisionFactors factors,
+        @Value("#{jobExecutionContext['inputFormat']}") String inputFormatName,
+        @Value("#{T(java.nio.file.Paths).get(jobExecutionContext['inputDir'])}") Path inputDir,
+        @Value("#{jobExecutionContext['inputFiles']}") List<String> inputFiles)
+    {
+        final EnumDataFormat inputFormat = EnumDataFormat.valueOf(inputFormatName);
+        final String inputExtension = inputFormat.getFilenameExtension();
+
+        List<Path> inputPaths = inputFiles.stream()
+            .filter(name -> StringUtils.getFilenameExtension(name).equals(inputExtension))
+            .map(inputDir::resolve)
+            .collect(Collectors.toList());
+
+        return new DecideIfPartitioningTasklet(factors, inputPaths, inputFormat);
+    }
+
+    @ConditionalOnProperty(name = "slipo.rpc-server.tools.triplegeo.flow", havingValue = "partition-if-needed")
+    @Bean("triplegeo.examineIfPartitioningStep")
+    public Step examineIfPartitioningStep(@Qualifier("triplegeo.examineIfPartitioningTasklet") Tasklet tasklet)
+    {
+        final StepExecutionListener stepExecutionListener = ExecutionContextPromotionListeners.builder()
+            .keys("inputSize", "numberOfPartitions")
+            .build();
+
+        return stepBuilderFactory.get("triplegeo.examineIfPartitioning")
+            .tasklet(tasklet)
+            .listener(stepExecutionListener)
+            .build();
+    }
+
+    @ConditionalOnProperty(name = "slipo.rpc-server.tools.triplegeo.flow", havingValue = "partition-if-needed")
+    @Bean("triplegeo.flowDecider")
+    @JobScope
+    public JobExecutionDecider flowDecider(
+        @Value("#{jobExecutionContext['numberOfPartitions'] ?: -1}") Integer numberOfPartitions)
+    {
+        return new JobExecutionDecider()
+        {
+            @Override
+            public FlowExecutionStatus decide(JobExecution jobExecution, StepExecution stepExecution)
+            {
+                String status = numberOfPartitions > 1? FLOW_PARTITIONING : FLOW_SIMPLE;
+                return new FlowExecutionStatus(status);
+            }
+        };
+    }
+
+    /**
+     * A tasklet to split (record-aligned) each input file into N parts. The i-th part of every
+     * input file is placed under <tt>partitions/partition_i/input</tt> (keeping the file name).
+     */
+    @ConditionalOnProperty(name = "slipo.rpc-server.tools.triplegeo.flow", havingValue = "partition-if-needed")
+    @Bean("triplegeo.splitInputTasklet")
+    @JobScope
+    public SplitFileTasklet splitInputTasklet(
+        @Value("#{jobExecutionContext['options']}") TriplegeoConfiguration options,
+        @Value("#{T(java.nio.file.Paths).get(jobExecutionContext['workDir'])}") Path workDir,
+        @Value("#{T(java.nio.file.Paths).get(jobExecutionContext['inputDir'])}") Path inputDir,
+        @Value("#{jobExecutionContext['inputFiles']}") List<String> inputFiles,
+        @Value("#{jobExecutionContext['numberOfPartitions'] ?: -1}") Integer numberOfPartitions)
+    {
+        Assert.isTrue(numberOfPartitions >= 2, "The number of partitions should be greater or equal to 2");
+
+        EnumDataFormat inputFormat = options.getInputFormat();
+        Assert.state(inputFormat == EnumDataFormat.CSV, "Only CSV input can be partitioned");
+        String inputExtension = inputFormat.getFilenameExtension();
+
+        List<Path> inputPaths = inputFiles.stream()
+            .filter(name -> StringUtils.getFilenameExtension(name).equals(inputExtension))
+            .map(inputDir::resolve)
+            .collect(Collectors.toList());
+
+        return SplitFileTasklet.builder()
+            .input(inputPaths)
+            .targetDirectory(workDir.resolve("partitions"))
+            .numberOfParts(numberOfPartitions)
+            .header(true)
+            .quote(options.getQuote())
+            .build();
+    }
+
+    @ConditionalOnProperty(name = "slipo.rpc-server.tools.triplegeo.flow", havingValue = "partition-if-needed")
+    @Bean("triplegeo.splitInputStep")
+    public Step splitInputStep(@Qualifier("triplegeo.splitInputTasklet") SplitFileTasklet tasklet)
+    {
+        return stepBuilderFactory.get("triplegeo.splitInput")
+            .tasklet(tasklet)
+            .build();
+    }
+
     /**
-     * A tasklet to concatenate transformation result with classification output
+     * Configure the container for a part (as split by {@link #splitInputTasklet}).
+     */
+    private void configureContainerForPart(Partition partition, ContainerConfigurer configurer)
+        throws IOException
+    {
+        final int partitionNumber = partition.getNumber();
+        final ExecutionContext jobExecutionContext = partition.getJobExecutionContext();
+        final Path workDir = partition.getWorkDirectory();
+
+        final EnumDataFormat inputFormat = EnumDataFormat.valueOf(jobExecutionContext.getString("inputFormat"));
+        @SuppressWarnings("unchecked")
+        final List<String> inputFiles = (List<String>) jobExecutionContext.get("inputFiles");
+        @SuppressWarnings("unchecked")
+        final Map<String, String> configFileByName =
+            (Map<String, String>) jobExecutionContext.get("configFileByName");
+
+        Path partitionDir = partition.getDirectory();
+        Path partitionInputDir = partitionDir.resolve("input");
+        if (!Files.isDirectory(partitionInputDir)) {
+            throw new IllegalStateException(
+                "The input directory for partition #" + partitionNumber + " is missing: " + partitionInputDir);
+        }
+
+        // Create directory for the output of this partition
+        Path partitionOutputDir = partitionDir.resolve("output");
+        Files.createDirectories(partitionOutputDir, DEFAULT_DIRECTORY_ATTRIBUTE);
+
+        String inputExtension = inputFormat.getFilenameExtension();
+
+        String optionsFileName = configFileByName.get("options");
+        String mappingsFileName = configFileByName.get("mappings");
+        String classificationFileName = configFileByName.get("classification");
+
+        List<Path> containerInputPaths = inputFiles.stream()
+            .filter(name -> StringUtils.getFilenameExtension(name).equals(inputExtension))
+            .map(name -> containerDataDir.resolve(Paths.get("input", name)))
+            .collect(Collectors.toList());
+
+        Path containerTempDir = Paths.get("/tmp");
+
+        configurer
+            .image(imageName)
+            .volume(partitionInputDir, containerDataDir.resolve("input"), true)
+            .volume(partitionOutputDir, containerDataDir.resolve("output"))
+            .volume(workDir.resolve(optionsFileName), containerDataDir.resolve("options.conf"), true)
+            .volume(workDir.resolve(mappingsFileName), containerDataDir.resolve("mappings.yml"), true)
+            .volume(workDir.resolve(classificationFileName), containerDataDir.resolve("classification.csv"), true)
+            .volume(containerTempDir)
+            // Set environment
+            .env("INPUT_FILE", pathJoiner.join(containerInputPaths))
+            .env("CONFIG_FILE", containerDataDir.resolve("options.conf"))
+            .env("MAPPINGS_FILE", containerDataDir.resolve("mappings.yml"))
+            .env("CLASSIFICATION_FILE", containerDataDir.resolve("classification.csv"))
+            .env("OUTPUT_DIR", containerDataDir.resolve("output"))
+            // Set resource limits
+            .memory(memoryLimit)
+            .memoryAndSwap(memorySwapLimit);
+    }
+
+    /**
+     * A tasklet to merge partial results (of partitions) into the output directory.
+     * <p>
+     * The transformed (N-TRIPLES) parts are concatenated followed by the classification output
+     * (which is identical for every part). The registration output (if any) is concatenated
+     * keeping the header of the first part only. The numeric fields of execution metadata are
+     * summed up.
+     */
+    @ConditionalOnProperty(name = "slipo.rpc-server.tools.triplegeo.flow", havingValue = "partition-if-needed")
+    @Bean("triplegeo.mergeOutputTasklet")
+    @JobScope
+    public Tasklet mergeOutputTasklet(
+        @Value("#{jobExecutionContext['inputFormat']}") String inputFormatName,
+        @Value("#{jobExecutionContext['inputFiles']}") List<String> inputFiles,
+        @Value("#{jobExecutionContext['outputFormat']}") String outputFormatName,
+        @Value("#{T(java.nio.file.Paths).get(jobExecutionContext['workDir'])}") Path workDir,
+        @Value("#{T(java.nio.file.Paths).get(jobExecutionContext['outputDir'])}") Path outputDir,
+        @Value("#{jobExecutionContext['numberOfPartitions'] ?: -1}") Integer numberOfPartitions)
+    {
+        Assert.isTrue(numberOfPartitions >= 2, "The number of partitions should be greater or equal to 2");
+
+        final EnumDataFormat inputFormat = EnumDataFormat.valueOf(inputFormatName);
+        final String inputNameExtension = inputFormat.getFilenameExtension();
+
+        final EnumDataFormat outputFormat = EnumDataFormat.valueOf(outputFormatName);
+        Assert.state(outputFormat == EnumDataFormat.N_TRIPLES,
+            "The given output format does not support concatenation of results!");
+
+        final List<String> inputNames = inputFiles.stream()
+            .filter(name -> StringUtils.getFilenameExtension(name).equals(inputNameExtension))
+            .collect(Collectors.mapping(StringUtils::stripFilenameExtension, Collectors.toList()));
+
+        final List<Path> partialOutputDirs = IntStream.rangeClosed(1, numberOfPartitions)
+            .mapToObj(i -> workDir.resolve(Paths.get("partitions", String.format("partition_%d", i), "output")))
+            .collect(Collectors.toList());
+
+        return new Tasklet()
+        {
+            @Override
+            public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext)
+                throws Exception
+            {
+                // The classification output does not depend on input, so pick it from 1st part
+
+                final Path firstOutputDir = partialOutputDirs.get(0);
+                final Path classificationFile = outputDir.resolve("classification.nt");
+                Files.copy(firstOutputDir.resolve("classification.nt"), classificationFile,
+                    StandardCopyOption.REPLACE_EXISTING);
+                if (Files.exists(firstOutputDir.resolve("classification_metadata.json"))) {
+                    Files.copy(firstOutputDir.resolve("classification_metadata.json"),
+                        outputDir.resolve("classification_metadata.json"), StandardCopyOption.REPLACE_EXISTING);
+                }
+
+                for (String inputName: inputNames) {
+                    // Concatenate transformed parts (in partition order) followed by classification
+                    try (FileChannel out = FileChannel.open(outputDir.resolve(inputName + ".nt"),
+                            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+                    {
+                        for (Path dir: partialOutputDirs) {
+                            FileConcatenator.transfer(dir.resolve(inputName + ".nt"), out);
+                        }
+                        appendClassification(out, classificationFile);
+                    }
+                    // Merge execution metadata
+                    mergeJsonFiles(
+                        Lists.transform(partialOutputDirs, dir -> dir.resolve(inputName + "_metadata.json")),
+                        outputDir.resolve(inputName + "_metadata.json"));
+                    // Concatenate registration output (if it exists)
+                    if (Files.exists(firstOutputDir.resolve(inputName + ".csv"))) {
+                        try (OutputStream out = Files.newOutputStream(outputDir.resolve(inputName + ".csv"))) {
+                            Files.copy(firstOutputDir.resolve(inputName + ".csv"), out);
+                            for (Path dir: partialOutputDirs.subList(1, partialOutputDirs.size())) {
+                                copySkippingFirstLine(dir.resolve(inputName + ".csv"), out);
+                            }
+                        }
+                    }
+                }
+
+                return null;
+            }
+        };
+    }
+
+    @ConditionalOnProperty(name = "slipo.rpc-server.tools.triplegeo.flow", havingValue = "partition-if-needed")
+    @Bean("triplegeo.mergeOutputStep")
+    public Step mergeOutputStep(@Qualifier("triplegeo.mergeOutputTasklet") Tasklet tasklet)
+        throws Exception
+    {
+        return stepBuilderFactory.get("triplegeo.mergeOutput")
+            .tasklet(tasklet).build();
+    }
+
+    private static void copySkippingFirstLine(Path source, OutputStream out) throws IOException
+    {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(source))) {
+            int c;
+            while ((c = in.read()) >= 0 && c != '\n');
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                out.write(buf, 0, n);
+            }
+        }
+    }
+
+    /**
+     * Append classification output (preceded by a comment line) to the current position of a channel
+     * holding an N-TRIPLES document.
+     */
+    private static void appendClassification(FileChannel out, Path classificationFile) throws IOException
+    {
+        final long size = out.size();
+
+        // Ensure that the comment starts on a line of its own
+
+        boolean needsNewline = false;
+        if (size > 0) {
+            ByteBuffer lastByte = ByteBuffer.allocate(1);
+            out.read(lastByte, size - 1);
+            needsNewline = lastByte.get(0) != '\n';
+        }
+
+        out.write(ByteBuffer.wrap(((needsNewline? "\n" : "") + "# Classification\n").getBytes()));
+        FileConcatenator.transfer(classificationFile, out);
+    }
+
+    /**
+     * A tasklet to append classification output to the transformation result.
+     * <p>
+     * The classification triples are appended in place (N-TRIPLES statements are unordered), so
+     * the (possibly large) transformed output is neither read nor rewritten. The original size of
+     * each result is kept in the step execution context, so that a restarted step truncates a
+     * result to its original size before appending again.
      */
     @Bean("triplegeo.concatenateOutputTasklet")
     @JobScope
@@ -375,7 +805,6 @@ public class TriplegeoJobConfiguration extends ContainerBasedJobConfiguration
             .collect(Collectors.mapping(StringUtils::stripFilenameExtension, Collectors.toList()));
 
         final Path classificationFile = outputDir.resolve("classification.nt");
-        final Path tmpDir = outputDir;
 
         return new Tasklet()
         {
@@ -383,21 +812,24 @@ public class TriplegeoJobConfiguration extends ContainerBasedJobConfiguration
             public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext)
                 throws Exception
             {
-                // Concatenate each result with classification output
+                ExecutionContext executionContext =
+                    chunkContext.getStepContext().getStepExecution().getExecutionContext();
+
+                // Append classification output to each result
 
                 for (String inputName: inputNames) {
                     Path outputFile = outputDir.resolve(inputName + ".nt");
-                    Path resultFile = Files.createTempFile(tmpDir, null, null);
-                    // Concatenate
-                    try (OutputStream out = Files.newOutputStream(resultFile)) {
-                        out.write("# Classification\n".getBytes());
-                        Files.copy(classificationFile, out);
-                        out.write("# Transformed\n".getBytes());
-                        Files.copy(outputFile, out);
+                    String sizeKey = "originalSize." + inputName;
+                    try (FileChannel out = FileChannel.open(outputFile, StandardOpenOption.WRITE)) {
+                        if (executionContext.containsKey(sizeKey)) {
+                            // A previous attempt may have (partially) appended to this result
+                            out.truncate(executionContext.getLong(sizeKey));
+                        } else {
+                            executionContext.putLong(sizeKey, out.size());
+                        }
+                        out.position(out.size());
+                        appendClassification(out, classificationFile);
                     }
-                    // Replace original result
-                    Files.move(outputFile, outputDir.resolve(inputName + ".nt.orig"));
-                    Files.move(resultFile, outputFile);
                 }
 
                 return null;
@@ -484,8 +916,9 @@ public class TriplegeoJobConfiguration extends ContainerBasedJobConfiguration
     /**
      * Create flow for a job expecting and reading configuration via normal {@link JobParameters}.
      */
+    @ConditionalOnProperty(name = "slipo.rpc-server.tools.triplegeo.flow", havingValue = "simple", matchIfMissing = true)
     @Bean("triplegeo.flow")
-    public Flow flow(
+    public Flow simpleFlow(
         @Qualifier("triplegeo.configureStep") Step configureStep,
         @Qualifier("triplegeo.prepareWorkingDirectoryStep") Step prepareWorkingDirectoryStep,
         @Qualifier("triplegeo.createContainerStep") Step createContainerStep,
@@ -503,6 +936,56 @@ public class TriplegeoJobConfiguration extends ContainerBasedJobConfiguration
             .build();
     }
 
+    /**
+     * Create flow for a job expecting and reading configuration via normal {@link JobParameters}.
+     * <p>
+     * This is a flow branching to either a simple execution or a partitioning execution. The decision
+     * is based on the total size of the given input (and only CSV input is partitioned). A partitioning
+     * execution splits input into N parts, invokes N instances of Triplegeo, and merges partial results.
+     */
+    @ConditionalOnProperty(name = "slipo.rpc-server.tools.triplegeo.flow", havingValue = "partition-if-needed")
+    @Bean("triplegeo.flow")
+    public Flow partitioningFlow(
+        PartitioningDecisionFactors factors,
+        @Qualifier("triplegeo.configureStep") Step configureStep,
+        @Qualifier("triplegeo.prepareWorkingDirectoryStep") Step prepareWorkingDirectoryStep,
+        @Qualifier("triplegeo.examineIfPartitioningStep") Step examineIfPartitioningStep,
+        @Qualifier("triplegeo.flowDecider") JobExecutionDecider flowDecider,
+        /* steps that comprise the simple flow */
+        @Qualifier("triplegeo.createContainerStep") Step createContainerStep,
+        @Qualifier("triplegeo.runContainerStep") Step runContainerStep,
+        @Qualifier("triplegeo.concatenateOutputStep") Step concatenateOutputStep,
+        /* steps that comprise the partitioning flow */
+        @Qualifier("triplegeo.splitInputStep") Step splitInputStep,
+        @Qualifier("triplegeo.mergeOutputStep") Step mergeOutputStep,
+        /* steps common to both flows */
+        @Qualifier("triplegeo.linkToOutputStep") Step linkToOutputStep)
+    {
+        Flow simpleFlow = new FlowBuilder<SimpleFlow>("triplegeo.simpleFlow")
+            .start(createContainerStep)
+            .next(runContainerStep)
+            .next(concatenateOutputStep)
+            .next(linkToOutputStep)
+            .build();
+
+        Flow partitioningFlow = partitionedFlowBuilder("triplegeo")
+            .splitter(splitInputStep)
+            .container(this::configureContainerForPart)
+            .merger(mergeOutputStep, linkToOutputStep)
+            .retryLimit(factors.retryLimit)
+            .build();
+
+        return new FlowBuilder<Flow>("triplegeo.flow")
+            .start(configureStep)
+            .next(prepareWorkingDirectoryStep)
+            .next(examineIfPartitioningStep)
+            .next(flowDecider)
+                .on(FLOW_PARTITIONING).to(partitioningFlow)
+            .from(flowDecider)
+                .on("*").to(simpleFlow)
+            .build();
+    }
+
     @Bean("triplegeo.job")
     public Job job(@Qualifier("triplegeo.flow") Flow flow)
     {
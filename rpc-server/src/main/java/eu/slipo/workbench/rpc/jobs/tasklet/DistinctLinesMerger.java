@@ -0,0 +1,143 @@
+package eu.slipo.workbench.rpc.jobs.tasklet;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.util.Assert;
+
+/**
+ * Merge the (non-empty) distinct lines of a list of files into a single file.
+ * <p>
+ * If the input is larger than the bucket size, lines are first split into buckets (by hash) under
+ * a temporary directory, so that equal lines always fall into the same bucket. Then, each bucket is
+ * deduplicated in memory. So, the memory needed is bounded by the size of a bucket (not by the size
+ * of the entire input).
+ */
+public class DistinctLinesMerger
+{
+    /**
+     * The default size (in bytes) of input deduplicated in memory
+     */
+    public static final long DEFAULT_BUCKET_SIZE = 64 * 1024 * 1024L;
+
+    private final long bucketSize;
+
+    /**
+     * Create a merger
+     *
+     * @param bucketSize The approximate size (in bytes) of input deduplicated in memory
+     */
+    public DistinctLinesMerger(long bucketSize)
+    {
+        Assert.isTrue(bucketSize > 0, "Expected a positive bucket size");
+        this.bucketSize = bucketSize;
+    }
+
+    public DistinctLinesMerger()
+    {
+        this(DEFAULT_BUCKET_SIZE);
+    }
+
+    /**
+     * Merge a list of files into an output file. The output file is created (or truncated if it
+     * already exists).
+     *
+     * @param inputs A list of input files
+     * @param output The output file
+     * @param tempDir A directory for temporary files (created if needed)
+     */
+    public void merge(List<Path> inputs, Path output, Path tempDir) throws IOException
+    {
+        Assert.notNull(inputs, "Expected a list of input files");
+        Assert.notNull(output, "Expected a non-null output path");
+
+        long inputSize = 0;
+        for (Path input: inputs) {
+            inputSize += Files.size(input);
+        }
+
+        if (inputSize <= bucketSize) {
+            try (BufferedWriter writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+                writeDistinctLines(inputs, writer);
+            }
+            return;
+        }
+
+        // Split lines into buckets
+
+        final int numberOfBuckets = (int) ((inputSize + bucketSize - 1) / bucketSize);
+        final List<Path> buckets = new ArrayList<>(numberOfBuckets);
+        Files.createDirectories(tempDir);
+
+        try {
+            for (int i = 0; i < numberOfBuckets; i++) {
+                buckets.add(Files.createTempFile(tempDir, "bucket-", ".txt"));
+            }
+            final BufferedWriter[] writers = new BufferedWriter[numberOfBuckets];
+            try {
+                for (int i = 0; i < numberOfBuckets; i++) {
+                    writers[i] = Files.newBufferedWriter(buckets.get(i), StandardCharsets.UTF_8);
+                }
+                for (Path input: inputs) {
+                    try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+                        String line;
+                        while ((line = reader.readLine()) != null) {
+                            if (line.isEmpty())
+                                continue;
+                            final BufferedWriter writer =
+                                writers[Math.floorMod(line.hashCode(), numberOfBuckets)];
+                            writer.write(line);
+                            writer.newLine();
+                        }
+                    }
+                }
+            } finally {
+                for (BufferedWriter writer: writers) {
+                    if (writer != null)
+                        writer.close();
+                }
+            }
+
+            // Deduplicate each bucket
+
+            try (BufferedWriter writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+                for (Path bucket: buckets) {
+                    writeDistinctLines(Collections.singletonList(bucket), writer);
+                }
+            }
+        } finally {
+            for (Path bucket: buckets) {
+                Files.deleteIfExists(bucket);
+            }
+        }
+    }
+
+    /**
+     * Write the (non-empty) distinct lines of a list of files, deduplicating in memory
+     */
+    private static void writeDistinctLines(List<Path> inputs, BufferedWriter writer)
+        throws IOException
+    {
+        final Set<String> seen = new HashSet<>();
+        for (Path input: inputs) {
+            try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isEmpty() && seen.add(line)) {
+                        writer.write(line);
+                        writer.newLine();
+                    }
+                }
+            }
+        }
+    }
+}
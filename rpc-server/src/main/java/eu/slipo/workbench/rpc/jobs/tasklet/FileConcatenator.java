@@ -0,0 +1,210 @@
+package eu.slipo.workbench.rpc.jobs.tasklet;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * Concatenate files by transferring data between file channels (so that, where supported, data
+ * is copied by the kernel and never passes through user space).
+ * <p>
+ * If a parallelism greater than 1 is requested, the output is pre-sized and each input is
+ * transferred at its precomputed offset by one of (at most) <tt>parallelism</tt> workers running on
+ * a given executor. This pays off on filesystems which serve concurrent positional writes
+ * efficiently (e.g. NFS or other network filesystems), and should not be used for filesystems which
+ * do not support sparse files.
+ * <p>
+ * If compression is requested, the output is written (sequentially) as a GZIP stream.
+ */
+public class FileConcatenator
+{
+    private static final Logger logger = LoggerFactory.getLogger(FileConcatenator.class);
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private final int parallelism;
+
+    private final boolean compress;
+
+    private final ExecutorService executor;
+
+    /**
+     * Create a concatenator
+     *
+     * @param parallelism The maximum number of inputs to be transferred concurrently
+     * @param compress A flag to indicate that output should be GZIP-compressed
+     * @param executor The executor to transfer inputs on. This is not owned by the concatenator
+     *   (i.e. it is never shut down), so it can be shared among concatenators.
+     */
+    public FileConcatenator(int parallelism, boolean compress, ExecutorService executor)
+    {
+        Assert.isTrue(parallelism > 0, "Expected a positive level of parallelism");
+        Assert.isTrue(parallelism == 1 || executor != null, "An executor is required for parallel transfers");
+        this.parallelism = parallelism;
+        this.compress = compress;
+        this.executor = executor;
+    }
+
+    /**
+     * Create a concatenator that always transfers input sequentially
+     *
+     * @param compress A flag to indicate that output should be GZIP-compressed
+     */
+    public FileConcatenator(boolean compress)
+    {
+        this(1, compress, null);
+    }
+
+    public FileConcatenator()
+    {
+        this(false);
+    }
+
+    /**
+     * Concatenate a list of files into an output file. The output file is created (or truncated
+     * if it already exists).
+     *
+     * @param input A list of input files
+     * @param output The output file
+     * @return the number of bytes read from input
+     */
+    public long concatenate(List<Path> input, Path output) throws IOException
+    {
+        Assert.notEmpty(input, "Expected a non-empty list of input files");
+        Assert.notNull(output, "Expected a non-null output path");
+
+        if (compress)
+            return concatenateCompressed(input, output);
+        else if (parallelism > 1 && input.size() > 1)
+            return concatenateInParallel(input, output);
+
+        long size = 0L;
+        try (FileChannel out = FileChannel.open(output,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            for (Path path: input)
+                size += transfer(path, out);
+        }
+        return size;
+    }
+
+    /**
+     * Transfer the entire content of a file to (the current position of) a channel
+     *
+     * @param source The source file
+     * @param target A writable channel
+     * @return the number of bytes transferred
+     */
+    public static long transfer(Path source, FileChannel target) throws IOException
+    {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+            final long size = in.size();
+            long position = 0L;
+            while (position < size) {
+                long n = in.transferTo(position, size - position, target);
+                if (n <= 0)
+                    throw new IOException("Unexpected end of input: " + source);
+                position += n;
+            }
+            return size;
+        }
+    }
+
+    private long concatenateCompressed(List<Path> input, Path output) throws IOException
+    {
+        long size = 0L;
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(output), BUFFER_SIZE)) {
+            for (Path path: input)
+                size += Files.copy(path, out);
+        }
+        return size;
+    }
+
+    private long concatenateInParallel(List<Path> input, Path output) throws IOException
+    {
+        final int n = input.size();
+
+        // Compute the offset of each input into output
+
+        final long[] offsets = new long[n + 1];
+        for (int i = 0; i < n; i++)
+            offsets[i + 1] = offsets[i] + Files.size(input.get(i));
+        final long size = offsets[n];
+
+        // Pre-size the output, so that every part can be written at its offset
+
+        try (FileChannel out = FileChannel.open(output,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            if (size > 0)
+                out.write(ByteBuffer.wrap(new byte[1]), size - 1);
+        }
+
+        // Start (at most) parallelism workers, each taking the next input not yet transferred
+
+        final int numberOfWorkers = Math.min(parallelism, n);
+        final AtomicInteger next = new AtomicInteger(0);
+        final List<Future<?>> futures = new ArrayList<>(numberOfWorkers);
+        try {
+            for (int k = 0; k < numberOfWorkers; k++) {
+                futures.add(executor.submit(() -> {
+                    int i;
+                    while ((i = next.getAndIncrement()) < n) {
+                        if (Thread.currentThread().isInterrupted())
+                            throw new InterruptedIOException("Interrupted while concatenating into " + output);
+                        transfer(input.get(i), output, offsets[i], offsets[i + 1] - offsets[i]);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future: futures)
+                future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while concatenating into " + output, ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            throw (cause instanceof IOException)? ((IOException) cause) : new IOException(cause);
+        } finally {
+            // The executor is shared: cancel only our own (pending or running) workers
+            for (Future<?> future: futures)
+                future.cancel(true);
+        }
+
+        logger.debug("Concatenated {} files ({} bytes) into {} using {} threads",
+            n, size, output, numberOfWorkers);
+        return size;
+    }
+
+    private static void transfer(Path source, Path target, long offset, long length) throws IOException
+    {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE))
+        {
+            Assert.state(in.size() == length, "The size of input has changed: " + source);
+            long position = 0L;
+            while (position < length) {
+                long n = out.transferFrom(in, offset + position, length - position);
+                if (n <= 0)
+                    throw new IOException("Unexpected end of input: " + source);
+                position += n;
+            }
+        }
+    }
+}
@@ -0,0 +1,504 @@
+package eu.slipo.workbench.rpc.jobs.tasklet;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.commons.codec.binary.Hex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * Download a URL to a local file.
+ * <p>
+ * Data is written to a <tt>.part</tt> file (next to the target), which is moved to the target
+ * when complete. If the server supports byte ranges (<tt>Accept-Ranges: bytes</tt>), a download
+ * resumes from an existing <tt>.part</tt> file left by a previous (failed or interrupted) attempt.
+ * A resumed request carries an <tt>If-Range</tt> header, so that a modified remote entity is
+ * downloaded again from the beginning.
+ * <p>
+ * A large download may be split into a number of ranges fetched in parallel (see
+ * {@link #FileDownloader(int, long, ExecutorService)}). In this case, completed ranges are recorded
+ * in a sidecar <tt>.part.ranges</tt> file, and only incomplete ranges are fetched on resume. Ranges
+ * are fetched on a given executor, which may be shared by concurrent downloads (so the total number
+ * of connections is bounded by the size of its pool).
+ * <p>
+ * Connect and read timeouts apply to every connection, regardless of the protocol.
+ * <p>
+ * The SHA-256 checksum is computed while data is transferred (for a sequential download), so
+ * the downloaded file is never read again.
+ */
+public class FileDownloader
+{
+    private static final Logger logger = LoggerFactory.getLogger(FileDownloader.class);
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    public static final String PART_SUFFIX = ".part";
+
+    public static final String RANGES_SUFFIX = ".ranges";
+
+    public static final int DEFAULT_CONNECT_TIMEOUT = 30 * 1000;
+
+    public static final int DEFAULT_READ_TIMEOUT = 120 * 1000;
+
+    /**
+     * Metadata for a remote entity (as reported by a <tt>HEAD</tt> request)
+     */
+    public static class RemoteEntity
+    {
+        private final long length;
+
+        private final String etag;
+
+        private final String lastModified;
+
+        private final boolean acceptsRanges;
+
+        private RemoteEntity(long length, String etag, String lastModified, boolean acceptsRanges)
+        {
+            this.length = length;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.acceptsRanges = acceptsRanges;
+        }
+
+        private static final RemoteEntity UNKNOWN = new RemoteEntity(-1L, null, null, false);
+
+        /**
+         * The content length, or <tt>-1</tt> if unknown
+         */
+        public long getLength()
+        {
+            return length;
+        }
+
+        public String getEtag()
+        {
+            return etag;
+        }
+
+        public String getLastModified()
+        {
+            return lastModified;
+        }
+
+        public boolean acceptsRanges()
+        {
+            return acceptsRanges;
+        }
+
+        /**
+         * Get a validator identifying this version of the remote entity. A strong ETag is preferred
+         * over a Last-Modified date.
+         *
+         * @return a validator, or <tt>null</tt> if the entity cannot be validated
+         */
+        public String getValidator()
+        {
+            if (etag != null && !etag.startsWith("W/"))
+                return etag;
+            return lastModified;
+        }
+    }
+
+    /**
+     * The outcome of a download
+     */
+    public static class Result
+    {
+        private final long size;
+
+        private final long transferred;
+
+        private final String checksum;
+
+        private Result(long size, long transferred, String checksum)
+        {
+            this.size = size;
+            this.transferred = transferred;
+            this.checksum = checksum;
+        }
+
+        /**
+         * The size of the downloaded file
+         */
+        public long getSize()
+        {
+            return size;
+        }
+
+        /**
+         * The number of bytes actually transferred (less than size, if resumed)
+         */
+        public long getTransferred()
+        {
+            return transferred;
+        }
+
+        /**
+         * The SHA-256 checksum (hex-encoded) of the downloaded file
+         */
+        public String getChecksum()
+        {
+            return checksum;
+        }
+    }
+
+    private final int parallelism;
+
+    private final long minRangeSize;
+
+    private final ExecutorService executor;
+
+    private int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+
+    private int readTimeout = DEFAULT_READ_TIMEOUT;
+
+    /**
+     * Create a downloader
+     *
+     * @param parallelism The maximum number of ranges (of a single download) to be fetched concurrently
+     * @param minRangeSize The minimum size of a range: a download is split into (at most)
+     *   <tt>length / minRangeSize</tt> ranges.
+     * @param executor The executor to fetch ranges on. This is not owned by the downloader (i.e.
+     *   it is never shut down), so it can be shared among downloaders.
+     */
+    public FileDownloader(int parallelism, long minRangeSize, ExecutorService executor)
+    {
+        Assert.isTrue(parallelism > 0, "Expected a positive level of parallelism");
+        Assert.isTrue(minRangeSize > 0, "Expected a positive range size");
+        Assert.isTrue(parallelism == 1 || executor != null, "An executor is required for parallel ranges");
+        this.parallelism = parallelism;
+        this.minRangeSize = minRangeSize;
+        this.executor = executor;
+    }
+
+    /**
+     * Create a downloader that always downloads sequentially
+     */
+    public FileDownloader()
+    {
+        this(1, Long.MAX_VALUE, null);
+    }
+
+    public void setConnectTimeout(int connectTimeout)
+    {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public void setReadTimeout(int readTimeout)
+    {
+        this.readTimeout = readTimeout;
+    }
+
+    private static boolean isHttp(URL url)
+    {
+        return url.getProtocol().equals("http") || url.getProtocol().equals("https");
+    }
+
+    /**
+     * Probe a remote entity. For non-HTTP URLs, nothing is known in advance.
+     */
+    public RemoteEntity probe(URL url) throws IOException
+    {
+        if (!isHttp(url))
+            return RemoteEntity.UNKNOWN;
+
+        HttpURLConnection conn = openHttpConnection(url);
+        try {
+            conn.setRequestMethod("HEAD");
+            if (conn.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                logger.warn("Cannot probe {}: HEAD responded with {}", url, conn.getResponseCode());
+                return RemoteEntity.UNKNOWN;
+            }
+            return new RemoteEntity(
+                conn.getContentLengthLong(),
+                conn.getHeaderField("ETag"),
+                conn.getHeaderField("Last-Modified"),
+                "bytes".equalsIgnoreCase(conn.getHeaderField("Accept-Ranges")));
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    /**
+     * Download a URL to a target file
+     *
+     * @param url The URL to download from
+     * @param entity The metadata of the remote entity (see {@link #probe(URL)})
+     * @param target The target file
+     */
+    public Result download(URL url, RemoteEntity entity, Path target) throws IOException
+    {
+        Assert.notNull(url, "Expected a non-null URL");
+        Assert.notNull(entity, "Expected metadata for the remote entity");
+        Assert.notNull(target, "Expected a non-null target");
+
+        final Path part = target.resolveSibling(target.getFileName() + PART_SUFFIX);
+        final long length = entity.getLength();
+
+        final int n = (length > 0)? (int) Math.min(parallelism, length / minRangeSize) : 1;
+
+        Result result = null;
+        if (isHttp(url) && entity.acceptsRanges() && entity.getValidator() != null && n > 1)
+            result = downloadInRanges(url, entity, part, n);
+        else
+            result = downloadSequentially(url, entity, part);
+
+        Files.move(part, target, StandardCopyOption.REPLACE_EXISTING);
+        return result;
+    }
+
+    private Result downloadSequentially(URL url, RemoteEntity entity, Path part) throws IOException
+    {
+        final MessageDigest md = newMessageDigest();
+
+        final boolean resumable =
+            isHttp(url) && entity.acceptsRanges() && entity.getValidator() != null;
+
+        // Check if a previous attempt has left a partial download. A part left by a download in
+        // ranges is not contiguous, so it cannot be resumed sequentially.
+
+        if (Files.deleteIfExists(rangesFileFor(part)))
+            Files.deleteIfExists(part);
+
+        long offset = 0L;
+        if (resumable && Files.exists(part)) {
+            offset = Files.size(part);
+            if (entity.getLength() > 0 && offset >= entity.getLength())
+                offset = 0L;
+        }
+
+        URLConnection conn = openConnection(url);
+        try {
+            if (offset > 0) {
+                conn.setRequestProperty("Range", "bytes=" + offset + "-");
+                conn.setRequestProperty("If-Range", entity.getValidator());
+            }
+            if (conn instanceof HttpURLConnection) {
+                int status = ((HttpURLConnection) conn).getResponseCode();
+                if (status == HttpURLConnection.HTTP_PARTIAL && offset > 0) {
+                    logger.info("Resuming download of {} from offset {}", url, offset);
+                } else if (status == HttpURLConnection.HTTP_OK) {
+                    offset = 0L;
+                } else {
+                    throw new IOException("Unexpected response status " + status + " from " + url);
+                }
+            }
+
+            try (FileChannel out = FileChannel.open(part,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE))
+            {
+                // Digest the part already downloaded, then append the rest
+                if (offset > 0)
+                    update(md, out, offset);
+                out.truncate(offset);
+                out.position(offset);
+
+                long transferred = 0L;
+                try (InputStream in = conn.getInputStream()) {
+                    byte[] buffer = new byte[BUFFER_SIZE];
+                    int r;
+                    while ((r = in.read(buffer)) > 0) {
+                        md.update(buffer, 0, r);
+                        out.write(ByteBuffer.wrap(buffer, 0, r));
+                        transferred += r;
+                    }
+                }
+
+                final long size = out.size();
+                if (entity.getLength() > 0 && size != entity.getLength())
+                    throw new IOException(String.format(
+                        "Incomplete download of %s: got %d of %d bytes", url, size, entity.getLength()));
+                return new Result(size, transferred, Hex.encodeHexString(md.digest()));
+            }
+        } finally {
+            if (conn instanceof HttpURLConnection)
+                ((HttpURLConnection) conn).disconnect();
+        }
+    }
+
+    private Result downloadInRanges(URL url, RemoteEntity entity, Path part, int n) throws IOException
+    {
+        final long length = entity.getLength();
+        final String validator = entity.getValidator();
+        final Path rangesFile = rangesFileFor(part);
+
+        // Compute ranges: range i covers [offsets[i], offsets[i + 1])
+
+        final long[] offsets = new long[n + 1];
+        for (int i = 0; i < n; i++)
+            offsets[i] = (length / n) * i;
+        offsets[n] = length;
+
+        // Find ranges completed by a previous attempt (if for the same version of the entity)
+
+        final Set<Integer> completed = Collections.synchronizedSet(new HashSet<>());
+        if (Files.exists(part) && Files.exists(rangesFile)) {
+            List<String> lines = Files.readAllLines(rangesFile, StandardCharsets.UTF_8);
+            if (!lines.isEmpty() && lines.get(0).equals(n + " " + validator)) {
+                for (String line: lines.subList(1, lines.size()))
+                    completed.add(Integer.valueOf(line.trim()));
+                logger.info("Resuming download of {}: {} of {} ranges are complete", url, completed.size(), n);
+            }
+        }
+        if (completed.isEmpty()) {
+            Files.write(rangesFile, Collections.singletonList(n + " " + validator), StandardCharsets.UTF_8);
+        }
+
+        try (RandomAccessFile f = new RandomAccessFile(part.toFile(), "rw")) {
+            f.setLength(length);
+        }
+
+        final List<Future<Long>> futures = new ArrayList<>(n);
+        long transferred = 0L;
+        try (BufferedWriter rangesWriter =
+                Files.newBufferedWriter(rangesFile, StandardCharsets.UTF_8, StandardOpenOption.APPEND))
+        {
+            for (int i = 0; i < n; i++) {
+                if (completed.contains(i))
+                    continue;
+                final int rangeIndex = i;
+                futures.add(executor.submit(() -> {
+                    long r = downloadRange(url, validator, part, offsets[rangeIndex], offsets[rangeIndex + 1]);
+                    synchronized (rangesWriter) {
+                        rangesWriter.write(String.valueOf(rangeIndex));
+                        rangesWriter.newLine();
+                        rangesWriter.flush();
+                    }
+                    return r;
+                }));
+            }
+            for (Future<Long> future: futures)
+                transferred += future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while downloading " + url, ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            throw (cause instanceof IOException)? ((IOException) cause) : new IOException(cause);
+        } finally {
+            // The executor is shared: cancel only our own (pending or running) ranges
+            for (Future<Long> future: futures)
+                future.cancel(true);
+        }
+
+        // Ranges arrive out of order, so the checksum is computed in a single pass at the end
+
+        final MessageDigest md = newMessageDigest();
+        try (FileChannel in = FileChannel.open(part, StandardOpenOption.READ)) {
+            update(md, in, length);
+        }
+
+        Files.deleteIfExists(rangesFile);
+        return new Result(length, transferred, Hex.encodeHexString(md.digest()));
+    }
+
+    private long downloadRange(URL url, String validator, Path part, long start, long end)
+        throws IOException
+    {
+        HttpURLConnection conn = openHttpConnection(url);
+        try {
+            conn.setRequestProperty("Range", String.format("bytes=%d-%d", start, end - 1));
+            conn.setRequestProperty("If-Range", validator);
+            int status = conn.getResponseCode();
+            if (status != HttpURLConnection.HTTP_PARTIAL)
+                throw new IOException(String.format(
+                    "Expected a partial response for range %d-%d of %s (got %d). " +
+                    "The remote entity may have changed", start, end - 1, url, status));
+
+            long position = start;
+            try (InputStream in = conn.getInputStream();
+                    FileChannel out = FileChannel.open(part, StandardOpenOption.WRITE))
+            {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int r;
+                while (position < end && (r = in.read(buffer, 0, (int) Math.min(buffer.length, end - position))) > 0) {
+                    ByteBuffer b = ByteBuffer.wrap(buffer, 0, r);
+                    while (b.hasRemaining())
+                        position += out.write(b, position);
+                }
+            }
+            if (position != end)
+                throw new IOException(String.format(
+                    "Incomplete range %d-%d of %s: stopped at %d", start, end - 1, url, position));
+            return end - start;
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    private static Path rangesFileFor(Path part)
+    {
+        return part.resolveSibling(part.getFileName().toString() + RANGES_SUFFIX);
+    }
+
+    /**
+     * Open a connection (of any protocol, e.g. <tt>file:</tt> or <tt>ftp:</tt>) with our timeouts
+     */
+    private URLConnection openConnection(URL url) throws IOException
+    {
+        URLConnection conn = url.openConnection();
+        conn.setConnectTimeout(connectTimeout);
+        conn.setReadTimeout(readTimeout);
+        if (conn instanceof HttpURLConnection)
+            ((HttpURLConnection) conn).setInstanceFollowRedirects(true);
+        return conn;
+    }
+
+    private HttpURLConnection openHttpConnection(URL url) throws IOException
+    {
+        return (HttpURLConnection) openConnection(url);
+    }
+
+    /**
+     * Update a digest with the first <tt>length</tt> bytes of a channel
+     */
+    private static void update(MessageDigest md, FileChannel in, long length) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long position = 0L;
+        while (position < length) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), length - position));
+            int r = in.read(buffer, position);
+            if (r <= 0)
+                throw new IOException("Unexpected end of file");
+            buffer.flip();
+            md.update(buffer);
+            position += r;
+        }
+    }
+
+    private static MessageDigest newMessageDigest()
+    {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
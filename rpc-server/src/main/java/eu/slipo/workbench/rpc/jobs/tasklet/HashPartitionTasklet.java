@@ -0,0 +1,220 @@
+package eu.slipo.workbench.rpc.jobs.tasklet;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.util.Assert;
+
+/**
+ * A tasklet that partitions N-Triples files by hashing the subject of their triples.
+ * <p>
+ * An input file is streamed once, and every triple is routed to a partition based on the hash of
+ * the root of its subject. A subject is its own root, unless it was first seen as the object of
+ * another triple (e.g. the geometry node or the address node of a feature): such a nested node
+ * follows the root of the subject referencing it. So, a feature and all its nested nodes end up
+ * in the same partition, regardless of the order of their triples in the input (they need not be
+ * contiguous) or of their number.
+ * <p>
+ * The partition of a node is fixed when the node is first seen (either as subject or as object)
+ * and is kept for all input files; so, memory is proportional to the number of distinct nodes.
+ * <p>
+ * For each input file <tt>x</tt>, the i-th part (1-based) is written as
+ * <tt>partition_i/input/x</tt> (relative to the target directory). A part is always created, even
+ * if it receives no triples.
+ */
+public class HashPartitionTasklet implements Tasklet
+{
+    private static final Logger logger = LoggerFactory.getLogger(HashPartitionTasklet.class);
+
+    private static final FileAttribute<?> DIRECTORY_ATTRIBUTE =
+        PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwxr-xr-x"));
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public static class Builder
+    {
+        private List<Path> input = Collections.emptyList();
+
+        private Path targetDir;
+
+        private int numberOfParts = -1;
+
+        /**
+         * Set the input files to be partitioned
+         * @param paths A list of absolute paths
+         */
+        public Builder input(List<Path> paths)
+        {
+            Assert.notEmpty(paths, "Expected a non-empty list of paths");
+            Assert.isTrue(paths.stream().allMatch(Path::isAbsolute), "Expected a list of absolute paths");
+            this.input = new ArrayList<>(paths);
+            return this;
+        }
+
+        /**
+         * Set the directory under which per-partition directories will be created
+         * @param dir
+         */
+        public Builder targetDirectory(Path dir)
+        {
+            Assert.notNull(dir, "Expected a non-null directory");
+            Assert.isTrue(dir.isAbsolute(), "Expected an absolute path as target directory");
+            this.targetDir = dir;
+            return this;
+        }
+
+        public Builder numberOfParts(int n)
+        {
+            Assert.isTrue(n > 0, "Expected a positive number of parts");
+            this.numberOfParts = n;
+            return this;
+        }
+
+        public HashPartitionTasklet build()
+        {
+            Assert.state(targetDir != null, "The target directory must be specified");
+            Assert.state(!input.isEmpty(), "The input must be specified");
+            Assert.state(numberOfParts > 0, "The number of parts must be specified");
+
+            return new HashPartitionTasklet(input, targetDir, numberOfParts);
+        }
+    }
+
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    public static class Keys
+    {
+        public static final String NUMBER_OF_PARTS = "numberOfParts";
+
+        public static final String NUMBER_OF_TRIPLES = "numberOfTriples";
+
+        public static final String DURATION = "duration";
+    }
+
+    private final List<Path> input;
+
+    private final Path targetDir;
+
+    private final int numberOfParts;
+
+    private HashPartitionTasklet(List<Path> input, Path targetDir, int numberOfParts)
+    {
+        this.input = input;
+        this.targetDir = targetDir;
+        this.numberOfParts = numberOfParts;
+    }
+
+    /**
+     * Resolve the path of the i-th part (1-based) for a given file name
+     */
+    private Path resolvePart(int i, Path fileName) throws IOException
+    {
+        Path dir = targetDir.resolve(Paths.get(String.format("partition_%d", i), "input"));
+        Files.createDirectories(dir, DIRECTORY_ATTRIBUTE);
+        return dir.resolve(fileName);
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext)
+        throws Exception
+    {
+        ExecutionContext executionContext =
+            chunkContext.getStepContext().getStepExecution().getExecutionContext();
+
+        final long startTime = System.currentTimeMillis();
+
+        final Map<String, Integer> partitionByNode = new HashMap<>();
+
+        long numberOfTriples = 0;
+        for (Path path: input) {
+            numberOfTriples += partition(path, partitionByNode);
+        }
+
+        final long duration = System.currentTimeMillis() - startTime;
+        logger.info("Partitioned {} triples of {} file(s) into {} parts in {}ms",
+            numberOfTriples, input.size(), numberOfParts, duration);
+
+        executionContext.putInt(Keys.NUMBER_OF_PARTS, numberOfParts);
+        executionContext.putLong(Keys.NUMBER_OF_TRIPLES, numberOfTriples);
+        executionContext.putLong(Keys.DURATION, duration);
+
+        return RepeatStatus.FINISHED;
+    }
+
+    /**
+     * Partition an input file. Comments and empty lines are skipped.
+     *
+     * @param path The input file
+     * @param partitionByNode The partition (0-based) of every node seen so far; it is updated with
+     *   the nodes of this file
+     * @return the number of triples read
+     */
+    private long partition(Path path, Map<String, Integer> partitionByNode) throws IOException
+    {
+        final Path fileName = path.getFileName();
+        final Writer[] writers = new Writer[numberOfParts];
+
+        long numberOfTriples = 0;
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8))
+        {
+            for (int i = 0; i < numberOfParts; i++) {
+                writers[i] = new BufferedWriter(
+                    Files.newBufferedWriter(resolvePart(i + 1, fileName), StandardCharsets.UTF_8),
+                    BUFFER_SIZE);
+            }
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String subject = NTriplesRecordReader.subjectOf(line);
+                if (subject == null)
+                    continue;
+                final Integer partition = partitionByNode.computeIfAbsent(subject, this::partitionOf);
+                final String object = NTriplesRecordReader.objectNodeOf(line, subject);
+                if (object != null)
+                    partitionByNode.putIfAbsent(object, partition);
+                final Writer writer = writers[partition];
+                writer.write(line);
+                writer.write('\n');
+                numberOfTriples++;
+            }
+        } finally {
+            for (Writer writer: writers) {
+                if (writer != null)
+                    writer.close();
+            }
+        }
+
+        return numberOfTriples;
+    }
+
+    /**
+     * Get the partition (0-based) of a root subject
+     */
+    private int partitionOf(String subject)
+    {
+        return Math.floorMod(subject.hashCode(), numberOfParts);
+    }
+}
@@ -0,0 +1,442 @@
+package eu.slipo.workbench.rpc.jobs.tasklet;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import eu.slipo.workbench.rpc.service.FileLinkUtils;
+
+/**
+ * Stage input files into a (flat) input directory, unpacking archives and decompressing
+ * compressed input on the way.
+ * <p>
+ * The format of an input is detected from its leading (magic) bytes, not from its name. Entries
+ * of a ZIP archive are extracted in parallel (each worker reads from its own {@link ZipFile} handle),
+ * while GZIP, BZIP2 and TAR input (or any combination, e.g. <tt>.tar.gz</tt>) is decompressed as a
+ * stream. Plain input is hard-linked (falling back to copying).
+ * <p>
+ * Archive entries are always extracted discarding their directory prefix (if any). Since the target
+ * directory is flat, a name that is already staged (by this stager) is disambiguated by a numeric
+ * suffix (e.g. <tt>a.csv</tt>, <tt>a-1.csv</tt>). An existing file with the same name (e.g. left
+ * from a previous run) is replaced, so staging into the same directory again is safe.
+ * <p>
+ * An instance keeps track of staged names, so it is meant to serve a single target directory.
+ */
+public class InputStager
+{
+    private static final Logger logger = LoggerFactory.getLogger(InputStager.class);
+
+    /**
+     * The size of buffers used for copying decompressed data
+     */
+    public static final int BUFFER_SIZE = 1024 * 1024;
+
+    public static final int DEFAULT_PARALLELISM = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+    /**
+     * The number of leading bytes needed to detect a format (the TAR magic resides at offset 257)
+     */
+    private static final int MAGIC_LENGTH = 265;
+
+    private static final int TAR_MAGIC_OFFSET = 257;
+
+    public enum Format
+    {
+        ZIP,
+        GZIP,
+        BZIP2,
+        TAR,
+        PLAIN;
+
+        /**
+         * Detect format from the leading bytes of a file
+         *
+         * @param header A prefix of the file contents (may be shorter than needed)
+         * @param length The number of valid bytes in header
+         */
+        public static Format detect(byte[] header, int length)
+        {
+            if (length >= 4 && header[0] == 'P' && header[1] == 'K' &&
+                    ((header[2] == 3 && header[3] == 4) || (header[2] == 5 && header[3] == 6)))
+                return ZIP;
+            if (length >= 2 && (header[0] & 0xff) == 0x1f && (header[1] & 0xff) == 0x8b)
+                return GZIP;
+            if (length >= 3 && header[0] == 'B' && header[1] == 'Z' && header[2] == 'h')
+                return BZIP2;
+            if (length >= TAR_MAGIC_OFFSET + 5 &&
+                    "ustar".equals(new String(header, TAR_MAGIC_OFFSET, 5, StandardCharsets.US_ASCII)))
+                return TAR;
+            return PLAIN;
+        }
+
+        public static Format detect(Path path) throws IOException
+        {
+            try (InputStream in = Files.newInputStream(path)) {
+                byte[] header = new byte[MAGIC_LENGTH];
+                return detect(header, readFully(in, header));
+            }
+        }
+    }
+
+    /**
+     * The outcome of staging a single input
+     */
+    public static class Result
+    {
+        private final Path source;
+
+        private final Format format;
+
+        private final List<String> names;
+
+        private final long size;
+
+        private final long duration;
+
+        private Result(Path source, Format format, List<String> names, long size, long duration)
+        {
+            this.source = source;
+            this.format = format;
+            this.names = Collections.unmodifiableList(names);
+            this.size = size;
+            this.duration = duration;
+        }
+
+        public Path getSource()
+        {
+            return source;
+        }
+
+        public Format getFormat()
+        {
+            return format;
+        }
+
+        /**
+         * The names of files (relative to target directory) staged from this input
+         */
+        public List<String> getNames()
+        {
+            return names;
+        }
+
+        /**
+         * The number of bytes written to target directory (or linked into it)
+         */
+        public long getSize()
+        {
+            return size;
+        }
+
+        /**
+         * The staging time in milliseconds
+         */
+        public long getDuration()
+        {
+            return duration;
+        }
+    }
+
+    private final int parallelism;
+
+    /**
+     * The names already staged into the target directory
+     */
+    private final Set<String> stagedNames = new HashSet<>();
+
+    public InputStager(int parallelism)
+    {
+        Assert.isTrue(parallelism > 0, "Expected a positive level of parallelism");
+        this.parallelism = parallelism;
+    }
+
+    public InputStager()
+    {
+        this(DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * Stage an input file into a target directory.
+     *
+     * @param source The input file
+     * @param targetDir The target directory (expected to exist)
+     * @param unpack A flag indicating whether archives (or compressed files) should be unpacked. If
+     *   not set, the input is staged as is.
+     */
+    public Result stage(Path source, Path targetDir, boolean unpack) throws IOException
+    {
+        Assert.notNull(source, "Expected a non-null source path");
+        Assert.notNull(targetDir, "Expected a non-null target directory");
+
+        final long startTime = System.currentTimeMillis();
+        final Format format = unpack? Format.detect(source) : Format.PLAIN;
+        final List<String> names = new ArrayList<>();
+
+        long size = 0L;
+        switch (format) {
+        case ZIP:
+            size = extractZip(source, targetDir, names);
+            break;
+        case GZIP:
+        case BZIP2:
+        case TAR:
+            try (InputStream in = openStream(source, format)) {
+                size = extractStream(in, stripCompressionExtension(source, format), targetDir, names);
+            }
+            break;
+        case PLAIN:
+        default:
+            {
+                String name = allocateName(source.getFileName().toString());
+                Files.deleteIfExists(targetDir.resolve(name));
+                FileLinkUtils.linkOrCopy(source, targetDir.resolve(name));
+                names.add(name);
+                size = Files.size(source);
+            }
+            break;
+        }
+
+        final long duration = System.currentTimeMillis() - startTime;
+        logger.info("Staged {} ({}) as {} file(s) of {} bytes in {}ms",
+            source, format, names.size(), size, duration);
+        return new Result(source, format, names, size, duration);
+    }
+
+    private static InputStream openStream(Path source, Format format) throws IOException
+    {
+        InputStream in = new BufferedInputStream(Files.newInputStream(source), BUFFER_SIZE);
+        try {
+            switch (format) {
+            case GZIP:
+                return new GZIPInputStream(in, BUFFER_SIZE);
+            case BZIP2:
+                return new BZip2CompressorInputStream(in, true);
+            default:
+                return in;
+            }
+        } catch (IOException ex) {
+            in.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Extract a (possibly decompressed) stream: if the stream is a TAR archive, extract its regular
+     * entries, else write it as a single file.
+     *
+     * @param in The input stream (decompressed if needed)
+     * @param name The name of the target file, if the stream is not an archive
+     */
+    private long extractStream(InputStream in, String name, Path targetDir, List<String> names)
+        throws IOException
+    {
+        final BufferedInputStream bin = new BufferedInputStream(in, BUFFER_SIZE);
+
+        bin.mark(MAGIC_LENGTH);
+        byte[] header = new byte[MAGIC_LENGTH];
+        final Format format = Format.detect(header, readFully(bin, header));
+        bin.reset();
+
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        long size = 0L;
+
+        if (format == Format.TAR) {
+            TarArchiveInputStream tar = new TarArchiveInputStream(bin);
+            TarArchiveEntry entry;
+            while ((entry = tar.getNextTarEntry()) != null) {
+                if (!entry.isFile())
+                    continue;
+                String targetName = allocateName(Paths.get(entry.getName()).getFileName().toString());
+                size += copy(tar, targetDir.resolve(targetName), buffer);
+                names.add(targetName);
+            }
+        } else {
+            String targetName = allocateName(name);
+            size = copy(bin, targetDir.resolve(targetName), buffer);
+            names.add(targetName);
+        }
+
+        return size;
+    }
+
+    /**
+     * Extract all (non-directory) entries of a ZIP archive. Entries are divided among a number of
+     * workers, each one holding its own handle to the archive.
+     */
+    private long extractZip(Path source, Path targetDir, List<String> names) throws IOException
+    {
+        final List<String> entryNames = new ArrayList<>();
+        try (ZipFile zipfile = new ZipFile(source.toFile())) {
+            Enumeration<? extends ZipEntry> entries = zipfile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry e = entries.nextElement();
+                if (!e.isDirectory())
+                    entryNames.add(e.getName());
+            }
+        }
+
+        // Allocate target names upfront (workers only read from this map)
+
+        final Map<String, String> targetNameByEntryName = new HashMap<>();
+        for (String entryName: entryNames) {
+            String targetName = allocateName(Paths.get(entryName).getFileName().toString());
+            targetNameByEntryName.put(entryName, targetName);
+            names.add(targetName);
+        }
+
+        final int n = Math.min(parallelism, entryNames.size());
+        if (n <= 1)
+            return extractZipEntries(source, entryNames, targetNameByEntryName, targetDir);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(n);
+        long size = 0L;
+        try {
+            List<Future<Long>> futures = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                final List<String> assigned = new ArrayList<>();
+                for (int j = i; j < entryNames.size(); j += n)
+                    assigned.add(entryNames.get(j));
+                futures.add(executor.submit(
+                    () -> extractZipEntries(source, assigned, targetNameByEntryName, targetDir)));
+            }
+            for (Future<Long> future: futures)
+                size += future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while extracting " + source, ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            throw (cause instanceof IOException)? ((IOException) cause) : new IOException(cause);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return size;
+    }
+
+    private static long extractZipEntries(
+            Path source, List<String> entryNames, Map<String, String> targetNameByEntryName, Path targetDir)
+        throws IOException
+    {
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        long size = 0L;
+        try (ZipFile zipfile = new ZipFile(source.toFile())) {
+            for (String entryName: entryNames) {
+                String name = targetNameByEntryName.get(entryName);
+                try (InputStream in = zipfile.getInputStream(zipfile.getEntry(entryName))) {
+                    size += copy(in, targetDir.resolve(name), buffer);
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Copy a stream to a target file, replacing an existing file. Note that an existing target is
+     * deleted (not truncated), since it may be a hard link to some input.
+     */
+    private static long copy(InputStream in, Path target, byte[] buffer) throws IOException
+    {
+        Files.deleteIfExists(target);
+
+        long size = 0L;
+        try (OutputStream out = Files.newOutputStream(target, StandardOpenOption.CREATE_NEW)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+                size += n;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Allocate a name (in the flat target directory) not already staged by this stager. A colliding
+     * name is given a numeric suffix before its extension, e.g. <tt>a.csv</tt> becomes <tt>a-1.csv</tt>.
+     */
+    private String allocateName(String name)
+    {
+        if (stagedNames.add(name))
+            return name;
+
+        final String extension = StringUtils.getFilenameExtension(name);
+        final String base = StringUtils.stripFilenameExtension(name);
+        for (int i = 1; ; i++) {
+            String candidate = extension == null?
+                String.format("%s-%d", base, i) : String.format("%s-%d.%s", base, i, extension);
+            if (stagedNames.add(candidate)) {
+                logger.warn("The name {} is already staged: staging as {}", name, candidate);
+                return candidate;
+            }
+        }
+    }
+
+    /**
+     * Determine the name of a decompressed file, e.g. <tt>a.csv.gz</tt> becomes <tt>a.csv</tt>
+     */
+    private static String stripCompressionExtension(Path source, Format format)
+    {
+        final String name = source.getFileName().toString();
+        final String extension = StringUtils.getFilenameExtension(name);
+        if (extension == null)
+            return name;
+
+        final List<String> extensions;
+        switch (format) {
+        case GZIP:
+            extensions = Arrays.asList("gz", "gzip", "tgz");
+            break;
+        case BZIP2:
+            extensions = Arrays.asList("bz2", "bzip2", "tbz2");
+            break;
+        default:
+            extensions = Collections.emptyList();
+            break;
+        }
+
+        final String ext = extension.toLowerCase();
+        if (!extensions.contains(ext))
+            return name;
+
+        final String base = StringUtils.stripFilenameExtension(name);
+        return ext.startsWith("t")? (base + ".tar") : base;
+    }
+
+    private static int readFully(InputStream in, byte[] buffer) throws IOException
+    {
+        int length = 0, n;
+        while (length < buffer.length && (n = in.read(buffer, length, buffer.length - length)) > 0)
+            length += n;
+        return length;
+    }
+}
@@ -0,0 +1,204 @@
+package eu.slipo.workbench.rpc.jobs.tasklet;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A reader that groups the triples of an N-Triples stream into records.
+ * <p>
+ * A record starts at a triple with a new subject (the root of the record), and extends to
+ * subsequent triples whose subject is either the root or a node referenced (as object) inside the
+ * record, e.g. the geometry node or the name node of a feature. This is the way Triplegeo writes its
+ * output, i.e. all triples describing a feature are contiguous.
+ * <p>
+ * Comments and empty lines are skipped.
+ */
+class NTriplesRecordReader implements Closeable
+{
+    /**
+     * The default maximum number of triples for a record. If exceeded, a new record is started
+     * (this guards against input not grouped by feature).
+     */
+    public static final int DEFAULT_MAX_RECORD_SIZE = 10000;
+
+    /**
+     * A group of contiguous triples describing a single entity
+     */
+    public static class Record
+    {
+        private final String subject;
+
+        private final List<String> lines;
+
+        private Record(String subject, List<String> lines)
+        {
+            this.subject = subject;
+            this.lines = Collections.unmodifiableList(lines);
+        }
+
+        /**
+         * The subject of the first triple (i.e. the root node) of this record
+         */
+        public String subject()
+        {
+            return subject;
+        }
+
+        public List<String> lines()
+        {
+            return lines;
+        }
+    }
+
+    private final BufferedReader reader;
+
+    private final int maxRecordSize;
+
+    /**
+     * The first line of the next record (already read from the underlying reader)
+     */
+    private String pendingLine;
+
+    private String pendingSubject;
+
+    public NTriplesRecordReader(BufferedReader reader)
+    {
+        this(reader, DEFAULT_MAX_RECORD_SIZE);
+    }
+
+    public NTriplesRecordReader(BufferedReader reader, int maxRecordSize)
+    {
+        this.reader = reader;
+        this.maxRecordSize = maxRecordSize;
+    }
+
+    /**
+     * Read the next record
+     *
+     * @return a record, or <tt>null</tt> if the end of the stream is reached
+     * @throws IOException
+     */
+    public Record read() throws IOException
+    {
+        String line = pendingLine, subject = pendingSubject;
+        pendingLine = pendingSubject = null;
+
+        if (line == null) {
+            // Find the first triple of this record
+            while ((line = reader.readLine()) != null && (subject = subjectOf(line)) == null);
+            if (line == null)
+                return null;
+        }
+
+        final String root = subject;
+        final List<String> lines = new ArrayList<>();
+        final Set<String> nodes = new HashSet<>();
+        nodes.add(root);
+
+        do {
+            lines.add(line);
+            String object = objectNodeOf(line, subject);
+            if (object != null)
+                nodes.add(object);
+            // Read next triple
+            while ((line = reader.readLine()) != null && (subject = subjectOf(line)) == null);
+            if (line == null)
+                break;
+            if (!nodes.contains(subject) || lines.size() >= maxRecordSize) {
+                pendingLine = line;
+                pendingSubject = subject;
+                break;
+            }
+        } while (true);
+
+        return new Record(root, lines);
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        reader.close();
+    }
+
+    /**
+     * Get the subject of a triple
+     *
+     * @param line A line of an N-Triples stream
+     * @return the subject (as an IRI enclosed in angle brackets, or a blank node label), or
+     *   <tt>null</tt> if the line is not a triple (e.g. is a comment)
+     */
+    public static String subjectOf(String line)
+    {
+        if (line.isEmpty())
+            return null;
+        if (line.charAt(0) == '<') {
+            int end = line.indexOf('>');
+            return end < 0? null : line.substring(0, end + 1);
+        } else if (line.startsWith("_:")) {
+            int end = line.indexOf(' ');
+            return end < 0? null : line.substring(0, end);
+        }
+        return null;
+    }
+
+    /**
+     * Get the predicate of a triple
+     *
+     * @param line A line of an N-Triples stream
+     * @param subject The subject of this line
+     * @return the predicate (an IRI enclosed in angle brackets), or <tt>null</tt> if malformed
+     */
+    public static String predicateOf(String line, String subject)
+    {
+        final int start = line.indexOf('<', subject.length());
+        final int end = start < 0? -1 : line.indexOf('>', start);
+        return end < 0? null : line.substring(start, end + 1);
+    }
+
+    /**
+     * Get the object of a triple, if it is a node (IRI or blank node)
+     *
+     * @param line A line of an N-Triples stream
+     * @param subject The subject of this line
+     * @return the object node, or <tt>null</tt> if object is a literal (or line is malformed)
+     */
+    public static String objectNodeOf(String line, String subject)
+    {
+        final String predicate = predicateOf(line, subject);
+        if (predicate == null)
+            return null;
+
+        final int start = line.indexOf(predicate, subject.length()) + predicate.length();
+        final String object = line.substring(start).trim();
+        if (object.startsWith("<")) {
+            int end = object.indexOf('>');
+            return end < 0? null : object.substring(0, end + 1);
+        } else if (object.startsWith("_:")) {
+            int end = object.indexOf(' ');
+            return end < 0? object : object.substring(0, end);
+        }
+        return null;
+    }
+
+    /**
+     * Get the lexical form of a literal object of a triple
+     *
+     * @param line A line of an N-Triples stream
+     * @param subject The subject of this line
+     * @param predicate The predicate of this line
+     * @return the (still escaped) lexical form, or <tt>null</tt> if object is not a literal
+     */
+    public static String literalOf(String line, String subject, String predicate)
+    {
+        final int start = line.indexOf(predicate, subject.length()) + predicate.length();
+        final String object = line.substring(start).trim();
+        final int end = object.lastIndexOf('"');
+        return (object.startsWith("\"") && end > 0)? object.substring(1, end) : null;
+    }
+}
@@ -1,11 +1,8 @@
 package eu.slipo.workbench.rpc.jobs.tasklet;
 
-import java.io.BufferedInputStream;
-import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileAlreadyExistsException;
-import java.nio.file.FileSystemException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -24,9 +21,6 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
 import java.util.Set;
-import java.util.stream.Collectors;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -74,8 +68,8 @@ public class PrepareWorkingDirectoryTasklet implements Tasklet, StepExecutionLis
     private static final String CONFIG_KEY_PATTERN = "^[a-zA-Z][-_0-9a-zA-Z]*$";
 
     /**
-     * A flag indicating the default behavior on whether a input given as a ZIP archive
-     * should be unpacked into our input directory.
+     * A flag indicating the default behavior on whether a single input given as an archive (or as
+     * a compressed file) should be unpacked into our input directory.
      */
     private static final boolean UNPACK_ZIP_ARCHIVE = true;
 
@@ -135,6 +129,8 @@ public class PrepareWorkingDirectoryTasklet implements Tasklet, StepExecutionLis
 
         private Boolean unzip;
 
+        private Integer extractionParallelism;
+
         /**
          * Set the configuration-generator service to be used
          * @param service
@@ -202,9 +198,10 @@ public class PrepareWorkingDirectoryTasklet implements Tasklet, StepExecutionLis
         }
 
         /**
-         * Set whether a single input given as a ZIP archive should be extracted into
-         * our input directory. If so, all ZIP entries will be extracted discarding their
-         * directory prefix (if any).
+         * Set whether a single input given as an archive (ZIP, TAR) or as a compressed file (GZIP,
+         * BZIP2) should be extracted into our input directory. If so, all archive entries will be
+         * extracted discarding their directory prefix (if any). The format is detected from the
+         * contents of the file (not from its name). Multiple inputs are always staged as is.
          * @param flag
          */
         public Builder unzipIfArchive(boolean flag)
@@ -213,6 +210,17 @@ public class PrepareWorkingDirectoryTasklet implements Tasklet, StepExecutionLis
             return this;
         }
 
+        /**
+         * Set the maximum number of entries of a ZIP archive to be extracted concurrently
+         * @param parallelism
+         */
+        public Builder extractionParallelism(int parallelism)
+        {
+            Assert.isTrue(parallelism > 0, "Expected a positive level of parallelism");
+            this.extractionParallelism = parallelism;
+            return this;
+        }
+
         /**
          * Add a configuration file under this working directory. The configuration is copied verbatim
          * from the given resource (no conversion taking place).
@@ -301,6 +309,9 @@ public class PrepareWorkingDirectoryTasklet implements Tasklet, StepExecutionLis
             if (unzip != null)
                 tasklet.setUnzip(unzip);
 
+            if (extractionParallelism != null)
+                tasklet.setExtractionParallelism(extractionParallelism);
+
             return tasklet;
         }
     }
@@ -328,6 +339,10 @@ public class PrepareWorkingDirectoryTasklet implements Tasklet, StepExecutionLis
         public static final String OUTPUT_FORMAT = "outputFormat";
 
         public static final String CONFIG_FILE_BY_NAME = "configFileByName";
+
+        public static final String STAGING_BYTES_BY_INPUT = "stagingBytesByInput";
+
+        public static final String STAGING_TIME_BY_INPUT = "stagingTimeByInput";
     }
 
     public static final List<String> ALL_KEYS = ImmutableList.of(
@@ -356,6 +371,8 @@ public class PrepareWorkingDirectoryTasklet implements Tasklet, StepExecutionLis
 
     private boolean unzip = UNPACK_ZIP_ARCHIVE;
 
+    private int extractionParallelism = InputStager.DEFAULT_PARALLELISM;
+
     private PrepareWorkingDirectoryTasklet(
         Path workDir, List<Path> input, Map<String, ConfigurationSpec> config,
         ConfigurationGeneratorService configurationGeneratorService)
@@ -383,6 +400,11 @@ public class PrepareWorkingDirectoryTasklet implements Tasklet, StepExecutionLis
         this.unzip = flag;
     }
 
+    private void setExtractionParallelism(int parallelism)
+    {
+        this.extractionParallelism = parallelism;
+    }
+
     public Path workDir()
     {
         return inputDir;
@@ -426,31 +448,18 @@ public class PrepareWorkingDirectoryTasklet implements Tasklet, StepExecutionLis
 
         logger.info("Copying input for working directory: {}", workDir);
 
+        final InputStager stager = new InputStager(extractionParallelism);
+        final boolean unpack = unzip && input.size() == 1;
+
         List<String> inputFiles = new ArrayList<>();
-        if (!input.isEmpty()) {
-            if (unzip && (input.size() == 1) &&
-                    "application/zip".equals(Files.probeContentType(input.get(0))))
-            {
-                // The input archive should be extracted to input directory
-                try (ZipFile zipfile = new ZipFile(input.get(0).toString())) {
-                    List<String> entryNames = zipfile.stream()
-                        .filter(e -> !e.isDirectory())
-                        .map(e -> e.getName())
-                        .collect(Collectors.toList());
-                    for (String entryName: entryNames) {
-                        String name = Paths.get(entryName).getFileName().toString();
-                        extractToInputDirectory(zipfile, entryName, name);
-                        inputFiles.add(name);
-                    }
-                }
-            } else {
-                // Copy each input to input directory
-                for (Path inputPath: input) {
-                    String name = inputPath.getFileName().toString();
-                    copyToInputDirectory(inputPath, name);
-                    inputFiles.add(name);
-                }
-            }
+        Map<String, Long> stagingBytesByInput = new HashMap<>();
+        Map<String, Long> stagingTimeByInput = new HashMap<>();
+        for (Path inputPath: input) {
+            // Extract (if a single archive), decompress (if a single compressed file) or link input
+            InputStager.Result result = stager.stage(inputPath, inputDir, unpack);
+            inputFiles.addAll(result.getNames());
+            stagingBytesByInput.put(inputPath.toString(), result.getSize());
+            stagingTimeByInput.put(inputPath.toString(), result.getDuration());
         }
 
         //
@@ -481,6 +490,8 @@ public class PrepareWorkingDirectoryTasklet implements Tasklet, StepExecutionLis
         executionContext.putString(Keys.INPUT_DIR, inputDir.toString());
         executionContext.putString(Keys.INPUT_FORMAT, inputFormat.name());
         executionContext.put(Keys.INPUT_FILES, inputFiles);
+        executionContext.put(Keys.STAGING_BYTES_BY_INPUT, stagingBytesByInput);
+        executionContext.put(Keys.STAGING_TIME_BY_INPUT, stagingTimeByInput);
 
         executionContext.putString(Keys.OUTPUT_DIR, outputDir.toString());
         executionContext.putString(Keys.OUTPUT_FORMAT, outputFormat.name());
@@ -492,57 +503,6 @@ public class PrepareWorkingDirectoryTasklet implements Tasklet, StepExecutionLis
         return RepeatStatus.FINISHED;
     }
 
-    /**
-     * Extract a named ZIP entry inside our input directory.
-     *
-     * @param zipfile An opened ZipFile handle
-     * @param entryName The entry name
-     * @param name The name of the extracted file (relative to input directory)
-     * @throws IOException
-     */
-    private void extractToInputDirectory(ZipFile zipfile, String entryName, String name)
-        throws IOException
-    {
-        ZipEntry e = zipfile.getEntry(entryName);
-        try (InputStream in = new BufferedInputStream(zipfile.getInputStream(e))) {
-            Files.copy(in, inputDir.resolve(name));
-        }
-    }
-
-    /**
-     * Copy given input file to our input directory.
-     *
-     * <p>
-     * A shallow hard link will be created, i.e. there is no attempt to create a nested structure
-     * inside input directory. If a hard link cannot be created (because of file-system limitations),
-     * we fallback to a plain copying.
-     *
-     * @param source The input path to link to
-     * @param filename The link name (relative to input directory)
-     * @throws IOException
-     */
-    private void copyToInputDirectory(Path source, String filename)
-        throws IOException
-    {
-        Path destination = inputDir.resolve(filename);
-        Files.deleteIfExists(destination);
-
-        // Try to link
-
-        Path link = null;
-        try {
-            link = Files.createLink(destination, source);
-        } catch (FileSystemException e) {
-            link = null;
-        }
-
-        // If no link was created, fallback to copying
-
-        if (link == null) {
-            Files.copy(source, destination, StandardCopyOption.REPLACE_EXISTING);
-        }
-    }
-
     @Override
     public void beforeStep(StepExecution stepExecution)
     {
@@ -0,0 +1,400 @@
+package eu.slipo.workbench.rpc.jobs.tasklet;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.util.Assert;
+import org.springframework.util.FileSystemUtils;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKTReader;
+
+import eu.slipo.workbench.rpc.service.FileLinkUtils;
+
+/**
+ * A tasklet that buckets the entities of N-Triples files into the tiles of a regular spatial grid.
+ * <p>
+ * An input file is streamed once, and its triples are grouped into records (see
+ * {@link NTriplesRecordReader}), i.e. into groups of contiguous triples describing a feature.
+ * <p>
+ * The envelope of a record is the union of the envelopes of its <tt>geo:asWKT</tt> literals,
+ * expanded by a buffer. A record is copied to every tile its envelope intersects, so entities near
+ * the border of a tile are duplicated to neighbouring tiles. A record with no geometry is copied to
+ * all tiles.
+ * <p>
+ * For each input (named) file <tt>x</tt>, the records of a tile are written as
+ * <tt>tile_i_j/x</tt> (relative to the target directory). Records with no geometry (the global
+ * records of an input) are appended to every tile. A tile is kept if, for every input, it holds
+ * records of that input or the input has global records; otherwise, no pair of records can be
+ * found inside the tile.
+ * <p>
+ * If no tile is kept (e.g. no record of an input has a parseable geometry), a single tile holding
+ * the entire input is created, so that the tiled execution degenerates to a simple one.
+ * <p>
+ * At most a configurable number of tile files are kept open at a time; the least recently used
+ * file is closed (and is re-opened for appending, if needed).
+ */
+public class SpatialTilingTasklet implements Tasklet
+{
+    private static final Logger logger = LoggerFactory.getLogger(SpatialTilingTasklet.class);
+
+    private static final FileAttribute<?> DIRECTORY_ATTRIBUTE =
+        PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwxr-xr-x"));
+
+    public static final String AS_WKT_PREDICATE = "<http://www.opengis.net/ont/geosparql#asWKT>";
+
+    private static final String GLOBAL_DIR_NAME = "_global";
+
+    /**
+     * The name of the tile holding the entire input, if no other tile is usable
+     */
+    public static final String SINGLE_TILE_NAME = "tile_all";
+
+    public static final int DEFAULT_MAX_OPEN_FILES = 128;
+
+    public static class Builder
+    {
+        private final Map<String, Path> input = new LinkedHashMap<>();
+
+        private Path targetDir;
+
+        private double tileSize = -1.0;
+
+        private double buffer = 0.0;
+
+        private int maxOpenFiles = DEFAULT_MAX_OPEN_FILES;
+
+        /**
+         * Add an input file to be tiled
+         * @param name The name of the file inside a tile directory
+         * @param path The absolute path of the input file
+         */
+        public Builder input(String name, Path path)
+        {
+            Assert.hasText(name, "A non-empty name is expected");
+            Assert.isTrue(path != null && path.isAbsolute(), "Expected an absolute path");
+            this.input.put(name, path);
+            return this;
+        }
+
+        /**
+         * Set the directory under which tile directories will be created
+         * @param dir
+         */
+        public Builder targetDirectory(Path dir)
+        {
+            Assert.notNull(dir, "Expected a non-null directory");
+            Assert.isTrue(dir.isAbsolute(), "Expected an absolute path as target directory");
+            this.targetDir = dir;
+            return this;
+        }
+
+        /**
+         * Set the size of a (square) tile, in units of the coordinate reference system
+         * @param tileSize
+         */
+        public Builder tileSize(double tileSize)
+        {
+            Assert.isTrue(tileSize > 0, "Expected a positive tile size");
+            this.tileSize = tileSize;
+            return this;
+        }
+
+        /**
+         * Set the width of the buffer zone (around the envelope of an entity), in units of the
+         * coordinate reference system
+         * @param buffer
+         */
+        public Builder buffer(double buffer)
+        {
+            Assert.isTrue(buffer >= 0, "Expected a non-negative buffer");
+            this.buffer = buffer;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of tile files to be kept open at a time
+         * @param maxOpenFiles
+         */
+        public Builder maxOpenFiles(int maxOpenFiles)
+        {
+            Assert.isTrue(maxOpenFiles > 0, "Expected a positive number of files");
+            this.maxOpenFiles = maxOpenFiles;
+            return this;
+        }
+
+        public SpatialTilingTasklet build()
+        {
+            Assert.state(targetDir != null, "The target directory must be specified");
+            Assert.state(!input.isEmpty(), "The input must be specified");
+            Assert.state(tileSize > 0, "The tile size must be specified");
+
+            return new SpatialTilingTasklet(input, targetDir, tileSize, buffer, maxOpenFiles);
+        }
+    }
+
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    public static class Keys
+    {
+        /**
+         * The (sorted) list of names of tile directories
+         */
+        public static final String TILE_NAMES = "tileNames";
+
+        public static final String NUMBER_OF_TILES = "numberOfTiles";
+
+        public static final String DURATION = "duration";
+    }
+
+    private final Map<String, Path> input;
+
+    private final Path targetDir;
+
+    private final double tileSize;
+
+    private final double buffer;
+
+    private final int maxOpenFiles;
+
+    private final WKTReader wktReader = new WKTReader();
+
+    private SpatialTilingTasklet(
+        Map<String, Path> input, Path targetDir, double tileSize, double buffer, int maxOpenFiles)
+    {
+        this.input = input;
+        this.targetDir = targetDir;
+        this.tileSize = tileSize;
+        this.buffer = buffer;
+        this.maxOpenFiles = maxOpenFiles;
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext)
+        throws Exception
+    {
+        ExecutionContext executionContext =
+            chunkContext.getStepContext().getStepExecution().getExecutionContext();
+
+        final long startTime = System.currentTimeMillis();
+
+        // Start afresh (a previous attempt may have left partial results)
+        FileSystemUtils.deleteRecursively(targetDir.toFile());
+        Files.createDirectories(targetDir, DIRECTORY_ATTRIBUTE);
+
+        // Tile each input; keep track of tiles having records for each input
+
+        final Map<String, Set<String>> tileNamesByInput = new HashMap<>();
+        final Set<String> allTileNames = new TreeSet<>();
+        for (Map.Entry<String, Path> e: input.entrySet()) {
+            Set<String> names = tile(e.getKey(), e.getValue());
+            tileNamesByInput.put(e.getKey(), names);
+            allTileNames.addAll(names);
+        }
+
+        // Keep tiles where records of every input are present (either as records of the tile, or
+        // as global records)
+
+        final Path globalDir = targetDir.resolve(GLOBAL_DIR_NAME);
+        final Set<String> tileNames = new TreeSet<>();
+        for (String tileName: allTileNames) {
+            boolean usable = input.keySet().stream()
+                .allMatch(name -> tileNamesByInput.get(name).contains(tileName) ||
+                    Files.exists(globalDir.resolve(name)));
+            if (usable)
+                tileNames.add(tileName);
+        }
+
+        // Discard unusable tiles; append global records to the rest
+
+        final List<Path> dirs;
+        try (Stream<Path> paths = Files.list(targetDir)) {
+            dirs = paths.collect(Collectors.toList());
+        }
+        for (Path dir: dirs) {
+            String dirName = dir.getFileName().toString();
+            if (!dirName.equals(GLOBAL_DIR_NAME) && !tileNames.contains(dirName))
+                FileSystemUtils.deleteRecursively(dir.toFile());
+        }
+        for (String tileName: tileNames) {
+            for (String name: input.keySet()) {
+                Path globalFile = globalDir.resolve(name);
+                if (Files.exists(globalFile)) {
+                    try (OutputStream out = Files.newOutputStream(targetDir.resolve(tileName).resolve(name),
+                            StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                        Files.copy(globalFile, out);
+                    }
+                }
+            }
+        }
+        FileSystemUtils.deleteRecursively(globalDir.toFile());
+
+        // If no tile is usable, fall back to a single tile holding the entire input
+
+        if (tileNames.isEmpty()) {
+            logger.warn("No usable tile among {} tile(s); using a single tile for the entire input",
+                allTileNames.size());
+            Path dir = targetDir.resolve(SINGLE_TILE_NAME);
+            Files.createDirectories(dir, DIRECTORY_ATTRIBUTE);
+            for (Map.Entry<String, Path> e: input.entrySet()) {
+                FileLinkUtils.linkOrCopy(e.getValue(), dir.resolve(e.getKey()));
+            }
+            tileNames.add(SINGLE_TILE_NAME);
+        }
+
+        final long duration = System.currentTimeMillis() - startTime;
+        logger.info("Bucketed {} input file(s) into {} tiles in {}ms", input.size(), tileNames.size(), duration);
+
+        executionContext.put(Keys.TILE_NAMES, new ArrayList<>(tileNames));
+        executionContext.putInt(Keys.NUMBER_OF_TILES, tileNames.size());
+        executionContext.putLong(Keys.DURATION, duration);
+
+        return RepeatStatus.FINISHED;
+    }
+
+    /**
+     * Tile an input file
+     *
+     * @return the names of the tiles (directories) that received at least one record
+     */
+    private Set<String> tile(String name, Path path) throws IOException
+    {
+        // The open writers, in access order (the least recently used first)
+        final Map<String, Writer> writers = new LinkedHashMap<>(16, 0.75f, true);
+        final Set<String> tileNames = new HashSet<>();
+
+        try (NTriplesRecordReader reader =
+                new NTriplesRecordReader(Files.newBufferedReader(path, StandardCharsets.UTF_8)))
+        {
+            NTriplesRecordReader.Record record;
+            while ((record = reader.read()) != null) {
+                writeRecord(record, name, writers, tileNames);
+            }
+        } finally {
+            for (Writer writer: writers.values()) {
+                writer.close();
+            }
+        }
+
+        tileNames.remove(GLOBAL_DIR_NAME);
+        return tileNames;
+    }
+
+    private void writeRecord(
+            NTriplesRecordReader.Record record, String name, Map<String, Writer> writers, Set<String> tileNames)
+        throws IOException
+    {
+        final List<String> recordTileNames = new ArrayList<>();
+        final Envelope envelope = envelopeOf(record);
+        if (envelope == null) {
+            recordTileNames.add(GLOBAL_DIR_NAME);
+        } else {
+            final long minX = (long) Math.floor((envelope.getMinX() - buffer) / tileSize);
+            final long maxX = (long) Math.floor((envelope.getMaxX() + buffer) / tileSize);
+            final long minY = (long) Math.floor((envelope.getMinY() - buffer) / tileSize);
+            final long maxY = (long) Math.floor((envelope.getMaxY() + buffer) / tileSize);
+            for (long i = minX; i <= maxX; i++) {
+                for (long j = minY; j <= maxY; j++) {
+                    recordTileNames.add(String.format("tile_%d_%d", i, j));
+                }
+            }
+        }
+
+        for (String tileName: recordTileNames) {
+            Writer writer = writers.get(tileName);
+            if (writer == null) {
+                if (writers.size() >= maxOpenFiles) {
+                    Iterator<Writer> iterator = writers.values().iterator();
+                    iterator.next().close();
+                    iterator.remove();
+                }
+                Path dir = targetDir.resolve(tileName);
+                if (tileNames.add(tileName))
+                    Files.createDirectories(dir, DIRECTORY_ATTRIBUTE);
+                writer = new BufferedWriter(Files.newBufferedWriter(
+                    dir.resolve(name), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND), 65536);
+                writers.put(tileName, writer);
+            }
+            for (String line: record.lines()) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        }
+    }
+
+    /**
+     * Compute the envelope of a record as the union of envelopes of its WKT literals
+     *
+     * @return an envelope, or <tt>null</tt> if the record has no (valid) geometry
+     */
+    private Envelope envelopeOf(NTriplesRecordReader.Record record)
+    {
+        Envelope result = null;
+        for (String line: record.lines()) {
+            if (!line.contains(AS_WKT_PREDICATE))
+                continue;
+            String subject = NTriplesRecordReader.subjectOf(line);
+            if (!AS_WKT_PREDICATE.equals(NTriplesRecordReader.predicateOf(line, subject)))
+                continue;
+            String wkt = NTriplesRecordReader.literalOf(line, subject, AS_WKT_PREDICATE);
+            Envelope envelope = wkt == null? null : parseEnvelope(wkt);
+            if (envelope != null) {
+                if (result == null)
+                    result = new Envelope(envelope);
+                else
+                    result.expandToInclude(envelope);
+            }
+        }
+        return result;
+    }
+
+    private Envelope parseEnvelope(String wkt)
+    {
+        // Strip an (optional) CRS prefix, either as a GeoSPARQL IRI or as a EWKT SRID
+        wkt = wkt.trim();
+        if (wkt.startsWith("<"))
+            wkt = wkt.substring(wkt.indexOf('>') + 1).trim();
+        else if (wkt.startsWith("SRID="))
+            wkt = wkt.substring(wkt.indexOf(';') + 1).trim();
+
+        try {
+            Geometry geometry = wktReader.read(wkt);
+            return geometry.isEmpty()? null : geometry.getEnvelopeInternal();
+        } catch (ParseException ex) {
+            logger.debug("Failed to parse WKT literal: {}", ex.getMessage());
+            return null;
+        }
+    }
+}
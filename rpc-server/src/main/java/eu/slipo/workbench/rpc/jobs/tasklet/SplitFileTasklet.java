@@ -0,0 +1,257 @@
+package eu.slipo.workbench.rpc.jobs.tasklet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.util.Assert;
+
+/**
+ * A tasklet that splits line-oriented text files (e.g. CSV) into a number of parts of (roughly)
+ * equal size.
+ * <p>
+ * A file is split only on record boundaries, i.e. on a newline which is not enclosed in quotes
+ * (if a quote character is given). If the file has a header, the header is repeated at the start
+ * of every part.
+ * <p>
+ * For each input file <tt>x</tt>, the i-th part (1-based) is written as
+ * <tt>partition_i/input/x</tt> (relative to the target directory). So, all parts of a given
+ * partition keep the name of the original file.
+ */
+public class SplitFileTasklet implements Tasklet
+{
+    private static final Logger logger = LoggerFactory.getLogger(SplitFileTasklet.class);
+
+    private static final FileAttribute<?> DIRECTORY_ATTRIBUTE =
+        PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwxr-xr-x"));
+
+    private static final int BUFFER_SIZE = 128 * 1024;
+
+    public static class Builder
+    {
+        private List<Path> input = Collections.emptyList();
+
+        private Path targetDir;
+
+        private int numberOfParts = -1;
+
+        private boolean header = false;
+
+        private int quote = -1;
+
+        /**
+         * Set the input files to be split
+         * @param paths A list of absolute paths
+         */
+        public Builder input(List<Path> paths)
+        {
+            Assert.notEmpty(paths, "Expected a non-empty list of paths");
+            Assert.isTrue(paths.stream().allMatch(Path::isAbsolute), "Expected a list of absolute paths");
+            this.input = new ArrayList<>(paths);
+            return this;
+        }
+
+        /**
+         * Set the directory under which per-partition directories will be created
+         * @param dir
+         */
+        public Builder targetDirectory(Path dir)
+        {
+            Assert.notNull(dir, "Expected a non-null directory");
+            Assert.isTrue(dir.isAbsolute(), "Expected an absolute path as target directory");
+            this.targetDir = dir;
+            return this;
+        }
+
+        public Builder numberOfParts(int n)
+        {
+            Assert.isTrue(n > 0, "Expected a positive number of parts");
+            this.numberOfParts = n;
+            return this;
+        }
+
+        /**
+         * Indicate that the first record of each input file is a header
+         * @param flag
+         */
+        public Builder header(boolean flag)
+        {
+            this.header = flag;
+            return this;
+        }
+
+        /**
+         * Set a (single-byte) quote character. A newline appearing inside a quoted value will
+         * not be considered as a record boundary.
+         *
+         * @param quote A string holding a single ASCII character (may be empty or <tt>null</tt>)
+         */
+        public Builder quote(String quote)
+        {
+            if (quote == null || quote.isEmpty()) {
+                this.quote = -1;
+            } else {
+                Assert.isTrue(quote.length() == 1 && quote.charAt(0) < 0x80,
+                    "The quote is expected as a single ASCII character");
+                this.quote = quote.charAt(0);
+            }
+            return this;
+        }
+
+        public SplitFileTasklet build()
+        {
+            Assert.state(targetDir != null, "The target directory must be specified");
+            Assert.state(!input.isEmpty(), "The input must be specified");
+            Assert.state(numberOfParts > 0, "The number of parts must be specified");
+
+            return new SplitFileTasklet(input, targetDir, numberOfParts, header, quote);
+        }
+    }
+
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    public static class Keys
+    {
+        public static final String NUMBER_OF_PARTS = "numberOfParts";
+
+        public static final String DURATION = "duration";
+    }
+
+    private final List<Path> input;
+
+    private final Path targetDir;
+
+    private final int numberOfParts;
+
+    private final boolean header;
+
+    private final int quote;
+
+    private SplitFileTasklet(List<Path> input, Path targetDir, int numberOfParts, boolean header, int quote)
+    {
+        this.input = input;
+        this.targetDir = targetDir;
+        this.numberOfParts = numberOfParts;
+        this.header = header;
+        this.quote = quote;
+    }
+
+    /**
+     * Resolve the path of the i-th part (1-based) for a given file name
+     */
+    private Path resolvePart(int i, Path fileName) throws IOException
+    {
+        Path dir = targetDir.resolve(Paths.get(String.format("partition_%d", i), "input"));
+        Files.createDirectories(dir, DIRECTORY_ATTRIBUTE);
+        return dir.resolve(fileName);
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext)
+        throws Exception
+    {
+        ExecutionContext executionContext =
+            chunkContext.getStepContext().getStepExecution().getExecutionContext();
+
+        final long startTime = System.currentTimeMillis();
+
+        for (Path path: input) {
+            split(path);
+        }
+
+        final long duration = System.currentTimeMillis() - startTime;
+        logger.info("Split {} file(s) into {} parts in {}ms", input.size(), numberOfParts, duration);
+
+        executionContext.putInt(Keys.NUMBER_OF_PARTS, numberOfParts);
+        executionContext.putLong(Keys.DURATION, duration);
+
+        return RepeatStatus.FINISHED;
+    }
+
+    private void split(Path path) throws IOException
+    {
+        final Path fileName = path.getFileName();
+        final long targetSize = (Files.size(path) + numberOfParts - 1) / numberOfParts;
+
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE)) {
+            final byte[] headerBytes = header? readRecord(in) : new byte[0];
+            final byte[] buf = new byte[BUFFER_SIZE];
+
+            int partNumber = 1;
+            OutputStream out = Files.newOutputStream(resolvePart(partNumber, fileName));
+            out.write(headerBytes);
+            long partSize = 0;
+            boolean quoted = false;
+            try {
+                int n;
+                while ((n = in.read(buf)) > 0) {
+                    int start = 0; // the start of the slice (of buffer) not yet written
+                    for (int i = 0; i < n; i++) {
+                        final int c = buf[i] & 0xff;
+                        if (c == quote) {
+                            quoted = !quoted;
+                        } else if (c == '\n' && !quoted && partNumber < numberOfParts) {
+                            // This is a record boundary: check if current part is full
+                            if (partSize + (i + 1 - start) >= targetSize) {
+                                out.write(buf, start, i + 1 - start);
+                                out.close();
+                                start = i + 1;
+                                partSize = 0;
+                                out = Files.newOutputStream(resolvePart(++partNumber, fileName));
+                                out.write(headerBytes);
+                            }
+                        }
+                    }
+                    out.write(buf, start, n - start);
+                    partSize += n - start;
+                }
+            } finally {
+                out.close();
+            }
+
+            // Create (header-only) parts for files too small to be split
+            while (partNumber < numberOfParts) {
+                Files.write(resolvePart(++partNumber, fileName), headerBytes);
+            }
+        }
+    }
+
+    /**
+     * Read a single record (including the terminating newline)
+     */
+    private byte[] readRecord(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream record = new ByteArrayOutputStream(1024);
+        boolean quoted = false;
+        int c;
+        while ((c = in.read()) >= 0) {
+            record.write(c);
+            if (c == quote) {
+                quoted = !quoted;
+            } else if (c == '\n' && !quoted) {
+                break;
+            }
+        }
+        return record.toByteArray();
+    }
+}
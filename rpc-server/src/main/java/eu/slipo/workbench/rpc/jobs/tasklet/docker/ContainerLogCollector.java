@@ -0,0 +1,285 @@
+package eu.slipo.workbench.rpc.jobs.tasklet.docker;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.DockerClient.LogsParam;
+import com.spotify.docker.client.LogStream;
+import com.spotify.docker.client.exceptions.DockerException;
+
+/**
+ * Collect logs (stdout/stderr) of docker containers into size-capped (rolling) files.
+ * <p>
+ * A log file is written incrementally (following the log stream of a running container), so
+ * logs are never buffered in memory. When a log file exceeds the maximum size, it is rolled
+ * over: a file <tt>x.log</tt> is renamed to <tt>x.log.1</tt> (older backups are shifted) and
+ * a new <tt>x.log</tt> is started. If compression is enabled, all files are gzip-compressed and
+ * get a <tt>.gz</tt> suffix.
+ * <p>
+ * It is assumed that logs are text-based. If this is not true, consider redirecting binary output
+ * to some other (bind-mounted) file, instead of writing it directly to stdout/stderr.
+ */
+public class ContainerLogCollector
+{
+    private static final Logger logger = LoggerFactory.getLogger(ContainerLogCollector.class);
+
+    /**
+     * The default maximum size (bytes of uncompressed output) for a single log file
+     */
+    public static final long DEFAULT_MAX_FILE_SIZE = 8L * 1024L * 1024L;
+
+    /**
+     * The default number of rolled-over files to keep
+     */
+    public static final int DEFAULT_MAX_BACKUPS = 1;
+
+    public static final String GZIP_SUFFIX = ".gz";
+
+    private final DockerClient docker;
+
+    private long maxFileSize = DEFAULT_MAX_FILE_SIZE;
+
+    private int maxBackups = DEFAULT_MAX_BACKUPS;
+
+    private boolean compress = false;
+
+    private ExecutorService executor;
+
+    /**
+     * The log streams currently followed (to be closed on shutdown)
+     */
+    private final Set<LogStream> streams = ConcurrentHashMap.newKeySet();
+
+    public ContainerLogCollector(DockerClient docker)
+    {
+        Assert.notNull(docker, "The docker client must be provided");
+        this.docker = docker;
+    }
+
+    public void setMaxFileSize(long maxFileSize)
+    {
+        Assert.isTrue(maxFileSize > 0, "Expected a positive size");
+        this.maxFileSize = maxFileSize;
+    }
+
+    public void setMaxBackups(int maxBackups)
+    {
+        Assert.isTrue(maxBackups >= 0, "Expected a non-negative number of backups");
+        this.maxBackups = maxBackups;
+    }
+
+    public void setCompress(boolean compress)
+    {
+        this.compress = compress;
+    }
+
+    public long getMaxFileSize()
+    {
+        return maxFileSize;
+    }
+
+    public int getMaxBackups()
+    {
+        return maxBackups;
+    }
+
+    public boolean isCompress()
+    {
+        return compress;
+    }
+
+    public synchronized void start()
+    {
+        if (executor != null)
+            return;
+
+        final AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "container-logs-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public synchronized void stop()
+    {
+        if (executor == null)
+            return;
+
+        for (LogStream stream: streams) {
+            try {
+                stream.close();
+            } catch (RuntimeException ex) {
+                logger.debug("Failed to close a log stream: {}", ex.getMessage());
+            }
+        }
+        executor.shutdownNow();
+        executor = null;
+    }
+
+    /**
+     * Resolve the actual path of the current log file (i.e. taking compression into account)
+     *
+     * @param file The (plain) path of the log file
+     */
+    public Path resolveFile(Path file)
+    {
+        return compress? file.resolveSibling(file.getFileName() + GZIP_SUFFIX) : file;
+    }
+
+    /**
+     * Follow the logs of a (running) container, until the container exits.
+     * <p>
+     * The logs are always collected from the beginning, so any existing log files are replaced.
+     * This is also true when re-attaching to a container (e.g. on a restart of a stopped step).
+     *
+     * @param containerId The container ID (or name)
+     * @param file The (plain) path of the log file
+     * @return a future for the list of log files (current file first, followed by backups)
+     */
+    public Future<List<Path>> follow(String containerId, Path file)
+    {
+        Assert.state(executor != null, "The collector is not started");
+        return executor.submit(() -> collect(containerId, file, true));
+    }
+
+    /**
+     * Fetch all logs of a container (does not wait for the container to exit).
+     *
+     * @param containerId The container ID (or name)
+     * @param file The (plain) path of the log file
+     * @return the list of log files (current file first, followed by backups)
+     */
+    public List<Path> fetch(String containerId, Path file)
+        throws DockerException, InterruptedException, IOException
+    {
+        return collect(containerId, file, false);
+    }
+
+    private List<Path> collect(String containerId, Path file, boolean follow)
+        throws DockerException, InterruptedException, IOException
+    {
+        Assert.notNull(file, "A path for the log file is required");
+        Assert.isTrue(file.isAbsolute(), "The log file is expected as an absolute path");
+
+        Files.createDirectories(file.getParent());
+
+        final LogStream stream = follow?
+            docker.logs(containerId, LogsParam.follow(), LogsParam.stdout(), LogsParam.stderr()) :
+            docker.logs(containerId, LogsParam.stdout(), LogsParam.stderr());
+
+        streams.add(stream);
+        try (RollingFileWriter writer = new RollingFileWriter(file)) {
+            while (stream.hasNext()) {
+                writer.write(stream.next().content());
+            }
+            return writer.files();
+        } finally {
+            streams.remove(stream);
+            stream.close();
+        }
+    }
+
+    /**
+     * A writer that rolls over when the current file exceeds the maximum size
+     */
+    private class RollingFileWriter implements AutoCloseable
+    {
+        private final Path file;
+
+        private OutputStream out;
+
+        private WritableByteChannel channel;
+
+        private long size;
+
+        private int numberOfBackups;
+
+        private RollingFileWriter(Path file) throws IOException
+        {
+            this.file = file;
+            // Remove files from a previous collection of logs (if any)
+            for (int i = 0; i <= maxBackups; i++) {
+                Files.deleteIfExists(backupFile(i));
+            }
+            open();
+        }
+
+        private Path backupFile(int i)
+        {
+            Path p = i == 0? file : file.resolveSibling(file.getFileName() + "." + i);
+            return resolveFile(p);
+        }
+
+        private void open() throws IOException
+        {
+            OutputStream stream = Files.newOutputStream(backupFile(0));
+            out = compress? new GZIPOutputStream(stream, 65536) : stream;
+            channel = Channels.newChannel(out);
+            size = 0L;
+        }
+
+        private void write(ByteBuffer data) throws IOException
+        {
+            if (size > 0 && size + data.remaining() > maxFileSize) {
+                rollOver();
+            }
+            size += data.remaining();
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        }
+
+        private void rollOver() throws IOException
+        {
+            out.close();
+
+            if (maxBackups > 0) {
+                // Shift backups (the oldest one is overwritten)
+                for (int i = maxBackups; i > 0; i--) {
+                    Path source = backupFile(i - 1);
+                    if (Files.exists(source))
+                        Files.move(source, backupFile(i), StandardCopyOption.REPLACE_EXISTING);
+                }
+                numberOfBackups = Math.min(numberOfBackups + 1, maxBackups);
+            }
+
+            open();
+        }
+
+        private List<Path> files()
+        {
+            List<Path> files = new ArrayList<>(numberOfBackups + 1);
+            for (int i = 0; i <= numberOfBackups; i++) {
+                files.add(backupFile(i));
+            }
+            return files;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package eu.slipo.workbench.rpc.jobs.tasklet.docker;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.DockerClient.EventsParam;
+import com.spotify.docker.client.EventStream;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.ContainerInfo;
+import com.spotify.docker.client.messages.ContainerState;
+import com.spotify.docker.client.messages.Event;
+
+/**
+ * A node-wide watcher for the completion of docker containers.
+ * <p>
+ * A single thread consumes the event stream of the docker daemon (filtered on <tt>die</tt>
+ * events of containers) and completes the futures returned by {@link ContainerMonitor#watch(String)}.
+ * So, the number of threads used by this monitor does not depend on the number of containers
+ * being watched.
+ * <p>
+ * Because events may be lost (e.g. while the stream is being reconnected), a single scheduled
+ * thread periodically reconciles the state of all watched containers by inspecting them.
+ */
+public class ContainerMonitor
+{
+    private static final Logger logger = LoggerFactory.getLogger(ContainerMonitor.class);
+
+    /**
+     * The default interval (milliseconds) for reconciling the state of watched containers
+     */
+    public static final long DEFAULT_RECONCILE_INTERVAL = 30 * 1000L;
+
+    /**
+     * The default delay (milliseconds) before trying to reconnect to the event stream
+     */
+    public static final long DEFAULT_RECONNECT_DELAY = 2000L;
+
+    private final DockerClient docker;
+
+    private long reconcileInterval = DEFAULT_RECONCILE_INTERVAL;
+
+    private long reconnectDelay = DEFAULT_RECONNECT_DELAY;
+
+    /**
+     * The futures of watched containers keyed by (full) container id
+     */
+    private final Map<String, CompletableFuture<ContainerState>> futures = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService scheduler;
+
+    private Thread eventsThread;
+
+    private volatile EventStream eventStream;
+
+    private volatile boolean running = false;
+
+    public ContainerMonitor(DockerClient docker)
+    {
+        Assert.notNull(docker, "The docker client must be provided");
+        this.docker = docker;
+    }
+
+    public void setReconcileInterval(long millis)
+    {
+        Assert.isTrue(millis > 0, "Expected a positive interval");
+        this.reconcileInterval = millis;
+    }
+
+    public void setReconnectDelay(long millis)
+    {
+        Assert.isTrue(millis >= 0, "Expected a non-negative delay");
+        this.reconnectDelay = millis;
+    }
+
+    public synchronized void start()
+    {
+        if (running)
+            return;
+
+        running = true;
+
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ThreadFactory threadFactory = r -> {
+            Thread t = new Thread(r, "container-monitor-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        scheduler.scheduleWithFixedDelay(
+            this::reconcile, reconcileInterval, reconcileInterval, TimeUnit.MILLISECONDS);
+
+        eventsThread = threadFactory.newThread(this::consumeEvents);
+        eventsThread.start();
+
+        logger.info("Started monitoring container events");
+    }
+
+    public synchronized void stop()
+    {
+        if (!running)
+            return;
+
+        running = false;
+
+        closeEventStream();
+        eventsThread.interrupt();
+        scheduler.shutdownNow();
+
+        // Release waiters; they will fall back to inspecting the container themselves
+        futures.values().forEach(f -> f.cancel(false));
+        futures.clear();
+
+        logger.info("Stopped monitoring container events");
+    }
+
+    public boolean isRunning()
+    {
+        return running;
+    }
+
+    /**
+     * Get the number of containers currently watched
+     */
+    public int size()
+    {
+        return futures.size();
+    }
+
+    /**
+     * Watch a container for completion.
+     *
+     * @param container The container ID or name
+     * @return a future that completes with the state of the container as soon as the container
+     *   is no longer running. Cancel this future to stop watching the container.
+     *
+     * @throws DockerException if the container cannot be inspected
+     * @throws InterruptedException
+     */
+    public CompletableFuture<ContainerState> watch(String container)
+        throws DockerException, InterruptedException
+    {
+        Assert.state(running, "The monitor is not running");
+        Assert.notNull(container, "A container ID (or name) is required");
+
+        // Resolve to a full container id (this is what an event reports)
+        final ContainerInfo containerInfo = docker.inspectContainer(container);
+        final String containerId = containerInfo.id();
+
+        final CompletableFuture<ContainerState> future =
+            futures.computeIfAbsent(containerId, id -> new CompletableFuture<>());
+        future.whenComplete((state, ex) -> futures.remove(containerId, future));
+
+        // Check state after registration, to not miss an event fired in between
+        final ContainerState state = docker.inspectContainer(containerId).state();
+        if (!state.running()) {
+            future.complete(state);
+        }
+
+        return future;
+    }
+
+    private void consumeEvents()
+    {
+        while (running) {
+            try (EventStream stream = docker.events(
+                EventsParam.type(Event.Type.CONTAINER), EventsParam.event("die")))
+            {
+                eventStream = stream;
+                // Events may have been missed while (re)connecting
+                if (!futures.isEmpty())
+                    scheduler.execute(this::reconcile);
+                while (running && stream.hasNext()) {
+                    final Event event = stream.next();
+                    final String containerId = event.actor() != null? event.actor().id() : null;
+                    if (containerId != null && futures.containsKey(containerId)) {
+                        logger.debug("Received a `die` event for container {}", containerId);
+                        scheduler.execute(() -> complete(containerId));
+                    }
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException | DockerException ex) {
+                if (running) {
+                    logger.warn("The stream of docker events has failed: {}", ex.getMessage());
+                }
+            } finally {
+                eventStream = null;
+            }
+            // Wait before reconnecting
+            if (running) {
+                try {
+                    Thread.sleep(reconnectDelay);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+    }
+
+    private void closeEventStream()
+    {
+        final EventStream stream = eventStream;
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (RuntimeException ex) {
+                logger.debug("Failed to close the stream of docker events: {}", ex.getMessage());
+            }
+        }
+    }
+
+    private void complete(String containerId)
+    {
+        final CompletableFuture<ContainerState> future = futures.get(containerId);
+        if (future == null || future.isDone())
+            return;
+
+        try {
+            final ContainerState state = docker.inspectContainer(containerId).state();
+            if (!state.running()) {
+                future.complete(state);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (DockerException ex) {
+            logger.warn("Failed to inspect container {}: {}", containerId, ex.getMessage());
+        }
+    }
+
+    private void reconcile()
+    {
+        for (String containerId: futures.keySet()) {
+            if (Thread.currentThread().isInterrupted())
+                break;
+            complete(containerId);
+        }
+    }
+}
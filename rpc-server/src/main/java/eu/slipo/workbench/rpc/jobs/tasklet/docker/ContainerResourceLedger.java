@@ -0,0 +1,453 @@
+package eu.slipo.workbench.rpc.jobs.tasklet.docker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import com.spotify.docker.client.messages.HostConfig;
+
+/**
+ * A node-wide ledger of resources (memory and CPU) reserved by running docker containers.
+ * <p>
+ * A container must reserve its resources before it is started (see {@link RunContainerTasklet}),
+ * and release them when finished. A request that cannot be satisfied by the remaining capacity
+ * is queued, and is granted when enough capacity is released. The queue is served in order: a
+ * waiting request is never bypassed by a later (smaller) one, so large containers do not starve.
+ * <p>
+ * Requests are ordered either in arrival order (FIFO), or by priority (higher first) and then in
+ * arrival order (see {@link Policy}).
+ */
+public class ContainerResourceLedger
+{
+    private static final Logger logger = LoggerFactory.getLogger(ContainerResourceLedger.class);
+
+    /**
+     * The default amount of memory (bytes) reserved for a container not specifying a limit
+     */
+    public static final long DEFAULT_MEMORY = 512L * 1024L * 1024L;
+
+    /**
+     * The default number of CPUs reserved for a container not specifying a CPU share
+     */
+    public static final float DEFAULT_CPU = 1.0f;
+
+    public enum Policy
+    {
+        FIFO,
+        PRIORITY;
+    }
+
+    public enum State
+    {
+        WAITING,
+        GRANTED;
+    }
+
+    /**
+     * A reservation of resources (either granted or waiting) for a container
+     */
+    public static class Reservation
+    {
+        private final String key;
+
+        private final long memory;
+
+        private final float cpu;
+
+        /**
+         * The number of CPUs in thousandths (to avoid accumulating rounding errors)
+         */
+        private final long milliCpus;
+
+        private final int priority;
+
+        private final long sequenceNumber;
+
+        private final Date requested;
+
+        private Date granted;
+
+        private Reservation(String key, long memory, float cpu, int priority, long sequenceNumber)
+        {
+            this.key = key;
+            this.memory = memory;
+            this.cpu = cpu;
+            this.milliCpus = toMilliCpus(cpu);
+            this.priority = priority;
+            this.sequenceNumber = sequenceNumber;
+            this.requested = new Date();
+        }
+
+        public String getKey()
+        {
+            return key;
+        }
+
+        public long getMemory()
+        {
+            return memory;
+        }
+
+        public float getCpu()
+        {
+            return cpu;
+        }
+
+        public int getPriority()
+        {
+            return priority;
+        }
+
+        public Date getRequested()
+        {
+            return requested;
+        }
+
+        public Date getGranted()
+        {
+            return granted;
+        }
+
+        public State getState()
+        {
+            return granted == null? State.WAITING : State.GRANTED;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("Reservation [key=%s, memory=%d, cpu=%.2f, priority=%d, state=%s]",
+                key, memory, cpu, priority, getState());
+        }
+    }
+
+    /**
+     * A snapshot of the ledger
+     */
+    public static class Report
+    {
+        private final long memoryCapacity;
+
+        private final float cpuCapacity;
+
+        private final long reservedMemory;
+
+        private final float reservedCpu;
+
+        private final Policy policy;
+
+        private final List<Reservation> granted;
+
+        private final List<Reservation> waiting;
+
+        private Report(
+            long memoryCapacity, float cpuCapacity, long reservedMemory, float reservedCpu,
+            Policy policy, List<Reservation> granted, List<Reservation> waiting)
+        {
+            this.memoryCapacity = memoryCapacity;
+            this.cpuCapacity = cpuCapacity;
+            this.reservedMemory = reservedMemory;
+            this.reservedCpu = reservedCpu;
+            this.policy = policy;
+            this.granted = Collections.unmodifiableList(granted);
+            this.waiting = Collections.unmodifiableList(waiting);
+        }
+
+        public long getMemoryCapacity()
+        {
+            return memoryCapacity;
+        }
+
+        public float getCpuCapacity()
+        {
+            return cpuCapacity;
+        }
+
+        public long getReservedMemory()
+        {
+            return reservedMemory;
+        }
+
+        public float getReservedCpu()
+        {
+            return reservedCpu;
+        }
+
+        public Policy getPolicy()
+        {
+            return policy;
+        }
+
+        public List<Reservation> getGranted()
+        {
+            return granted;
+        }
+
+        public List<Reservation> getWaiting()
+        {
+            return waiting;
+        }
+    }
+
+    private final long memoryCapacity;
+
+    private final float cpuCapacity;
+
+    private final Policy policy;
+
+    private final ReentrantLock lock = new ReentrantLock(true);
+
+    private final Condition changed = lock.newCondition();
+
+    /**
+     * All reservations (granted or waiting) keyed by container
+     */
+    private final Map<String, Reservation> reservations = new HashMap<>();
+
+    /**
+     * The queue of waiting reservations
+     */
+    private final TreeSet<Reservation> queue;
+
+    private long reservedMemory = 0L;
+
+    private long reservedMilliCpus = 0L;
+
+    private final long milliCpuCapacity;
+
+    private long sequenceNumber = 0L;
+
+    /**
+     * Create a ledger for a given capacity
+     *
+     * @param memoryCapacity The total memory (bytes) available to containers
+     * @param cpuCapacity The total number of CPUs available to containers
+     * @param policy The policy for ordering waiting requests
+     */
+    public ContainerResourceLedger(long memoryCapacity, float cpuCapacity, Policy policy)
+    {
+        Assert.isTrue(memoryCapacity > 0, "Expected a positive memory capacity");
+        Assert.isTrue(cpuCapacity > 0, "Expected a positive CPU capacity");
+        Assert.notNull(policy, "Expected a non-null policy");
+
+        this.memoryCapacity = memoryCapacity;
+        this.cpuCapacity = cpuCapacity;
+        this.milliCpuCapacity = toMilliCpus(cpuCapacity);
+        this.policy = policy;
+
+        Comparator<Reservation> comparator = Comparator.comparingLong(r -> r.sequenceNumber);
+        if (policy == Policy.PRIORITY) {
+            comparator = Comparator.<Reservation>comparingInt(r -> -r.priority).thenComparing(comparator);
+        }
+        this.queue = new TreeSet<>(comparator);
+    }
+
+    public long getMemoryCapacity()
+    {
+        return memoryCapacity;
+    }
+
+    public float getCpuCapacity()
+    {
+        return cpuCapacity;
+    }
+
+    public Policy getPolicy()
+    {
+        return policy;
+    }
+
+    /**
+     * Resolve the amount of memory (bytes) to be reserved for a container. This must be used
+     * both for admitting and for reserving a container, so that the same amount is accounted for.
+     *
+     * @param hostConfig The host configuration of the container (may be <tt>null</tt>)
+     * @return the memory limit of the container, or {@link #DEFAULT_MEMORY} if not limited
+     */
+    public static long requiredMemory(HostConfig hostConfig)
+    {
+        Long memory = hostConfig == null? null : hostConfig.memory();
+        return (memory == null || memory <= 0)? DEFAULT_MEMORY : memory;
+    }
+
+    /**
+     * Resolve the number of CPUs to be reserved for a container (see {@link #requiredMemory(HostConfig)}).
+     *
+     * @param hostConfig The host configuration of the container (may be <tt>null</tt>)
+     * @return the CPU share of the container, or {@link #DEFAULT_CPU} if not specified
+     */
+    public static float requiredCpu(HostConfig hostConfig)
+    {
+        // The CPU shares are set as a weight factor scaled by 1024 (see ContainerConfigurer#cpu)
+        Long shares = hostConfig == null? null : hostConfig.cpuShares();
+        return (shares == null || shares <= 0)? DEFAULT_CPU : (shares / 1024.0f);
+    }
+
+    /**
+     * Check if a request could ever be satisfied by this ledger (i.e. if it fits into the total
+     * capacity).
+     */
+    public boolean isAdmissible(long memory, float cpu)
+    {
+        return memory <= memoryCapacity && cpu <= cpuCapacity;
+    }
+
+    /**
+     * Request a reservation and wait (at most for a given amount of time) for it to be granted.
+     * <p>
+     * If the request is not granted in time, it remains queued (keeping its position), and a
+     * subsequent call with the same key resumes waiting. A waiting request must be cancelled
+     * (see {@link #release(String)}) if the caller is no longer interested.
+     *
+     * @param key A key identifying the container (e.g. the container id)
+     * @param memory The amount of memory (bytes)
+     * @param cpu The number of CPUs
+     * @param priority The priority of this request (only meaningful for {@link Policy#PRIORITY})
+     * @param timeout The maximum amount of time (milliseconds) to wait
+     * @return <tt>true</tt> if the reservation is granted
+     * @throws InterruptedException
+     * @throws IllegalArgumentException if the request exceeds the total capacity
+     */
+    public boolean acquire(String key, long memory, float cpu, int priority, long timeout)
+        throws InterruptedException
+    {
+        Assert.hasText(key, "Expected a non-empty key");
+        Assert.isTrue(memory >= 0 && cpu >= 0, "Expected non-negative amounts of resources");
+        Assert.isTrue(isAdmissible(memory, cpu),
+            "The request exceeds the total capacity of resources for containers");
+
+        lock.lock();
+        try {
+            Reservation reservation = reservations.get(key);
+            if (reservation == null) {
+                reservation = new Reservation(key, memory, cpu, priority, sequenceNumber++);
+                reservations.put(key, reservation);
+                queue.add(reservation);
+                grantWaiting();
+                if (reservation.granted == null)
+                    logger.info("Queued {} ({} waiting)", reservation, queue.size());
+            }
+
+            long remaining = TimeUnit.MILLISECONDS.toNanos(timeout);
+            while (reservation.granted == null && remaining > 0) {
+                remaining = changed.awaitNanos(remaining);
+            }
+            return reservation.granted != null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Register a reservation bypassing the queue (and capacity checks). This is meant for
+     * containers already running (e.g. found on a restart of a stopped step).
+     */
+    public void register(String key, long memory, float cpu)
+    {
+        Assert.hasText(key, "Expected a non-empty key");
+
+        lock.lock();
+        try {
+            Reservation reservation = reservations.get(key);
+            if (reservation != null && reservation.granted != null)
+                return;
+            if (reservation != null)
+                queue.remove(reservation);
+            reservation = new Reservation(key, memory, cpu, 0, sequenceNumber++);
+            grant(reservation);
+            reservations.put(key, reservation);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Release a reservation (or cancel a waiting one). Releasing an unknown key is a no-op.
+     *
+     * @param key A key identifying the container
+     */
+    public void release(String key)
+    {
+        lock.lock();
+        try {
+            Reservation reservation = reservations.remove(key);
+            if (reservation == null)
+                return;
+            if (reservation.granted != null) {
+                reservedMemory -= reservation.memory;
+                reservedMilliCpus -= reservation.milliCpus;
+                logger.debug("Released {}", reservation);
+            } else {
+                queue.remove(reservation);
+                logger.debug("Cancelled {}", reservation);
+            }
+            grantWaiting();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Report report()
+    {
+        lock.lock();
+        try {
+            List<Reservation> granted = new ArrayList<>();
+            for (Reservation r: reservations.values()) {
+                if (r.granted != null)
+                    granted.add(r);
+            }
+            granted.sort(Comparator.comparing(Reservation::getGranted));
+            return new Report(memoryCapacity, cpuCapacity, reservedMemory, reservedMilliCpus / 1000.0f, policy,
+                granted, new ArrayList<>(queue));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Grant waiting reservations (in queue order) as long as they fit into remaining capacity.
+     * Must be called holding the lock.
+     */
+    private void grantWaiting()
+    {
+        boolean granted = false;
+        Iterator<Reservation> it = queue.iterator();
+        while (it.hasNext()) {
+            Reservation r = it.next();
+            if (reservedMemory + r.memory > memoryCapacity || reservedMilliCpus + r.milliCpus > milliCpuCapacity)
+                break;
+            it.remove();
+            grant(r);
+            granted = true;
+        }
+        if (granted)
+            changed.signalAll();
+    }
+
+    private void grant(Reservation r)
+    {
+        r.granted = new Date();
+        reservedMemory += r.memory;
+        reservedMilliCpus += r.milliCpus;
+        logger.info("Granted {}: reserved memory={}MB cpu={}",
+            r, reservedMemory >> 20, reservedMilliCpus / 1000.0f);
+    }
+
+    private static long toMilliCpus(float cpu)
+    {
+        return Math.round(cpu * 1000.0);
+    }
+}
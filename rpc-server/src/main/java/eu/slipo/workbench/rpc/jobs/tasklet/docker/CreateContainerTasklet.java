@@ -19,9 +19,14 @@ import org.springframework.util.Assert;
 import com.spotify.docker.client.DockerClient;
 import com.spotify.docker.client.messages.ContainerConfig;
 import com.spotify.docker.client.messages.ContainerCreation;
+import com.spotify.docker.client.messages.HostConfig;
 
 /**
  * A tasklet that creates a docker container based on given configuration. 
+ * <p>
+ * If a {@link ContainerResourceLedger} is provided, the resources requested by the container
+ * are checked against the total capacity of the ledger, so that a container that could never
+ * be started (see {@link RunContainerTasklet}) fails early.
  */
 public class CreateContainerTasklet implements Tasklet
 {
@@ -48,6 +53,8 @@ public class CreateContainerTasklet implements Tasklet
         
         private ContainerConfigurer containerConfigurer = new ContainerConfigurer();
         
+        private ContainerResourceLedger ledger;
+        
         private Builder() {}
         
         /**
@@ -81,6 +88,15 @@ public class CreateContainerTasklet implements Tasklet
             return this;
         }
         
+        /**
+         * Provide a ledger to check requested resources against
+         */
+        public Builder resources(ContainerResourceLedger ledger)
+        {
+            this.ledger = ledger;
+            return this;
+        }
+        
         /**
          * Build a tasklet from configuration.
          */
@@ -90,7 +106,8 @@ public class CreateContainerTasklet implements Tasklet
                 "A docker client is required to communicate to docker daemon!");
             
             ContainerConfig config = containerConfigurer.buildConfiguration();
-            CreateContainerTasklet tasklet = new CreateContainerTasklet(client, config, containerName);;
+            CreateContainerTasklet tasklet = new CreateContainerTasklet(client, config, containerName);
+            tasklet.ledger = ledger;
             return tasklet;
         }
         
@@ -107,6 +124,8 @@ public class CreateContainerTasklet implements Tasklet
     
     private final String containerName;
     
+    private ContainerResourceLedger ledger;
+    
     private CreateContainerTasklet(DockerClient docker, ContainerConfig config, String name) 
     {
         Assert.notNull(docker, "The docker client must be provided");
@@ -130,6 +149,8 @@ public class CreateContainerTasklet implements Tasklet
             // This is not an error since a stopped step (e.g. on shutdown) will re-execute
             logger.info("The container is already created as {}; Skipping", containerId);
         } else {
+            if (ledger != null)
+                checkResources();
             // Create the container from given configuration
             ContainerCreation creation = docker.createContainer(containerConfig, containerName);
             containerId = creation.id();
@@ -141,5 +162,19 @@ public class CreateContainerTasklet implements Tasklet
         
         return RepeatStatus.FINISHED;
     }
+    
+    private void checkResources()
+    {
+        HostConfig hostConfig = containerConfig.hostConfig();
+        long memory = ContainerResourceLedger.requiredMemory(hostConfig);
+        float cpu = ContainerResourceLedger.requiredCpu(hostConfig);
+        
+        if (!ledger.isAdmissible(memory, cpu)) {
+            throw new IllegalStateException(String.format(
+                "The container requests more resources (memory=%dMB, cpu=%.2f) than the total capacity " +
+                    "(memory=%dMB, cpu=%.2f)",
+                memory >> 20, cpu, ledger.getMemoryCapacity() >> 20, ledger.getCpuCapacity()));
+        }
+    }
 
 }
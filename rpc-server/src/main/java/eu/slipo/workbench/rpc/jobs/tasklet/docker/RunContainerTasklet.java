@@ -1,9 +1,18 @@
 package eu.slipo.workbench.rpc.jobs.tasklet.docker;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.function.Consumer;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,11 +34,21 @@ import com.spotify.docker.client.LogStream;
 import com.spotify.docker.client.exceptions.DockerException;
 import com.spotify.docker.client.messages.ContainerInfo;
 import com.spotify.docker.client.messages.ContainerState;
+import com.spotify.docker.client.messages.HostConfig;
 
 import eu.slipo.workbench.rpc.jobs.tasklet.TimedOutExitStatus;
 
 /**
  * A tasklet that starts a docker container waiting for it to complete.
+ * <p>
+ * If a {@link ContainerMonitor} is provided, the completion of a container is signaled by the
+ * monitor (which is driven by docker events), and the tasklet does not repeatedly poll the docker
+ * daemon. Otherwise, the container status is polled at a fixed rate (see {@link Builder#checkInterval(long)}).
+ * <p>
+ * If a {@link ContainerResourceLedger} is provided, the container is started only after its
+ * resources (memory and CPU, as configured on the container) are reserved on the ledger. The
+ * tasklet waits on the ledger (which signals a grant as soon as it happens) without involving
+ * the docker daemon; while waiting, the step may still be stopped.
  */
 public class RunContainerTasklet implements Tasklet, StepExecutionListener
 {
@@ -76,6 +95,19 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
      */
     private static final long NOT_AN_EXIT_CODE = Long.MAX_VALUE;
     
+    /**
+     * The maximum amount of time (in milliseconds) to wait for the log stream of a finished
+     * container to be drained.
+     */
+    private static final long LOGS_DRAIN_TIMEOUT = 15000L;
+    
+    /**
+     * The maximum interval (in milliseconds) between checks for a stop request, while waiting
+     * for a reservation of resources. The interval starts from the check interval and is doubled
+     * on every check.
+     */
+    private static final long MAX_ADMISSION_CHECK_INTERVAL = 16000L;
+    
     /**
      * The collection of keys used inside our execution context
      */
@@ -90,6 +122,10 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
         public static final String COMMAND_EXIT_CODE = "command.exitCode";
         
         public static final String COMMAND_OUTPUT = "command.output";
+        
+        public static final String COMMAND_OUTPUT_FILES = "command.outputFiles";
+        
+        public static final String ADMISSION_WAIT = "admissionWait";
     }
     
     /**
@@ -113,6 +149,16 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
         
         private Boolean removeOnFinished;
         
+        private ContainerMonitor monitor;
+        
+        private ContainerLogCollector logCollector;
+        
+        private Path logFile;
+        
+        private ContainerResourceLedger ledger;
+        
+        private Integer priority;
+        
         private Builder() {}
         
         /**
@@ -200,6 +246,55 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
             return this;
         }
         
+        /**
+         * Provide a monitor to be notified when the container completes. If a monitor is not 
+         * provided (or is not running), the tasklet will poll the container status.
+         * <p>When a monitor is used, the check interval is only used as the period for checking 
+         * if the step is requested to stop (which does not involve the docker daemon).
+         */
+        public Builder monitor(ContainerMonitor monitor)
+        {
+            this.monitor = monitor;
+            return this;
+        }
+        
+        /**
+         * Collect the logs (stdout/stderr) of the container into a (size-capped) file, as the
+         * container runs. If a collector is not provided, all logs are fetched after the container 
+         * is finished and are saved (as a string) into step context.
+         * 
+         * @param collector The collector for container logs
+         * @param file The (absolute) path of the log file; the actual name of the file may be 
+         *   altered by the collector (e.g. when compressing)
+         */
+        public Builder logs(ContainerLogCollector collector, Path file)
+        {
+            Assert.isTrue(file == null || file.isAbsolute(), "The log file is expected as an absolute path");
+            this.logCollector = collector;
+            this.logFile = file;
+            return this;
+        }
+        
+        /**
+         * Provide a ledger to reserve resources from, before the container is started. If a 
+         * ledger is not provided, the container is started immediately.
+         */
+        public Builder resources(ContainerResourceLedger ledger)
+        {
+            this.ledger = ledger;
+            return this;
+        }
+        
+        /**
+         * Set the priority of this container when waiting for resources (higher is served first). 
+         * This is only meaningful for a ledger with a {@link ContainerResourceLedger.Policy#PRIORITY} policy.
+         */
+        public Builder priority(int priority)
+        {
+            this.priority = priority;
+            return this;
+        }
+        
         /**
          * Build a tasklet from configuration.
          */
@@ -225,6 +320,17 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
             if (removeOnFinished != null)
                 tasklet.setRemoveOnFinished(removeOnFinished);
             
+            if (monitor != null)
+                tasklet.setMonitor(monitor);
+            
+            if (logCollector != null && logFile != null)
+                tasklet.setLogs(logCollector, logFile);
+            
+            if (ledger != null)
+                tasklet.setLedger(ledger);
+            if (priority != null)
+                tasklet.setPriority(priority);
+            
             return tasklet;
         }
     }
@@ -250,6 +356,33 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
     
     private boolean removeOnFinished = REMOVE_ON_FINISHED;
     
+    private ContainerMonitor monitor;
+    
+    private ContainerLogCollector logCollector;
+    
+    private Path logFile;
+    
+    private ContainerResourceLedger ledger;
+    
+    private int priority = 0;
+    
+    /**
+     * The time (milliseconds) we started waiting for a reservation of resources
+     */
+    private long admissionRequested = -1L;
+    
+    /**
+     * The amount of memory (bytes) required by the container, or -1 if not yet resolved
+     */
+    private long requiredMemory = -1L;
+    
+    private float requiredCpu;
+    
+    /**
+     * The future of logs being collected (as the container runs)
+     */
+    private Future<List<Path>> logsFuture;
+    
     private RunContainerTasklet(DockerClient docker, String containerId) 
     {
         Assert.notNull(docker, "The docker client must be provided");
@@ -304,9 +437,84 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
         this.removeOnFinished = flag;
     }
     
+    private void setMonitor(ContainerMonitor monitor)
+    {
+        this.monitor = monitor;
+    }
+    
+    private void setLogs(ContainerLogCollector logCollector, Path logFile)
+    {
+        this.logCollector = logCollector;
+        this.logFile = logFile;
+    }
+    
+    private void setLedger(ContainerResourceLedger ledger)
+    {
+        this.ledger = ledger;
+    }
+    
+    private void setPriority(int priority)
+    {
+        this.priority = priority;
+    }
+    
+    /**
+     * Resolve the resources required by the container. The container is inspected only once,
+     * since its resource limits do not change.
+     */
+    private void resolveResources() throws DockerException, InterruptedException
+    {
+        if (requiredMemory < 0) {
+            final HostConfig hostConfig = docker.inspectContainer(containerId).hostConfig();
+            requiredCpu = ContainerResourceLedger.requiredCpu(hostConfig);
+            requiredMemory = ContainerResourceLedger.requiredMemory(hostConfig);
+        }
+    }
+    
+    /**
+     * Reserve resources for the container, waiting until they are granted or a stop is 
+     * requested for the step.
+     * 
+     * @return <tt>true</tt> if resources are reserved, <tt>false</tt> if a stop is requested
+     */
+    private boolean reserveResources(StepExecution stepExecution) 
+        throws DockerException, InterruptedException
+    {
+        resolveResources();
+        
+        if (admissionRequested < 0)
+            admissionRequested = System.currentTimeMillis();
+        
+        long wait = checkInterval;
+        while (!ledger.acquire(containerId, requiredMemory, requiredCpu, priority, wait)) {
+            if (stepExecution.isTerminateOnly()) {
+                logger.info("The step is requested to stop while waiting for resources for container {}", 
+                    containerId);
+                return false;
+            }
+            logger.debug("Waiting for resources for container {}", containerId);
+            wait = Math.min(2 * wait, MAX_ADMISSION_CHECK_INTERVAL);
+        }
+        
+        stepExecution.getExecutionContext()
+            .putLong(Keys.ADMISSION_WAIT, System.currentTimeMillis() - admissionRequested);
+        admissionRequested = -1L;
+        return true;
+    }
+    
+    /**
+     * Account for the resources of an (already started) container, if not already reserved.
+     */
+    private void registerResources() throws DockerException, InterruptedException
+    {
+        resolveResources();
+        ledger.register(containerId, requiredMemory, requiredCpu);
+    }
+    
     /**
      * Fetch all logs (stdout/stderr) generated from a container. 
      * <p>
+     * This is only used if logs are not collected into a file (see {@link Builder#logs}).
      * It is assumed that logs are text-based (encoded as UTF-8). If this is not true,
      * consider redirecting binary output to some other (bind-mounted) file, instead of 
      * writing it directly to stdout/stderr.
@@ -356,7 +564,9 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
      * This task is clearly separated into 2 phases:
      * <ol>
      *   <li>P1: Start the container</li>
-     *   <li>P2: Poll the container status (at a fixed rate), waiting for it to complete</li>  
+     *   <li>P2: Wait for the container to complete. If a monitor is present, wait (without
+     *     committing any chunk) to be notified by the monitor, else poll the container status 
+     *     (at a fixed rate)</li>  
      * </ol>
      */
     @Override
@@ -371,33 +581,46 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
         long finished = executionContext.getLong(Keys.FINISHED, -1L);
         
         if (started < 0) {
-            // P1: The container is created but not started: start it now
+            // P1: The container is created but not started: reserve resources (if a ledger is
+            // present) and start it. If a stop is requested while waiting for resources, return 
+            // control to the step (so that the stop request can be handled). 
+            if (ledger != null && !reserveResources(stepExecution))
+                return RepeatStatus.CONTINUABLE;
             docker.startContainer(containerId);
             logger.info("Started container {}", containerId);
             started = (new Date()).getTime();
             executionContext.putLong(Keys.STARTED, started);
+            if (logCollector != null)
+                logsFuture = logCollector.follow(containerId, logFile);
         } else if (finished < 0) {
-            // P2: The container is started: poll status, check if timed out
-            ContainerInfo containerInfo = docker.inspectContainer(containerId);
-            ContainerState containerState = containerInfo.state();
-            logger.debug("Polled status for container {}: {}", containerId, containerState);
-            long elapsedTime = (new Date()).getTime() - started;
-            if (containerState.running()) {
-                if (timeout > 0 && elapsedTime > timeout) {
-                    // Timed out: Mark the step as failed and stop container now
-                    logger.error("Timed out at {}ms: Stopping {}", timeout, containerId);
-                    docker.stopContainer(containerId, (int) (stopTimeout / 1000));
-                    finished = (new Date()).getTime();
-                    executionContext.putLong(Keys.FINISHED, finished);
-                    executionContext.putLong(Keys.TIMED_OUT, timeout);
-                    contribution.setExitStatus(new TimedOutExitStatus(timeout));
-                    stepExecution.setStatus(failOnTimeout? BatchStatus.FAILED : BatchStatus.COMPLETED);
-                } else {
-                    // The container is still running; sleep for one more period
+            // P2: The container is started: wait for it to finish, check if timed out
+            if (logCollector != null && logsFuture == null) {
+                // This is a restart of a stopped step: re-attach to the log stream
+                logsFuture = logCollector.follow(containerId, logFile);
+            }
+            if (ledger != null)
+                registerResources();
+            ContainerState containerState = (monitor != null && monitor.isRunning())?
+                awaitContainer(stepExecution, started) : pollContainer(started);
+            if (containerState == null) {
+                // The container is still running; this is either a poll (so, sleep for one 
+                // more period) or a stop request (so, return control to the step).
+                if (monitor == null || !monitor.isRunning()) {
                     logger.debug("The container {} is running: sleeping for {}ms", 
                         containerId, checkInterval);
                     Thread.sleep(checkInterval);
                 }
+            } else if (containerState.running()) {
+                // Timed out: Mark the step as failed and stop container now
+                logger.error("Timed out at {}ms: Stopping {}", timeout, containerId);
+                docker.stopContainer(containerId, (int) (stopTimeout / 1000));
+                finished = (new Date()).getTime();
+                executionContext.putLong(Keys.FINISHED, finished);
+                executionContext.putLong(Keys.TIMED_OUT, timeout);
+                if (ledger != null)
+                    ledger.release(containerId);
+                contribution.setExitStatus(new TimedOutExitStatus(timeout));
+                stepExecution.setStatus(failOnTimeout? BatchStatus.FAILED : BatchStatus.COMPLETED);
             } else {
                 // The container is finished: determine exit-status
                 int exitCode = containerState.exitCode();
@@ -406,6 +629,8 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
                 finished = (new Date()).getTime();
                 executionContext.putLong(Keys.FINISHED, finished);
                 executionContext.putLong(Keys.COMMAND_EXIT_CODE, exitCode);
+                if (ledger != null)
+                    ledger.release(containerId);
                 contribution.setExitStatus(resolveExitStatus(exitCode));
                 stepExecution.setStatus((failOnNonZeroExitCode && exitCode != 0)? 
                     BatchStatus.FAILED : BatchStatus.COMPLETED);
@@ -419,6 +644,70 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
         return RepeatStatus.continueIf(finished < 0);
     }
     
+    /**
+     * Poll the container status once.
+     * 
+     * @return the state of the container if it has finished or has timed out (i.e. still running), 
+     *   or <tt>null</tt> if it is running and not timed out
+     */
+    private ContainerState pollContainer(long started)
+        throws DockerException, InterruptedException
+    {
+        ContainerInfo containerInfo = docker.inspectContainer(containerId);
+        ContainerState containerState = containerInfo.state();
+        logger.debug("Polled status for container {}: {}", containerId, containerState);
+        
+        if (containerState.running()) {
+            long elapsedTime = (new Date()).getTime() - started;
+            return (timeout > 0 && elapsedTime > timeout)? containerState : null;
+        }
+        return containerState;
+    }
+    
+    /**
+     * Wait for the monitor to report the container as finished. 
+     * <p>Note that we do not return to the step (which would commit a chunk and update the 
+     * execution context) until the container is finished, unless a stop is requested.
+     * 
+     * @return the state of the container if it has finished or has timed out (i.e. still running), 
+     *   or <tt>null</tt> if a stop is requested for the step
+     */
+    private ContainerState awaitContainer(StepExecution stepExecution, long started)
+        throws DockerException, InterruptedException
+    {
+        CompletableFuture<ContainerState> future = monitor.watch(containerId);
+        
+        try {
+            while (true) {
+                if (stepExecution.isTerminateOnly()) {
+                    logger.info("The step is requested to stop while waiting for container {}", containerId);
+                    return null;
+                }
+                long wait = checkInterval;
+                if (timeout > 0) {
+                    long remaining = started + timeout - (new Date()).getTime();
+                    if (remaining <= 0)
+                        return docker.inspectContainer(containerId).state(); // timed out
+                    wait = Math.min(wait, remaining);
+                }
+                try {
+                    return future.get(wait, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException ex) {
+                    // no-op: check again for timeout or a stop request
+                } catch (CancellationException | ExecutionException ex) {
+                    // The monitor is stopped: fallback to polling
+                    logger.warn("Stopped watching container {}: fallback to polling", containerId);
+                    return pollContainer(started);
+                }
+            }
+        } finally {
+            // If we stop waiting before the container finishes (a stop request, a timeout, an
+            // interruption or a failure), stop watching it (a restart will watch it again)
+            if (!future.isDone())
+                future.cancel(false);
+        }
+    }
+    
     @Override
     public void beforeStep(StepExecution stepExecution)
     {
@@ -455,17 +744,29 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
         
         if (finished > 0) {
             // The step is marked as finished, successfully or not. Save all output
-            // generated from the container (stdout/stderr) into step context.
-            String output;
-            try {
-                output = fetchLogsFromContainer(containerId);
-            } catch (DockerException | InterruptedException e) {
-                output = null;
-                logger.error("Failed to fetch logs for container {}: {}", 
-                    containerId, e.getMessage());
+            // generated from the container (stdout/stderr): if a log collector is present, 
+            // only a reference to log files is kept into step context.
+            if (logCollector != null) {
+                if (!executionContext.containsKey(Keys.COMMAND_OUTPUT_FILES)) {
+                    List<Path> files = collectLogs();
+                    if (files != null) {
+                        List<String> fileNames = new ArrayList<>(files.size());
+                        files.forEach(f -> fileNames.add(f.toString()));
+                        executionContext.put(Keys.COMMAND_OUTPUT_FILES, fileNames);
+                    }
+                }
+            } else {
+                String output;
+                try {
+                    output = fetchLogsFromContainer(containerId);
+                } catch (DockerException | InterruptedException e) {
+                    output = null;
+                    logger.error("Failed to fetch logs for container {}: {}", 
+                        containerId, e.getMessage());
+                }
+                if (output != null)
+                    executionContext.putString(Keys.COMMAND_OUTPUT, output);
             }
-            if (output != null)
-                executionContext.putString(Keys.COMMAND_OUTPUT, output);
 
             // Destroy container, if tasklet is configured so.
             // Note: if a container is configured with the auto-remove flag, this
@@ -480,9 +781,60 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
             }
         }
         
+        // Release the reservation of resources (or cancel a pending request). On an interrupted
+        // step (e.g. on shutdown), resources will be registered again on restart.
+        
+        if (ledger != null) {
+            ledger.release(containerId);
+            admissionRequested = -1L;
+        }
+        
+        if (finished < 0 && logsFuture != null) {
+            // The step is interrupted: stop following logs (they will be collected again on restart)
+            logsFuture.cancel(true);
+            logsFuture = null;
+        }
+        
         return null; // do not alter exit-status
     }
     
+    /**
+     * Wait for the log stream (of a finished container) to be drained into log files. If the
+     * logs were not followed (or following has failed), fetch them now.
+     * 
+     * @return the list of log files, or <tt>null</tt> if logs could not be collected
+     */
+    private List<Path> collectLogs()
+    {
+        List<Path> files = null;
+        
+        if (logsFuture != null) {
+            try {
+                files = logsFuture.get(LOGS_DRAIN_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException | TimeoutException | CancellationException e) {
+                logsFuture.cancel(true);
+                logger.warn("Failed to follow logs for container {}: {}", containerId, e.getMessage());
+            } finally {
+                logsFuture = null;
+            }
+        }
+        
+        if (files == null) {
+            try {
+                files = logCollector.fetch(containerId, logFile);
+            } catch (DockerException | IOException e) {
+                logger.error("Failed to fetch logs for container {}: {}", containerId, e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        
+        return files;
+    }
+    
     /**
      * Reset all execution context.
      * 
@@ -497,5 +849,7 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
         executionContext.remove(Keys.TIMED_OUT);
         executionContext.remove(Keys.COMMAND_EXIT_CODE);
         executionContext.remove(Keys.COMMAND_OUTPUT);
+        executionContext.remove(Keys.COMMAND_OUTPUT_FILES);
+        executionContext.remove(Keys.ADMISSION_WAIT);
     }
 }
@@ -0,0 +1,30 @@
+package eu.slipo.workbench.rpc.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import eu.slipo.workbench.rpc.domain.JobConfigurationEntity;
+
+@Repository
+@Transactional(readOnly = true)
+public interface JobConfigurationRepository extends JpaRepository<JobConfigurationEntity, String>
+{
+    /**
+     * Insert a configuration, unless a configuration with the same hash already exists (a no-op,
+     * since the content is determined by its hash).
+     *
+     * @return the number of inserted rows (0 or 1)
+     */
+    @Modifying
+    @Transactional(readOnly = false)
+    @Query(
+        value = "INSERT INTO rpc.job_configuration (hash, tool, content, created_on) " +
+            "VALUES (:hash, :tool, :content, now()) ON CONFLICT (hash) DO NOTHING",
+        nativeQuery = true)
+    int insertIfAbsent(
+        @Param("hash") String hash, @Param("tool") String tool, @Param("content") String content);
+}
@@ -0,0 +1,254 @@
+package eu.slipo.workbench.rpc.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.tuple.Pair;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.repository.ExecutionContextSerializer;
+import org.springframework.batch.core.repository.dao.ExecutionContextDao;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * An {@link ExecutionContextDao} that skips updating an execution context which is unchanged since
+ * it was last written.
+ * <p>
+ * A step is updated on every commit (e.g. a tasklet polling a container commits once per check),
+ * although its context rarely changes. The digest of the last written (serialized) context is kept
+ * for every execution, and an update is only passed to the underlying DAO if the digest differs. A
+ * digest is recorded only after the transaction that wrote the context has committed.
+ * <p>
+ * The underlying DAO must serialize contexts through the same {@link PreparedSerializer} given to
+ * this DAO: a context is serialized once (to compute its digest), and the very same output is
+ * written by the underlying DAO.
+ */
+public class ChangeTrackingExecutionContextDao implements ExecutionContextDao
+{
+    /**
+     * A serializer that reuses the output of a context prepared (i.e. serialized in advance) in the
+     * current thread, if asked to serialize an equal context.
+     */
+    public static class PreparedSerializer implements ExecutionContextSerializer
+    {
+        private final ExecutionContextSerializer serializer;
+
+        private final ThreadLocal<List<Pair<Map<String, Object>, byte[]>>> prepared =
+            ThreadLocal.withInitial(ArrayList::new);
+
+        public PreparedSerializer(ExecutionContextSerializer serializer)
+        {
+            Assert.notNull(serializer, "Expected a non-null serializer");
+            this.serializer = serializer;
+        }
+
+        /**
+         * Serialize a context, and keep the output to be reused by a subsequent serialization
+         * (of an equal context) in this thread
+         */
+        byte[] prepare(Map<String, Object> context) throws IOException
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            serializer.serialize(context, out);
+            final byte[] data = out.toByteArray();
+            prepared.get().add(Pair.of(context, data));
+            return data;
+        }
+
+        /**
+         * Discard any prepared output of this thread
+         */
+        void clear()
+        {
+            prepared.get().clear();
+        }
+
+        @Override
+        public void serialize(Map<String, Object> context, OutputStream out) throws IOException
+        {
+            final Iterator<Pair<Map<String, Object>, byte[]>> it = prepared.get().iterator();
+            while (it.hasNext()) {
+                final Pair<Map<String, Object>, byte[]> p = it.next();
+                if (p.getLeft().equals(context)) {
+                    it.remove();
+                    out.write(p.getRight());
+                    return;
+                }
+            }
+            serializer.serialize(context, out);
+        }
+
+        @Override
+        public Map<String, Object> deserialize(InputStream in) throws IOException
+        {
+            return serializer.deserialize(in);
+        }
+    }
+
+    private final ExecutionContextDao delegate;
+
+    private final PreparedSerializer serializer;
+
+    /**
+     * The digests of last written contexts, keyed by execution (e.g. <tt>step:42</tt>)
+     */
+    private final Cache<String, String> digests = CacheBuilder.newBuilder()
+        .maximumSize(10000)
+        .expireAfterAccess(6, TimeUnit.HOURS)
+        .build();
+
+    public ChangeTrackingExecutionContextDao(ExecutionContextDao delegate, PreparedSerializer serializer)
+    {
+        Assert.notNull(delegate, "Expected a non-null DAO to delegate to");
+        Assert.notNull(serializer, "Expected a non-null serializer");
+        this.delegate = delegate;
+        this.serializer = serializer;
+    }
+
+    @Override
+    public ExecutionContext getExecutionContext(JobExecution jobExecution)
+    {
+        return delegate.getExecutionContext(jobExecution);
+    }
+
+    @Override
+    public ExecutionContext getExecutionContext(StepExecution stepExecution)
+    {
+        return delegate.getExecutionContext(stepExecution);
+    }
+
+    @Override
+    public void saveExecutionContext(JobExecution jobExecution)
+    {
+        final String digest = prepare(jobExecution.getExecutionContext());
+        try {
+            delegate.saveExecutionContext(jobExecution);
+        } finally {
+            serializer.clear();
+        }
+        record(key(jobExecution), digest);
+    }
+
+    @Override
+    public void saveExecutionContext(StepExecution stepExecution)
+    {
+        final String digest = prepare(stepExecution.getExecutionContext());
+        try {
+            delegate.saveExecutionContext(stepExecution);
+        } finally {
+            serializer.clear();
+        }
+        record(key(stepExecution), digest);
+    }
+
+    @Override
+    public void saveExecutionContexts(Collection<StepExecution> stepExecutions)
+    {
+        final List<String> preparedDigests = new ArrayList<>(stepExecutions.size());
+        try {
+            for (StepExecution stepExecution: stepExecutions)
+                preparedDigests.add(prepare(stepExecution.getExecutionContext()));
+            delegate.saveExecutionContexts(stepExecutions);
+        } finally {
+            serializer.clear();
+        }
+
+        final Iterator<String> it = preparedDigests.iterator();
+        for (StepExecution stepExecution: stepExecutions)
+            record(key(stepExecution), it.next());
+    }
+
+    @Override
+    public void updateExecutionContext(JobExecution jobExecution)
+    {
+        final String key = key(jobExecution);
+        try {
+            final String digest = prepare(jobExecution.getExecutionContext());
+            if (digest.equals(digests.getIfPresent(key)))
+                return;
+            delegate.updateExecutionContext(jobExecution);
+            record(key, digest);
+        } finally {
+            serializer.clear();
+        }
+    }
+
+    @Override
+    public void updateExecutionContext(StepExecution stepExecution)
+    {
+        final String key = key(stepExecution);
+        try {
+            final String digest = prepare(stepExecution.getExecutionContext());
+            if (digest.equals(digests.getIfPresent(key)))
+                return;
+            delegate.updateExecutionContext(stepExecution);
+            record(key, digest);
+        } finally {
+            serializer.clear();
+        }
+    }
+
+    private static String key(JobExecution jobExecution)
+    {
+        return "job:" + jobExecution.getId();
+    }
+
+    private static String key(StepExecution stepExecution)
+    {
+        return "step:" + stepExecution.getId();
+    }
+
+    /**
+     * Serialize a context (to be reused when the context is written), and compute its digest
+     */
+    private String prepare(ExecutionContext executionContext)
+    {
+        final Map<String, Object> m = new HashMap<>();
+        for (Map.Entry<String, Object> e: executionContext.entrySet())
+            m.put(e.getKey(), e.getValue());
+
+        try {
+            return DigestUtils.sha256Hex(serializer.prepare(m));
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("Could not serialize the execution context", ex);
+        }
+    }
+
+    /**
+     * Record the digest of a written context (after the surrounding transaction has committed, if any)
+     */
+    private void record(String key, String digest)
+    {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            digests.put(key, digest);
+            return;
+        }
+
+        // Forget any digest until it is known whether this write will be committed
+        digests.invalidate(key);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter()
+        {
+            @Override
+            public void afterCommit()
+            {
+                digests.put(key, digest);
+            }
+        });
+    }
+}
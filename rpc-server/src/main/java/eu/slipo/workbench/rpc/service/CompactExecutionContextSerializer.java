@@ -0,0 +1,320 @@
+package eu.slipo.workbench.rpc.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.batch.core.repository.ExecutionContextSerializer;
+import org.springframework.batch.core.repository.dao.XStreamExecutionContextStringSerializer;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+import org.springframework.util.StreamUtils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * An {@link ExecutionContextSerializer} producing a compact (compressed) encoding of an execution
+ * context.
+ * <p>
+ * The context is encoded as the default (XStream-based) serializer would do, and then deflated
+ * and Base64-encoded (so that it can still be stored into a text column). A value whose encoding
+ * exceeds a given threshold (e.g. a whole tool configuration) is stored by reference: the encoded
+ * value is kept in a content-addressed file (under a blob directory), and only its digest is kept
+ * inside the context. Since the file is named after the digest of its content, a value shared by
+ * several contexts (or rewritten unchanged) is only written once. Blobs no longer referenced by
+ * any context are deleted by {@link #sweep(Set, long)}.
+ * <p>
+ * A context not carrying the prefix of the compact encoding is handed to the default serializer,
+ * so that contexts written before switching to this serializer can still be read.
+ */
+public class CompactExecutionContextSerializer implements ExecutionContextSerializer, InitializingBean
+{
+    /**
+     * The prefix marking the compact encoding (and its version)
+     */
+    public static final String PREFIX = "z1:";
+
+    /**
+     * The key (inside an encoded context) for the map of values stored by reference
+     */
+    public static final String REFERENCES_KEY = "#references";
+
+    private static final byte[] PREFIX_BYTES = PREFIX.getBytes(StandardCharsets.US_ASCII);
+
+    public static final int DEFAULT_LARGE_VALUE_THRESHOLD = 16 * 1024;
+
+    private final XStreamExecutionContextStringSerializer delegate = new XStreamExecutionContextStringSerializer();
+
+    private final Path blobDir;
+
+    private final int largeValueThreshold;
+
+    /**
+     * Guard a blob from being deleted (by a sweep) while it is reused by a write
+     */
+    private final Object sweepLock = new Object();
+
+    /**
+     * Memoize (inflated) blobs, since the same blob is read by every step of a job execution
+     */
+    private final Cache<String, byte[]> blobs = CacheBuilder.newBuilder()
+        .maximumWeight(32L * 1024L * 1024L)
+        .<String, byte[]>weigher((key, data) -> data.length)
+        .build();
+
+    /**
+     * Create a serializer that stores large values by reference
+     *
+     * @param blobDir The directory to store large values into
+     * @param largeValueThreshold The size (bytes) above which an (encoded) value is stored by reference
+     */
+    public CompactExecutionContextSerializer(Path blobDir, int largeValueThreshold)
+    {
+        Assert.isTrue(blobDir == null || blobDir.isAbsolute(), "Expected an absolute path for the blob directory");
+        Assert.isTrue(largeValueThreshold > 0, "Expected a positive threshold");
+        this.blobDir = blobDir;
+        this.largeValueThreshold = largeValueThreshold;
+    }
+
+    /**
+     * Create a serializer that stores every value inline
+     */
+    public CompactExecutionContextSerializer()
+    {
+        this(null, DEFAULT_LARGE_VALUE_THRESHOLD);
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception
+    {
+        delegate.afterPropertiesSet();
+        if (blobDir != null)
+            Files.createDirectories(blobDir);
+    }
+
+    @Override
+    public void serialize(Map<String, Object> context, OutputStream out) throws IOException
+    {
+        Assert.notNull(context, "Expected a non-null context");
+
+        final Map<String, Object> envelope = new HashMap<>();
+        final Map<String, String> references = new HashMap<>();
+
+        for (Map.Entry<String, Object> e: context.entrySet()) {
+            final Object value = e.getValue();
+            if (blobDir != null && !isSimpleValue(value)) {
+                byte[] data = encode(Collections.singletonMap("value", value));
+                if (data.length > largeValueThreshold) {
+                    references.put(e.getKey(), writeBlob(deflate(data)));
+                    continue;
+                }
+            }
+            envelope.put(e.getKey(), value);
+        }
+
+        if (!references.isEmpty())
+            envelope.put(REFERENCES_KEY, references);
+
+        out.write(PREFIX_BYTES);
+        out.write(Base64.getEncoder().encode(deflate(encode(envelope))));
+    }
+
+    @Override
+    public Map<String, Object> deserialize(InputStream in) throws IOException
+    {
+        final byte[] data = StreamUtils.copyToByteArray(in);
+
+        if (!startsWithPrefix(data))
+            return delegate.deserialize(new ByteArrayInputStream(data));
+
+        final byte[] encoded = Base64.getDecoder().decode(
+            Arrays.copyOfRange(data, PREFIX_BYTES.length, data.length));
+        final Map<String, Object> context = decode(inflate(encoded));
+
+        @SuppressWarnings("unchecked")
+        final Map<String, String> references = (Map<String, String>) context.remove(REFERENCES_KEY);
+        if (references != null) {
+            for (Map.Entry<String, String> e: references.entrySet()) {
+                context.put(e.getKey(), decode(readBlob(e.getValue())).get("value"));
+            }
+        }
+
+        return context;
+    }
+
+    /**
+     * Collect the keys of the blobs referenced by a serialized context. Only the context itself
+     * is decoded (referenced blobs are not read).
+     *
+     * @param serializedContext A serialized context (of any encoding)
+     * @param keys The set to add keys into
+     */
+    public void collectReferences(String serializedContext, Set<String> keys) throws IOException
+    {
+        final byte[] data = serializedContext.getBytes(StandardCharsets.US_ASCII);
+        if (!startsWithPrefix(data))
+            return;
+
+        final byte[] encoded = Base64.getDecoder().decode(
+            Arrays.copyOfRange(data, PREFIX_BYTES.length, data.length));
+        final Map<String, Object> context = decode(inflate(encoded));
+
+        @SuppressWarnings("unchecked")
+        final Map<String, String> references = (Map<String, String>) context.get(REFERENCES_KEY);
+        if (references != null)
+            keys.addAll(references.values());
+    }
+
+    /**
+     * Delete blobs that are not referenced by any context (e.g. blobs of superseded versions of a
+     * context, or of deleted executions).
+     * <p>
+     * A blob is written (or touched, if already present) before the context referencing it is
+     * committed. So, only blobs not modified for a given period are deleted, so that blobs of
+     * contexts being written are not mistaken for unreferenced ones.
+     *
+     * @param referencedKeys The keys of all blobs referenced by persisted contexts, collected
+     *   (see {@link #collectReferences(String, Set)}) before this method is invoked
+     * @param minAge The minimum age (milliseconds since last modified) of a blob to be deleted
+     * @return the number of deleted blobs
+     */
+    public int sweep(Set<String> referencedKeys, long minAge) throws IOException
+    {
+        Assert.state(blobDir != null, "No blob directory is configured");
+
+        final long modifiedBefore = System.currentTimeMillis() - minAge;
+        int n = 0;
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(blobDir)) {
+            for (Path path: paths) {
+                final String key = path.getFileName().toString();
+                if (referencedKeys.contains(key) || !Files.isRegularFile(path))
+                    continue;
+                synchronized (sweepLock) {
+                    // Also covers temporary files left behind by an interrupted write
+                    try {
+                        if (Files.getLastModifiedTime(path).toMillis() < modifiedBefore) {
+                            blobs.invalidate(key);
+                            if (Files.deleteIfExists(path))
+                                n++;
+                        }
+                    } catch (NoSuchFileException ex) {
+                        // Moved or deleted meanwhile
+                    }
+                }
+            }
+        }
+        return n;
+    }
+
+    private static boolean isSimpleValue(Object value)
+    {
+        return value == null || value instanceof String || value instanceof Number ||
+            value instanceof Boolean || value instanceof Character || value instanceof Date ||
+            value instanceof Enum;
+    }
+
+    private static boolean startsWithPrefix(byte[] data)
+    {
+        if (data.length < PREFIX_BYTES.length)
+            return false;
+        for (int i = 0; i < PREFIX_BYTES.length; i++)
+            if (data[i] != PREFIX_BYTES[i])
+                return false;
+        return true;
+    }
+
+    private byte[] encode(Map<String, Object> map) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        delegate.serialize(map, out);
+        return out.toByteArray();
+    }
+
+    private Map<String, Object> decode(byte[] data) throws IOException
+    {
+        return delegate.deserialize(new ByteArrayInputStream(data));
+    }
+
+    /**
+     * Write a (deflated) blob unless already present
+     *
+     * @return the key for this blob
+     */
+    private String writeBlob(byte[] data) throws IOException
+    {
+        final String key = DigestUtils.sha256Hex(data);
+        final Path path = blobDir.resolve(key);
+        synchronized (sweepLock) {
+            if (Files.exists(path)) {
+                // Mark as recently referenced (see sweep)
+                try {
+                    Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+                    return key;
+                } catch (NoSuchFileException ex) {
+                    // Deleted meanwhile: write again
+                }
+            }
+        }
+
+        final Path tempPath = blobDir.resolve(".tmp-" + UUID.randomUUID().toString());
+        Files.write(tempPath, data);
+        try {
+            Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException ex) {
+            // Written meanwhile by another thread (with the same content)
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+        return key;
+    }
+
+    private byte[] readBlob(String key) throws IOException
+    {
+        Assert.state(blobDir != null, "A context with values stored by reference requires a blob directory");
+        try {
+            return blobs.get(key, () -> inflate(Files.readAllBytes(blobDir.resolve(key))));
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            throw (cause instanceof IOException)? ((IOException) cause) : new IOException(cause);
+        }
+    }
+
+    private static byte[] deflate(byte[] data) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 16);
+        try (DeflaterOutputStream deflater = new DeflaterOutputStream(out)) {
+            deflater.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] inflate(byte[] data) throws IOException
+    {
+        try (InflaterInputStream in = new InflaterInputStream(new ByteArrayInputStream(data))) {
+            return StreamUtils.copyToByteArray(in);
+        }
+    }
+}
@@ -3,7 +3,6 @@ package eu.slipo.workbench.rpc.service;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.nio.file.FileSystemException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -12,14 +11,18 @@ import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 
 import javax.annotation.PostConstruct;
 
+import org.apache.commons.io.FilenameUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.batch.core.BatchStatus;
@@ -29,6 +32,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.Assert;
 
 import com.github.slugify.Slugify;
@@ -40,6 +45,7 @@ import eu.slipo.workbench.common.model.poi.EnumTool;
 import eu.slipo.workbench.common.model.process.EnumProcessExecutionStatus;
 import eu.slipo.workbench.common.model.process.EnumStepFile;
 import eu.slipo.workbench.common.model.process.ProcessDefinition;
+import eu.slipo.workbench.common.model.process.ProcessExecutionEvent;
 import eu.slipo.workbench.common.model.process.ProcessExecutionNotFoundException;
 import eu.slipo.workbench.common.model.process.ProcessExecutionRecord;
 import eu.slipo.workbench.common.model.process.ProcessExecutionStartException;
@@ -50,6 +56,7 @@ import eu.slipo.workbench.common.model.process.ProcessExecutionStopException;
 import eu.slipo.workbench.common.model.process.ProcessIdentifier;
 import eu.slipo.workbench.common.model.process.ProcessNotFoundException;
 import eu.slipo.workbench.common.model.process.ProcessRecord;
+import eu.slipo.workbench.common.model.process.RunningProcessSet;
 import eu.slipo.workbench.common.model.process.Step;
 import eu.slipo.workbench.common.model.resource.DataSource;
 import eu.slipo.workbench.common.model.tool.AnyTool;
@@ -65,12 +72,12 @@ import eu.slipo.workbench.common.repository.ProcessRepository.ProcessHasActiveEx
 import eu.slipo.workbench.common.repository.ResourceRepository;
 import eu.slipo.workbench.common.service.UserFileNamingStrategy;
 import eu.slipo.workbench.rpc.jobs.RegisterToCatalogJobConfiguration;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerLogCollector;
 import eu.slipo.workbench.common.service.ProcessOperator;
 import eu.slipo.workflows.Workflow;
 import eu.slipo.workflows.WorkflowExecutionEventListener;
 import eu.slipo.workflows.WorkflowExecutionEventListenerSupport;
 import eu.slipo.workflows.WorkflowExecutionSnapshot;
-import eu.slipo.workflows.WorkflowExecutionStatus;
 import eu.slipo.workflows.WorkflowExecutionStopListener;
 import eu.slipo.workflows.exception.WorkflowExecutionStartException;
 import eu.slipo.workflows.exception.WorkflowExecutionStopException;
@@ -119,9 +126,56 @@ public class DefaultProcessOperator implements ProcessOperator
     @Autowired
     private ProcessToWorkflowMapper processToWorkflowMapper;
 
+    @Autowired(required = false)
+    private StepOutputCache outputCache;
+
+    @Autowired(required = false)
+    private OutputProfiler outputProfiler;
+
     @Value("${slipo.rpc-server.workflows.collect-logs:false}")
     private boolean collectLogs = false;
 
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ProcessExecutionEventPublisher eventPublisher;
+
+    @Autowired
+    @Qualifier("bookkeepingTaskExecutor")
+    private Executor bookkeepingExecutor;
+
+    /**
+     * The maximum number of bookkeeping updates (of an execution) to be written in a single transaction
+     */
+    @Value("${slipo.rpc-server.workflows.bookkeeping.max-batch-size:32}")
+    private int bookkeepingMaxBatchSize = ProcessExecutionJournal.DEFAULT_MAX_BATCH_SIZE;
+
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * The bookkeeping journals of active executions, keyed by execution id
+     */
+    private final Map<Long, ProcessExecutionJournal> journals = new ConcurrentHashMap<>();
+
+    /**
+     * An index of process identifiers keyed by the identifier of the workflow they are mapped to
+     */
+    private final Map<UUID, ProcessIdentifier> processByWorkflowId = new ConcurrentHashMap<>();
+
+    /**
+     * The workflows currently running (guarded by itself)
+     */
+    private final Set<UUID> runningWorkflowIds = new HashSet<>();
+
+    /**
+     * A snapshot of the set of running processes; replaced whenever a workflow starts or stops
+     * running. The initial version is the startup time, so that a version cached by a caller is not
+     * mistaken for a version of a restarted instance.
+     */
+    private volatile RunningProcessSet runningSet =
+        new RunningProcessSet(System.currentTimeMillis(), Collections.emptyList());
+
     /**
      * Fix status of interrupted executions.
      *
@@ -134,6 +188,12 @@ public class DefaultProcessOperator implements ProcessOperator
         processRepository.clearRunningExecutions();
     }
 
+    @PostConstruct
+    private void setupTransactionTemplate()
+    {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
     /**
      * A job-level listener for resource-related post-registration duties
      */
@@ -149,10 +209,17 @@ public class DefaultProcessOperator implements ProcessOperator
          */
         private final ProcessDefinition definition;
 
-        private AfterRegistrationHandler(long executionId, ProcessDefinition definition)
+        /**
+         * The journal recording the steps of this execution
+         */
+        private final ProcessExecutionJournal journal;
+
+        private AfterRegistrationHandler(
+            long executionId, ProcessDefinition definition, ProcessExecutionJournal journal)
         {
             this.executionId = executionId;
             this.definition = definition;
+            this.journal = journal;
         }
 
         @Override
@@ -205,14 +272,15 @@ public class DefaultProcessOperator implements ProcessOperator
                 throw new IllegalStateException(
                     "Expected a resource version under [" + RESOURCE_VERSION_KEY + "] in execution context");
 
-            // Associate process execution with registered resources
+            // Associate process execution with registered resources.
+            // Note: This refers to the output file of the producer step, so the journal must have
+            // written every preceding update.
 
-            resourceRepository.setProcessExecution(
-                resourceId,
-                resourceVersion,
-                executionId,
-                producer.key(),
-                outputPart.key());
+            final long id = resourceId, version = resourceVersion;
+            journal.submit(j -> {
+                j.flush();
+                resourceRepository.setProcessExecution(id, version, executionId, producer.key(), outputPart.key());
+            });
         }
     }
 
@@ -231,10 +299,43 @@ public class DefaultProcessOperator implements ProcessOperator
          */
         private final ProcessDefinition definition;
 
-        private ReportingExecutionListener(long executionId, ProcessDefinition definition)
+        /**
+         * The plan computed while mapping the process to this workflow (provides the cache keys
+         * for cacheable steps)
+         */
+        private final WorkflowPlan plan;
+
+        /**
+         * The journal recording the steps (and the status) of this execution. Every repository
+         * update (along with examining input/output files) is carried out through this journal, so
+         * that the threads of the workflow scheduler are never blocked on it.
+         */
+        private final ProcessExecutionJournal journal;
+
+        /**
+         * The process record (revision) being executed
+         */
+        private final ProcessRecord processRecord;
+
+        private ReportingExecutionListener(
+            long executionId, ProcessRecord processRecord, WorkflowPlan plan, ProcessExecutionJournal journal)
         {
             this.executionId = executionId;
-            this.definition = definition;
+            this.processRecord = processRecord;
+            this.definition = processRecord.getDefinition();
+            this.plan = plan;
+            this.journal = journal;
+        }
+
+        /**
+         * Publish a transition once the journal has written it (so that a receiver of the event can
+         * read the updated records)
+         */
+        private void publishAfterFlush(
+            ProcessExecutionJournal journal, Integer stepKey, EnumProcessExecutionStatus status)
+        {
+            final ProcessExecutionEvent event = createEvent(executionId, processRecord, stepKey, status);
+            journal.afterFlush(() -> eventPublisher.publish(event));
         }
 
         @Override
@@ -242,12 +343,13 @@ public class DefaultProcessOperator implements ProcessOperator
         {
             final Workflow workflow = workflowExecutionSnapshot.workflow();
             logger.info("The workflow {} has completed successfully", workflow.id());
-            try {
-                processRepository.updateExecution(
-                    executionId, EnumProcessExecutionStatus.COMPLETED, null, ZonedDateTime.now(), null);
-            } catch (ProcessExecutionNotFoundException ex) {
-                throw new IllegalStateException("The execution entity has disappeared!", ex);
-            }
+            final ZonedDateTime now = ZonedDateTime.now();
+            journal.submit(j -> {
+                j.setStatus(EnumProcessExecutionStatus.COMPLETED, now);
+                publishAfterFlush(j, null, EnumProcessExecutionStatus.COMPLETED);
+            });
+            journals.remove(executionId);
+            setRunning(workflow.id(), false);
         }
 
         @Override
@@ -256,12 +358,13 @@ public class DefaultProcessOperator implements ProcessOperator
         {
             final Workflow workflow = workflowExecutionSnapshot.workflow();
             logger.warn("The workflow {} has failed", workflow.id());
-            try {
-                processRepository.updateExecution(
-                    executionId, EnumProcessExecutionStatus.FAILED, null, ZonedDateTime.now(), null);
-            } catch (ProcessExecutionNotFoundException ex) {
-                throw new IllegalStateException("The execution entity has disappeared!", ex);
-            }
+            final ZonedDateTime now = ZonedDateTime.now();
+            journal.submit(j -> {
+                j.setStatus(EnumProcessExecutionStatus.FAILED, now);
+                publishAfterFlush(j, null, EnumProcessExecutionStatus.FAILED);
+            });
+            journals.remove(executionId);
+            setRunning(workflow.id(), false);
         }
 
         @Override
@@ -273,22 +376,24 @@ public class DefaultProcessOperator implements ProcessOperator
 
             final Step step = definition.stepByNodeName(nodeName);
             if (step != null) {
-                beforeProcessingStep(workflowExecutionSnapshot, step, jobExecution);
+                final ZonedDateTime now = ZonedDateTime.now();
+                journal.submit(j -> {
+                    beforeProcessingStep(j, workflow, step, jobExecution, now);
+                    publishAfterFlush(j, step.key(), EnumProcessExecutionStatus.RUNNING);
+                });
             }
         }
 
         private void beforeProcessingStep(
-            WorkflowExecutionSnapshot workflowExecutionSnapshot, Step step, JobExecution jobExecution)
+            ProcessExecutionJournal journal, Workflow workflow, Step step, JobExecution jobExecution,
+            ZonedDateTime now)
         {
-            final Workflow workflow = workflowExecutionSnapshot.workflow();
             final Workflow.JobNode node = workflow.node(step.nodeName());
             final List<Path> inputPaths = node.input();
 
             final ToolConfiguration<? extends AnyTool> configuration = step.configuration();
             final EnumTool tool = step.tool();
 
-            final ZonedDateTime now = ZonedDateTime.now();
-
             // Create a record for this processing step
 
             ProcessExecutionStepRecord stepRecord = new ProcessExecutionStepRecord(step.key());
@@ -354,15 +459,9 @@ public class DefaultProcessOperator implements ProcessOperator
                 stepRecord.addFile(fileRecord);
             }
 
-            // Update record in repository
+            // Record (to be created in repository)
 
-            try {
-                processRepository.createExecutionStep(executionId, stepRecord);
-            } catch (ProcessExecutionNotFoundException ex) {
-                throw new IllegalStateException("The execution entity has disappeared!", ex);
-            } catch (ProcessExecutionNotActiveException ex) {
-                throw new IllegalStateException("The execution entity is not active!", ex);
-            }
+            journal.putStep(stepRecord);
         }
 
         @Override
@@ -375,21 +474,24 @@ public class DefaultProcessOperator implements ProcessOperator
 
             final Step step = definition.stepByNodeName(nodeName);
             if (step != null) {
-                afterProcessingStep(workflowExecutionSnapshot, step, jobExecution);;
+                final ZonedDateTime now = ZonedDateTime.now();
+                journal.submit(j -> {
+                    afterProcessingStep(j, workflow, step, jobExecution, now);
+                    publishAfterFlush(j, step.key(), j.getStep(step.key()).getStatus());
+                });
             }
         }
 
         private void afterProcessingStep(
-            WorkflowExecutionSnapshot workflowExecutionSnapshot, Step step, JobExecution jobExecution)
+            ProcessExecutionJournal journal, Workflow workflow, Step step, JobExecution jobExecution,
+            ZonedDateTime now)
         {
-            final Workflow workflow = workflowExecutionSnapshot.workflow();
             final Workflow.JobNode node = workflow.node(step.nodeName());
             final Path stagingDir = workflow.stagingDirectory(step.nodeName());
             final BatchStatus batchStatus = jobExecution.getStatus();
             final ExecutionContext executionContext = jobExecution.getExecutionContext();
 
-            ProcessExecutionRecord executionRecord = processRepository.findExecution(executionId, true, false);
-            ProcessExecutionStepRecord stepRecord = executionRecord.getStep(step.key());
+            ProcessExecutionStepRecord stepRecord = journal.getStep(step.key());
             if (stepRecord == null)
                 throw new IllegalStateException(String.format(
                     "Expected a record for execution step %d/%d", executionId, step.key()));
@@ -439,8 +541,6 @@ public class DefaultProcessOperator implements ProcessOperator
 
             // Update status, compute metadata on completed results
 
-            final ZonedDateTime now = ZonedDateTime.now();
-
             boolean finished = true;
 
             switch (batchStatus) {
@@ -462,6 +562,18 @@ public class DefaultProcessOperator implements ProcessOperator
                                 "Cannot stat output of execution step %d/%d: %s", executionId, step.key(), path);
                             throw new IllegalStateException(message, ex);
                         }
+                        // Profile output in background (recorded on this step when available)
+                        if (outputProfiler != null) {
+                            final String filePath = fileRecord.getFilePath();
+                            outputProfiler.submit(path, fileRecord.getDataFormat())
+                                .thenAccept(profile -> journal.submit(
+                                    j -> recordProfile(j, step.key(), filePath, profile)));
+                        }
+                    }
+                    // Store outputs into cache (if step is cacheable)
+                    final String cacheKey = plan.cacheKey(step.nodeName());
+                    if (cacheKey != null && outputCache != null) {
+                        outputCache.store(cacheKey, jobExecution.getId(), node.output());
                     }
                 }
                 break;
@@ -492,9 +604,33 @@ public class DefaultProcessOperator implements ProcessOperator
                 Path logsDir = stagingDir.resolve(Paths.get("logs", String.format("%05x", executionId)));
                 // Collect logs from underlying Batch steps
                 for (org.springframework.batch.core.StepExecution se: jobExecution.getStepExecutions()) {
+                    String stepName = slugifyLowercase.slugify(se.getStepName());
+                    // Link log files collected (as rolling files) while the container was running
+                    @SuppressWarnings("unchecked")
+                    List<String> files = (List<String>) se.getExecutionContext().get("command.outputFiles");
+                    if (files != null) {
+                        for (String file: files) {
+                            Path source = Paths.get(file);
+                            if (!Files.exists(source))
+                                continue;
+                            // Keep the suffix of the file name (e.g. a ".log.1.gz" for a compressed backup)
+                            String suffix = logFileSuffix(source.getFileName().toString());
+                            Path path = logsDir.resolve(stepName + suffix);
+                            try {
+                                Files.createDirectories(logsDir);
+                                FileLinkUtils.linkOrCopy(source, path);
+                            } catch (IOException ex) {
+                                throw new IllegalStateException(ex);
+                            }
+                            String name = suffix.startsWith(".log")?
+                                se.getStepName() + suffix.substring(4) : se.getStepName() + suffix;
+                            stepRecord.addLog(new ProcessExecutionStepLogsRecord(name, convertPathToUri(path)));
+                        }
+                    }
+                    // Store output kept inside the execution context (if any)
                     String content = se.getExecutionContext().getString("command.output", null);
                     if (content != null && !content.isEmpty()) {
-                        Path path = logsDir.resolve(slugifyLowercase.slugify(se.getStepName()) + "." + "log");
+                        Path path = logsDir.resolve(stepName + "." + "log");
                         try {
                             Files.createDirectories(logsDir);
                             Files.write(path, content.getBytes(), StandardOpenOption.CREATE_NEW);
@@ -509,36 +645,30 @@ public class DefaultProcessOperator implements ProcessOperator
             }
 
             //
-            // Update step entity in repository
+            // Record (to be updated in repository)
             //
 
-            try {
-                processRepository.updateExecutionStep(executionId, step.key(), stepRecord);
-            } catch (ProcessExecutionNotFoundException ex) {
-                throw new IllegalStateException("The execution entity has disappeared!", ex);
-            } catch (ProcessExecutionNotActiveException ex) {
-                throw new IllegalStateException("The execution entity is not active!", ex);
-            }
+            journal.putStep(stepRecord);
         }
 
-        private Path copyToTargetDirectory(Path source, Path targetDir) throws IOException
+        private void recordProfile(
+            ProcessExecutionJournal journal, int stepKey, String filePath, OutputProfiler.Profile profile)
         {
-            Path target = targetDir.resolve(source.getFileName());
-
-            Path link = null;
-            try {
-                link = Files.createLink(target, source);
-            } catch (FileSystemException ex) {
-                link = null;
-            }
-
-            // If linking has failed, fallback to copying
-
-            if (link == null) {
-                Files.copy(source, target);
-            }
+            final ProcessExecutionStepRecord stepRecord = journal.getStep(stepKey);
+            if (stepRecord == null)
+                return;
+            final ProcessExecutionStepFileRecord fileRecord = stepRecord.getFiles().stream()
+                .filter(f -> f.getType().isOfOutputType() && filePath.equals(f.getFilePath()))
+                .findFirst().orElse(null);
+            if (fileRecord == null)
+                return;
+            profile.applyTo(fileRecord);
+            journal.putStep(stepRecord);
+        }
 
-            return target;
+        private Path copyToTargetDirectory(Path source, Path targetDir) throws IOException
+        {
+            return FileLinkUtils.linkOrCopy(source, targetDir.resolve(source.getFileName()));
         }
 
         /**
@@ -579,11 +709,12 @@ public class DefaultProcessOperator implements ProcessOperator
         }
     }
 
-    private Workflow buildWorkflow(long id, long version, ProcessDefinition definition, int createdBy)
+    private Workflow buildWorkflow(
+        long id, long version, ProcessDefinition definition, int createdBy, WorkflowPlan plan)
     {
         Workflow workflow = null;
         try {
-            workflow = processToWorkflowMapper.buildWorkflow(id, version, definition, createdBy);
+            workflow = processToWorkflowMapper.buildWorkflow(id, version, definition, createdBy, plan);
         } catch (CycleDetected e) {
             throw new IllegalStateException("The process definition has cyclic dependencies");
         }
@@ -621,7 +752,8 @@ public class DefaultProcessOperator implements ProcessOperator
 
         final int createdBy = processRecord.getCreatedBy().getId();
 
-        final Workflow workflow = buildWorkflow(id, version, definition, createdBy);
+        final WorkflowPlan plan = new WorkflowPlan();
+        final Workflow workflow = buildWorkflow(id, version, definition, createdBy, plan);
         final UUID workflowId = workflow.id();
 
         // Create a new process execution entity
@@ -634,21 +766,33 @@ public class DefaultProcessOperator implements ProcessOperator
         }
         final long executionId = executionRecord.getId();
 
-        // Create listeners for this workflow execution
+        // Record steps substituted by reused outputs (these are not part of the workflow)
+
+        createReusedExecutionSteps(executionId, definition, plan);
+
+        // Create listeners for this workflow execution (sharing a bookkeeping journal)
+
+        ProcessExecutionJournal journal = new ProcessExecutionJournal(
+            executionId, processRepository, transactionTemplate, bookkeepingExecutor, bookkeepingMaxBatchSize);
+        journals.put(executionId, journal);
 
         ReportingExecutionListener reportingListener =
-            new ReportingExecutionListener(executionId, definition);
+            new ReportingExecutionListener(executionId, processRecord, plan, journal);
         AfterRegistrationHandler registrationHandler =
-            new AfterRegistrationHandler(executionId, definition);
+            new AfterRegistrationHandler(executionId, definition, journal);
 
         // Start!
 
         logger.info("About to start workflow {} associated with process execution #{}",
             workflow.id(), executionId);
+        processByWorkflowId.put(workflowId, ProcessIdentifier.of(id, version));
+        setRunning(workflowId, true);
         try {
             workflowScheduler.start(workflow, reportingListener, registrationHandler);
         } catch (WorkflowExecutionStartException ex) {
             // Discard process execution entity (the workflow execution did not even start)
+            setRunning(workflowId, false);
+            journals.remove(executionId);
             try {
                 processRepository.discardExecution(executionId);
             } catch (ProcessExecutionNotFoundException ex1) {
@@ -666,10 +810,71 @@ public class DefaultProcessOperator implements ProcessOperator
         } catch (ProcessExecutionNotFoundException e) {
             throw new IllegalStateException("Expected to find the execution just created!");
         }
+        eventPublisher.publish(
+            createEvent(executionId, processRecord, null, EnumProcessExecutionStatus.RUNNING));
 
         return executionRecord;
     }
 
+    /**
+     * Create (completed) records for steps substituted by reused outputs (either cached, or from an
+     * execution of a previous revision). Such a record refers to the job execution that originally
+     * produced the outputs.
+     */
+    private void createReusedExecutionSteps(long executionId, ProcessDefinition definition, WorkflowPlan plan)
+    {
+        final ZonedDateTime now = ZonedDateTime.now();
+
+        for (Map.Entry<String, WorkflowPlan.ReusedStep> e: plan.reusedSteps().entrySet()) {
+            final Step step = definition.stepByNodeName(e.getKey());
+            final WorkflowPlan.ReusedStep reusedStep = e.getValue();
+
+            ProcessExecutionStepRecord stepRecord = new ProcessExecutionStepRecord(step.key());
+            stepRecord.setName(step.name());
+            stepRecord.setNodeName(step.nodeName());
+            stepRecord.setStartedOn(now);
+            stepRecord.setCompletedOn(now);
+            stepRecord.setJobExecutionId(reusedStep.getJobExecutionId());
+            stepRecord.setStatus(EnumProcessExecutionStatus.COMPLETED);
+            stepRecord.setOperation(step.operation());
+            stepRecord.setTool(step.tool());
+            stepRecord.setCached(true);
+
+            for (WorkflowPlan.Output output: reusedStep.getOutputs()) {
+                final Path path = output.getPath();
+                Assert.state(path.startsWith(workflowDataDir),
+                    "A reused output is expected to be linked under workflow data directory");
+                Long size = null;
+                try {
+                    size = Files.size(path);
+                } catch (IOException ex) {
+                    throw new IllegalStateException("Cannot stat reused output: " + path, ex);
+                }
+                URI uri = null;
+                try {
+                    uri = new URI(null, null, workflowDataDir.relativize(path).toString(), null);
+                } catch (URISyntaxException ex) {
+                    throw new IllegalArgumentException(ex);
+                }
+                ProcessExecutionStepFileRecord fileRecord = new ProcessExecutionStepFileRecord(
+                    EnumStepFile.from(output.getPart().outputType()), uri, size, output.getDataFormat());
+                fileRecord.setOutputPartKey(output.getPart().key());
+                stepRecord.addFile(fileRecord);
+            }
+
+            try {
+                processRepository.createExecutionStep(executionId, stepRecord);
+            } catch (ProcessExecutionNotFoundException ex) {
+                throw new IllegalStateException("The execution entity has disappeared!", ex);
+            } catch (ProcessExecutionNotActiveException ex) {
+                throw new IllegalStateException("The execution entity is not active!", ex);
+            }
+
+            logger.info("The execution step {}/{} is substituted by outputs ({}) of job execution #{}",
+                executionId, step.key(), reusedStep.getOrigin(), reusedStep.getJobExecutionId());
+        }
+    }
+
     private void stopExecution(ProcessRecord processRecord)
         throws ProcessExecutionStopException
     {
@@ -693,12 +898,25 @@ public class DefaultProcessOperator implements ProcessOperator
             @Override
             public void onStopped(WorkflowExecutionSnapshot workflowExecutionSnapshot)
             {
+                setRunning(workflowId, false);
+                // Record the status after any pending updates of steps (if still journaled)
+                final ProcessExecutionEvent event =
+                    createEvent(executionId, processRecord, null, EnumProcessExecutionStatus.STOPPED);
+                final ProcessExecutionJournal journal = journals.remove(executionId);
+                if (journal != null) {
+                    journal.submit(j -> {
+                        j.setStatus(EnumProcessExecutionStatus.STOPPED, null);
+                        j.afterFlush(() -> eventPublisher.publish(event));
+                    });
+                    return;
+                }
                 try {
                     processRepository.updateExecution(
                         executionId, EnumProcessExecutionStatus.STOPPED, null, null, null);
                 } catch (ProcessExecutionNotFoundException ex) {
                     throw new IllegalArgumentException("The execution entity has disappeared!", ex);
                 }
+                eventPublisher.publish(event);
             }
         };
 
@@ -750,20 +968,86 @@ public class DefaultProcessOperator implements ProcessOperator
         return r == null? null : pollStatus(r);
     }
 
+    /**
+     * Get the suffix of the name of a log file, i.e. its extension followed by a backup index
+     * and a compression suffix (if any). For example, the suffix of <tt>run.container.log.1.gz</tt>
+     * is <tt>.log.1.gz</tt>, and the suffix of a name without an extension is empty.
+     *
+     * @param fileName A file name (not a path)
+     */
+    private static String logFileSuffix(String fileName)
+    {
+        String name = fileName, suffix = "";
+        String extension = FilenameUtils.getExtension(name);
+        if (ContainerLogCollector.GZIP_SUFFIX.equals("." + extension)) {
+            suffix = "." + extension + suffix;
+            name = FilenameUtils.removeExtension(name);
+            extension = FilenameUtils.getExtension(name);
+        }
+        if (extension.matches("\\d+")) {
+            suffix = "." + extension + suffix;
+            name = FilenameUtils.removeExtension(name);
+            extension = FilenameUtils.getExtension(name);
+        }
+        return extension.isEmpty()? suffix : ("." + extension + suffix);
+    }
+
+    private static ProcessExecutionEvent createEvent(
+        long executionId, ProcessRecord processRecord, Integer stepKey, EnumProcessExecutionStatus status)
+    {
+        return new ProcessExecutionEvent(
+            0L, executionId, processRecord.getId(), processRecord.getVersion(),
+            processRecord.getCreatedBy().getId(), stepKey, status, System.currentTimeMillis());
+    }
+
+    /**
+     * Mark a workflow as running (or not), and replace the snapshot of running processes if the
+     * running set is modified.
+     */
+    private void setRunning(UUID workflowId, boolean running)
+    {
+        synchronized (runningWorkflowIds) {
+            boolean modified = running?
+                runningWorkflowIds.add(workflowId) : runningWorkflowIds.remove(workflowId);
+            if (modified) {
+                List<ProcessIdentifier> processIdentifiers = runningWorkflowIds.stream()
+                    .map(processByWorkflowId::get)
+                    .collect(Collectors.toList());
+                runningSet = new RunningProcessSet(runningSet.getVersion() + 1, processIdentifiers);
+            }
+        }
+    }
+
+    /**
+     * Map a workflow identifier to a process identifier (consult the repository only if the workflow
+     * was not started by this instance)
+     */
+    private ProcessIdentifier mapToProcessIdentifier(UUID workflowId)
+    {
+        return processByWorkflowId.computeIfAbsent(workflowId, uuid -> {
+            ProcessIdentifier processIdentifier = processRepository.mapToProcessIdentifier(uuid);
+            Assert.state(processIdentifier != null,
+                "The workflow is not associated with a process revision entity!");
+            return processIdentifier;
+        });
+    }
+
     @Override
     public List<ProcessIdentifier> list(boolean includeNonRunning)
     {
+        if (!includeNonRunning)
+            return new ArrayList<>(runningSet.getProcesses());
+
         List<ProcessIdentifier> processIdentifiers = new ArrayList<>();
-        for (UUID workflowId: workflowScheduler.list()) {
-            if (includeNonRunning || workflowScheduler.status(workflowId) == WorkflowExecutionStatus.RUNNING) {
-                // Map the workflow identifier to a process identifier
-                ProcessIdentifier processIdentifier =
-                    processRepository.mapToProcessIdentifier(workflowId);
-                Assert.state(processIdentifier != null,
-                    "The workflow is not associated with a process revision entity!");
-                processIdentifiers.add(processIdentifier);
-            }
-        }
+        for (UUID workflowId: workflowScheduler.list())
+            processIdentifiers.add(mapToProcessIdentifier(workflowId));
         return processIdentifiers;
     }
+
+    @Override
+    public RunningProcessSet listRunning(long knownVersion)
+    {
+        final RunningProcessSet s = runningSet;
+        return s.getVersion() == knownVersion? RunningProcessSet.unchanged(knownVersion) : s;
+    }
 }
\ No newline at end of file
@@ -1,13 +1,23 @@
 package eu.slipo.workbench.rpc.service;
 
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -15,9 +25,11 @@ import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.lang3.NotImplementedException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,7 +47,12 @@ import com.google.common.collect.Table;
 
 import eu.slipo.workbench.common.model.poi.EnumDataFormat;
 import eu.slipo.workbench.common.model.poi.EnumTool;
+import eu.slipo.workbench.common.model.process.EnumProcessExecutionStatus;
 import eu.slipo.workbench.common.model.process.ProcessDefinition;
+import eu.slipo.workbench.common.model.process.ProcessExecutionRecord;
+import eu.slipo.workbench.common.model.process.ProcessExecutionStepFileRecord;
+import eu.slipo.workbench.common.model.process.ProcessExecutionStepRecord;
+import eu.slipo.workbench.common.model.process.ProcessRecord;
 import eu.slipo.workbench.common.model.process.Step;
 import eu.slipo.workbench.common.model.resource.DataSource;
 import eu.slipo.workbench.common.model.resource.EnumDataSourceType;
@@ -57,6 +74,8 @@ import eu.slipo.workbench.common.model.tool.TriplegeoConfiguration;
 import eu.slipo.workbench.common.model.tool.output.EnumImportDataOutputPart;
 import eu.slipo.workbench.common.model.tool.output.InputToOutputNameMapper;
 import eu.slipo.workbench.common.model.tool.output.OutputPart;
+import eu.slipo.workbench.common.model.tool.output.OutputSpec;
+import eu.slipo.workbench.common.repository.ProcessRepository;
 import eu.slipo.workbench.common.repository.ResourceRepository;
 import eu.slipo.workbench.common.service.UserFileNamingStrategy;
 import eu.slipo.workbench.common.service.util.PropertiesConverterService;
@@ -89,6 +108,13 @@ public class DefaultProcessToWorkflowMapper implements ProcessToWorkflowMapper
     @Autowired
     private ResourceRepository resourceRepository;
 
+    @Autowired
+    @Qualifier("workflowDataDirectory")
+    private Path workflowDataDir;
+
+    @Autowired(required = false)
+    private StepOutputCache outputCache;
+
     @Autowired
     @Qualifier("triplegeo.flow")
     private Flow triplegeoFlow;
@@ -140,6 +166,26 @@ public class DefaultProcessToWorkflowMapper implements ProcessToWorkflowMapper
     @Value("${slipo.rpc-server.workflows.salt-for-identifier:1}")
     private Long salt;
 
+    @Autowired
+    private ProcessRepository processRepository;
+
+    /**
+     * A flag to enable incremental mode: steps of a process revision that are unchanged relative
+     * to the last completed revision reuse outputs of that execution (instead of running again).
+     */
+    @Value("${slipo.rpc-server.workflows.incremental:false}")
+    private boolean incremental;
+
+    @Autowired
+    private JobConfigurationStore configurationStore;
+
+    /**
+     * A flag to store the configuration of a processing step once (keyed by its digest), and pass
+     * only the digest as a job parameter (instead of flattening the configuration into parameters).
+     */
+    @Value("${slipo.rpc-server.workflows.store-configuration-by-hash:true}")
+    private boolean storeConfigurationByHash;
+
     private static class ProcessDefinitionDependencyAnalyzer
     {
         private final ProcessDefinition definition;
@@ -176,14 +222,36 @@ public class DefaultProcessToWorkflowMapper implements ProcessToWorkflowMapper
         }
     }
 
+    /**
+     * The outputs of a completed step of a previous revision
+     */
+    private static class PreviousStepOutputs
+    {
+        private final long jobExecutionId;
+
+        private final Map<String, Path> outputByPartKey;
+
+        private PreviousStepOutputs(long jobExecutionId, Map<String, Path> outputByPartKey)
+        {
+            this.jobExecutionId = jobExecutionId;
+            this.outputByPartKey = outputByPartKey;
+        }
+    }
+
     @Override
-    public Workflow buildWorkflow(long id, long version, ProcessDefinition definition, int createdBy)
+    public Workflow buildWorkflow(
+            long id, long version, ProcessDefinition definition, int createdBy, WorkflowPlan plan)
         throws CycleDetected
     {
         Assert.notNull(definition, "A process definition is required!");
+        Assert.notNull(plan, "A plan is required!");
         final UUID workflowId = computeWorkflowId(id, version);
         final Workflow.Builder workflowBuilder = workflowBuilderFactory.get(workflowId);
-        Workflow workflow = buildWorkflow(workflowBuilder, definition, createdBy);
+
+        final Map<Integer, PreviousStepOutputs> previousOutputs = incremental?
+            findUnchangedSteps(id, version, definition, createdBy) : Collections.emptyMap();
+
+        Workflow workflow = buildWorkflow(workflowId, workflowBuilder, definition, createdBy, plan, previousOutputs);
 
         logger.info("The process {}@{} is mapped onto workflow {}", id, version, workflowId);
         return workflow;
@@ -199,7 +267,9 @@ public class DefaultProcessToWorkflowMapper implements ProcessToWorkflowMapper
         return UUID.nameUUIDFromBytes(data);
     }
 
-    private Workflow buildWorkflow(Workflow.Builder workflowBuilder, ProcessDefinition definition, int createdBy)
+    private Workflow buildWorkflow(
+            UUID workflowId, Workflow.Builder workflowBuilder, ProcessDefinition definition, int createdBy,
+            WorkflowPlan plan, Map<Integer, PreviousStepOutputs> previousOutputs)
         throws CycleDetected
     {
         // Map external sources to the name of the node (assigned task to carry out downloading)
@@ -211,6 +281,12 @@ public class DefaultProcessToWorkflowMapper implements ProcessToWorkflowMapper
         // Map a node's alias to a real name (i.e. to the one know to the workflow level)
         final Map<String, String> nodeAliasToNodeName = new HashMap<>();
 
+        // Map a pair of (nodeName, part) to an absolute path of a reused output. A node is present
+        // here only if its outputs are reused (i.e. it is not added as a job node).
+        final Table<String, OutputPart<? extends AnyTool>, Path> nodeNameToReusedOutputs = HashBasedTable.create();
+
+        int numberOfJobs = 0;
+
         // Examine referenced sources.
         // A data source of URL is handled by adding an importer node that will download the
         // resource (to make it available to other workflow nodes).
@@ -236,6 +312,7 @@ public class DefaultProcessToWorkflowMapper implements ProcessToWorkflowMapper
             // Map node to output (a single entry under the default key)
             Path outputPath = Paths.get(outputName);
             nodeNameToOutputNames.put(nodeName, EnumImportDataOutputPart.DOWNLOAD, outputPath);
+            numberOfJobs++;
         }
 
         //
@@ -245,16 +322,25 @@ public class DefaultProcessToWorkflowMapper implements ProcessToWorkflowMapper
         final ProcessDefinitionDependencyAnalyzer dependencyAnalyzedDefinition =
             new ProcessDefinitionDependencyAnalyzer(definition);
 
+        final int numberOfSteps = definition.steps().size();
+        int stepIndex = 0;
+
         for (Step step: dependencyAnalyzedDefinition.stepsInTopologicalOrder()) {
             final EnumTool tool = step.tool();
             final ToolConfiguration<? extends AnyTool> configuration = step.configuration();
             final List<Step.Input> input = step.input();
+            final boolean isLastStep = ++stepIndex == numberOfSteps;
 
             final JobDefinitionBuilder jobDefinitionBuilder = JobDefinitionBuilder.create(step.nodeName());
 
-            // Define inputs for this job node
+            // Define inputs for this job node.
+            // Along with input names, collect identifiers for the content of each input (to be
+            // used for computing a cache key). If the content of an input cannot be identified
+            // in advance (e.g. a downloaded file), the step is not cacheable.
 
             List<String> inputNames = new ArrayList<>();
+            List<String> inputIds = new ArrayList<>();
+            boolean cacheable = outputCache != null;
             if (!step.sources().isEmpty()) {
                 // This step expects input from an imported data source (external to the application)
                 Assert.state(input.isEmpty(), "Expected no input keys for this step");
@@ -266,10 +352,13 @@ public class DefaultProcessToWorkflowMapper implements ProcessToWorkflowMapper
                         Assert.state(inputName != null, "No output produced by the step we depend on");
                         jobDefinitionBuilder.input(dependencyName, inputName);
                         inputNames.add(inputName.toString());
+                        cacheable = false;
                     } else {
                         Path inputPath = resolveToPath(source, createdBy);
                         jobDefinitionBuilder.input(inputPath);
                         inputNames.add(inputPath.getFileName().toString());
+                        if (cacheable)
+                            inputIds.add(digest(inputPath));
                     }
                 }
             } else {
@@ -282,6 +371,8 @@ public class DefaultProcessToWorkflowMapper implements ProcessToWorkflowMapper
                         Path inputPath = resolveToPath(resourceIdentifier);
                         jobDefinitionBuilder.input(inputPath);
                         inputNames.add(inputPath.getFileName().toString());
+                        if (cacheable)
+                            inputIds.add(digest(inputPath));
                     } else {
                         // The input is the output of another step we depend on
                         Step dependency = definition.stepByResourceKey(p.inputKey());
@@ -293,8 +384,20 @@ public class DefaultProcessToWorkflowMapper implements ProcessToWorkflowMapper
                         dependencyName = nodeAliasToNodeName.getOrDefault(dependencyName, dependencyName);
                         Path inputName = nodeNameToOutputNames.get(dependencyName, part);
                         Assert.state(inputName != null, "No output produced by the step we depend on");
-                        jobDefinitionBuilder.input(dependencyName, inputName);
+                        Path reusedPath = nodeNameToReusedOutputs.get(dependencyName, part);
+                        if (reusedPath != null) {
+                            // The step we depend on is substituted by reused outputs
+                            jobDefinitionBuilder.input(reusedPath);
+                        } else {
+                            jobDefinitionBuilder.input(dependencyName, inputName);
+                        }
                         inputNames.add(inputName.toString());
+                        // The content of this input is identified by the key of its producer
+                        String dependencyKey = cacheable? plan.cacheKey(dependencyName) : null;
+                        if (dependencyKey != null)
+                            inputIds.add(dependencyKey + "/" + part.key());
+                        else
+                            cacheable = false;
                     }
                 }
             }
@@ -381,17 +484,346 @@ public class DefaultProcessToWorkflowMapper implements ProcessToWorkflowMapper
                 Assert.state(false, "Did not expect a tool of type [" + tool + "]");
             }
 
+            // Compute a key for the output cache (if step is cacheable). Registration steps are
+            // never cached (nor reused), as they have side effects to the catalog.
+
+            final String cacheKey = (cacheable && flow != null && tool != EnumTool.REGISTER)?
+                computeCacheKey(tool, parametersMap, inputIds, outputNames.values()) : null;
+            if (cacheKey != null) {
+                plan.addCacheKey(step.nodeName(), cacheKey);
+            }
+
+            // Substitute this step by reused outputs, either of an unchanged step of the previous
+            // revision, or of the output cache.
+            // Note that the last step is always added if it's the only job node in the workflow.
+
+            if (flow != null && tool != EnumTool.REGISTER && (!isLastStep || numberOfJobs > 0)) {
+                final Path targetDir =
+                    workflowDataDir.resolve(Paths.get("reused", workflowId.toString(), step.nodeName()));
+                final Collection<? extends Map.Entry<? extends OutputPart<? extends AnyTool>, OutputSpec>> outputSpecs =
+                    outputNameMapper.apply(inputNames).entries();
+                WorkflowPlan.ReusedStep reusedStep = null;
+                if (previousOutputs.containsKey(step.key())) {
+                    reusedStep = substituteFromPreviousRevision(
+                        step.nodeName(), previousOutputs.get(step.key()), targetDir, outputSpecs);
+                }
+                if (reusedStep == null && cacheKey != null) {
+                    reusedStep = substituteFromCache(step.nodeName(), cacheKey, targetDir, outputSpecs);
+                }
+                if (reusedStep != null) {
+                    for (WorkflowPlan.Output output: reusedStep.getOutputs())
+                        nodeNameToReusedOutputs.put(step.nodeName(), output.getPart(), output.getPath());
+                    plan.addReusedStep(step.nodeName(), reusedStep);
+                    flow = null;
+                }
+            }
+
             // Add the job node (mapped from this processing step) into workflow
 
             if (flow != null) {
+                if (storeConfigurationByHash && tool != EnumTool.REGISTER) {
+                    final String configHash = configurationStore.save(tool, parametersMap);
+                    parametersMap = new Properties();
+                    parametersMap.setProperty(JobConfigurationStore.HASH_PARAMETER, configHash);
+                }
                 jobDefinitionBuilder.flow(flow).parameters(parametersMap);
                 workflowBuilder.job(jobDefinitionBuilder.build());
+                numberOfJobs++;
             }
         }
 
         return workflowBuilder.build();
     }
 
+    /**
+     * Compute the digest of an input file (for computing a cache key).
+     *
+     * @return the digest, or <tt>null</tt> if the file cannot be read (so, the step will not be
+     *   cached and the actual job will report the failure)
+     */
+    private String digest(Path path)
+    {
+        try {
+            return outputCache.digest(path);
+        } catch (IOException ex) {
+            logger.warn("Cannot compute digest of input {}: {}", path, ex.getMessage());
+            return null;
+        }
+    }
+
+    private String computeCacheKey(
+        EnumTool tool, Properties parametersMap, List<String> inputIds, Collection<Path> outputNames)
+    {
+        if (inputIds.contains(null))
+            return null;
+        final List<String> sortedOutputNames = outputNames.stream()
+            .map(Path::toString)
+            .sorted()
+            .collect(Collectors.toList());
+        try {
+            return outputCache.computeKey(tool, parametersMap, inputIds, sortedOutputNames);
+        } catch (IOException ex) {
+            logger.warn("Cannot compute cache key for {} step: {}", tool, ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Link the cached outputs (if any) for a given key into a target directory (under workflow data
+     * directory, where outputs of processing steps are expected to reside).
+     *
+     * @return a reused step, or <tt>null</tt> if nothing is cached under given key
+     */
+    private WorkflowPlan.ReusedStep substituteFromCache(
+        String nodeName, String cacheKey, Path targetDir,
+        Collection<? extends Map.Entry<? extends OutputPart<? extends AnyTool>, OutputSpec>> outputSpecs)
+    {
+        final StepOutputCache.Entry entry = outputCache.materialize(cacheKey, targetDir);
+        if (entry == null)
+            return null;
+
+        final List<WorkflowPlan.Output> outputs = new ArrayList<>();
+        for (Map.Entry<? extends OutputPart<? extends AnyTool>, OutputSpec> e: outputSpecs) {
+            final OutputSpec outputSpec = e.getValue();
+            final Path path = targetDir.resolve(outputSpec.fileName());
+            if (!Files.isRegularFile(path)) {
+                logger.warn("The cached outputs for {} miss the expected output {}", nodeName, path);
+                return null;
+            }
+            outputs.add(new WorkflowPlan.Output(e.getKey(), outputSpec.dataFormat(), path));
+        }
+
+        logger.info("The step {} is substituted by cached outputs of job execution #{}",
+            nodeName, entry.getJobExecutionId());
+        return new WorkflowPlan.ReusedStep(WorkflowPlan.Origin.CACHE, entry.getJobExecutionId(), outputs);
+    }
+
+    /**
+     * Link the outputs of an unchanged step of a previous revision into a target directory (under
+     * workflow data directory).
+     *
+     * @return a reused step, or <tt>null</tt> if any of the expected outputs is missing
+     */
+    private WorkflowPlan.ReusedStep substituteFromPreviousRevision(
+        String nodeName, PreviousStepOutputs previous, Path targetDir,
+        Collection<? extends Map.Entry<? extends OutputPart<? extends AnyTool>, OutputSpec>> outputSpecs)
+    {
+        final List<WorkflowPlan.Output> outputs = new ArrayList<>();
+        try {
+            Files.createDirectories(targetDir);
+            for (Map.Entry<? extends OutputPart<? extends AnyTool>, OutputSpec> e: outputSpecs) {
+                final OutputSpec outputSpec = e.getValue();
+                final Path source = previous.outputByPartKey.get(e.getKey().key());
+                if (source == null || !Files.isRegularFile(source)) {
+                    logger.info("Not reusing outputs for {}: the output of part [{}] is missing",
+                        nodeName, e.getKey().key());
+                    return null;
+                }
+                final Path path = targetDir.resolve(outputSpec.fileName());
+                Files.deleteIfExists(path);
+                FileLinkUtils.linkOrCopy(source, path);
+                outputs.add(new WorkflowPlan.Output(e.getKey(), outputSpec.dataFormat(), path));
+            }
+        } catch (IOException ex) {
+            logger.warn("Cannot reuse outputs for {}: {}", nodeName, ex.getMessage());
+            return null;
+        }
+
+        logger.info("The step {} is unchanged and is substituted by outputs of job execution #{}",
+            nodeName, previous.jobExecutionId);
+        return new WorkflowPlan.ReusedStep(
+            WorkflowPlan.Origin.PREVIOUS_REVISION, previous.jobExecutionId, outputs);
+    }
+
+    /**
+     * Diff a process definition against the definition of the latest revision (older than the given
+     * one) having a completed execution. A step is unchanged if it has an identical configuration
+     * and identical input: same sources (not modified since that execution), same catalog resources,
+     * or same output parts of unchanged steps.
+     *
+     * @return the outputs of the completed execution keyed by the key of an unchanged step (of the
+     *   given definition)
+     */
+    private Map<Integer, PreviousStepOutputs> findUnchangedSteps(
+        long id, long version, ProcessDefinition definition, int createdBy)
+        throws CycleDetected
+    {
+        // Find the latest completed execution of a previous revision
+
+        ProcessRecord previousRevision = null;
+        ProcessExecutionRecord previousExecution = null;
+
+        final List<ProcessRecord> revisions = processRepository.getRevisions(id, false).stream()
+            .filter(r -> r.getVersion() < version)
+            .sorted(Comparator.comparingLong(ProcessRecord::getVersion).reversed())
+            .collect(Collectors.toList());
+        for (ProcessRecord r: revisions) {
+            previousExecution = processRepository.findExecutions(id, r.getVersion()).stream()
+                .filter(x -> x.getStatus() == EnumProcessExecutionStatus.COMPLETED)
+                .max(Comparator.comparing(ProcessExecutionRecord::getCompletedOn))
+                .orElse(null);
+            if (previousExecution != null) {
+                previousRevision = r;
+                break;
+            }
+        }
+
+        if (previousExecution == null)
+            return Collections.emptyMap();
+
+        previousExecution = processRepository.findExecution(previousExecution.getId());
+        final ZonedDateTime notModifiedAfter = previousExecution.getStartedOn();
+
+        // Compute signatures for steps of both definitions, and match them
+
+        final Map<Integer, String> previousSignatures = computeSignatures(
+            previousRevision.getDefinition(), previousRevision.getCreatedBy().getId(), notModifiedAfter);
+        final Map<String, PreviousStepOutputs> outputsBySignature = new HashMap<>();
+        for (Map.Entry<Integer, String> e: previousSignatures.entrySet()) {
+            ProcessExecutionStepRecord stepRecord = previousExecution.getStep(e.getKey());
+            if (stepRecord == null || stepRecord.getStatus() != EnumProcessExecutionStatus.COMPLETED)
+                continue;
+            Map<String, Path> outputByPartKey = new HashMap<>();
+            for (ProcessExecutionStepFileRecord fileRecord: stepRecord.getFiles()) {
+                if (fileRecord.getType().isOfOutputType() && fileRecord.getOutputPartKey() != null) {
+                    // A path for an output result is always relative to workflow data directory
+                    Path path = workflowDataDir.resolve(fileRecord.getFilePath());
+                    outputByPartKey.put(fileRecord.getOutputPartKey(), path);
+                }
+            }
+            outputsBySignature.put(e.getValue(),
+                new PreviousStepOutputs(stepRecord.getJobExecutionId(), outputByPartKey));
+        }
+
+        final Map<Integer, PreviousStepOutputs> result = new HashMap<>();
+        for (Map.Entry<Integer, String> e: computeSignatures(definition, createdBy, notModifiedAfter).entrySet()) {
+            PreviousStepOutputs outputs = outputsBySignature.get(e.getValue());
+            if (outputs != null)
+                result.put(e.getKey(), outputs);
+        }
+
+        logger.info("Found {} unchanged steps (of {}) against completed execution #{} of process {}@{}",
+            result.size(), definition.steps().size(), previousExecution.getId(), id, previousRevision.getVersion());
+        return result;
+    }
+
+    /**
+     * Compute a signature for each step (other than a registration or an import step) of a process
+     * definition. A signature is a digest of the tool, the job parameters and the input of a step;
+     * an input produced by another step contributes the signature of that step.
+     *
+     * @param definition The process definition
+     * @param createdBy The id of the user that created the process
+     * @param notModifiedAfter A timestamp after which local files (i.e. sources, or files referenced
+     *    by configuration) should not be modified; otherwise the step gets no signature
+     * @return a map of signatures keyed by step key. A step (directly or indirectly) depending on
+     *   content that cannot be determined in advance (e.g. a URL) has no signature.
+     */
+    private Map<Integer, String> computeSignatures(
+        ProcessDefinition definition, int createdBy, ZonedDateTime notModifiedAfter)
+        throws CycleDetected
+    {
+        final Map<Integer, String> signatures = new HashMap<>();
+        final FileTime maxModified = FileTime.from(notModifiedAfter.toInstant());
+
+        for (Step step: new ProcessDefinitionDependencyAnalyzer(definition).stepsInTopologicalOrder()) {
+            final Properties parametersMap = buildParameters(definition, step, createdBy);
+            if (parametersMap == null)
+                continue;
+
+            final List<String> tokens = new ArrayList<>();
+            tokens.add(step.tool().name());
+
+            final Map<String, String> sortedParameters = new TreeMap<>();
+            for (Object name: parametersMap.keySet())
+                sortedParameters.put(name.toString(), String.valueOf(parametersMap.get(name)));
+            boolean valid = true;
+            for (Map.Entry<String, String> p: sortedParameters.entrySet()) {
+                tokens.add(p.getKey());
+                tokens.add(p.getValue());
+                if (p.getValue().startsWith("file:"))
+                    valid &= isNotModified(Paths.get(URI.create(p.getValue())), maxModified);
+            }
+
+            for (DataSource source: step.sources()) {
+                final EnumDataSourceType sourceType = source.getType();
+                if (sourceType != EnumDataSourceType.UPLOAD && sourceType != EnumDataSourceType.FILESYSTEM) {
+                    valid = false; // the content is not determined in advance
+                } else {
+                    Path path = resolveToPath(source, createdBy);
+                    valid &= isNotModified(path, maxModified);
+                    tokens.add(path.toString());
+                }
+            }
+
+            for (Step.Input p: step.input()) {
+                ResourceIdentifier resourceIdentifier = definition.resourceIdentifierByResourceKey(p.inputKey());
+                if (resourceIdentifier != null) {
+                    tokens.add(String.format("%d@%d", resourceIdentifier.getId(), resourceIdentifier.getVersion()));
+                } else {
+                    Step dependency = definition.stepByResourceKey(p.inputKey());
+                    String signature = dependency == null? null : signatures.get(dependency.key());
+                    valid &= signature != null;
+                    tokens.add(signature + "/" + p.partKey());
+                }
+            }
+
+            if (valid)
+                signatures.put(step.key(), digest(tokens));
+        }
+
+        return signatures;
+    }
+
+    private static boolean isNotModified(Path path, FileTime maxModified)
+    {
+        try {
+            return Files.isRegularFile(path) && Files.getLastModifiedTime(path).compareTo(maxModified) < 0;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    private static String digest(List<String> tokens)
+    {
+        MessageDigest md = null;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+        for (String token: tokens) {
+            byte[] data = token.getBytes(StandardCharsets.UTF_8);
+            md.update(ByteBuffer.allocate(Integer.BYTES).putInt(data.length).array());
+            md.update(data);
+        }
+        return Hex.encodeHexString(md.digest());
+    }
+
+    /**
+     * Build job parameters for a processing step.
+     *
+     * @return the parameters, or <tt>null</tt> for a registration or an import step
+     */
+    private Properties buildParameters(ProcessDefinition def, Step step, int userId)
+    {
+        final ToolConfiguration<? extends AnyTool> configuration = step.configuration();
+        switch (step.tool()) {
+        case TRIPLEGEO:
+            return buildParameters(def, (TriplegeoConfiguration) configuration, userId);
+        case REVERSE_TRIPLEGEO:
+            return buildParameters(def, (ReverseTriplegeoConfiguration) configuration, userId);
+        case LIMES:
+            return buildParameters(def, (LimesConfiguration) configuration, userId);
+        case FAGI:
+            return buildParameters(def, (FagiConfiguration) configuration, userId);
+        case DEER:
+            return buildParameters(def, (DeerConfiguration) configuration, userId);
+        default:
+            return null;
+        }
+    }
+
     private Properties buildParameters(ProcessDefinition def, ToolConfiguration<? extends AnyTool> config, int userId)
     {
         return propertiesConverter.valueToProperties(config);
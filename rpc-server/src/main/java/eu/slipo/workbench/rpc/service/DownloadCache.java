@@ -0,0 +1,414 @@
+package eu.slipo.workbench.rpc.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * A local cache for files downloaded from (remote) URLs.
+ * <p>
+ * An entry is keyed by the URL along with a validator for the remote entity (an <tt>ETag</tt> or,
+ * if missing, a <tt>Last-Modified</tt> header). So, a download of an unchanged entity is served
+ * locally, while a modified entity (i.e. having a different validator) is downloaded again.
+ * <p>
+ * Files are stored (and retrieved) as hard links. Since a link shares its data with the cached
+ * file, a cached file is made read-only, and an entry whose file is found modified (i.e. its size
+ * or modification time differ from the ones recorded when stored) is discarded. The total size of
+ * entries is bounded by a disk budget: when exceeded, the least recently used entries are evicted.
+ */
+public class DownloadCache
+{
+    private static final Logger logger = LoggerFactory.getLogger(DownloadCache.class);
+
+    /**
+     * The name of the file (inside an entry directory) holding the metadata for an entry
+     */
+    public static final String ENTRY_FILE_NAME = ".entry";
+
+    /**
+     * The name of the data file (inside an entry directory)
+     */
+    public static final String DATA_FILE_NAME = "data";
+
+    private static final String TEMP_PREFIX = ".tmp-";
+
+    /**
+     * The metadata for an entry
+     */
+    public static class Entry
+    {
+        private final String key;
+
+        private final String url;
+
+        private final String validator;
+
+        private final long size;
+
+        private final String checksum;
+
+        private final long modified;
+
+        private final Date created;
+
+        private volatile long lastAccessed;
+
+        private Entry(
+            String key, String url, String validator, long size, String checksum, long modified,
+            Date created, long lastAccessed)
+        {
+            this.key = key;
+            this.url = url;
+            this.validator = validator;
+            this.size = size;
+            this.checksum = checksum;
+            this.modified = modified;
+            this.created = created;
+            this.lastAccessed = lastAccessed;
+        }
+
+        public String getKey()
+        {
+            return key;
+        }
+
+        public String getUrl()
+        {
+            return url;
+        }
+
+        public String getValidator()
+        {
+            return validator;
+        }
+
+        public long getSize()
+        {
+            return size;
+        }
+
+        /**
+         * The SHA-256 checksum (hex-encoded) of the cached file
+         */
+        public String getChecksum()
+        {
+            return checksum;
+        }
+
+        public Date getCreated()
+        {
+            return created;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("Entry [url=%s, validator=%s, size=%d]", url, validator, size);
+        }
+    }
+
+    private final Path rootDir;
+
+    private final long maxSize;
+
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    private long size = 0L;
+
+    /**
+     * Create a cache under a given directory
+     *
+     * @param rootDir The directory to store entries into. This should reside in the same
+     *   filesystem as the job data directory (otherwise files are copied, not linked).
+     * @param maxSize The disk budget (bytes) for cached files
+     */
+    public DownloadCache(Path rootDir, long maxSize)
+    {
+        Assert.notNull(rootDir, "Expected a non-null directory");
+        Assert.isTrue(rootDir.isAbsolute(), "Expected an absolute path for the root directory");
+        Assert.isTrue(maxSize > 0, "Expected a positive size as a disk budget");
+        this.rootDir = rootDir;
+        this.maxSize = maxSize;
+    }
+
+    public Path getRootDirectory()
+    {
+        return rootDir;
+    }
+
+    public long getMaxSize()
+    {
+        return maxSize;
+    }
+
+    public synchronized long getSize()
+    {
+        return size;
+    }
+
+    public synchronized int getNumberOfEntries()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Load existing entries from the root directory, and discard any leftovers from incomplete
+     * writes.
+     */
+    public synchronized void initialize() throws IOException
+    {
+        Files.createDirectories(rootDir);
+
+        try (DirectoryStream<Path> shards = Files.newDirectoryStream(rootDir)) {
+            for (Path shard: shards) {
+                if (shard.getFileName().toString().startsWith(TEMP_PREFIX)) {
+                    FileUtils.deleteQuietly(shard.toFile());
+                    continue;
+                }
+                if (!Files.isDirectory(shard))
+                    continue;
+                try (DirectoryStream<Path> dirs = Files.newDirectoryStream(shard)) {
+                    for (Path dir: dirs) {
+                        Entry entry = readEntry(dir);
+                        if (entry == null) {
+                            logger.warn("Discarding a malformed cache entry at {}", dir);
+                            FileUtils.deleteQuietly(dir.toFile());
+                        } else {
+                            entries.put(entry.key, entry);
+                            size += entry.size;
+                        }
+                    }
+                }
+            }
+        }
+
+        logger.info("Loaded {} cached downloads ({} MB) from {}", entries.size(), size >> 20, rootDir);
+        evict(0L);
+    }
+
+    /**
+     * Compute the key for a URL and a validator of the remote entity
+     */
+    public static String computeKey(URL url, String validator)
+    {
+        Assert.notNull(url, "Expected a non-null URL");
+        Assert.hasText(validator, "Expected a non-empty validator");
+        return DigestUtils.sha256Hex((url.toString() + "\n" + validator).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Lookup an entry and link its file to a target path.
+     *
+     * @param url The URL of the remote entity
+     * @param validator The validator (ETag or Last-Modified) for the remote entity
+     * @param target The path to link to (must not exist)
+     * @return the entry, or <tt>null</tt> if no such entry exists
+     */
+    public Entry materialize(URL url, String validator, Path target)
+    {
+        Assert.isTrue(target != null && target.isAbsolute(), "Expected an absolute target path");
+
+        final String key = computeKey(url, validator);
+
+        synchronized (this) {
+            final Entry entry = entries.get(key);
+            if (entry == null)
+                return null;
+
+            final Path dir = resolveEntry(key);
+            final Path dataFile = dir.resolve(DATA_FILE_NAME);
+            try {
+                if (Files.size(dataFile) != entry.size ||
+                        Files.getLastModifiedTime(dataFile).toMillis() != entry.modified)
+                {
+                    logger.warn("The file of cached download {} is modified: discarding", entry);
+                    remove(entry);
+                    return null;
+                }
+                FileLinkUtils.linkOrCopy(dataFile, target);
+                entry.lastAccessed = System.currentTimeMillis();
+                Files.setLastModifiedTime(dir, FileTime.fromMillis(entry.lastAccessed));
+            } catch (IOException ex) {
+                logger.warn("Cannot materialize cached download {} into {}: {}", key, target, ex.getMessage());
+                remove(entry);
+                return null;
+            }
+
+            logger.info("Reusing cached download {} as {}", entry, target);
+            return entry;
+        }
+    }
+
+    /**
+     * Store a downloaded file. Failures are logged (but never propagated), as caching is not
+     * essential to a download.
+     *
+     * @param url The URL of the remote entity
+     * @param validator The validator (ETag or Last-Modified) for the remote entity
+     * @param source The downloaded file
+     * @param checksum The SHA-256 checksum (hex-encoded) of the downloaded file
+     */
+    public void store(URL url, String validator, Path source, String checksum)
+    {
+        Assert.notNull(source, "Expected a non-null source path");
+        Assert.hasText(checksum, "Expected a non-empty checksum");
+
+        final String key = computeKey(url, validator);
+
+        synchronized (this) {
+            if (entries.containsKey(key))
+                return;
+        }
+
+        final Path tempDir = rootDir.resolve(TEMP_PREFIX + UUID.randomUUID().toString());
+        try {
+            final long entrySize = Files.size(source);
+            if (entrySize > maxSize) {
+                logger.info("Not caching download of {}: the size exceeds the disk budget", url);
+                return;
+            }
+
+            Files.createDirectory(tempDir);
+            final Path dataFile = tempDir.resolve(DATA_FILE_NAME);
+            FileLinkUtils.linkOrCopy(source, dataFile);
+            // Protect the cached file (and the links to it) from being modified
+            dataFile.toFile().setReadOnly();
+
+            final long now = System.currentTimeMillis();
+            final long modified = Files.getLastModifiedTime(dataFile).toMillis();
+            final Entry entry = new Entry(
+                key, url.toString(), validator, entrySize, checksum, modified, new Date(now), now);
+            writeEntry(tempDir, entry);
+
+            synchronized (this) {
+                if (entries.containsKey(key)) {
+                    FileUtils.deleteQuietly(tempDir.toFile());
+                    return;
+                }
+                evict(entrySize);
+                final Path dir = resolveEntry(key);
+                Files.createDirectories(dir.getParent());
+                Files.move(tempDir, dir, StandardCopyOption.ATOMIC_MOVE);
+                entries.put(key, entry);
+                size += entrySize;
+            }
+            logger.info("Cached download {}", entry);
+        } catch (IOException ex) {
+            logger.warn("Failed to cache download of {}: {}", url, ex.getMessage());
+            FileUtils.deleteQuietly(tempDir.toFile());
+        }
+    }
+
+    /**
+     * Remove an entry, e.g. because its file is not the expected one
+     *
+     * @param url The URL of the remote entity
+     * @param validator The validator (ETag or Last-Modified) for the remote entity
+     */
+    public synchronized void invalidate(URL url, String validator)
+    {
+        final Entry entry = entries.get(computeKey(url, validator));
+        if (entry != null) {
+            logger.info("Invalidating cached download {}", entry);
+            remove(entry);
+        }
+    }
+
+    /**
+     * Evict least recently used entries until there is room for a given size. Must be called
+     * holding the lock.
+     */
+    private void evict(long required)
+    {
+        if (size + required <= maxSize)
+            return;
+
+        final List<Entry> candidates = new ArrayList<>(entries.values());
+        candidates.sort(Comparator.comparingLong(e -> e.lastAccessed));
+        for (Entry entry: candidates) {
+            if (size + required <= maxSize)
+                break;
+            logger.info("Evicting cached download {}", entry);
+            remove(entry);
+        }
+    }
+
+    /**
+     * Remove an entry. Must be called holding the lock.
+     */
+    private void remove(Entry entry)
+    {
+        if (entries.remove(entry.key) != null)
+            size -= entry.size;
+        FileUtils.deleteQuietly(resolveEntry(entry.key).toFile());
+    }
+
+    private Path resolveEntry(String key)
+    {
+        return rootDir.resolve(Paths.get(key.substring(0, 2), key));
+    }
+
+    private static void writeEntry(Path dir, Entry entry) throws IOException
+    {
+        Properties p = new Properties();
+        p.setProperty("key", entry.key);
+        p.setProperty("url", entry.url);
+        p.setProperty("validator", entry.validator);
+        p.setProperty("size", String.valueOf(entry.size));
+        p.setProperty("checksum", entry.checksum);
+        p.setProperty("modified", String.valueOf(entry.modified));
+        p.setProperty("created", String.valueOf(entry.created.getTime()));
+        try (OutputStream out = Files.newOutputStream(dir.resolve(ENTRY_FILE_NAME))) {
+            p.store(out, null);
+        }
+    }
+
+    private static Entry readEntry(Path dir)
+    {
+        final Path path = dir.resolve(ENTRY_FILE_NAME);
+        if (!Files.isRegularFile(path) || !Files.isRegularFile(dir.resolve(DATA_FILE_NAME)))
+            return null;
+
+        Entry entry = null;
+        try (InputStream in = Files.newInputStream(path)) {
+            Properties p = new Properties();
+            p.load(in);
+            String key = p.getProperty("key");
+            if (key != null && key.equals(dir.getFileName().toString())) {
+                entry = new Entry(key,
+                    p.getProperty("url"),
+                    p.getProperty("validator"),
+                    Long.parseLong(p.getProperty("size")),
+                    p.getProperty("checksum"),
+                    Long.parseLong(p.getProperty("modified")),
+                    new Date(Long.parseLong(p.getProperty("created"))),
+                    Files.getLastModifiedTime(dir).toMillis());
+            }
+        } catch (IOException | NumberFormatException ex) {
+            entry = null;
+        }
+        return entry;
+    }
+}
@@ -0,0 +1,95 @@
+package eu.slipo.workbench.rpc.service;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.batch.BatchProperties;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+/**
+ * Periodically delete blobs of execution contexts (see {@link CompactExecutionContextSerializer})
+ * that are no longer referenced by any persisted context, e.g. blobs of superseded versions of a
+ * context or of deleted executions.
+ */
+@Service
+@ConditionalOnProperty(name = "slipo.rpc-server.batch.execution-context.compact", havingValue = "true")
+public class ExecutionContextBlobSweeper
+{
+    private static final Logger logger = LoggerFactory.getLogger(ExecutionContextBlobSweeper.class);
+
+    private static final String DEFAULT_TABLE_PREFIX = "BATCH_";
+
+    @Autowired
+    private CompactExecutionContextSerializer serializer;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private BatchProperties batchProperties;
+
+    /**
+     * The minimum age of an unreferenced blob to be deleted. This must exceed the duration of any
+     * transaction writing an execution context.
+     */
+    @Value("${slipo.rpc-server.batch.execution-context.blob-sweep.min-age-hours:24}")
+    private Integer minAgeHours;
+
+    @Scheduled(cron = "${slipo.rpc-server.batch.execution-context.blob-sweep.cron:0 15 3 * * *}")
+    public void sweep()
+    {
+        final String tablePrefix = StringUtils.hasText(batchProperties.getTablePrefix())?
+            batchProperties.getTablePrefix() : DEFAULT_TABLE_PREFIX;
+
+        final String sql = String.format(
+            "SELECT COALESCE(serialized_context, short_context) FROM %1$sJOB_EXECUTION_CONTEXT " +
+            "UNION ALL " +
+            "SELECT COALESCE(serialized_context, short_context) FROM %1$sSTEP_EXECUTION_CONTEXT",
+            tablePrefix);
+
+        final long startTime = System.currentTimeMillis();
+
+        // Collect references before listing blobs: a blob written (or reused) afterwards is
+        // recent, and will not be deleted
+
+        final Set<String> referencedKeys = new HashSet<>();
+        try {
+            new JdbcTemplate(dataSource).query(sql, rs -> {
+                String serializedContext = rs.getString(1);
+                if (serializedContext != null) {
+                    try {
+                        serializer.collectReferences(serializedContext, referencedKeys);
+                    } catch (IOException | RuntimeException ex) {
+                        throw new IllegalStateException("Cannot decode an execution context", ex);
+                    }
+                }
+            });
+        } catch (RuntimeException ex) {
+            logger.error("Failed to collect blob references from execution contexts: {}", ex.getMessage());
+            return;
+        }
+
+        int n;
+        try {
+            n = serializer.sweep(referencedKeys, TimeUnit.HOURS.toMillis(minAgeHours));
+        } catch (IOException ex) {
+            logger.error("Failed to sweep execution context blobs: {}", ex.getMessage());
+            return;
+        }
+
+        logger.info("Deleted {} unreferenced execution context blobs ({} referenced) in {}ms",
+            n, referencedKeys.size(), System.currentTimeMillis() - startTime);
+    }
+}
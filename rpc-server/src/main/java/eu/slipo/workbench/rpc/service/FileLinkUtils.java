@@ -0,0 +1,30 @@
+package eu.slipo.workbench.rpc.service;
+
+import java.io.IOException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class FileLinkUtils
+{
+    private FileLinkUtils() {}
+
+    /**
+     * Link source to target. If a hard link cannot be created (because of file-system limitations,
+     * e.g. the target is on another file system), fallback to a plain copying.
+     *
+     * @param source The source file
+     * @param target The target path (must not exist)
+     * @return the target path
+     * @throws IOException if neither linking nor copying has succeeded
+     */
+    public static Path linkOrCopy(Path source, Path target) throws IOException
+    {
+        try {
+            Files.createLink(target, source);
+        } catch (FileSystemException | UnsupportedOperationException ex) {
+            Files.copy(source, target);
+        }
+        return target;
+    }
+}
@@ -0,0 +1,141 @@
+package eu.slipo.workbench.rpc.service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.util.Assert;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import eu.slipo.workbench.common.model.poi.EnumTool;
+import eu.slipo.workbench.rpc.domain.JobConfigurationEntity;
+import eu.slipo.workbench.rpc.repository.JobConfigurationRepository;
+
+/**
+ * A store for (flattened) configurations of processing jobs, keyed by the digest of their content.
+ * <p>
+ * A configuration is stored once, and a job is only given its digest as an (identifying) parameter
+ * (see {@link #HASH_PARAMETER}), instead of having every property as a separate job parameter.
+ * Since a stored configuration is never modified, loaded configurations are cached.
+ */
+@Service
+public class JobConfigurationStore
+{
+    /**
+     * The name of the job parameter carrying the digest of a stored configuration
+     */
+    public static final String HASH_PARAMETER = "configHash";
+
+    private static final TypeReference<TreeMap<String, String>> contentTypeReference =
+        new TypeReference<TreeMap<String, String>>() {};
+
+    @Autowired
+    private JobConfigurationRepository repository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final LoadingCache<String, Map<String, String>> configurations = CacheBuilder.newBuilder()
+        .maximumSize(1000)
+        .build(new CacheLoader<String, Map<String, String>>()
+        {
+            @Override
+            public Map<String, String> load(String hash) throws IOException
+            {
+                JobConfigurationEntity entity = repository.findOne(hash);
+                if (entity == null)
+                    throw new NoSuchElementException("No configuration is stored under hash [" + hash + "]");
+                return Collections.unmodifiableSortedMap(
+                    objectMapper.readValue(entity.getContent(), contentTypeReference));
+            }
+        });
+
+    /**
+     * Store a configuration (unless already stored)
+     *
+     * @param tool The tool this configuration is targeting (informational)
+     * @param properties The configuration flattened as properties
+     * @return the hash (a hex-encoded SHA-256 digest) to reference this configuration
+     */
+    public String save(EnumTool tool, Properties properties)
+    {
+        Assert.notNull(properties, "Expected a non-null map of properties");
+
+        final SortedMap<String, String> sortedProperties = new TreeMap<>();
+        for (Object name: properties.keySet())
+            sortedProperties.put(name.toString(), String.valueOf(properties.get(name)));
+
+        final String content;
+        try {
+            content = objectMapper.writeValueAsString(sortedProperties);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalArgumentException("Cannot serialize configuration", ex);
+        }
+
+        final String hash = DigestUtils.sha256Hex(content.getBytes(StandardCharsets.UTF_8));
+        if (configurations.getIfPresent(hash) == null) {
+            repository.insertIfAbsent(hash, tool == null? null : tool.name(), content);
+            configurations.put(hash, Collections.unmodifiableSortedMap(sortedProperties));
+        }
+
+        return hash;
+    }
+
+    /**
+     * Load a stored configuration
+     *
+     * @param hash The hash of a configuration (as returned by {@link #save(EnumTool, Properties)})
+     * @return an (unmodifiable) map of properties
+     * @throws NoSuchElementException if no configuration is stored under this hash
+     */
+    public Map<String, String> load(String hash)
+    {
+        Assert.hasText(hash, "Expected a non-empty hash");
+        try {
+            return configurations.getUnchecked(hash);
+        } catch (UncheckedExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new IllegalStateException("Cannot load configuration [" + hash + "]", cause);
+        }
+    }
+
+    /**
+     * Resolve the (flattened) configuration of a job from its parameters. If a stored configuration
+     * is referenced (by {@link #HASH_PARAMETER}), it is loaded and combined with the rest of the
+     * parameters (e.g. the input supplied by a workflow). Otherwise, the parameters themselves are
+     * the configuration.
+     *
+     * @param jobParameters The parameters of a job
+     */
+    public Map<String, ?> resolve(Map<String, ?> jobParameters)
+    {
+        final Object hash = jobParameters.get(HASH_PARAMETER);
+        if (hash == null)
+            return jobParameters;
+
+        final Map<String, Object> result = new HashMap<>(load(hash.toString()));
+        for (Map.Entry<String, ?> p: jobParameters.entrySet()) {
+            if (!p.getKey().equals(HASH_PARAMETER))
+                result.put(p.getKey(), p.getValue());
+        }
+        return result;
+    }
+}
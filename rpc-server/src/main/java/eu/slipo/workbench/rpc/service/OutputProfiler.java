@@ -0,0 +1,621 @@
+package eu.slipo.workbench.rpc.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.codec.binary.Hex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.PrecisionModel;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKTReader;
+
+import eu.slipo.workbench.common.model.poi.EnumDataFormat;
+import eu.slipo.workbench.common.model.process.ProcessExecutionStepFileRecord;
+
+/**
+ * Profile output files of processing steps on a bounded pool of background workers.
+ * <p>
+ * A file is streamed once to compute its SHA-256 checksum. If formatted as N-Triples, the same pass
+ * also computes the number of triples, the number of distinct subjects, a histogram of predicates
+ * and a (WGS84) bounding box of geometries. Geometries are recognized either as GeoSPARQL WKT
+ * literals or as W3C Basic Geo (<tt>wgs84_pos#lat</tt>, <tt>wgs84_pos#long</tt>) coordinates.
+ * <p>
+ * Computed profiles are also kept in memory, keyed by the identity of a file (not by its path), so
+ * that a job reading a linked copy of a profiled output can find its profile (see {@link #find(Path)}).
+ */
+public class OutputProfiler
+{
+    private static final Logger logger = LoggerFactory.getLogger(OutputProfiler.class);
+
+    public static final int SRID = 4326;
+
+    /**
+     * The number of distinct subjects above which the count is estimated (instead of computed)
+     */
+    public static final int MAX_EXACT_SUBJECTS = 1 << 18;
+
+    /**
+     * The number of distinct predicates above which other predicates are counted together (under
+     * {@link #OTHER_PREDICATES_KEY})
+     */
+    public static final int MAX_PREDICATES = 1000;
+
+    public static final String OTHER_PREDICATES_KEY = "#other";
+
+    private static final String WKT_LITERAL_DATATYPE = "http://www.opengis.net/ont/geosparql#wktLiteral";
+
+    private static final String LAT_PREDICATE = "http://www.w3.org/2003/01/geo/wgs84_pos#lat";
+
+    private static final String LONG_PREDICATE = "http://www.w3.org/2003/01/geo/wgs84_pos#long";
+
+    private static final Set<String> WGS84_CRS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+        "http://www.opengis.net/def/crs/EPSG/0/4326", "http://www.opengis.net/def/crs/OGC/1.3/CRS84")));
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private static final HashFunction hashFunction = Hashing.murmur3_128();
+
+    private static final GeometryFactory geometryFactory = new GeometryFactory(new PrecisionModel(), SRID);
+
+    /**
+     * The profile of a file
+     */
+    public static class Profile implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        private long size;
+
+        private String checksum;
+
+        private Long tripleCount;
+
+        private Long distinctSubjectCount;
+
+        private boolean distinctSubjectCountEstimated;
+
+        private Map<String, Long> predicateHistogram;
+
+        private Geometry boundingBox;
+
+        private long duration;
+
+        public long getSize()
+        {
+            return size;
+        }
+
+        /**
+         * The SHA-256 checksum (hex-encoded) of the file
+         */
+        public String getChecksum()
+        {
+            return checksum;
+        }
+
+        /**
+         * The number of triples, or <tt>null</tt> if the file is not formatted as N-Triples
+         */
+        public Long getTripleCount()
+        {
+            return tripleCount;
+        }
+
+        public Long getDistinctSubjectCount()
+        {
+            return distinctSubjectCount;
+        }
+
+        /**
+         * Indicate if {@link #getDistinctSubjectCount()} is an estimate (as there were too many
+         * subjects to be counted exactly)
+         */
+        public boolean isDistinctSubjectCountEstimated()
+        {
+            return distinctSubjectCountEstimated;
+        }
+
+        public Map<String, Long> getPredicateHistogram()
+        {
+            return predicateHistogram;
+        }
+
+        /**
+         * The bounding box (in WGS84) of all geometries, or <tt>null</tt> if no geometry was found
+         */
+        public Geometry getBoundingBox()
+        {
+            return boundingBox;
+        }
+
+        /**
+         * The time (milliseconds) spent on profiling
+         */
+        public long getDuration()
+        {
+            return duration;
+        }
+
+        /**
+         * Record this profile on a file record. A bounding box is only recorded if the file record
+         * has none.
+         */
+        public void applyTo(ProcessExecutionStepFileRecord fileRecord)
+        {
+            fileRecord.setChecksum(checksum);
+            fileRecord.setTripleCount(tripleCount);
+            fileRecord.setDistinctSubjectCount(distinctSubjectCount);
+            fileRecord.setPredicateHistogram(predicateHistogram);
+            if (boundingBox != null && fileRecord.getBoundingBox() == null)
+                fileRecord.setBoundingBox(boundingBox);
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format(
+                "Profile [size=%d, checksum=%s, tripleCount=%s, distinctSubjectCount=%s%s, boundingBox=%s]",
+                size, checksum, tripleCount, distinctSubjectCount, distinctSubjectCountEstimated? "(~)" : "",
+                boundingBox);
+        }
+    }
+
+    /**
+     * Identify a file by its file key (e.g. device and inode), size and modification time, so that
+     * hard links of the same (unmodified) file share a profile.
+     */
+    private static class FileIdentity
+    {
+        private final Object key;
+
+        private final long size;
+
+        private final long lastModified;
+
+        private FileIdentity(Path path) throws IOException
+        {
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            Object fileKey = attrs.fileKey();
+            this.key = fileKey != null? fileKey : path.toRealPath().toString();
+            this.size = attrs.size();
+            this.lastModified = attrs.lastModifiedTime().toMillis();
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(key, size, lastModified);
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+                return true;
+            if (obj == null || !(obj instanceof FileIdentity))
+                return false;
+            FileIdentity other = (FileIdentity) obj;
+            return key.equals(other.key) && size == other.size && lastModified == other.lastModified;
+        }
+    }
+
+    /**
+     * A HyperLogLog sketch for estimating the number of distinct (hashed) items
+     */
+    private static class HyperLogLog
+    {
+        private static final int P = 14;
+
+        private static final int M = 1 << P;
+
+        private final byte[] registers = new byte[M];
+
+        void add(long hash)
+        {
+            final int index = (int) (hash >>> (64 - P));
+            final long w = hash << P;
+            final int rank = (w == 0L)? (64 - P + 1) : (Long.numberOfLeadingZeros(w) + 1);
+            if (rank > registers[index])
+                registers[index] = (byte) rank;
+        }
+
+        long estimate()
+        {
+            double sum = 0.0;
+            int zeros = 0;
+            for (byte r: registers) {
+                sum += 1.0 / (1L << r);
+                if (r == 0)
+                    zeros++;
+            }
+            final double alpha = 0.7213 / (1.0 + 1.079 / M);
+            final double e = alpha * M * M / sum;
+            if (e <= 2.5 * M && zeros > 0)
+                return Math.round(M * Math.log((double) M / zeros));
+            return Math.round(e);
+        }
+    }
+
+    /**
+     * The state accumulated while scanning an N-Triples file
+     */
+    private static class TripleStats
+    {
+        long tripleCount = 0L;
+
+        String lastSubject = null;
+
+        Set<Long> subjects = new HashSet<>();
+
+        final HyperLogLog subjectSketch = new HyperLogLog();
+
+        final Map<String, long[]> predicates = new HashMap<>();
+
+        final Envelope envelope = new Envelope();
+
+        double minLat = Double.POSITIVE_INFINITY, maxLat = Double.NEGATIVE_INFINITY;
+
+        double minLong = Double.POSITIVE_INFINITY, maxLong = Double.NEGATIVE_INFINITY;
+
+        final WKTReader wktReader = new WKTReader(geometryFactory);
+
+        void accept(String line)
+        {
+            final int len = line.length();
+            int i = skipWhitespace(line, 0);
+            if (i == len || line.charAt(i) == '#')
+                return; // a blank line or a comment
+
+            final int subjectEnd = endOfTerm(line, i);
+            if (subjectEnd < 0)
+                return;
+            final String subject = line.substring(i, subjectEnd);
+
+            i = skipWhitespace(line, subjectEnd);
+            final int predicateEnd = endOfTerm(line, i);
+            if (predicateEnd < 0 || line.charAt(i) != '<')
+                return;
+            final String predicate = line.substring(i + 1, predicateEnd - 1);
+
+            i = skipWhitespace(line, predicateEnd);
+            final int objectEnd = endOfTerm(line, i);
+            if (objectEnd < 0)
+                return;
+
+            tripleCount++;
+
+            // Count subjects (note that triples are usually grouped by subject)
+
+            if (!subject.equals(lastSubject)) {
+                lastSubject = subject;
+                final long hash = hashFunction.hashString(subject, StandardCharsets.UTF_8).asLong();
+                subjectSketch.add(hash);
+                if (subjects != null) {
+                    subjects.add(hash);
+                    if (subjects.size() > MAX_EXACT_SUBJECTS)
+                        subjects = null; // too many: switch to estimating
+                }
+            }
+
+            // Count predicates
+
+            long[] counter = predicates.get(predicate);
+            if (counter == null) {
+                counter = predicates.computeIfAbsent(
+                    predicates.size() < MAX_PREDICATES? predicate : OTHER_PREDICATES_KEY, k -> new long[1]);
+            }
+            counter[0]++;
+
+            // Expand bounding box (if object is a geometry or a coordinate)
+
+            if (line.charAt(i) == '"')
+                acceptLiteral(predicate, line, i, objectEnd);
+        }
+
+        private void acceptLiteral(String predicate, String line, int start, int end)
+        {
+            final int closingQuote = endOfQuoted(line, start);
+            final String value = line.substring(start + 1, closingQuote);
+
+            if (predicate.equals(LAT_PREDICATE) || predicate.equals(LONG_PREDICATE)) {
+                final double d;
+                try {
+                    d = Double.parseDouble(value.trim());
+                } catch (NumberFormatException ex) {
+                    return;
+                }
+                if (predicate.equals(LAT_PREDICATE) && d >= -90.0 && d <= 90.0) {
+                    minLat = Math.min(minLat, d);
+                    maxLat = Math.max(maxLat, d);
+                } else if (predicate.equals(LONG_PREDICATE) && d >= -180.0 && d <= 180.0) {
+                    minLong = Math.min(minLong, d);
+                    maxLong = Math.max(maxLong, d);
+                }
+                return;
+            }
+
+            final String suffix = line.substring(closingQuote + 1, end);
+            if (!suffix.startsWith("^^<" + WKT_LITERAL_DATATYPE + ">"))
+                return;
+
+            // A WKT literal may be prefixed by the URI of its CRS (otherwise is CRS84)
+            String wkt = value.trim();
+            if (wkt.startsWith("<")) {
+                final int k = wkt.indexOf('>');
+                if (k < 0 || !WGS84_CRS.contains(wkt.substring(1, k)))
+                    return;
+                wkt = wkt.substring(k + 1).trim();
+            }
+
+            final Envelope e;
+            try {
+                e = wktReader.read(wkt).getEnvelopeInternal();
+            } catch (ParseException ex) {
+                return;
+            }
+            if (!e.isNull() && e.getMinX() >= -180.0 && e.getMaxX() <= 180.0 &&
+                    e.getMinY() >= -90.0 && e.getMaxY() <= 90.0) {
+                envelope.expandToInclude(e);
+            }
+        }
+
+        void applyTo(Profile profile)
+        {
+            profile.tripleCount = tripleCount;
+
+            if (subjects != null) {
+                profile.distinctSubjectCount = (long) subjects.size();
+                profile.distinctSubjectCountEstimated = false;
+            } else {
+                profile.distinctSubjectCount = subjectSketch.estimate();
+                profile.distinctSubjectCountEstimated = true;
+            }
+
+            final Map<String, Long> histogram = new TreeMap<>();
+            predicates.forEach((p, counter) -> histogram.put(p, counter[0]));
+            profile.predicateHistogram = histogram;
+
+            final Envelope e = new Envelope(envelope);
+            if (minLat <= maxLat && minLong <= maxLong)
+                e.expandToInclude(new Envelope(minLong, maxLong, minLat, maxLat));
+            profile.boundingBox = e.isNull()? null : geometryFactory.toGeometry(e);
+        }
+    }
+
+    private final int poolSize;
+
+    private final int queueCapacity;
+
+    private ThreadPoolExecutor executor;
+
+    private final Cache<FileIdentity, Profile> profiles = CacheBuilder.newBuilder()
+        .maximumSize(10000)
+        .expireAfterAccess(24, TimeUnit.HOURS)
+        .build();
+
+    /**
+     * Create a profiler
+     *
+     * @param poolSize The number of workers
+     * @param queueCapacity The maximum number of files waiting to be profiled; a file submitted
+     *   while the queue is full is not profiled
+     */
+    public OutputProfiler(int poolSize, int queueCapacity)
+    {
+        Assert.isTrue(poolSize > 0, "Expected a positive pool size");
+        Assert.isTrue(queueCapacity > 0, "Expected a positive queue capacity");
+        this.poolSize = poolSize;
+        this.queueCapacity = queueCapacity;
+    }
+
+    public void initialize()
+    {
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("profiler-"));
+    }
+
+    public void shutdown()
+    {
+        if (executor != null)
+            executor.shutdownNow();
+    }
+
+    /**
+     * Submit a file to be profiled in background
+     *
+     * @param path The path of the file
+     * @param dataFormat The data format of the file (only N-Triples are profiled beyond a checksum)
+     * @return a future for the profile. The future fails if the file cannot be read, or if the
+     *   profiler is too busy to accept it.
+     */
+    public CompletableFuture<Profile> submit(Path path, EnumDataFormat dataFormat)
+    {
+        Assert.notNull(path, "Expected a non-null path");
+        Assert.state(executor != null, "The profiler is not initialized");
+
+        final CompletableFuture<Profile> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(profile(path, dataFormat));
+                } catch (Exception ex) {
+                    future.completeExceptionally(ex);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            logger.warn("Skipping profiling of {}: too many files are waiting to be profiled", path);
+            future.completeExceptionally(ex);
+        }
+        return future;
+    }
+
+    /**
+     * Find the profile of a file (if already computed)
+     *
+     * @param path The path of the file (may be a link to the file that was actually profiled)
+     * @return the profile, or <tt>null</tt> if not found
+     */
+    public Profile find(Path path)
+    {
+        try {
+            return profiles.getIfPresent(new FileIdentity(path));
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Profile a file (on the calling thread)
+     */
+    public Profile profile(Path path, EnumDataFormat dataFormat) throws IOException
+    {
+        final FileIdentity identity = new FileIdentity(path);
+        final Profile profile = computeProfile(path, dataFormat);
+
+        profiles.put(identity, profile);
+        logger.info("Profiled {} in {}ms: {}", path, profile.duration, profile);
+        return profile;
+    }
+
+    /**
+     * Compute the profile of a file
+     */
+    public static Profile computeProfile(Path path, EnumDataFormat dataFormat) throws IOException
+    {
+        final long started = System.currentTimeMillis();
+
+        MessageDigest digest = null;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+
+        final Profile profile = new Profile();
+
+        try (InputStream in = new DigestInputStream(Files.newInputStream(path), digest)) {
+            if (dataFormat == EnumDataFormat.N_TRIPLES) {
+                final TripleStats stats = new TripleStats();
+                final BufferedReader reader =
+                    new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), BUFFER_SIZE);
+                String line = null;
+                while ((line = reader.readLine()) != null)
+                    stats.accept(line);
+                stats.applyTo(profile);
+            } else {
+                final byte[] buffer = new byte[BUFFER_SIZE];
+                while (in.read(buffer) >= 0)
+                    ; // only digest
+            }
+        }
+
+        profile.size = Files.size(path);
+        profile.checksum = Hex.encodeHexString(digest.digest());
+        profile.duration = System.currentTimeMillis() - started;
+        return profile;
+    }
+
+    private static int skipWhitespace(String line, int i)
+    {
+        final int len = line.length();
+        while (i < len && (line.charAt(i) == ' ' || line.charAt(i) == '\t'))
+            i++;
+        return i;
+    }
+
+    /**
+     * Find the end (exclusive) of a term (an IRI, a blank node or a literal) starting at a given
+     * position.
+     *
+     * @return the end position, or <tt>-1</tt> if no term is found
+     */
+    private static int endOfTerm(String line, int i)
+    {
+        final int len = line.length();
+        if (i >= len)
+            return -1;
+
+        switch (line.charAt(i)) {
+        case '<':
+            {
+                final int k = line.indexOf('>', i + 1);
+                return k < 0? -1 : k + 1;
+            }
+        case '"':
+            {
+                int k = endOfQuoted(line, i);
+                if (k < 0)
+                    return -1;
+                k++;
+                if (line.startsWith("^^<", k)) {
+                    final int m = line.indexOf('>', k + 3);
+                    return m < 0? -1 : m + 1;
+                }
+                // Either a language tag or a plain literal
+                while (k < len && line.charAt(k) != ' ' && line.charAt(k) != '\t')
+                    k++;
+                return k;
+            }
+        case '_':
+            {
+                int k = i;
+                while (k < len && line.charAt(k) != ' ' && line.charAt(k) != '\t')
+                    k++;
+                return k;
+            }
+        default:
+            return -1;
+        }
+    }
+
+    /**
+     * Find the position of the (unescaped) quote closing a quoted string that starts at a given
+     * position
+     */
+    private static int endOfQuoted(String line, int start)
+    {
+        final int len = line.length();
+        for (int k = start + 1; k < len; k++) {
+            final char c = line.charAt(k);
+            if (c == '\\')
+                k++;
+            else if (c == '"')
+                return k;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,176 @@
+package eu.slipo.workbench.rpc.service;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.Assert;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import eu.slipo.workbench.common.model.process.ProcessExecutionEvent;
+
+/**
+ * Publish state transitions of process executions (and of their steps) to subscribers, as a
+ * stream of server-sent events.
+ * <p>
+ * Every event is assigned an increasing sequence number (sent as the event id). A bounded number of
+ * recent events is kept, so that a subscriber reconnecting with the id of the last event it has
+ * received (i.e. with a <tt>Last-Event-ID</tt> header) is sent the events it has missed. If the
+ * missed events are no longer available (or the sequence is not recognized, e.g. after a restart),
+ * a {@link #RESET_EVENT_NAME} event is sent instead, meaning that the subscriber must reload any
+ * state it depends on.
+ * <p>
+ * Events are sent on a single dedicated thread (in order of publishing), so a publisher is never
+ * blocked on a slow subscriber.
+ */
+@Service
+public class ProcessExecutionEventPublisher
+{
+    private static final Logger logger = LoggerFactory.getLogger(ProcessExecutionEventPublisher.class);
+
+    public static final String EVENT_NAME = "execution";
+
+    public static final String RESET_EVENT_NAME = "reset";
+
+    @Value("${slipo.rpc-server.events.buffer-size:1024}")
+    private int bufferSize = 1024;
+
+    /**
+     * The time after which a stream is closed (and is expected to be reopened by its subscriber)
+     */
+    @Value("${slipo.rpc-server.events.stream-timeout-seconds:1800}")
+    private long streamTimeout = 1800L;
+
+    private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+
+    /**
+     * The recent events, guarded by itself. The sequence is started from the startup time, so that
+     * sequence numbers of a previous instance are not mistaken for recent ones.
+     */
+    private final Deque<ProcessExecutionEvent> recentEvents = new ArrayDeque<>();
+
+    private long sequence = System.currentTimeMillis();
+
+    private final ExecutorService sender =
+        Executors.newSingleThreadExecutor(new CustomizableThreadFactory("events-"));
+
+    /**
+     * Publish an event (the sequence number of the given event is ignored)
+     */
+    public void publish(ProcessExecutionEvent event)
+    {
+        Assert.notNull(event, "Expected a non-null event");
+
+        synchronized (recentEvents) {
+            final ProcessExecutionEvent e = new ProcessExecutionEvent(event, ++sequence);
+            recentEvents.addLast(e);
+            while (recentEvents.size() > bufferSize)
+                recentEvents.removeFirst();
+            // Submit while holding the lock, so that events are sent in order of their sequence
+            sender.execute(() -> send(e));
+        }
+    }
+
+    /**
+     * Subscribe to the stream of events
+     *
+     * @param lastSequence The sequence number of the last event received by this subscriber (in a
+     *   previous stream), or <tt>null</tt> if no event was received
+     */
+    public SseEmitter subscribe(Long lastSequence)
+    {
+        final SseEmitter emitter = new SseEmitter(streamTimeout * 1000L);
+        emitter.onCompletion(() -> emitters.remove(emitter));
+        emitter.onTimeout(() -> emitters.remove(emitter));
+
+        synchronized (recentEvents) {
+            // Determine events missed by the subscriber (if any)
+            final long current = sequence;
+            final long first = recentEvents.isEmpty()? (sequence + 1) : recentEvents.getFirst().getSequence();
+            final boolean reset = lastSequence != null && (lastSequence < first - 1 || lastSequence > sequence);
+            final List<ProcessExecutionEvent> missed = new ArrayList<>();
+            if (lastSequence != null && !reset) {
+                for (ProcessExecutionEvent e: recentEvents)
+                    if (e.getSequence() > lastSequence)
+                        missed.add(e);
+            }
+            // Replay (on the sender thread) before any event published after this point
+            sender.execute(() -> {
+                try {
+                    if (reset)
+                        emitter.send(SseEmitter.event()
+                            .id(String.valueOf(current)).name(RESET_EVENT_NAME).data("", MediaType.TEXT_PLAIN));
+                    for (ProcessExecutionEvent e: missed)
+                        emitter.send(toEventBuilder(e));
+                } catch (IOException | IllegalStateException ex) {
+                    emitter.completeWithError(ex);
+                    return;
+                }
+                emitters.add(emitter);
+            });
+        }
+
+        return emitter;
+    }
+
+    /**
+     * Send a comment to every subscriber, to keep streams open (and to detect closed ones)
+     */
+    @Scheduled(fixedRate = 15000L, initialDelay = 15000L)
+    public void sendHeartbeat()
+    {
+        sender.execute(() -> {
+            for (SseEmitter emitter: emitters)
+                send(emitter, SseEmitter.event().comment("heartbeat"));
+        });
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        sender.shutdownNow();
+        for (SseEmitter emitter: emitters)
+            emitter.complete();
+        emitters.clear();
+    }
+
+    private static SseEmitter.SseEventBuilder toEventBuilder(ProcessExecutionEvent e)
+    {
+        return SseEmitter.event()
+            .id(String.valueOf(e.getSequence()))
+            .name(EVENT_NAME)
+            .data(e, MediaType.APPLICATION_JSON);
+    }
+
+    private void send(ProcessExecutionEvent e)
+    {
+        logger.debug("Sending {} to {} subscribers", e, emitters.size());
+        for (SseEmitter emitter: emitters)
+            send(emitter, toEventBuilder(e));
+    }
+
+    private void send(SseEmitter emitter, SseEmitter.SseEventBuilder builder)
+    {
+        try {
+            emitter.send(builder);
+        } catch (IOException | IllegalStateException ex) {
+            // The subscriber has gone away
+            emitters.remove(emitter);
+            emitter.completeWithError(ex);
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package eu.slipo.workbench.rpc.service;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+
+import eu.slipo.workbench.common.model.process.EnumProcessExecutionStatus;
+import eu.slipo.workbench.common.model.process.ProcessExecutionNotFoundException;
+import eu.slipo.workbench.common.model.process.ProcessExecutionRecord;
+import eu.slipo.workbench.common.model.process.ProcessExecutionStepRecord;
+import eu.slipo.workbench.common.repository.ProcessRepository;
+import eu.slipo.workbench.common.repository.ProcessRepository.ProcessExecutionNotActiveException;
+
+/**
+ * An ordered and asynchronous journal for the bookkeeping of a process execution (i.e. for the
+ * records of its steps and its status).
+ * <p>
+ * Updates are submitted from the listeners of a workflow execution (i.e. from the threads of the
+ * workflow scheduler), and are applied on a separate executor strictly in submission order. An
+ * update only modifies in-memory records (so any blocking work, e.g. examining files, happens off
+ * the thread that submitted it); modified records are written when a batch of updates is drained,
+ * in a single transaction. Several updates to the same step inside a batch are coalesced into a
+ * single write, and the status of the execution is always written after its steps.
+ */
+public class ProcessExecutionJournal
+{
+    private static final Logger logger = LoggerFactory.getLogger(ProcessExecutionJournal.class);
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 32;
+
+    /**
+     * An update to be applied on the journal (on the thread draining the journal)
+     */
+    @FunctionalInterface
+    public interface Update
+    {
+        void apply(ProcessExecutionJournal journal) throws Exception;
+    }
+
+    private final long executionId;
+
+    private final ProcessRepository processRepository;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final Executor executor;
+
+    private final int maxBatchSize;
+
+    private final Queue<Update> queue = new ConcurrentLinkedQueue<>();
+
+    /**
+     * A flag indicating that a drain is scheduled (or running) on the executor. At most one drain
+     * is active at a time, so the following state is only accessed by a single thread at a time.
+     */
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    /**
+     * The step records keyed by step key (as last written, or as pending to be written)
+     */
+    private final Map<Integer, ProcessExecutionStepRecord> steps = new HashMap<>();
+
+    /**
+     * The keys of steps already created in the repository
+     */
+    private final Set<Integer> createdSteps = new HashSet<>();
+
+    /**
+     * The keys of steps modified since the last write (in order of modification)
+     */
+    private final Set<Integer> modifiedSteps = new LinkedHashSet<>();
+
+    private EnumProcessExecutionStatus status;
+
+    private ZonedDateTime completedOn;
+
+    private boolean statusModified = false;
+
+    /**
+     * Callbacks to be run after the next write
+     */
+    private final List<Runnable> flushCallbacks = new ArrayList<>();
+
+    public ProcessExecutionJournal(
+        long executionId, ProcessRepository processRepository, TransactionTemplate transactionTemplate,
+        Executor executor, int maxBatchSize)
+    {
+        Assert.notNull(processRepository, "Expected a non-null repository");
+        Assert.notNull(transactionTemplate, "Expected a non-null transaction template");
+        Assert.notNull(executor, "Expected a non-null executor");
+        Assert.isTrue(maxBatchSize > 0, "Expected a positive batch size");
+        this.executionId = executionId;
+        this.processRepository = processRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.executor = executor;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public long getExecutionId()
+    {
+        return executionId;
+    }
+
+    /**
+     * Submit an update. This returns immediately: the update is applied later (after every update
+     * submitted before it).
+     */
+    public void submit(Update update)
+    {
+        Assert.notNull(update, "Expected a non-null update");
+        queue.add(update);
+        if (scheduled.compareAndSet(false, true))
+            executor.execute(this::drain);
+    }
+
+    /**
+     * Get the record of a step (as created by a previous update)
+     *
+     * @param key The step key
+     * @return the record, or <tt>null</tt> if no such step exists
+     */
+    public ProcessExecutionStepRecord getStep(int key)
+    {
+        return steps.get(key);
+    }
+
+    /**
+     * Mark the record of a step as modified (it will be created or updated on next write).
+     */
+    public void putStep(ProcessExecutionStepRecord record)
+    {
+        Assert.notNull(record, "Expected a non-null step record");
+        steps.put(record.getKey(), record);
+        modifiedSteps.add(record.getKey());
+    }
+
+    /**
+     * Modify the status of the process execution (it will be updated on next write, after any
+     * modified steps).
+     */
+    public void setStatus(EnumProcessExecutionStatus status, ZonedDateTime completedOn)
+    {
+        Assert.notNull(status, "Expected a non-null status");
+        this.status = status;
+        this.completedOn = completedOn;
+        this.statusModified = true;
+    }
+
+    /**
+     * Register a callback to be run after modifications (so far) are written, e.g. to notify others
+     * of a transition only when it is visible in the repository. A callback is run (on the thread
+     * draining the journal) even if the write has failed.
+     */
+    public void afterFlush(Runnable callback)
+    {
+        Assert.notNull(callback, "Expected a non-null callback");
+        flushCallbacks.add(callback);
+    }
+
+    /**
+     * Write every modification now (instead of at the end of the current batch). This is meant to
+     * be called from an update which depends on records being present in the repository.
+     */
+    public void flush()
+    {
+        try {
+            write();
+        } finally {
+            runFlushCallbacks();
+        }
+    }
+
+    private void runFlushCallbacks()
+    {
+        if (flushCallbacks.isEmpty())
+            return;
+
+        final List<Runnable> callbacks = new ArrayList<>(flushCallbacks);
+        flushCallbacks.clear();
+        for (Runnable callback: callbacks) {
+            try {
+                callback.run();
+            } catch (RuntimeException ex) {
+                logger.error("Failed to run a callback for execution #{}", executionId, ex);
+            }
+        }
+    }
+
+    private void write()
+    {
+        if (modifiedSteps.isEmpty() && !statusModified)
+            return;
+
+        final List<Integer> keys = new ArrayList<>(modifiedSteps);
+        modifiedSteps.clear();
+
+        // Write all modifications in a single transaction
+
+        try {
+            final Map<Integer, ProcessExecutionStepRecord> written = transactionTemplate.execute(t -> {
+                Map<Integer, ProcessExecutionStepRecord> result = new HashMap<>();
+                for (Integer key: keys)
+                    result.put(key, writeStep(key));
+                if (statusModified)
+                    writeStatus();
+                return result;
+            });
+            written.forEach(this::afterWriteStep);
+            statusModified = false;
+            return;
+        } catch (RuntimeException ex) {
+            logger.warn("Failed to write a batch of {} steps for execution #{}; writing separately: {}",
+                keys.size(), executionId, ex.getMessage());
+        }
+
+        // The batch has failed: write each modification separately (to keep as much as possible)
+
+        for (Integer key: keys) {
+            try {
+                afterWriteStep(key, transactionTemplate.execute(t -> writeStep(key)));
+            } catch (RuntimeException ex) {
+                logger.error("Failed to write execution step {}/{}", executionId, key, ex);
+            }
+        }
+        if (statusModified) {
+            try {
+                transactionTemplate.execute(t -> { writeStatus(); return null; });
+            } catch (RuntimeException ex) {
+                logger.error("Failed to write the status of execution #{}", executionId, ex);
+            }
+            statusModified = false;
+        }
+    }
+
+    private void drain()
+    {
+        while (true) {
+            int n = 0;
+            Update update = null;
+            while (n < maxBatchSize && (update = queue.poll()) != null) {
+                n++;
+                try {
+                    update.apply(this);
+                } catch (Exception ex) {
+                    logger.error("Failed to apply an update for execution #{}", executionId, ex);
+                }
+            }
+
+            if (n > 0) {
+                flush();
+                continue;
+            }
+
+            // The queue seems empty: release, unless an update was submitted meanwhile
+            scheduled.set(false);
+            if (queue.isEmpty() || !scheduled.compareAndSet(false, true))
+                return;
+        }
+    }
+
+    /**
+     * Create or update a step record in the repository (inside a transaction)
+     *
+     * @return the step record as written (carrying the ids of its file records)
+     */
+    private ProcessExecutionStepRecord writeStep(int key)
+    {
+        final ProcessExecutionStepRecord record = steps.get(key);
+
+        ProcessExecutionRecord executionRecord = null;
+        try {
+            if (!createdSteps.contains(key)) {
+                executionRecord = processRepository.createExecutionStep(executionId, record);
+                if (record.getErrorMessage() != null || !record.getLogs().isEmpty()) {
+                    // Created and finished in the same batch: the error and logs are only written on update
+                    ProcessExecutionStepRecord createdRecord = executionRecord.getStep(key);
+                    createdRecord.setErrorMessage(record.getErrorMessage());
+                    createdRecord.addLogs(record.getLogs());
+                    executionRecord = processRepository.updateExecutionStep(executionId, key, createdRecord);
+                }
+            } else {
+                executionRecord = processRepository.updateExecutionStep(executionId, key, record);
+            }
+        } catch (ProcessExecutionNotFoundException ex) {
+            throw new IllegalStateException("The execution entity has disappeared!", ex);
+        } catch (ProcessExecutionNotActiveException ex) {
+            throw new IllegalStateException("The execution entity is not active!", ex);
+        }
+
+        return executionRecord.getStep(key);
+    }
+
+    private void afterWriteStep(Integer key, ProcessExecutionStepRecord record)
+    {
+        // Logs are only added by an update (so, must not be carried to a next one)
+        record.clearLogs();
+        steps.put(key, record);
+        createdSteps.add(key);
+    }
+
+    private void writeStatus()
+    {
+        try {
+            processRepository.updateExecution(executionId, status, null, completedOn, null);
+        } catch (ProcessExecutionNotFoundException ex) {
+            throw new IllegalStateException("The execution entity has disappeared!", ex);
+        }
+    }
+}
@@ -19,7 +19,26 @@ public interface ProcessToWorkflowMapper
      *
      * @throws CycleDetected if the process definition has cyclic dependencies
      */
-    Workflow buildWorkflow(long id, long version, ProcessDefinition definition, int createdBy)
+    default Workflow buildWorkflow(long id, long version, ProcessDefinition definition, int createdBy)
+        throws CycleDetected
+    {
+        return buildWorkflow(id, version, definition, createdBy, new WorkflowPlan());
+    }
+
+    /**
+     * Build a workflow from a given process definition, and report steps that are not mapped
+     * to job nodes (because their outputs are reused).
+     *
+     * @param id The id (parent id) of a process
+     * @param version The version of a process revision
+     * @param definition The process definition
+     * @param createdBy The id of the user that created the process
+     * @param plan A plan to be populated while mapping
+     * @return a workflow
+     *
+     * @throws CycleDetected if the process definition has cyclic dependencies
+     */
+    Workflow buildWorkflow(long id, long version, ProcessDefinition definition, int createdBy, WorkflowPlan plan)
         throws CycleDetected;
 
     /**
@@ -0,0 +1,507 @@
+package eu.slipo.workbench.rpc.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import eu.slipo.workbench.common.model.poi.EnumTool;
+
+/**
+ * A content-addressed cache for the outputs of processing steps.
+ * <p>
+ * An entry is keyed by a digest computed from the tool, its (normalized) configuration and the
+ * content of its input (see {@link #computeKey(EnumTool, Properties, List, Collection)}). So, a
+ * step that would run with the same tool, configuration and input as a previously completed step
+ * can reuse the outputs of the latter (instead of running again).
+ * <p>
+ * Output files are stored (and retrieved) as hard links, so an entry shares disk blocks with the
+ * workflow that produced it. The total size of entries is bounded by a disk budget: when exceeded,
+ * the least recently used entries are evicted.
+ */
+public class StepOutputCache
+{
+    private static final Logger logger = LoggerFactory.getLogger(StepOutputCache.class);
+
+    public static final String DIGEST_ALGORITHM = "SHA-256";
+
+    /**
+     * The name of the file (inside an entry directory) holding the metadata for an entry
+     */
+    public static final String ENTRY_FILE_NAME = ".entry";
+
+    private static final String TEMP_PREFIX = ".tmp-";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The metadata for an entry
+     */
+    public static class Entry
+    {
+        private final String key;
+
+        private final long jobExecutionId;
+
+        private final long size;
+
+        private final Date created;
+
+        private volatile long lastAccessed;
+
+        private Entry(String key, long jobExecutionId, long size, Date created, long lastAccessed)
+        {
+            this.key = key;
+            this.jobExecutionId = jobExecutionId;
+            this.size = size;
+            this.created = created;
+            this.lastAccessed = lastAccessed;
+        }
+
+        public String getKey()
+        {
+            return key;
+        }
+
+        /**
+         * The id of the job execution that produced the cached outputs
+         */
+        public long getJobExecutionId()
+        {
+            return jobExecutionId;
+        }
+
+        /**
+         * The total size (bytes) of the cached outputs
+         */
+        public long getSize()
+        {
+            return size;
+        }
+
+        public Date getCreated()
+        {
+            return created;
+        }
+
+        public Date getLastAccessed()
+        {
+            return new Date(lastAccessed);
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("Entry [key=%s, jobExecutionId=%d, size=%d]", key, jobExecutionId, size);
+        }
+    }
+
+    /**
+     * A digest of a file, valid as long as the file is not modified
+     */
+    private static class FileDigest
+    {
+        private final long size;
+
+        private final FileTime modified;
+
+        private final String digest;
+
+        private FileDigest(long size, FileTime modified, String digest)
+        {
+            this.size = size;
+            this.modified = modified;
+            this.digest = digest;
+        }
+    }
+
+    private final Path rootDir;
+
+    private final long maxSize;
+
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    private long size = 0L;
+
+    /**
+     * Memoize digests of input files (e.g. of catalog resources which are frequently used as
+     * input and are never modified).
+     */
+    private final Cache<Path, FileDigest> fileDigests = CacheBuilder.newBuilder()
+        .maximumSize(2048)
+        .expireAfterAccess(6, TimeUnit.HOURS)
+        .build();
+
+    /**
+     * Create a cache under a given directory
+     *
+     * @param rootDir The directory to store entries into. This should reside in the same
+     *   filesystem as the workflow data directory (otherwise files are copied, not linked).
+     * @param maxSize The disk budget (bytes) for cached outputs
+     */
+    public StepOutputCache(Path rootDir, long maxSize)
+    {
+        Assert.notNull(rootDir, "Expected a non-null directory");
+        Assert.isTrue(rootDir.isAbsolute(), "Expected an absolute path for the root directory");
+        Assert.isTrue(maxSize > 0, "Expected a positive size as a disk budget");
+        this.rootDir = rootDir;
+        this.maxSize = maxSize;
+    }
+
+    public Path getRootDirectory()
+    {
+        return rootDir;
+    }
+
+    public long getMaxSize()
+    {
+        return maxSize;
+    }
+
+    public synchronized long getSize()
+    {
+        return size;
+    }
+
+    public synchronized int getNumberOfEntries()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Load existing entries from the root directory, and discard any leftovers from incomplete
+     * writes.
+     */
+    public synchronized void initialize() throws IOException
+    {
+        Files.createDirectories(rootDir);
+
+        try (DirectoryStream<Path> shards = Files.newDirectoryStream(rootDir)) {
+            for (Path shard: shards) {
+                if (shard.getFileName().toString().startsWith(TEMP_PREFIX)) {
+                    FileUtils.deleteQuietly(shard.toFile());
+                    continue;
+                }
+                if (!Files.isDirectory(shard))
+                    continue;
+                try (DirectoryStream<Path> dirs = Files.newDirectoryStream(shard)) {
+                    for (Path dir: dirs) {
+                        Entry entry = readEntry(dir);
+                        if (entry == null) {
+                            logger.warn("Discarding a malformed cache entry at {}", dir);
+                            FileUtils.deleteQuietly(dir.toFile());
+                        } else {
+                            entries.put(entry.key, entry);
+                            size += entry.size;
+                        }
+                    }
+                }
+            }
+        }
+
+        logger.info("Loaded {} cached step outputs ({} MB) from {}", entries.size(), size >> 20, rootDir);
+        evict(0L);
+    }
+
+    /**
+     * Compute a digest for the content of a file
+     *
+     * @param path An absolute path for a regular file
+     * @return a hex-encoded digest
+     */
+    public String digest(Path path) throws IOException
+    {
+        Assert.isTrue(path != null && path.isAbsolute(), "Expected an absolute path");
+
+        final long fileSize = Files.size(path);
+        final FileTime modified = Files.getLastModifiedTime(path);
+
+        FileDigest d = fileDigests.getIfPresent(path);
+        if (d != null && d.size == fileSize && d.modified.equals(modified))
+            return d.digest;
+
+        final MessageDigest md = newMessageDigest();
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = new DigestInputStream(Files.newInputStream(path), md)) {
+            while (in.read(buffer) >= 0)
+                ; // no-op: digest is updated while reading
+        }
+
+        String digest = Hex.encodeHexString(md.digest());
+        fileDigests.put(path, new FileDigest(fileSize, modified, digest));
+        return digest;
+    }
+
+    /**
+     * Compute the cache key for a step.
+     *
+     * @param tool The tool
+     * @param parameters The normalized parameters of the step (i.e. as passed to the job).
+     *   A parameter which is a <tt>file:</tt> URI of a regular file also contributes with the
+     *   content of the file.
+     * @param input A list of identifiers for the content of each input: either the digest of an
+     *   input file, or (for input produced by another step) the key of the producer step combined
+     *   with the output part
+     * @param outputNames The names of the output files
+     * @return a hex-encoded key
+     */
+    public String computeKey(
+            EnumTool tool, Properties parameters, List<String> input, Collection<String> outputNames)
+        throws IOException
+    {
+        Assert.notNull(tool, "Expected a non-null tool");
+        Assert.notNull(parameters, "Expected a non-null map of parameters");
+        Assert.notNull(input, "Expected a non-null list of input identifiers");
+
+        final MessageDigest md = newMessageDigest();
+
+        update(md, "tool", tool.name());
+
+        // Add parameters in a deterministic (sorted) order
+
+        final Map<String, String> sortedParameters = new TreeMap<>();
+        for (String name: parameters.stringPropertyNames())
+            sortedParameters.put(name, parameters.getProperty(name));
+        for (Object name: parameters.keySet()) {
+            // Also include non-string values (e.g. numbers)
+            sortedParameters.putIfAbsent(name.toString(), String.valueOf(parameters.get(name)));
+        }
+
+        for (Map.Entry<String, String> p: sortedParameters.entrySet()) {
+            final String value = p.getValue();
+            update(md, "parameter", p.getKey(), value);
+            if (value.startsWith("file:")) {
+                Path path = Paths.get(URI.create(value));
+                if (Files.isRegularFile(path))
+                    update(md, "parameter-content", p.getKey(), digest(path));
+            }
+        }
+
+        for (String id: input)
+            update(md, "input", id);
+
+        for (String name: outputNames)
+            update(md, "output", name);
+
+        return Hex.encodeHexString(md.digest());
+    }
+
+    /**
+     * Lookup an entry and link its files into a target directory.
+     *
+     * @param key The cache key
+     * @param targetDir The directory to link files into (created if not existing)
+     * @return the entry, or <tt>null</tt> if no such entry exists
+     */
+    public Entry materialize(String key, Path targetDir)
+    {
+        Assert.hasText(key, "Expected a non-empty key");
+        Assert.isTrue(targetDir != null && targetDir.isAbsolute(), "Expected an absolute target directory");
+
+        synchronized (this) {
+            final Entry entry = entries.get(key);
+            if (entry == null)
+                return null;
+
+            final Path dir = resolveEntry(key);
+            try {
+                Files.createDirectories(targetDir);
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+                    for (Path source: files) {
+                        if (source.getFileName().toString().equals(ENTRY_FILE_NAME))
+                            continue;
+                        Path target = targetDir.resolve(source.getFileName());
+                        Files.deleteIfExists(target);
+                        FileLinkUtils.linkOrCopy(source, target);
+                    }
+                }
+                entry.lastAccessed = System.currentTimeMillis();
+                Files.setLastModifiedTime(dir, FileTime.fromMillis(entry.lastAccessed));
+            } catch (IOException ex) {
+                logger.warn("Cannot materialize cache entry {} into {}: {}", key, targetDir, ex.getMessage());
+                remove(entry);
+                return null;
+            }
+
+            logger.info("Reusing cached outputs of {} into {}", entry, targetDir);
+            return entry;
+        }
+    }
+
+    /**
+     * Store the outputs of a completed step. Failures are logged (but never propagated), as
+     * caching is not essential to the step.
+     *
+     * @param key The cache key
+     * @param jobExecutionId The id of the job execution that produced the outputs
+     * @param outputs A list of absolute paths for output files
+     */
+    public void store(String key, long jobExecutionId, List<Path> outputs)
+    {
+        Assert.hasText(key, "Expected a non-empty key");
+        Assert.notNull(outputs, "Expected a non-null list of outputs");
+
+        synchronized (this) {
+            if (entries.containsKey(key))
+                return;
+        }
+
+        final Path tempDir = rootDir.resolve(TEMP_PREFIX + UUID.randomUUID().toString());
+        try {
+            long entrySize = 0L;
+            Files.createDirectory(tempDir);
+            for (Path source: outputs) {
+                FileLinkUtils.linkOrCopy(source, tempDir.resolve(source.getFileName()));
+                entrySize += Files.size(source);
+            }
+
+            if (entrySize > maxSize) {
+                logger.info("Not caching outputs of {}: the size exceeds the disk budget", key);
+                FileUtils.deleteQuietly(tempDir.toFile());
+                return;
+            }
+
+            final long now = System.currentTimeMillis();
+            final Entry entry = new Entry(key, jobExecutionId, entrySize, new Date(now), now);
+            writeEntry(tempDir, entry);
+
+            synchronized (this) {
+                if (entries.containsKey(key)) {
+                    FileUtils.deleteQuietly(tempDir.toFile());
+                    return;
+                }
+                evict(entrySize);
+                final Path dir = resolveEntry(key);
+                Files.createDirectories(dir.getParent());
+                Files.move(tempDir, dir, StandardCopyOption.ATOMIC_MOVE);
+                entries.put(key, entry);
+                size += entrySize;
+            }
+            logger.info("Cached outputs of job execution #{} as {}", jobExecutionId, entry);
+        } catch (IOException ex) {
+            logger.warn("Failed to cache outputs of job execution #{}: {}", jobExecutionId, ex.getMessage());
+            FileUtils.deleteQuietly(tempDir.toFile());
+        }
+    }
+
+    /**
+     * Evict least recently used entries until there is room for a given size. Must be called
+     * holding the lock.
+     */
+    private void evict(long required)
+    {
+        if (size + required <= maxSize)
+            return;
+
+        final List<Entry> candidates = new ArrayList<>(entries.values());
+        candidates.sort(Comparator.comparingLong(e -> e.lastAccessed));
+        for (Entry entry: candidates) {
+            if (size + required <= maxSize)
+                break;
+            logger.info("Evicting cached outputs {}", entry);
+            remove(entry);
+        }
+    }
+
+    /**
+     * Remove an entry. Must be called holding the lock.
+     */
+    private void remove(Entry entry)
+    {
+        if (entries.remove(entry.key) != null)
+            size -= entry.size;
+        FileUtils.deleteQuietly(resolveEntry(entry.key).toFile());
+    }
+
+    private Path resolveEntry(String key)
+    {
+        return rootDir.resolve(Paths.get(key.substring(0, 2), key));
+    }
+
+    private static void writeEntry(Path dir, Entry entry) throws IOException
+    {
+        Properties p = new Properties();
+        p.setProperty("key", entry.key);
+        p.setProperty("jobExecutionId", String.valueOf(entry.jobExecutionId));
+        p.setProperty("size", String.valueOf(entry.size));
+        p.setProperty("created", String.valueOf(entry.created.getTime()));
+        try (OutputStream out = Files.newOutputStream(dir.resolve(ENTRY_FILE_NAME))) {
+            p.store(out, null);
+        }
+    }
+
+    private static Entry readEntry(Path dir)
+    {
+        final Path path = dir.resolve(ENTRY_FILE_NAME);
+        if (!Files.isRegularFile(path))
+            return null;
+
+        Entry entry = null;
+        try (InputStream in = Files.newInputStream(path)) {
+            Properties p = new Properties();
+            p.load(in);
+            String key = p.getProperty("key");
+            if (key != null && key.equals(dir.getFileName().toString())) {
+                entry = new Entry(key,
+                    Long.parseLong(p.getProperty("jobExecutionId")),
+                    Long.parseLong(p.getProperty("size")),
+                    new Date(Long.parseLong(p.getProperty("created"))),
+                    Files.getLastModifiedTime(dir).toMillis());
+            }
+        } catch (IOException | NumberFormatException ex) {
+            entry = null;
+        }
+        return entry;
+    }
+
+    private static void update(MessageDigest md, String... tokens)
+    {
+        // Length-prefix each token, so that different sequences of tokens never collide
+        Stream.of(tokens).forEach(token -> {
+            byte[] data = token.getBytes(StandardCharsets.UTF_8);
+            md.update(ByteBuffer.allocate(Integer.BYTES).putInt(data.length).array());
+            md.update(data);
+        });
+    }
+
+    private static MessageDigest newMessageDigest()
+    {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package eu.slipo.workbench.rpc.service;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.util.Assert;
+
+/**
+ * A registry of (bounded) executors acting as bulkheads between unrelated kinds of work.
+ * <p>
+ * Jobs are launched on a dedicated executor (see {@link #register(String, ThreadPoolTaskExecutor)}),
+ * while the partition steps of each tool family (e.g. <tt>fagi</tt>, <tt>triplegeo</tt>) are
+ * executed on an executor of their own (see {@link #getPartitionExecutor(String)}). So, a large
+ * partitioned run of a tool cannot occupy the threads needed by other tools (or by the launcher).
+ */
+public class TaskExecutorRegistry
+{
+    private static final Logger logger = LoggerFactory.getLogger(TaskExecutorRegistry.class);
+
+    public static final String PARTITION_PREFIX = "partition.";
+
+    public static final int DEFAULT_POOL_SIZE = 4;
+
+    public static final int DEFAULT_AWAIT_TERMINATION_SECONDS = 10;
+
+    /**
+     * A snapshot of the state of an executor
+     */
+    public static class Stats
+    {
+        private final int corePoolSize;
+
+        private final int maxPoolSize;
+
+        private final int poolSize;
+
+        private final int activeCount;
+
+        private final int queueSize;
+
+        private final long completedTaskCount;
+
+        private Stats(ThreadPoolExecutor executor)
+        {
+            this.corePoolSize = executor.getCorePoolSize();
+            this.maxPoolSize = executor.getMaximumPoolSize();
+            this.poolSize = executor.getPoolSize();
+            this.activeCount = executor.getActiveCount();
+            this.queueSize = executor.getQueue().size();
+            this.completedTaskCount = executor.getCompletedTaskCount();
+        }
+
+        public int getCorePoolSize()
+        {
+            return corePoolSize;
+        }
+
+        public int getMaxPoolSize()
+        {
+            return maxPoolSize;
+        }
+
+        public int getPoolSize()
+        {
+            return poolSize;
+        }
+
+        public int getActiveCount()
+        {
+            return activeCount;
+        }
+
+        public int getQueueSize()
+        {
+            return queueSize;
+        }
+
+        public long getCompletedTaskCount()
+        {
+            return completedTaskCount;
+        }
+    }
+
+    /**
+     * All executors keyed by name
+     */
+    private final Map<String, ThreadPoolTaskExecutor> executors = new ConcurrentHashMap<>();
+
+    /**
+     * The names of executors created (thus, owned) by this registry
+     */
+    private final Map<String, Boolean> owned = new ConcurrentHashMap<>();
+
+    private int poolSize = DEFAULT_POOL_SIZE;
+
+    private Map<String, Integer> poolSizes = new HashMap<>();
+
+    private int awaitTerminationSeconds = DEFAULT_AWAIT_TERMINATION_SECONDS;
+
+    /**
+     * Set the default pool size for partition executors
+     */
+    public void setPoolSize(int poolSize)
+    {
+        Assert.isTrue(poolSize > 0, "Expected a positive pool size");
+        this.poolSize = poolSize;
+    }
+
+    public int getPoolSize()
+    {
+        return poolSize;
+    }
+
+    /**
+     * Set the pool size for the partition executor of specific tool families
+     *
+     * @param poolSizes A map of pool sizes keyed by tool family (e.g. <tt>fagi</tt>)
+     */
+    public void setPoolSizes(Map<String, Integer> poolSizes)
+    {
+        Assert.notNull(poolSizes, "Expected a non-null map");
+        Assert.isTrue(poolSizes.values().stream().allMatch(n -> n != null && n > 0),
+            "Expected positive pool sizes");
+        this.poolSizes = new HashMap<>(poolSizes);
+    }
+
+    public Map<String, Integer> getPoolSizes()
+    {
+        return poolSizes;
+    }
+
+    public void setAwaitTerminationSeconds(int seconds)
+    {
+        this.awaitTerminationSeconds = seconds;
+    }
+
+    /**
+     * Create the partition executors of all explicitly configured tool families
+     */
+    public void initialize()
+    {
+        poolSizes.keySet().forEach(this::getPartitionExecutor);
+    }
+
+    /**
+     * Shutdown all executors created by this registry
+     */
+    public void shutdown()
+    {
+        for (String name: owned.keySet()) {
+            logger.info("Shutting down executor {}", name);
+            executors.get(name).shutdown();
+        }
+    }
+
+    /**
+     * Register an externally managed executor (e.g. the executor of the job launcher), so that
+     * it is included in reported statistics.
+     */
+    public void register(String name, ThreadPoolTaskExecutor executor)
+    {
+        Assert.hasText(name, "Expected a non-empty name");
+        Assert.notNull(executor, "Expected a non-null executor");
+        Assert.isTrue(!name.startsWith(PARTITION_PREFIX), "The name is reserved for partition executors");
+        executors.put(name, executor);
+    }
+
+    /**
+     * Get the executor for partition steps of a tool family. The executor is created on first use.
+     *
+     * @param family The name of a tool family (e.g. <tt>fagi</tt>)
+     */
+    public TaskExecutor getPartitionExecutor(String family)
+    {
+        Assert.hasText(family, "Expected a non-empty name for a tool family");
+
+        return executors.computeIfAbsent(PARTITION_PREFIX + family, name -> {
+            final int n = poolSizes.getOrDefault(family, poolSize);
+            ThreadPoolTaskExecutor p = new ThreadPoolTaskExecutor();
+            p.setCorePoolSize(n);
+            p.setMaxPoolSize(n);
+            p.setThreadNamePrefix(family + "-parts-");
+            p.setWaitForTasksToCompleteOnShutdown(true);
+            p.setAwaitTerminationSeconds(awaitTerminationSeconds);
+            p.initialize();
+            owned.put(name, Boolean.TRUE);
+            logger.info("Created executor {} with {} threads", name, n);
+            return p;
+        });
+    }
+
+    /**
+     * Report the state (active threads, queued tasks) of all executors
+     */
+    public Map<String, Stats> stats()
+    {
+        final Map<String, Stats> result = new TreeMap<>();
+        for (Map.Entry<String, ThreadPoolTaskExecutor> e: executors.entrySet()) {
+            result.put(e.getKey(), new Stats(e.getValue().getThreadPoolExecutor()));
+        }
+        return Collections.unmodifiableMap(result);
+    }
+}
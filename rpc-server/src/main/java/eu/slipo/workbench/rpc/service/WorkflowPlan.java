@@ -0,0 +1,143 @@
+package eu.slipo.workbench.rpc.service;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import eu.slipo.workbench.common.model.poi.EnumDataFormat;
+import eu.slipo.workbench.common.model.tool.AnyTool;
+import eu.slipo.workbench.common.model.tool.output.OutputPart;
+
+/**
+ * A side-product of mapping a process definition to a workflow: the processing steps that are
+ * not mapped to job nodes (because their outputs are reused), and the cache keys computed for
+ * the steps that are.
+ *
+ * @see ProcessToWorkflowMapper#buildWorkflow(long, long, eu.slipo.workbench.common.model.process.ProcessDefinition, int, WorkflowPlan)
+ */
+public class WorkflowPlan
+{
+    public enum Origin
+    {
+        /**
+         * The outputs are reused from the output cache (see {@link StepOutputCache})
+         */
+        CACHE,
+
+        /**
+         * The outputs are reused from a completed execution of a previous revision of the process
+         */
+        PREVIOUS_REVISION;
+    }
+
+    /**
+     * An output of a step substituted by an existing file
+     */
+    public static class Output
+    {
+        private final OutputPart<? extends AnyTool> part;
+
+        private final EnumDataFormat dataFormat;
+
+        private final Path path;
+
+        Output(OutputPart<? extends AnyTool> part, EnumDataFormat dataFormat, Path path)
+        {
+            this.part = part;
+            this.dataFormat = dataFormat;
+            this.path = path;
+        }
+
+        public OutputPart<? extends AnyTool> getPart()
+        {
+            return part;
+        }
+
+        public EnumDataFormat getDataFormat()
+        {
+            return dataFormat;
+        }
+
+        /**
+         * The absolute path of the output (always under the workflow data directory)
+         */
+        public Path getPath()
+        {
+            return path;
+        }
+    }
+
+    /**
+     * A step whose outputs are reused
+     */
+    public static class ReusedStep
+    {
+        private final Origin origin;
+
+        private final long jobExecutionId;
+
+        private final List<Output> outputs;
+
+        ReusedStep(Origin origin, long jobExecutionId, List<Output> outputs)
+        {
+            this.origin = origin;
+            this.jobExecutionId = jobExecutionId;
+            this.outputs = Collections.unmodifiableList(outputs);
+        }
+
+        public Origin getOrigin()
+        {
+            return origin;
+        }
+
+        /**
+         * The id of the job execution that originally produced the outputs
+         */
+        public long getJobExecutionId()
+        {
+            return jobExecutionId;
+        }
+
+        public List<Output> getOutputs()
+        {
+            return outputs;
+        }
+    }
+
+    private final Map<String, String> cacheKeyByNodeName = new HashMap<>();
+
+    private final Map<String, ReusedStep> reusedStepByNodeName = new HashMap<>();
+
+    void addCacheKey(String nodeName, String key)
+    {
+        cacheKeyByNodeName.put(nodeName, key);
+    }
+
+    void addReusedStep(String nodeName, ReusedStep reusedStep)
+    {
+        reusedStepByNodeName.put(nodeName, reusedStep);
+    }
+
+    /**
+     * Get the cache key for a step, or <tt>null</tt> if the step is not cacheable
+     */
+    public String cacheKey(String nodeName)
+    {
+        return cacheKeyByNodeName.get(nodeName);
+    }
+
+    public boolean isReused(String nodeName)
+    {
+        return reusedStepByNodeName.containsKey(nodeName);
+    }
+
+    /**
+     * Get the reused steps keyed by node name
+     */
+    public Map<String, ReusedStep> reusedSteps()
+    {
+        return Collections.unmodifiableMap(reusedStepByNodeName);
+    }
+}
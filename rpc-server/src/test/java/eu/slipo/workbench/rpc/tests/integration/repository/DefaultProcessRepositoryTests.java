@@ -2,6 +2,7 @@ package eu.slipo.workbench.rpc.tests.integration.repository;
 
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -542,6 +543,136 @@ public class DefaultProcessRepositoryTests
         assertNull(outputResourceRecord1.getNumberOfEntities());
     }
 
+    @Test
+    public void test3_createReusedExecutionStep() throws Exception
+    {
+        AccountEntity createdBy = accountRepository.findOneByUsername("baz");
+        assertNotNull(createdBy);
+
+        ProcessRecord processRecord =
+            processRepository.create(sampleProcessDefinition1, createdBy.getId(), false);
+        final long id = processRecord.getId(), version = processRecord.getVersion();
+
+        ProcessExecutionRecord executionRecord =
+            processRepository.createExecution(id, version, createdBy.getId(), UUID.randomUUID());
+        final long executionId = executionRecord.getId();
+        final ZonedDateTime startedOn = ZonedDateTime.now();
+        processRepository.updateExecution(
+            executionId, EnumProcessExecutionStatus.RUNNING, startedOn, null, null);
+
+        final int step1Key = sampleProcessDefinition1.steps().stream()
+            .filter(s -> s.operation() == EnumOperation.TRANSFORM)
+            .mapToInt(s -> s.key())
+            .findFirst()
+            .getAsInt();
+
+        //
+        // Add a step substituted by outputs of a previous job execution
+        //
+
+        final long reusedJobExecutionId = 2999L;
+
+        ProcessExecutionStepRecord stepRecord1 = new ProcessExecutionStepRecord(-1, step1Key);
+        stepRecord1.setName("Triplegeo 1");
+        stepRecord1.setNodeName("triplegeo-1");
+        stepRecord1.setOperation(EnumOperation.TRANSFORM);
+        stepRecord1.setTool(EnumTool.TRIPLEGEO);
+        stepRecord1.setJobExecutionId(reusedJobExecutionId);
+        stepRecord1.setStartedOn(startedOn);
+        stepRecord1.setCompletedOn(startedOn);
+        stepRecord1.setStatus(EnumProcessExecutionStatus.COMPLETED);
+        stepRecord1.setCached(true);
+        stepRecord1.addFile(new ProcessExecutionStepFileRecord(
+            EnumStepFile.OUTPUT, "/tmp/reused/1.nt", 3000L, EnumDataFormat.N_TRIPLES));
+
+        processRepository.createExecutionStep(executionId, stepRecord1);
+
+        // Fetch only verified files: the outputs of a reused step are verified (as they already exist)
+        executionRecord = processRepository.findExecution(executionId, false);
+        assertEquals(1, executionRecord.getSteps().size());
+
+        ProcessExecutionStepRecord stepRecord1a = executionRecord.getSteps().get(0);
+        assertTrue(stepRecord1a.isCached());
+        assertEquals(EnumProcessExecutionStatus.COMPLETED, stepRecord1a.getStatus());
+        assertEquals(reusedJobExecutionId, stepRecord1a.getJobExecutionId());
+        assertNotNull(stepRecord1a.getCompletedOn());
+        assertEquals(1, stepRecord1a.getFiles().size());
+        assertEquals("/tmp/reused/1.nt", stepRecord1a.getFiles().get(0).getFilePath());
+    }
+
+    @Test
+    public void test3_createExecutionStepIgnoresCompletedOn() throws Exception
+    {
+        AccountEntity createdBy = accountRepository.findOneByUsername("baz");
+        assertNotNull(createdBy);
+
+        ProcessRecord processRecord =
+            processRepository.create(sampleProcessDefinition1, createdBy.getId(), false);
+        final long id = processRecord.getId(), version = processRecord.getVersion();
+
+        ProcessExecutionRecord executionRecord =
+            processRepository.createExecution(id, version, createdBy.getId(), UUID.randomUUID());
+        final long executionId = executionRecord.getId();
+        final ZonedDateTime startedOn = ZonedDateTime.now();
+        processRepository.updateExecution(
+            executionId, EnumProcessExecutionStatus.RUNNING, startedOn, null, null);
+
+        final int step1Key = sampleProcessDefinition1.steps().stream()
+            .filter(s -> s.operation() == EnumOperation.TRANSFORM)
+            .mapToInt(s -> s.key())
+            .findFirst()
+            .getAsInt();
+
+        // A step which is not reused is never created as completed
+
+        ProcessExecutionStepRecord stepRecord1 = new ProcessExecutionStepRecord(-1, step1Key);
+        stepRecord1.setName("Triplegeo 1");
+        stepRecord1.setNodeName("triplegeo-1");
+        stepRecord1.setOperation(EnumOperation.TRANSFORM);
+        stepRecord1.setTool(EnumTool.TRIPLEGEO);
+        stepRecord1.setJobExecutionId(3999L);
+        stepRecord1.setStartedOn(startedOn);
+        stepRecord1.setCompletedOn(startedOn);
+        stepRecord1.setStatus(EnumProcessExecutionStatus.RUNNING);
+
+        processRepository.createExecutionStep(executionId, stepRecord1);
+
+        executionRecord = processRepository.findExecution(executionId, true);
+        ProcessExecutionStepRecord stepRecord1a = executionRecord.getSteps().get(0);
+        assertFalse(stepRecord1a.isCached());
+        assertNull(stepRecord1a.getCompletedOn());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test3_createReusedExecutionStepNotCompleted() throws Exception
+    {
+        AccountEntity createdBy = accountRepository.findOneByUsername("baz");
+        assertNotNull(createdBy);
+
+        ProcessRecord processRecord =
+            processRepository.create(sampleProcessDefinition1, createdBy.getId(), false);
+        final long id = processRecord.getId(), version = processRecord.getVersion();
+
+        ProcessExecutionRecord executionRecord =
+            processRepository.createExecution(id, version, createdBy.getId(), UUID.randomUUID());
+        final long executionId = executionRecord.getId();
+        final ZonedDateTime startedOn = ZonedDateTime.now();
+        processRepository.updateExecution(
+            executionId, EnumProcessExecutionStatus.RUNNING, startedOn, null, null);
+
+        ProcessExecutionStepRecord stepRecord1 = new ProcessExecutionStepRecord(-1, 1);
+        stepRecord1.setName("Triplegeo 1");
+        stepRecord1.setNodeName("triplegeo-1");
+        stepRecord1.setOperation(EnumOperation.TRANSFORM);
+        stepRecord1.setTool(EnumTool.TRIPLEGEO);
+        stepRecord1.setJobExecutionId(4999L);
+        stepRecord1.setStartedOn(startedOn);
+        stepRecord1.setStatus(EnumProcessExecutionStatus.RUNNING);
+        stepRecord1.setCached(true);
+
+        processRepository.createExecutionStep(executionId, stepRecord1);
+    }
+
     @Test(expected = ProcessRepository.ProcessHasActiveExecutionException.class)
     public void test1_createMultipleRunningExecutions() throws Exception
     {
@@ -0,0 +1,166 @@
+package eu.slipo.workbench.rpc.tests.unit.jobs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.spotify.docker.client.messages.HostConfig;
+
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerResourceLedger;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerResourceLedger.Policy;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerResourceLedger.Report;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerResourceLedger.State;
+
+public class ContainerResourceLedgerTests
+{
+    private static final long GB = 1024L * 1024L * 1024L;
+
+    private static final long TIMEOUT = 5000L;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp()
+    {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testReserveAndRelease() throws Exception
+    {
+        ContainerResourceLedger ledger = new ContainerResourceLedger(4 * GB, 4.0f, Policy.FIFO);
+
+        assertTrue(ledger.acquire("c1", 1 * GB, 1.0f, 0, 0L));
+        assertTrue(ledger.acquire("c2", 2 * GB, 1.5f, 0, 0L));
+
+        Report report = ledger.report();
+        assertEquals(3 * GB, report.getReservedMemory());
+        assertEquals(2.5f, report.getReservedCpu(), 1e-3f);
+        assertEquals(2, report.getGranted().size());
+        assertTrue(report.getWaiting().isEmpty());
+
+        // Acquiring again with the same key does not reserve twice
+        assertTrue(ledger.acquire("c1", 1 * GB, 1.0f, 0, 0L));
+        assertEquals(3 * GB, ledger.report().getReservedMemory());
+
+        ledger.release("c1");
+        ledger.release("c2");
+        ledger.release("unknown");
+
+        report = ledger.report();
+        assertEquals(0L, report.getReservedMemory());
+        assertEquals(0.0f, report.getReservedCpu(), 1e-3f);
+        assertTrue(report.getGranted().isEmpty());
+    }
+
+    @Test
+    public void testWaitOverBudget() throws Exception
+    {
+        ContainerResourceLedger ledger = new ContainerResourceLedger(4 * GB, 4.0f, Policy.FIFO);
+
+        assertTrue(ledger.acquire("c1", 3 * GB, 1.0f, 0, 0L));
+
+        // Not enough memory is left: the request is queued
+        assertFalse(ledger.acquire("c2", 2 * GB, 1.0f, 0, 50L));
+        Report report = ledger.report();
+        assertEquals(1, report.getWaiting().size());
+        assertEquals(State.WAITING, report.getWaiting().get(0).getState());
+        assertEquals(3 * GB, report.getReservedMemory());
+
+        // A waiter is granted as soon as enough capacity is released
+        Future<Boolean> waiter = executor.submit(() -> ledger.acquire("c2", 2 * GB, 1.0f, 0, TIMEOUT));
+        Thread.sleep(50L);
+        assertFalse(waiter.isDone());
+        ledger.release("c1");
+        assertTrue(waiter.get(TIMEOUT, TimeUnit.MILLISECONDS));
+
+        report = ledger.report();
+        assertEquals(2 * GB, report.getReservedMemory());
+        assertTrue(report.getWaiting().isEmpty());
+    }
+
+    @Test
+    public void testWaitersAreNotBypassed() throws Exception
+    {
+        ContainerResourceLedger ledger = new ContainerResourceLedger(4 * GB, 4.0f, Policy.FIFO);
+
+        assertTrue(ledger.acquire("c1", 3 * GB, 1.0f, 0, 0L));
+        assertFalse(ledger.acquire("large", 2 * GB, 1.0f, 0, 0L));
+
+        // A later (smaller) request would fit, but must wait behind the large one
+        assertFalse(ledger.acquire("small", 1 * GB, 1.0f, 0, 0L));
+        assertEquals(
+            Arrays.asList("large", "small"),
+            ledger.report().getWaiting().stream().map(r -> r.getKey()).collect(Collectors.toList()));
+
+        ledger.release("c1");
+        assertTrue(ledger.acquire("large", 2 * GB, 1.0f, 0, 0L));
+        assertTrue(ledger.acquire("small", 1 * GB, 1.0f, 0, 0L));
+    }
+
+    @Test
+    public void testPriorityPolicy() throws Exception
+    {
+        ContainerResourceLedger ledger = new ContainerResourceLedger(2 * GB, 4.0f, Policy.PRIORITY);
+
+        assertTrue(ledger.acquire("c1", 2 * GB, 1.0f, 0, 0L));
+        assertFalse(ledger.acquire("low", 2 * GB, 1.0f, 0, 0L));
+        assertFalse(ledger.acquire("high", 2 * GB, 1.0f, 10, 0L));
+
+        ledger.release("c1");
+        assertTrue(ledger.acquire("high", 2 * GB, 1.0f, 10, 0L));
+        assertFalse(ledger.acquire("low", 2 * GB, 1.0f, 0, 0L));
+    }
+
+    @Test
+    public void testCancelWaiting() throws Exception
+    {
+        ContainerResourceLedger ledger = new ContainerResourceLedger(2 * GB, 4.0f, Policy.FIFO);
+
+        assertTrue(ledger.acquire("c1", 2 * GB, 1.0f, 0, 0L));
+        assertFalse(ledger.acquire("c2", 1 * GB, 1.0f, 0, 0L));
+
+        // A cancelled request does not hold any capacity
+        ledger.release("c2");
+        assertTrue(ledger.report().getWaiting().isEmpty());
+        assertEquals(2 * GB, ledger.report().getReservedMemory());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectOverCapacity() throws Exception
+    {
+        ContainerResourceLedger ledger = new ContainerResourceLedger(2 * GB, 4.0f, Policy.FIFO);
+        ledger.acquire("c1", 3 * GB, 1.0f, 0, 0L);
+    }
+
+    @Test
+    public void testRequiredResources()
+    {
+        assertEquals(ContainerResourceLedger.DEFAULT_MEMORY, ContainerResourceLedger.requiredMemory(null));
+        assertEquals(ContainerResourceLedger.DEFAULT_CPU, ContainerResourceLedger.requiredCpu(null), 1e-3f);
+
+        HostConfig unlimited = HostConfig.builder().build();
+        assertEquals(ContainerResourceLedger.DEFAULT_MEMORY, ContainerResourceLedger.requiredMemory(unlimited));
+
+        HostConfig limited = HostConfig.builder().memory(GB).cpuShares(2048L).build();
+        assertEquals(GB, ContainerResourceLedger.requiredMemory(limited));
+        assertEquals(2.0f, ContainerResourceLedger.requiredCpu(limited), 1e-3f);
+    }
+}
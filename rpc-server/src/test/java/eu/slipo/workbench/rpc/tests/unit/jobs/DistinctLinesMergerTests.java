@@ -0,0 +1,94 @@
+package eu.slipo.workbench.rpc.tests.unit.jobs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import eu.slipo.workbench.rpc.jobs.tasklet.DistinctLinesMerger;
+
+public class DistinctLinesMergerTests
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private List<Path> write(List<List<String>> contents) throws Exception
+    {
+        List<Path> paths = new ArrayList<>();
+        for (List<String> lines: contents) {
+            Path path = folder.newFile().toPath();
+            Files.write(path, lines, StandardCharsets.UTF_8);
+            paths.add(path);
+        }
+        return paths;
+    }
+
+    private List<String> merge(DistinctLinesMerger merger, List<Path> inputs) throws Exception
+    {
+        Path output = folder.getRoot().toPath().resolve("output.nt");
+        Path tempDir = folder.getRoot().toPath().resolve("merge");
+        merger.merge(inputs, output, tempDir);
+
+        if (Files.exists(tempDir)) {
+            try (Stream<Path> paths = Files.list(tempDir)) {
+                assertEquals("Expected no bucket to be left behind", 0, paths.count());
+            }
+        }
+
+        List<String> lines = new ArrayList<>(Files.readAllLines(output, StandardCharsets.UTF_8));
+        Collections.sort(lines);
+        return lines;
+    }
+
+    @Test
+    public void testMergeInMemory() throws Exception
+    {
+        List<Path> inputs = write(Arrays.asList(
+            Arrays.asList("<a> <sameAs> <x> .", "<b> <sameAs> <y> .", ""),
+            Arrays.asList("<b> <sameAs> <y> .", "<c> <sameAs> <z> .")));
+
+        assertEquals(
+            Arrays.asList("<a> <sameAs> <x> .", "<b> <sameAs> <y> .", "<c> <sameAs> <z> ."),
+            merge(new DistinctLinesMerger(), inputs));
+    }
+
+    @Test
+    public void testMergeInBuckets() throws Exception
+    {
+        List<String> expected = new ArrayList<>();
+        List<List<String>> contents = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            List<String> lines = new ArrayList<>();
+            for (int k = 0; k < 500; k++) {
+                // Half of the links of a part are shared with its neighbour part
+                String line = String.format("<a%d> <sameAs> <b%d> .", i * 250 + k, i * 250 + k);
+                lines.add(line);
+                if (k < 250 || i == 3)
+                    expected.add(line);
+            }
+            contents.add(lines);
+        }
+        Collections.sort(expected);
+
+        List<String> merged = merge(new DistinctLinesMerger(1024L), write(contents));
+        assertEquals(expected, merged);
+        assertTrue(merged.size() < contents.size() * 500);
+    }
+
+    @Test
+    public void testMergeEmpty() throws Exception
+    {
+        assertEquals(Collections.emptyList(), merge(new DistinctLinesMerger(), Collections.emptyList()));
+    }
+}
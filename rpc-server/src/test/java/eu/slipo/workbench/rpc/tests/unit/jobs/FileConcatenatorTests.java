@@ -0,0 +1,154 @@
+package eu.slipo.workbench.rpc.tests.unit.jobs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import eu.slipo.workbench.rpc.jobs.tasklet.FileConcatenator;
+
+public class FileConcatenatorTests
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ExecutorService executor;
+
+    private final Random random = new Random(17L);
+
+    @Before
+    public void setUp() throws Exception
+    {
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Create input files of given sizes, and return their expected concatenation
+     */
+    private byte[] createInput(List<Path> input, int... sizes) throws Exception
+    {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (int size: sizes) {
+            byte[] data = new byte[size];
+            random.nextBytes(data);
+            Path path = folder.newFile().toPath();
+            Files.write(path, data);
+            input.add(path);
+            expected.write(data);
+        }
+        return expected.toByteArray();
+    }
+
+    @Test
+    public void testConcatenate() throws Exception
+    {
+        List<Path> input = new ArrayList<>();
+        byte[] expected = createInput(input, 1000, 0, 5000, 1);
+        Path output = folder.getRoot().toPath().resolve("output.nt");
+
+        // The output is truncated if it already exists
+        Files.write(output, new byte[20000]);
+
+        long size = new FileConcatenator().concatenate(input, output);
+        assertEquals(expected.length, size);
+        assertArrayEquals(expected, Files.readAllBytes(output));
+    }
+
+    @Test
+    public void testConcatenateInParallel() throws Exception
+    {
+        // More inputs than workers, and more workers than threads of the executor
+        List<Path> input = new ArrayList<>();
+        byte[] expected = createInput(input, 1000, 70000, 0, 300, 120000, 5, 4096, 0, 20000);
+        Path output = folder.getRoot().toPath().resolve("output.nt");
+
+        FileConcatenator concatenator = new FileConcatenator(4, false, executor);
+        long size = concatenator.concatenate(input, output);
+        assertEquals(expected.length, size);
+        assertArrayEquals(expected, Files.readAllBytes(output));
+
+        // The (shared) executor is not shut down, and can be reused
+        assertFalse(executor.isShutdown());
+        Path output1 = folder.getRoot().toPath().resolve("output-1.nt");
+        assertEquals(expected.length, concatenator.concatenate(input, output1));
+        assertArrayEquals(expected, Files.readAllBytes(output1));
+    }
+
+    @Test
+    public void testConcatenateEmptyInParallel() throws Exception
+    {
+        List<Path> input = new ArrayList<>();
+        createInput(input, 0, 0, 0);
+        Path output = folder.getRoot().toPath().resolve("output.nt");
+
+        assertEquals(0L, new FileConcatenator(2, false, executor).concatenate(input, output));
+        assertEquals(0L, Files.size(output));
+    }
+
+    @Test
+    public void testConcatenateInParallelWithMissingInput() throws Exception
+    {
+        List<Path> input = new ArrayList<>();
+        createInput(input, 1000, 2000);
+        Path missing = folder.getRoot().toPath().resolve("missing.nt");
+        Path output = folder.getRoot().toPath().resolve("output.nt");
+
+        try {
+            new FileConcatenator(2, false, executor).concatenate(
+                Arrays.asList(input.get(0), missing, input.get(1)), output);
+            fail("Expected an IOException for a missing input file");
+        } catch (IOException ex) {
+            // expected
+        }
+
+        // The executor is still usable
+        assertEquals(3000L, new FileConcatenator(2, false, executor).concatenate(input, output));
+    }
+
+    @Test
+    public void testConcatenateCompressed() throws Exception
+    {
+        List<Path> input = new ArrayList<>();
+        byte[] expected = createInput(input, 1000, 3000, 0, 10);
+        Path output = folder.getRoot().toPath().resolve("output.nt.gz");
+
+        // Compressed output is always written sequentially
+        long size = new FileConcatenator(4, true, executor).concatenate(input, output);
+        assertEquals(expected.length, size);
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(output))) {
+            assertArrayEquals(expected, IOUtils.toByteArray(in));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParallelRequiresExecutor() throws Exception
+    {
+        new FileConcatenator(2, false, null);
+    }
+}
@@ -0,0 +1,333 @@
+package eu.slipo.workbench.rpc.tests.unit.jobs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import eu.slipo.workbench.rpc.jobs.tasklet.FileDownloader;
+
+public class FileDownloaderTests
+{
+    private static final int LENGTH = 10000;
+
+    private static final Pattern RANGE_PATTERN = Pattern.compile("bytes=(\\d+)-(\\d*)");
+
+    /**
+     * A minimal HTTP server for a single entity, supporting byte ranges (and <tt>If-Range</tt>)
+     */
+    private static class Server implements Runnable
+    {
+        private final ServerSocket socket;
+
+        private final ExecutorService workers = Executors.newCachedThreadPool();
+
+        private volatile byte[] content;
+
+        private volatile String etag;
+
+        private volatile boolean stalled = false;
+
+        /**
+         * The <tt>Range</tt> header of each GET request (or <tt>-</tt> if missing)
+         */
+        private final List<String> ranges = new CopyOnWriteArrayList<>();
+
+        private Server(byte[] content, String etag) throws IOException
+        {
+            this.socket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+            this.content = content;
+            this.etag = etag;
+        }
+
+        private URL url() throws IOException
+        {
+            return new URL("http", "127.0.0.1", socket.getLocalPort(), "/data.csv");
+        }
+
+        @Override
+        public void run()
+        {
+            while (!socket.isClosed()) {
+                try {
+                    final Socket s = socket.accept();
+                    workers.submit(() -> serve(s));
+                } catch (IOException ex) {
+                    // closed
+                }
+            }
+        }
+
+        private Void serve(Socket s) throws IOException
+        {
+            try (Socket conn = s) {
+                BufferedReader reader =
+                    new BufferedReader(new InputStreamReader(conn.getInputStream(), StandardCharsets.US_ASCII));
+                String method = reader.readLine().split(" ")[0];
+                Map<String, String> headers = new HashMap<>();
+                String line;
+                while ((line = reader.readLine()) != null && !line.isEmpty()) {
+                    int i = line.indexOf(':');
+                    headers.put(line.substring(0, i).trim().toLowerCase(), line.substring(i + 1).trim());
+                }
+
+                if (stalled) {
+                    Thread.sleep(5000L);
+                    return null;
+                }
+
+                final byte[] data = content;
+                final OutputStream out = conn.getOutputStream();
+                if (method.equals("HEAD")) {
+                    writeHeaders(out, "200 OK", data.length, null);
+                    return null;
+                }
+
+                String range = headers.get("range");
+                ranges.add(range == null? "-" : range);
+
+                String ifRange = headers.get("if-range");
+                Matcher m = range == null? null : RANGE_PATTERN.matcher(range);
+                if (m != null && m.matches() && (ifRange == null || ifRange.equals(etag))) {
+                    int start = Integer.parseInt(m.group(1));
+                    int end = m.group(2).isEmpty()? data.length - 1 : Integer.parseInt(m.group(2));
+                    writeHeaders(out, "206 Partial Content", end - start + 1,
+                        String.format("bytes %d-%d/%d", start, end, data.length));
+                    out.write(data, start, end - start + 1);
+                } else {
+                    writeHeaders(out, "200 OK", data.length, null);
+                    out.write(data);
+                }
+                out.flush();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }
+
+        private void writeHeaders(OutputStream out, String status, int length, String contentRange)
+            throws IOException
+        {
+            StringBuilder sb = new StringBuilder();
+            sb.append("HTTP/1.1 ").append(status).append("\r\n");
+            sb.append("Content-Length: ").append(length).append("\r\n");
+            sb.append("ETag: ").append(etag).append("\r\n");
+            sb.append("Accept-Ranges: bytes\r\n");
+            if (contentRange != null)
+                sb.append("Content-Range: ").append(contentRange).append("\r\n");
+            sb.append("Connection: close\r\n\r\n");
+            out.write(sb.toString().getBytes(StandardCharsets.US_ASCII));
+        }
+
+        private void close() throws IOException
+        {
+            socket.close();
+            workers.shutdownNow();
+        }
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private byte[] content;
+
+    private Server server;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        content = new byte[LENGTH];
+        new Random(17L).nextBytes(content);
+
+        server = new Server(content, "\"v1\"");
+        new Thread(server).start();
+
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        server.close();
+        executor.shutdownNow();
+    }
+
+    private Path part(Path target)
+    {
+        return target.resolveSibling(target.getFileName() + FileDownloader.PART_SUFFIX);
+    }
+
+    @Test
+    public void testDownload() throws Exception
+    {
+        FileDownloader downloader = new FileDownloader();
+        FileDownloader.RemoteEntity entity = downloader.probe(server.url());
+        assertEquals(LENGTH, entity.getLength());
+        assertEquals("\"v1\"", entity.getValidator());
+        assertTrue(entity.acceptsRanges());
+
+        Path target = folder.getRoot().toPath().resolve("1.csv");
+        FileDownloader.Result result = downloader.download(server.url(), entity, target);
+
+        assertEquals(LENGTH, result.getSize());
+        assertEquals(LENGTH, result.getTransferred());
+        assertEquals(DigestUtils.sha256Hex(content), result.getChecksum());
+        assertArrayEquals(content, Files.readAllBytes(target));
+        assertFalse(Files.exists(part(target)));
+        assertEquals(Arrays.asList("-"), server.ranges);
+    }
+
+    @Test
+    public void testResume() throws Exception
+    {
+        Path target = folder.getRoot().toPath().resolve("1.csv");
+        Files.write(part(target), Arrays.copyOf(content, 1000));
+
+        FileDownloader downloader = new FileDownloader();
+        FileDownloader.RemoteEntity entity = downloader.probe(server.url());
+        FileDownloader.Result result = downloader.download(server.url(), entity, target);
+
+        assertEquals(LENGTH, result.getSize());
+        assertEquals(LENGTH - 1000, result.getTransferred());
+        assertEquals(DigestUtils.sha256Hex(content), result.getChecksum());
+        assertArrayEquals(content, Files.readAllBytes(target));
+        assertEquals(Arrays.asList("bytes=1000-"), server.ranges);
+    }
+
+    @Test
+    public void testResumeOfChangedEntity() throws Exception
+    {
+        Path target = folder.getRoot().toPath().resolve("1.csv");
+        Files.write(part(target), Arrays.copyOf(content, 1000));
+
+        FileDownloader downloader = new FileDownloader();
+        FileDownloader.RemoteEntity entity = downloader.probe(server.url());
+
+        // The entity is modified (after being probed): the partial download must be discarded
+
+        byte[] modifiedContent = new byte[LENGTH];
+        new Random(19L).nextBytes(modifiedContent);
+        server.content = modifiedContent;
+        server.etag = "\"v2\"";
+
+        FileDownloader.Result result = downloader.download(server.url(), entity, target);
+        assertEquals(LENGTH, result.getTransferred());
+        assertEquals(DigestUtils.sha256Hex(modifiedContent), result.getChecksum());
+        assertArrayEquals(modifiedContent, Files.readAllBytes(target));
+    }
+
+    @Test
+    public void testDownloadInRanges() throws Exception
+    {
+        FileDownloader downloader = new FileDownloader(4, 1024L, executor);
+        FileDownloader.RemoteEntity entity = downloader.probe(server.url());
+
+        Path target = folder.getRoot().toPath().resolve("1.csv");
+        FileDownloader.Result result = downloader.download(server.url(), entity, target);
+
+        assertEquals(LENGTH, result.getSize());
+        assertEquals(LENGTH, result.getTransferred());
+        assertEquals(DigestUtils.sha256Hex(content), result.getChecksum());
+        assertArrayEquals(content, Files.readAllBytes(target));
+        assertFalse(Files.exists(part(target)));
+        assertFalse(Files.exists(part(target).resolveSibling("1.csv.part" + FileDownloader.RANGES_SUFFIX)));
+
+        assertEquals(4, server.ranges.size());
+        assertTrue(server.ranges.containsAll(Arrays.asList(
+            "bytes=0-2499", "bytes=2500-4999", "bytes=5000-7499", "bytes=7500-9999")));
+
+        // The (shared) executor is not shut down by the downloader
+        assertFalse(executor.isShutdown());
+    }
+
+    @Test
+    public void testResumeInRanges() throws Exception
+    {
+        Path target = folder.getRoot().toPath().resolve("1.csv");
+        Path part = part(target);
+
+        // A previous attempt has completed the 1st and the 3rd range (of 4)
+
+        try (RandomAccessFile f = new RandomAccessFile(part.toFile(), "rw")) {
+            f.setLength(LENGTH);
+            f.write(content, 0, 2500);
+            f.seek(5000);
+            f.write(content, 5000, 2500);
+        }
+        Files.write(part.resolveSibling("1.csv.part" + FileDownloader.RANGES_SUFFIX),
+            Arrays.asList("4 \"v1\"", "0", "2"), StandardCharsets.UTF_8);
+
+        FileDownloader downloader = new FileDownloader(4, 1024L, executor);
+        FileDownloader.RemoteEntity entity = downloader.probe(server.url());
+        FileDownloader.Result result = downloader.download(server.url(), entity, target);
+
+        assertEquals(LENGTH, result.getSize());
+        assertEquals(5000, result.getTransferred());
+        assertEquals(DigestUtils.sha256Hex(content), result.getChecksum());
+        assertArrayEquals(content, Files.readAllBytes(target));
+
+        assertEquals(2, server.ranges.size());
+        assertTrue(server.ranges.containsAll(Arrays.asList("bytes=2500-4999", "bytes=7500-9999")));
+    }
+
+    @Test
+    public void testDownloadFileUrl() throws Exception
+    {
+        Path source = folder.newFile("source.csv").toPath();
+        Files.write(source, content);
+
+        FileDownloader downloader = new FileDownloader();
+        URL url = source.toUri().toURL();
+        FileDownloader.RemoteEntity entity = downloader.probe(url);
+        assertEquals(null, entity.getValidator());
+
+        Path target = folder.getRoot().toPath().resolve("1.csv");
+        FileDownloader.Result result = downloader.download(url, entity, target);
+        assertEquals(DigestUtils.sha256Hex(content), result.getChecksum());
+        assertArrayEquals(content, Files.readAllBytes(target));
+    }
+
+    @Test(expected = SocketTimeoutException.class)
+    public void testReadTimeout() throws Exception
+    {
+        FileDownloader downloader = new FileDownloader();
+        FileDownloader.RemoteEntity entity = downloader.probe(server.url());
+
+        server.stalled = true;
+        downloader.setReadTimeout(200);
+        downloader.download(server.url(), entity, folder.getRoot().toPath().resolve("1.csv"));
+    }
+}
@@ -0,0 +1,181 @@
+package eu.slipo.workbench.rpc.tests.unit.jobs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.item.ExecutionContext;
+
+import eu.slipo.workbench.rpc.jobs.tasklet.HashPartitionTasklet;
+
+public class HashPartitionTaskletTests
+{
+    private static final int NUMBER_OF_PARTS = 4;
+
+    /**
+     * The number of triples of a subject exceeding any reasonable record size
+     */
+    private static final int LARGE_SUBJECT_SIZE = 25000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * The part (1-based) each subject was written to
+     */
+    private final Map<String, Integer> partBySubject = new HashMap<>();
+
+    private static String triple(String subject, String predicate, String object)
+    {
+        return String.format("%s <http://example.com/%s> %s .", subject, predicate, object);
+    }
+
+    private List<String> partition(List<String> triples) throws Exception
+    {
+        Path inputPath = folder.newFile("1.nt").toPath();
+        Files.write(inputPath, triples, StandardCharsets.UTF_8);
+        Path targetDir = folder.newFolder("partitions").toPath();
+
+        HashPartitionTasklet tasklet = HashPartitionTasklet.builder()
+            .input(Collections.singletonList(inputPath))
+            .targetDirectory(targetDir)
+            .numberOfParts(NUMBER_OF_PARTS)
+            .build();
+
+        StepExecution stepExecution = new StepExecution("partition", new JobExecution(1L));
+        tasklet.execute(stepExecution.createStepContribution(), new ChunkContext(new StepContext(stepExecution)));
+
+        ExecutionContext executionContext = stepExecution.getExecutionContext();
+        assertEquals(NUMBER_OF_PARTS, executionContext.getInt(HashPartitionTasklet.Keys.NUMBER_OF_PARTS));
+
+        // Map each subject to the parts it was written to
+
+        Map<String, Set<Integer>> partsBySubject = new HashMap<>();
+        List<String> output = new ArrayList<>();
+        for (int i = 1; i <= NUMBER_OF_PARTS; i++) {
+            Path partPath = targetDir.resolve(Paths.get(String.format("partition_%d", i), "input", "1.nt"));
+            assertTrue("Expected a part for each partition", Files.exists(partPath));
+            for (String line: Files.readAllLines(partPath, StandardCharsets.UTF_8)) {
+                String subject = line.substring(0, line.indexOf(' '));
+                partsBySubject.computeIfAbsent(subject, s -> new HashSet<>()).add(i);
+                output.add(line);
+            }
+        }
+
+        for (Map.Entry<String, Set<Integer>> e: partsBySubject.entrySet()) {
+            assertEquals("Expected subject " + e.getKey() + " in a single part", 1, e.getValue().size());
+            partBySubject.put(e.getKey(), e.getValue().iterator().next());
+        }
+
+        assertEquals((long) output.size(), executionContext.getLong(HashPartitionTasklet.Keys.NUMBER_OF_TRIPLES));
+        return output;
+    }
+
+    @Test
+    public void testInterleavedSubjects() throws Exception
+    {
+        List<String> triples = new ArrayList<>();
+        triples.add("# A comment");
+        for (int k = 0; k < 50; k++) {
+            // The triples of a subject are not contiguous, and a nested node (first seen as an
+            // object) later appears as the root of its own group
+            String a = String.format("<http://example.com/a%d>", k);
+            String b = String.format("<http://example.com/b%d>", k);
+            String g = String.format("<http://example.com/a%d/geom>", k);
+            triples.add(triple(a, "name", "\"A\""));
+            triples.add(triple(a, "hasGeometry", g));
+            triples.add(triple(g, "asWKT", "\"POINT (1 2)\""));
+            triples.add(triple(b, "name", "\"B\""));
+            triples.add("");
+            triples.add(triple(a, "rank", "\"1\""));
+            triples.add(triple(g, "srid", "\"4326\""));
+            triples.add(triple("_:n" + k, "name", "\"N\""));
+            triples.add(triple(b, "sameAs", a));
+        }
+
+        List<String> output = partition(triples);
+
+        List<String> expected = new ArrayList<>(triples);
+        expected.removeIf(line -> line.isEmpty() || line.startsWith("#"));
+        Collections.sort(expected);
+        Collections.sort(output);
+        assertEquals(expected, output);
+    }
+
+    @Test
+    public void testLargeSubject() throws Exception
+    {
+        List<String> triples = new ArrayList<>();
+        triples.add(triple("<http://example.com/a>", "name", "\"A\""));
+        for (int k = 0; k < LARGE_SUBJECT_SIZE; k++) {
+            triples.add(triple("<http://example.com/b>", "value", String.format("\"%d\"", k)));
+        }
+        triples.add(triple("<http://example.com/c>", "name", "\"C\""));
+
+        List<String> output = partition(triples);
+
+        Collections.sort(triples);
+        Collections.sort(output);
+        assertEquals(triples, output);
+    }
+
+    @Test
+    public void testNestedNodesFollowRoot() throws Exception
+    {
+        List<String> triples = new ArrayList<>();
+        for (int k = 0; k < 100; k++) {
+            // A feature with a geometry node, and an address node having a nested node of its own
+            String a = String.format("<http://example.com/a%d>", k);
+            String g = String.format("<http://example.com/a%d/geom>", k);
+            String r = String.format("<http://example.com/a%d/address>", k);
+            String n = "_:n" + k;
+            triples.add(triple(a, "name", "\"A\""));
+            triples.add(triple(a, "hasGeometry", g));
+            triples.add(triple(g, "asWKT", "\"POINT (1 2)\""));
+            triples.add(triple(a, "address", r));
+            triples.add(triple(r, "street", "\"Main\""));
+            triples.add(triple(r, "locality", n));
+            triples.add(triple(n, "name", "\"Athens\""));
+            if (k > 0) {
+                // A reference to a previous feature does not move it
+                triples.add(triple(a, "sameAs", String.format("<http://example.com/a%d>", k - 1)));
+            }
+        }
+        // A nested node whose triples are not contiguous to its root
+        triples.add(triple("<http://example.com/a0/geom>", "srid", "\"4326\""));
+
+        List<String> output = partition(triples);
+        assertEquals(triples.size(), output.size());
+
+        Set<Integer> parts = new HashSet<>();
+        for (int k = 0; k < 100; k++) {
+            String a = String.format("<http://example.com/a%d>", k);
+            Integer part = partBySubject.get(a);
+            parts.add(part);
+            assertEquals(part, partBySubject.get(String.format("<http://example.com/a%d/geom>", k)));
+            assertEquals(part, partBySubject.get(String.format("<http://example.com/a%d/address>", k)));
+            assertEquals(part, partBySubject.get("_:n" + k));
+        }
+
+        // Features are still spread across parts
+        assertTrue(parts.size() > 1);
+    }
+}
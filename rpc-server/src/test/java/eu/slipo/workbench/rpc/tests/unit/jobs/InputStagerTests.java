@@ -0,0 +1,141 @@
+package eu.slipo.workbench.rpc.tests.unit.jobs;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import eu.slipo.workbench.rpc.jobs.tasklet.InputStager;
+import eu.slipo.workbench.rpc.jobs.tasklet.InputStager.Format;
+
+public class InputStagerTests
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path targetDir;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        targetDir = folder.newFolder("input").toPath();
+    }
+
+    private Path write(String dirName, String name, String data) throws Exception
+    {
+        Path dir = folder.getRoot().toPath().resolve(dirName);
+        Files.createDirectories(dir);
+        Path path = dir.resolve(name);
+        Files.write(path, data.getBytes(StandardCharsets.UTF_8));
+        return path;
+    }
+
+    private Path zip(String name, String... entries) throws Exception
+    {
+        Path path = folder.getRoot().toPath().resolve(name);
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(path))) {
+            for (int i = 0; i < entries.length; i += 2) {
+                out.putNextEntry(new ZipEntry(entries[i]));
+                out.write(entries[i + 1].getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+        return path;
+    }
+
+    private String read(String name) throws Exception
+    {
+        return new String(Files.readAllBytes(targetDir.resolve(name)), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testStagePlainTwice() throws Exception
+    {
+        Path source = write("a", "1.csv", "id,name\n1,foo\n");
+
+        // Staging again (e.g. on a restart) replaces the staged file
+        for (int i = 0; i < 2; i++) {
+            InputStager.Result result = new InputStager().stage(source, targetDir, true);
+            assertEquals(Format.PLAIN, result.getFormat());
+            assertEquals(Collections.singletonList("1.csv"), result.getNames());
+        }
+        assertEquals("id,name\n1,foo\n", read("1.csv"));
+    }
+
+    @Test
+    public void testStageZipTwice() throws Exception
+    {
+        Path source = zip("1.zip", "1.csv", "id,name\n1,foo\n", "data/2.csv", "id,name\n2,bar\n");
+
+        for (int i = 0; i < 2; i++) {
+            InputStager.Result result = new InputStager(2).stage(source, targetDir, true);
+            assertEquals(Format.ZIP, result.getFormat());
+            assertEquals(Arrays.asList("1.csv", "2.csv"), result.getNames());
+        }
+        assertEquals("id,name\n1,foo\n", read("1.csv"));
+        assertEquals("id,name\n2,bar\n", read("2.csv"));
+    }
+
+    @Test
+    public void testStageCollidingInputs() throws Exception
+    {
+        Path source1 = write("a", "1.csv", "a");
+        Path source2 = write("b", "1.csv", "b");
+        Path source3 = write("c", "README", "c");
+        Path source4 = write("d", "README", "d");
+
+        InputStager stager = new InputStager();
+        assertEquals(Collections.singletonList("1.csv"), stager.stage(source1, targetDir, false).getNames());
+        assertEquals(Collections.singletonList("1-1.csv"), stager.stage(source2, targetDir, false).getNames());
+        assertEquals(Collections.singletonList("README"), stager.stage(source3, targetDir, false).getNames());
+        assertEquals(Collections.singletonList("README-1"), stager.stage(source4, targetDir, false).getNames());
+
+        assertEquals("a", read("1.csv"));
+        assertEquals("b", read("1-1.csv"));
+        assertEquals("c", read("README"));
+        assertEquals("d", read("README-1"));
+    }
+
+    @Test
+    public void testStageZipWithCollidingEntries() throws Exception
+    {
+        Path source = zip("1.zip", "a/1.csv", "a", "b/1.csv", "b", "c/1.csv", "c");
+
+        InputStager.Result result = new InputStager(2).stage(source, targetDir, true);
+        assertEquals(Arrays.asList("1.csv", "1-1.csv", "1-2.csv"), result.getNames());
+        assertEquals("a", read("1.csv"));
+        assertEquals("b", read("1-1.csv"));
+        assertEquals("c", read("1-2.csv"));
+    }
+
+    @Test
+    public void testStageGzip() throws Exception
+    {
+        Path source = folder.getRoot().toPath().resolve("1.csv.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(source))) {
+            out.write("id,name\n1,foo\n".getBytes(StandardCharsets.UTF_8));
+        }
+
+        InputStager.Result result = new InputStager().stage(source, targetDir, true);
+        assertEquals(Format.GZIP, result.getFormat());
+        assertEquals(Collections.singletonList("1.csv"), result.getNames());
+        assertEquals("id,name\n1,foo\n", read("1.csv"));
+
+        // If not unpacked, a compressed input is staged as is
+        result = new InputStager().stage(source, targetDir, false);
+        assertEquals(Format.PLAIN, result.getFormat());
+        assertEquals(Collections.singletonList("1.csv.gz"), result.getNames());
+    }
+}
@@ -0,0 +1,51 @@
+package eu.slipo.workbench.rpc.tests.unit.jobs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import eu.slipo.workbench.rpc.jobs.PartitionedContainerFlowBuilder;
+
+public class PartitionedContainerFlowBuilderTests
+{
+    @Test
+    public void testContainerNameOfFirstAttempt()
+    {
+        assertEquals("fagi-0002a-partition-b",
+            PartitionedContainerFlowBuilder.containerName("fagi", 42L, 11, 1));
+    }
+
+    @Test
+    public void testContainerNameOfRetry()
+    {
+        final String name1 = PartitionedContainerFlowBuilder.containerName("fagi", 42L, 3, 1);
+        final String name2 = PartitionedContainerFlowBuilder.containerName("fagi", 42L, 3, 2);
+
+        assertNotEquals(name1, name2);
+        assertEquals(name1 + "-attempt-2", name2);
+    }
+
+    @Test
+    public void testContainerNamesAreDistinct()
+    {
+        final Set<String> names = new HashSet<>();
+        for (int partitionNumber = 1; partitionNumber <= 20; partitionNumber++) {
+            for (int attempt = 1; attempt <= 3; attempt++) {
+                String name = PartitionedContainerFlowBuilder.containerName("limes", 7L, partitionNumber, attempt);
+                assertTrue("Expected a unique name for " + name, names.add(name));
+            }
+        }
+        assertEquals(60, names.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testContainerNameRejectsZeroAttempt()
+    {
+        PartitionedContainerFlowBuilder.containerName("fagi", 42L, 1, 0);
+    }
+}
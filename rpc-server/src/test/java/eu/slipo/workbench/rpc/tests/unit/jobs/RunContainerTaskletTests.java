@@ -0,0 +1,122 @@
+package eu.slipo.workbench.rpc.tests.unit.jobs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.repeat.RepeatStatus;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.messages.ContainerInfo;
+import com.spotify.docker.client.messages.ContainerState;
+
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerMonitor;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.RunContainerTasklet;
+
+public class RunContainerTaskletTests
+{
+    private static final String CONTAINER_ID = "0123456789ab";
+
+    private DockerClient docker;
+
+    private ContainerMonitor monitor;
+
+    private CompletableFuture<ContainerState> future;
+
+    private StepExecution stepExecution;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        docker = mock(DockerClient.class);
+        monitor = mock(ContainerMonitor.class);
+
+        // The container never finishes
+        future = new CompletableFuture<>();
+        when(monitor.isRunning()).thenReturn(true);
+        when(monitor.watch(CONTAINER_ID)).thenReturn(future);
+
+        stepExecution = new StepExecution("run", new JobExecution(1L));
+    }
+
+    private RunContainerTasklet createTasklet(long timeout)
+    {
+        return RunContainerTasklet.builder()
+            .client(docker)
+            .container(CONTAINER_ID)
+            .monitor(monitor)
+            .checkInterval(100L)
+            .timeout(timeout)
+            .build();
+    }
+
+    /**
+     * Execute the tasklet for a container started at a given time
+     */
+    private RepeatStatus execute(RunContainerTasklet tasklet, long started) throws Exception
+    {
+        stepExecution.getExecutionContext().putLong(RunContainerTasklet.Keys.STARTED, started);
+        return tasklet.execute(
+            stepExecution.createStepContribution(), new ChunkContext(new StepContext(stepExecution)));
+    }
+
+    @Test
+    public void testCancelWatchOnStop() throws Exception
+    {
+        RunContainerTasklet tasklet = createTasklet(60 * 1000L);
+
+        stepExecution.setTerminateOnly();
+        assertEquals(RepeatStatus.CONTINUABLE, execute(tasklet, new Date().getTime()));
+
+        verify(monitor).watch(CONTAINER_ID);
+        assertTrue("Expected the watch to be cancelled", future.isCancelled());
+    }
+
+    @Test
+    public void testCancelWatchOnTimeout() throws Exception
+    {
+        ContainerInfo containerInfo = mock(ContainerInfo.class);
+        ContainerState containerState = mock(ContainerState.class);
+        when(docker.inspectContainer(CONTAINER_ID)).thenReturn(containerInfo);
+        when(containerInfo.state()).thenReturn(containerState);
+        when(containerState.running()).thenReturn(true);
+
+        RunContainerTasklet tasklet = createTasklet(200L);
+
+        // The container has been started long before: it is timed out while being watched
+        assertEquals(RepeatStatus.FINISHED, execute(tasklet, new Date().getTime() - 1000L));
+
+        assertTrue("Expected the watch to be cancelled", future.isCancelled());
+        assertTrue(stepExecution.getExecutionContext().containsKey(RunContainerTasklet.Keys.TIMED_OUT));
+    }
+
+    @Test
+    public void testCancelWatchOnInterrupt() throws Exception
+    {
+        RunContainerTasklet tasklet = createTasklet(60 * 1000L);
+
+        Thread.currentThread().interrupt();
+        try {
+            execute(tasklet, new Date().getTime());
+            fail("Expected the tasklet to be interrupted");
+        } catch (InterruptedException ex) {
+            // expected
+        } finally {
+            Thread.interrupted();
+        }
+
+        assertTrue("Expected the watch to be cancelled", future.isCancelled());
+    }
+}
@@ -0,0 +1,171 @@
+package eu.slipo.workbench.rpc.tests.unit.jobs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.item.ExecutionContext;
+
+import eu.slipo.workbench.rpc.jobs.tasklet.SpatialTilingTasklet;
+
+public class SpatialTilingTaskletTests
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<String> feature(String name, String wkt)
+    {
+        final String subject = String.format("<http://example.com/%s>", name);
+        final String geometry = String.format("<http://example.com/%s/geom>", name);
+        List<String> triples = new ArrayList<>();
+        triples.add(String.format("%s <http://example.com/name> \"%s\" .", subject, name));
+        if (wkt != null) {
+            triples.add(String.format("%s <http://www.opengis.net/ont/geosparql#hasGeometry> %s .", subject, geometry));
+            triples.add(String.format("%s %s \"%s\" .", geometry, SpatialTilingTasklet.AS_WKT_PREDICATE, wkt));
+        }
+        return triples;
+    }
+
+    @SafeVarargs
+    private static List<String> features(List<String>... features)
+    {
+        List<String> triples = new ArrayList<>();
+        for (List<String> feature: features)
+            triples.addAll(feature);
+        return triples;
+    }
+
+    private Path targetDir;
+
+    @SuppressWarnings("unchecked")
+    private List<String> tile(List<String> source, List<String> target, int maxOpenFiles) throws Exception
+    {
+        Path sourcePath = folder.newFile("source.nt").toPath();
+        Files.write(sourcePath, source, StandardCharsets.UTF_8);
+        Path targetPath = folder.newFile("target.nt").toPath();
+        Files.write(targetPath, target, StandardCharsets.UTF_8);
+        targetDir = folder.getRoot().toPath().resolve("tiles");
+
+        SpatialTilingTasklet tasklet = SpatialTilingTasklet.builder()
+            .input("a.nt", sourcePath)
+            .input("b.nt", targetPath)
+            .targetDirectory(targetDir)
+            .tileSize(1.0)
+            .buffer(0.01)
+            .maxOpenFiles(maxOpenFiles)
+            .build();
+
+        StepExecution stepExecution = new StepExecution("tile", new JobExecution(1L));
+        tasklet.execute(stepExecution.createStepContribution(), new ChunkContext(new StepContext(stepExecution)));
+
+        ExecutionContext executionContext = stepExecution.getExecutionContext();
+        List<String> tileNames = (List<String>) executionContext.get(SpatialTilingTasklet.Keys.TILE_NAMES);
+        assertEquals(tileNames.size(), executionContext.getInt(SpatialTilingTasklet.Keys.NUMBER_OF_TILES));
+        return tileNames;
+    }
+
+    private List<String> readTile(String tileName, String fileName) throws Exception
+    {
+        Path path = targetDir.resolve(tileName).resolve(fileName);
+        if (!Files.exists(path))
+            return Collections.emptyList();
+        List<String> lines = new ArrayList<>(Files.readAllLines(path, StandardCharsets.UTF_8));
+        Collections.sort(lines);
+        return lines;
+    }
+
+    private static List<String> sorted(List<String> lines)
+    {
+        List<String> result = new ArrayList<>(lines);
+        Collections.sort(result);
+        return result;
+    }
+
+    @Test
+    public void testTileWithRecordsOfSingleInput() throws Exception
+    {
+        List<String> a1 = feature("a1", "POINT (0.5 0.5)");
+        List<String> a2 = feature("a2", null);
+        List<String> b1 = feature("b1", "POINT (0.5 0.5)");
+        List<String> b2 = feature("b2", "POINT (5.5 5.5)");
+
+        List<String> tileNames = tile(features(a1, a2), features(b1, b2), SpatialTilingTasklet.DEFAULT_MAX_OPEN_FILES);
+
+        // The tile of b2 holds no records of the source, but is paired with its global records
+        assertEquals(Arrays.asList("tile_0_0", "tile_5_5"), tileNames);
+        assertEquals(sorted(features(a1, a2)), readTile("tile_0_0", "a.nt"));
+        assertEquals(sorted(b1), readTile("tile_0_0", "b.nt"));
+        assertEquals(sorted(a2), readTile("tile_5_5", "a.nt"));
+        assertEquals(sorted(b2), readTile("tile_5_5", "b.nt"));
+        assertFalse(Files.exists(targetDir.resolve("_global")));
+    }
+
+    @Test
+    public void testDiscardTileWithoutPairs() throws Exception
+    {
+        List<String> a1 = feature("a1", "POINT (0.5 0.5)");
+        List<String> b1 = feature("b1", "POINT (0.5 0.5)");
+        List<String> b2 = feature("b2", "POINT (5.5 5.5)");
+
+        List<String> tileNames = tile(a1, features(b1, b2), SpatialTilingTasklet.DEFAULT_MAX_OPEN_FILES);
+
+        // The source has no global records, so no pair can be found in the tile of b2
+        assertEquals(Collections.singletonList("tile_0_0"), tileNames);
+        assertFalse(Files.exists(targetDir.resolve("tile_5_5")));
+    }
+
+    @Test
+    public void testFallbackToSingleTile() throws Exception
+    {
+        List<String> source = features(feature("a1", null), feature("a2", "NOT A GEOMETRY"));
+        List<String> target = features(feature("b1", null), feature("b2", "POINT EMPTY"));
+
+        List<String> tileNames = tile(source, target, SpatialTilingTasklet.DEFAULT_MAX_OPEN_FILES);
+
+        assertEquals(Collections.singletonList(SpatialTilingTasklet.SINGLE_TILE_NAME), tileNames);
+        assertEquals(sorted(source), readTile(SpatialTilingTasklet.SINGLE_TILE_NAME, "a.nt"));
+        assertEquals(sorted(target), readTile(SpatialTilingTasklet.SINGLE_TILE_NAME, "b.nt"));
+    }
+
+    @Test
+    public void testLimitOpenFiles() throws Exception
+    {
+        List<String> source = new ArrayList<>(), target = new ArrayList<>();
+        for (int k = 0; k < 3; k++) {
+            // Visit each tile more than once, so that closed files must be re-opened
+            for (int i = 0; i < 10; i++) {
+                String wkt = String.format("POINT (%d.5 0.5)", i);
+                source.addAll(feature(String.format("a%d_%d", i, k), wkt));
+                target.addAll(feature(String.format("b%d_%d", i, k), wkt));
+            }
+        }
+
+        List<String> tileNames = tile(source, target, 2);
+
+        assertEquals(10, tileNames.size());
+        List<String> tiledSource = new ArrayList<>(), tiledTarget = new ArrayList<>();
+        for (String tileName: tileNames) {
+            List<String> lines = readTile(tileName, "a.nt");
+            assertTrue(lines.stream().allMatch(line -> line.contains("/a" + tileName.split("_")[1] + "_")));
+            tiledSource.addAll(lines);
+            tiledTarget.addAll(readTile(tileName, "b.nt"));
+        }
+        assertEquals(sorted(source), sorted(tiledSource));
+        assertEquals(sorted(target), sorted(tiledTarget));
+    }
+}
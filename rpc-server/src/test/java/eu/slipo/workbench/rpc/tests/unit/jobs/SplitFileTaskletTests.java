@@ -0,0 +1,160 @@
+package eu.slipo.workbench.rpc.tests.unit.jobs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.scope.context.StepContext;
+
+import eu.slipo.workbench.rpc.jobs.tasklet.SplitFileTasklet;
+
+public class SplitFileTaskletTests
+{
+    private static final String HEADER = "id;name;description\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Split a file and return the contents of its parts
+     */
+    private List<String> split(String data, int numberOfParts, boolean header) throws Exception
+    {
+        Path inputPath = folder.newFile("1.csv").toPath();
+        Files.write(inputPath, data.getBytes(StandardCharsets.UTF_8));
+        Path targetDir = folder.newFolder("partitions").toPath();
+
+        SplitFileTasklet tasklet = SplitFileTasklet.builder()
+            .input(Collections.singletonList(inputPath))
+            .targetDirectory(targetDir)
+            .numberOfParts(numberOfParts)
+            .header(header)
+            .quote("\"")
+            .build();
+
+        StepExecution stepExecution = new StepExecution("split", new JobExecution(1L));
+        tasklet.execute(stepExecution.createStepContribution(), new ChunkContext(new StepContext(stepExecution)));
+        assertEquals(numberOfParts,
+            stepExecution.getExecutionContext().getInt(SplitFileTasklet.Keys.NUMBER_OF_PARTS));
+
+        List<String> parts = new ArrayList<>();
+        for (int i = 1; i <= numberOfParts; i++) {
+            Path partPath = targetDir.resolve(Paths.get(String.format("partition_%d", i), "input", "1.csv"));
+            assertTrue("Expected part #" + i + " to exist", Files.isRegularFile(partPath));
+            parts.add(new String(Files.readAllBytes(partPath), StandardCharsets.UTF_8));
+        }
+        return parts;
+    }
+
+    private static String record(int i)
+    {
+        // Every 3rd record has a description spanning several lines
+        return (i % 3 == 0)?
+            String.format("%d;\"name %d\";\"first line\nsecond line\n\nlast line of %d\"\n", i, i, i) :
+            String.format("%d;\"name %d\";\"a description\"\n", i, i);
+    }
+
+    @Test
+    public void testRecordsAreNotSplit() throws Exception
+    {
+        final List<String> records = new ArrayList<>();
+        final StringBuilder data = new StringBuilder(HEADER);
+        for (int i = 0; i < 500; i++) {
+            records.add(record(i));
+            data.append(record(i));
+        }
+
+        final List<String> parts = split(data.toString(), 4, true);
+
+        // Every part starts with the header, and is a sequence of whole records
+
+        final StringBuilder rest = new StringBuilder();
+        int k = 0;
+        for (String part: parts) {
+            assertTrue(part.startsWith(HEADER));
+            String body = part.substring(HEADER.length());
+            assertTrue("Expected a non-empty part", !body.isEmpty());
+            int offset = 0;
+            while (offset < body.length()) {
+                String r = records.get(k++);
+                assertTrue("Expected a whole record at offset " + offset, body.startsWith(r, offset));
+                offset += r.length();
+            }
+            rest.append(body);
+        }
+
+        assertEquals(records.size(), k);
+        assertEquals(data.toString(), HEADER + rest.toString());
+    }
+
+    @Test
+    public void testWithoutHeader() throws Exception
+    {
+        final StringBuilder data = new StringBuilder();
+        for (int i = 0; i < 100; i++)
+            data.append(record(i));
+
+        final List<String> parts = split(data.toString(), 3, false);
+        assertEquals(data.toString(), String.join("", parts));
+        for (String part: parts)
+            assertTrue(part.endsWith("\"\n"));
+    }
+
+    @Test
+    public void testWithoutTrailingNewline() throws Exception
+    {
+        final StringBuilder data = new StringBuilder(HEADER);
+        for (int i = 0; i < 100; i++)
+            data.append(record(i));
+        data.append("100;\"name 100\";\"no newline\"");
+
+        final List<String> parts = split(data.toString(), 2, true);
+        assertTrue(parts.get(1).endsWith("100;\"name 100\";\"no newline\""));
+
+        final StringBuilder rest = new StringBuilder();
+        for (String part: parts)
+            rest.append(part.substring(HEADER.length()));
+        assertEquals(data.toString(), HEADER + rest.toString());
+    }
+
+    @Test
+    public void testSmallInput() throws Exception
+    {
+        final String data = HEADER + record(3);
+
+        // A single record cannot be split: the remaining parts only hold the header
+        final List<String> parts = split(data, 4, true);
+        assertEquals(data, parts.get(0));
+        for (int i = 1; i < 4; i++)
+            assertEquals(HEADER, parts.get(i));
+    }
+
+    @Test
+    public void testHeaderOnlyInput() throws Exception
+    {
+        final List<String> parts = split(HEADER, 3, true);
+        for (String part: parts)
+            assertEquals(HEADER, part);
+    }
+
+    @Test
+    public void testEmptyInput() throws Exception
+    {
+        final List<String> parts = split("", 3, true);
+        for (String part: parts)
+            assertEquals("", part);
+    }
+}
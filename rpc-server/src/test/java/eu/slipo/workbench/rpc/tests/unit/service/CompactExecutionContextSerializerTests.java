@@ -0,0 +1,300 @@
+package eu.slipo.workbench.rpc.tests.unit.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.repository.ExecutionContextSerializer;
+import org.springframework.batch.core.repository.dao.ExecutionContextDao;
+import org.springframework.batch.core.repository.dao.XStreamExecutionContextStringSerializer;
+import org.springframework.batch.item.ExecutionContext;
+
+import eu.slipo.workbench.common.model.poi.EnumDataFormat;
+import eu.slipo.workbench.common.model.tool.TriplegeoConfiguration;
+import eu.slipo.workbench.rpc.service.ChangeTrackingExecutionContextDao;
+import eu.slipo.workbench.rpc.service.CompactExecutionContextSerializer;
+
+/**
+ * Compare the volume written for execution contexts by the default serializer against the compact
+ * serializer (along with skipping unchanged contexts).
+ */
+public class CompactExecutionContextSerializerTests
+{
+    private static final Logger logger = LoggerFactory.getLogger(CompactExecutionContextSerializerTests.class);
+
+    /**
+     * The number of updates for a step (e.g. a container polled once per second for 10 minutes)
+     */
+    private static final int NUMBER_OF_UPDATES = 600;
+
+    /**
+     * A DAO that only counts the bytes it would write
+     */
+    private static class CountingExecutionContextDao implements ExecutionContextDao
+    {
+        private final ExecutionContextSerializer serializer;
+
+        private long bytesWritten = 0L;
+
+        private int numberOfWrites = 0;
+
+        CountingExecutionContextDao(ExecutionContextSerializer serializer)
+        {
+            this.serializer = serializer;
+        }
+
+        private void write(ExecutionContext executionContext)
+        {
+            Map<String, Object> m = new HashMap<>();
+            executionContext.entrySet().forEach(e -> m.put(e.getKey(), e.getValue()));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                serializer.serialize(m, out);
+            } catch (Exception ex) {
+                throw new IllegalStateException(ex);
+            }
+            bytesWritten += out.size();
+            numberOfWrites++;
+        }
+
+        @Override
+        public ExecutionContext getExecutionContext(JobExecution jobExecution)
+        {
+            return jobExecution.getExecutionContext();
+        }
+
+        @Override
+        public ExecutionContext getExecutionContext(StepExecution stepExecution)
+        {
+            return stepExecution.getExecutionContext();
+        }
+
+        @Override
+        public void saveExecutionContext(JobExecution jobExecution)
+        {
+            write(jobExecution.getExecutionContext());
+        }
+
+        @Override
+        public void saveExecutionContext(StepExecution stepExecution)
+        {
+            write(stepExecution.getExecutionContext());
+        }
+
+        @Override
+        public void saveExecutionContexts(Collection<StepExecution> stepExecutions)
+        {
+            stepExecutions.forEach(this::saveExecutionContext);
+        }
+
+        @Override
+        public void updateExecutionContext(JobExecution jobExecution)
+        {
+            write(jobExecution.getExecutionContext());
+        }
+
+        @Override
+        public void updateExecutionContext(StepExecution stepExecution)
+        {
+            write(stepExecution.getExecutionContext());
+        }
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private XStreamExecutionContextStringSerializer defaultSerializer;
+
+    private CompactExecutionContextSerializer compactSerializer;
+
+    @Before
+    public void setup() throws Exception
+    {
+        defaultSerializer = new XStreamExecutionContextStringSerializer();
+        defaultSerializer.afterPropertiesSet();
+
+        compactSerializer = new CompactExecutionContextSerializer(folder.newFolder("blobs").toPath(), 1024);
+        compactSerializer.afterPropertiesSet();
+    }
+
+    private static TriplegeoConfiguration configuration()
+    {
+        TriplegeoConfiguration config = new TriplegeoConfiguration();
+
+        config.setMode(TriplegeoConfiguration.Mode.STREAM);
+        config.setInputFormat(EnumDataFormat.CSV);
+        config.setOutputFormat(EnumDataFormat.N_TRIPLES);
+        config.setOutputDir("/tmp/triplegeo/output");
+        config.setMappingSpec("/tmp/triplegeo/mappings.yml");
+        config.setClassificationSpec("/tmp/triplegeo/classification.yml");
+        config.setAttrCategory("category");
+        config.setAttrKey("id");
+        config.setAttrName("name");
+        config.setAttrX("lon");
+        config.setAttrY("lat");
+        config.setFeatureSource("points");
+        config.addPrefix("foo", "http://example.com/foo#");
+
+        return config;
+    }
+
+    private static StepExecution stepExecution()
+    {
+        JobExecution jobExecution = new JobExecution(1L);
+        StepExecution stepExecution = new StepExecution("triplegeo.runContainer", jobExecution, 11L);
+
+        ExecutionContext executionContext = stepExecution.getExecutionContext();
+        executionContext.put("options", configuration());
+        executionContext.put("input", Arrays.asList("/tmp/triplegeo/input/p1.csv", "/tmp/triplegeo/input/p2.csv"));
+        Map<String, String> configFileByName = new HashMap<>();
+        configFileByName.put("options", "options.conf");
+        configFileByName.put("mappings", "mappings.yml");
+        configFileByName.put("classification", "classification.csv");
+        executionContext.put("configFileByName", configFileByName);
+        executionContext.putString("containerId", "3f4e1b2c9a8d7e6f5a4b3c2d1e0f9a8b7c6d5e4f3a2b1c0d9e8f7a6b5c4d3e2f");
+        executionContext.putString("containerName", "triplegeo-1-11");
+        executionContext.putLong("started", System.currentTimeMillis());
+
+        return stepExecution;
+    }
+
+    private static Map<String, Object> toMap(ExecutionContext executionContext)
+    {
+        Map<String, Object> m = new HashMap<>();
+        executionContext.entrySet().forEach(e -> m.put(e.getKey(), e.getValue()));
+        return m;
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception
+    {
+        Map<String, Object> context = toMap(stepExecution().getExecutionContext());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        compactSerializer.serialize(context, out);
+        Map<String, Object> context1 = compactSerializer.deserialize(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(context.keySet(), context1.keySet());
+        assertEquals(context.get("input"), context1.get("input"));
+        assertEquals(context.get("configFileByName"), context1.get("configFileByName"));
+        assertEquals(context.get("started"), context1.get("started"));
+        assertTrue(context1.get("options") instanceof TriplegeoConfiguration);
+        assertEquals(
+            ((TriplegeoConfiguration) context.get("options")).getMappingSpec(),
+            ((TriplegeoConfiguration) context1.get("options")).getMappingSpec());
+    }
+
+    @Test
+    public void testReadDefaultEncoding() throws Exception
+    {
+        Map<String, Object> context = toMap(stepExecution().getExecutionContext());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        defaultSerializer.serialize(context, out);
+        Map<String, Object> context1 = compactSerializer.deserialize(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(context.keySet(), context1.keySet());
+        assertEquals(context.get("input"), context1.get("input"));
+    }
+
+    @Test
+    public void testSweepUnreferencedBlobs() throws Exception
+    {
+        final Path blobDir = folder.getRoot().toPath().resolve("blobs");
+
+        StepExecution stepExecution = stepExecution();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        compactSerializer.serialize(toMap(stepExecution.getExecutionContext()), out);
+        final String serializedContext = out.toString("US-ASCII");
+
+        // Supersede the configuration with another one (its blob is no longer referenced)
+
+        TriplegeoConfiguration config = configuration();
+        config.setMappingSpec("/tmp/triplegeo/mappings-1.yml");
+        stepExecution.getExecutionContext().put("options", config);
+        compactSerializer.serialize(toMap(stepExecution.getExecutionContext()), new ByteArrayOutputStream());
+
+        Set<String> referencedKeys = new HashSet<>();
+        compactSerializer.collectReferences(serializedContext, referencedKeys);
+        assertFalse(referencedKeys.isEmpty());
+
+        try (Stream<Path> paths = Files.list(blobDir)) {
+            assertEquals(referencedKeys.size() + 1L, paths.count());
+        }
+
+        // Recent blobs are kept, even if unreferenced
+        assertEquals(0, compactSerializer.sweep(referencedKeys, 60000L));
+        assertEquals(1, compactSerializer.sweep(referencedKeys, -1000L));
+
+        try (Stream<Path> paths = Files.list(blobDir)) {
+            assertEquals(referencedKeys,
+                paths.map(path -> path.getFileName().toString()).collect(Collectors.toSet()));
+        }
+
+        Map<String, Object> context1 = compactSerializer.deserialize(
+            new ByteArrayInputStream(serializedContext.getBytes(StandardCharsets.US_ASCII)));
+        assertEquals("/tmp/triplegeo/mappings.yml", ((TriplegeoConfiguration) context1.get("options")).getMappingSpec());
+    }
+
+    @Test
+    public void benchmarkWriteVolume() throws Exception
+    {
+        final StepExecution stepExecution = stepExecution();
+
+        final CountingExecutionContextDao defaultDao = new CountingExecutionContextDao(defaultSerializer);
+        final ChangeTrackingExecutionContextDao.PreparedSerializer preparedSerializer =
+            new ChangeTrackingExecutionContextDao.PreparedSerializer(compactSerializer);
+        final CountingExecutionContextDao compactDao = new CountingExecutionContextDao(preparedSerializer);
+        final ExecutionContextDao trackingDao = new ChangeTrackingExecutionContextDao(compactDao, preparedSerializer);
+
+        defaultDao.saveExecutionContext(stepExecution);
+        trackingDao.saveExecutionContext(stepExecution);
+
+        // Simulate a polling step: the context only changes at the last update (when finished)
+
+        long defaultNanos = 0L, compactNanos = 0L;
+        for (int i = 0; i < NUMBER_OF_UPDATES; i++) {
+            if (i == NUMBER_OF_UPDATES - 1)
+                stepExecution.getExecutionContext().putLong("finished", System.currentTimeMillis());
+            long t0 = System.nanoTime();
+            defaultDao.updateExecutionContext(stepExecution);
+            long t1 = System.nanoTime();
+            trackingDao.updateExecutionContext(stepExecution);
+            long t2 = System.nanoTime();
+            defaultNanos += t1 - t0;
+            compactNanos += t2 - t1;
+        }
+
+        logger.info("Default serializer: {} writes, {} bytes, {}ms",
+            defaultDao.numberOfWrites, defaultDao.bytesWritten, defaultNanos / 1000000L);
+        logger.info("Compact serializer (skipping unchanged): {} writes, {} bytes, {}ms",
+            compactDao.numberOfWrites, compactDao.bytesWritten, compactNanos / 1000000L);
+
+        assertEquals(NUMBER_OF_UPDATES + 1, defaultDao.numberOfWrites);
+        assertEquals(2, compactDao.numberOfWrites);
+        assertTrue(compactDao.bytesWritten / compactDao.numberOfWrites <
+            defaultDao.bytesWritten / defaultDao.numberOfWrites);
+    }
+}
@@ -0,0 +1,155 @@
+package eu.slipo.workbench.rpc.tests.unit.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermission;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import eu.slipo.workbench.rpc.service.DownloadCache;
+
+public class DownloadCacheTests
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path rootDir;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        rootDir = folder.getRoot().toPath().resolve("cache");
+    }
+
+    private DownloadCache createCache(long maxSize) throws Exception
+    {
+        DownloadCache cache = new DownloadCache(rootDir, maxSize);
+        cache.initialize();
+        return cache;
+    }
+
+    private Path write(String name, String data) throws Exception
+    {
+        Path path = folder.getRoot().toPath().resolve(name);
+        Files.createDirectories(path.getParent());
+        Files.write(path, data.getBytes(StandardCharsets.UTF_8));
+        return path;
+    }
+
+    private Path target(String name) throws Exception
+    {
+        Path path = folder.getRoot().toPath().resolve(name);
+        Files.createDirectories(path.getParent());
+        return path;
+    }
+
+    @Test
+    public void testStoreAndMaterialize() throws Exception
+    {
+        DownloadCache cache = createCache(1024L);
+        URL url = new URL("http://example.com/1.csv");
+        Path source = write("job1/1.csv", "id,name\n1,foo\n");
+        String checksum = DigestUtils.sha256Hex(Files.readAllBytes(source));
+
+        cache.store(url, "\"v1\"", source, checksum);
+        assertEquals(1, cache.getNumberOfEntries());
+
+        Path target = target("job2/1.csv");
+        DownloadCache.Entry entry = cache.materialize(url, "\"v1\"", target);
+        assertNotNull(entry);
+        assertEquals(checksum, entry.getChecksum());
+        assertEquals("id,name\n1,foo\n", new String(Files.readAllBytes(target), StandardCharsets.UTF_8));
+
+        // The cached file (and any link to it) is protected from modifications
+        assertFalse(Files.getPosixFilePermissions(target).contains(PosixFilePermission.OWNER_WRITE));
+
+        // A modified remote entity (another validator) misses the cache
+        assertNull(cache.materialize(url, "\"v2\"", target("job3/1.csv")));
+        assertNull(cache.materialize(new URL("http://example.com/2.csv"), "\"v1\"", target("job3/2.csv")));
+    }
+
+    @Test
+    public void testDiscardModifiedEntry() throws Exception
+    {
+        DownloadCache cache = createCache(1024L);
+        URL url = new URL("http://example.com/1.csv");
+        Path source = write("job1/1.csv", "id,name\n1,foo\n");
+
+        cache.store(url, "\"v1\"", source, DigestUtils.sha256Hex(Files.readAllBytes(source)));
+
+        // Modify the cached file through the (hard-linked) source, bypassing its permissions
+        source.toFile().setWritable(true);
+        Files.write(source, "id,name\n1,bar\n".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(source, FileTime.fromMillis(System.currentTimeMillis() + 5000L));
+
+        Path target = target("job2/1.csv");
+        assertNull(cache.materialize(url, "\"v1\"", target));
+        assertEquals(0, cache.getNumberOfEntries());
+        assertEquals(0L, cache.getSize());
+    }
+
+    @Test
+    public void testInvalidate() throws Exception
+    {
+        DownloadCache cache = createCache(1024L);
+        URL url = new URL("http://example.com/1.csv");
+        Path source = write("job1/1.csv", "id,name\n1,foo\n");
+
+        cache.store(url, "\"v1\"", source, DigestUtils.sha256Hex(Files.readAllBytes(source)));
+        cache.invalidate(url, "\"v1\"");
+        assertEquals(0, cache.getNumberOfEntries());
+        assertNull(cache.materialize(url, "\"v1\"", target("job2/1.csv")));
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsed() throws Exception
+    {
+        DownloadCache cache = createCache(20L);
+
+        URL[] urls = new URL[3];
+        for (int i = 0; i < 3; i++) {
+            urls[i] = new URL(String.format("http://example.com/%d.csv", i));
+            Path source = write(String.format("job%d/%d.csv", i, i), "0123456789");
+            if (i == 2) {
+                // Access the first entry, so that the second is the least recently used
+                assertNotNull(cache.materialize(urls[0], "\"v1\"", target("job-a/0.csv")));
+            }
+            cache.store(urls[i], "\"v1\"", source, DigestUtils.sha256Hex(Files.readAllBytes(source)));
+            Thread.sleep(20L);
+        }
+
+        assertEquals(2, cache.getNumberOfEntries());
+        assertEquals(20L, cache.getSize());
+        assertNotNull(cache.materialize(urls[0], "\"v1\"", target("job-b/0.csv")));
+        assertNull(cache.materialize(urls[1], "\"v1\"", target("job-b/1.csv")));
+        assertNotNull(cache.materialize(urls[2], "\"v1\"", target("job-b/2.csv")));
+    }
+
+    @Test
+    public void testReloadEntries() throws Exception
+    {
+        DownloadCache cache = createCache(1024L);
+        URL url = new URL("http://example.com/1.csv");
+        Path source = write("job1/1.csv", "id,name\n1,foo\n");
+        cache.store(url, "\"v1\"", source, DigestUtils.sha256Hex(Files.readAllBytes(source)));
+
+        DownloadCache reloaded = createCache(1024L);
+        assertEquals(1, reloaded.getNumberOfEntries());
+        assertEquals(Files.size(source), reloaded.getSize());
+
+        Path target = target("job2/1.csv");
+        assertNotNull(reloaded.materialize(url, "\"v1\"", target));
+    }
+}
@@ -0,0 +1,107 @@
+package eu.slipo.workbench.rpc.tests.unit.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+import eu.slipo.workbench.common.model.poi.EnumDataFormat;
+import eu.slipo.workbench.rpc.service.OutputProfiler;
+
+public class OutputProfilerTests
+{
+    private static final String WKT = "<http://www.opengis.net/ont/geosparql#wktLiteral>";
+
+    private static final String GEO = "http://www.w3.org/2003/01/geo/wgs84_pos#";
+
+    private static final List<String> TRIPLES = Arrays.asList(
+        "# A comment",
+        "<http://example.com/a> <http://example.com/name> \"A \\\"quoted\\\" name\"@en .",
+        "<http://example.com/a> <http://www.opengis.net/ont/geosparql#asWKT> \"POINT (23.7 37.9)\"^^" + WKT + " .",
+        "",
+        "<http://example.com/b> <http://example.com/name> \"B\" .",
+        "<http://example.com/b> <http://www.opengis.net/ont/geosparql#asWKT> " +
+            "\"<http://www.opengis.net/def/crs/EPSG/0/4326> LINESTRING (22.9 40.6, 23.0 40.7)\"^^" + WKT + " .",
+        "<http://example.com/c> <" + GEO + "lat> \"38.2\" .",
+        "<http://example.com/c> <" + GEO + "long> \"21.7\" .",
+        "_:b1 <http://example.com/name> \"C\" .",
+        "<http://example.com/a> <http://example.com/rank> \"1\"^^<http://www.w3.org/2001/XMLSchema#integer> .",
+        "<http://example.com/d> <http://www.opengis.net/ont/geosparql#asWKT> " +
+            "\"<http://www.opengis.net/def/crs/EPSG/0/2100> POINT (476000 4200000)\"^^" + WKT + " .");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testProfileTriples() throws Exception
+    {
+        Path path = folder.newFile("1.nt").toPath();
+        Files.write(path, TRIPLES, StandardCharsets.UTF_8);
+
+        OutputProfiler.Profile profile = OutputProfiler.computeProfile(path, EnumDataFormat.N_TRIPLES);
+
+        assertEquals(DigestUtils.sha256Hex(Files.readAllBytes(path)), profile.getChecksum());
+        assertEquals(Files.size(path), profile.getSize());
+        assertEquals(Long.valueOf(9L), profile.getTripleCount());
+        assertEquals(Long.valueOf(5L), profile.getDistinctSubjectCount());
+        assertFalse(profile.isDistinctSubjectCountEstimated());
+        assertEquals(Long.valueOf(3L), profile.getPredicateHistogram().get("http://example.com/name"));
+        assertEquals(Long.valueOf(3L),
+            profile.getPredicateHistogram().get("http://www.opengis.net/ont/geosparql#asWKT"));
+
+        // The geometry in EPSG:2100 is ignored
+        assertNotNull(profile.getBoundingBox());
+        assertEquals(OutputProfiler.SRID, profile.getBoundingBox().getSRID());
+        Envelope e = profile.getBoundingBox().getEnvelopeInternal();
+        assertEquals(21.7, e.getMinX(), 1E-9);
+        assertEquals(23.7, e.getMaxX(), 1E-9);
+        assertEquals(37.9, e.getMinY(), 1E-9);
+        assertEquals(40.7, e.getMaxY(), 1E-9);
+    }
+
+    @Test
+    public void testProfileOtherFormat() throws Exception
+    {
+        Path path = folder.newFile("1.csv").toPath();
+        Files.write(path, Arrays.asList("id;name", "1;A"), StandardCharsets.UTF_8);
+
+        OutputProfiler.Profile profile = OutputProfiler.computeProfile(path, EnumDataFormat.CSV);
+
+        assertEquals(DigestUtils.sha256Hex(Files.readAllBytes(path)), profile.getChecksum());
+        assertNull(profile.getTripleCount());
+        assertNull(profile.getBoundingBox());
+    }
+
+    @Test
+    public void testFindByLink() throws Exception
+    {
+        Path path = folder.newFile("2.nt").toPath();
+        Files.write(path, TRIPLES, StandardCharsets.UTF_8);
+
+        OutputProfiler profiler = new OutputProfiler(1, 1);
+        profiler.initialize();
+        try {
+            profiler.submit(path, EnumDataFormat.N_TRIPLES).get();
+            Path link = Files.createLink(folder.getRoot().toPath().resolve("links.nt"), path);
+            OutputProfiler.Profile profile = profiler.find(link);
+            assertNotNull(profile);
+            assertTrue(profile.getTripleCount() == 9L);
+        } finally {
+            profiler.shutdown();
+        }
+    }
+}
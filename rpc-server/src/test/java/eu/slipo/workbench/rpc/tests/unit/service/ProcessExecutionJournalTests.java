@@ -0,0 +1,160 @@
+package eu.slipo.workbench.rpc.tests.unit.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import eu.slipo.workbench.common.model.process.EnumProcessExecutionStatus;
+import eu.slipo.workbench.common.model.process.ProcessExecutionRecord;
+import eu.slipo.workbench.common.model.process.ProcessExecutionStepRecord;
+import eu.slipo.workbench.common.repository.ProcessRepository;
+import eu.slipo.workbench.rpc.service.ProcessExecutionJournal;
+
+public class ProcessExecutionJournalTests
+{
+    private static final long EXECUTION_ID = 7L;
+
+    private static final int STEP_KEY = 1;
+
+    /**
+     * An executor that only queues tasks (so that a test decides when a drain happens)
+     */
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+
+    private ProcessRepository processRepository;
+
+    private PlatformTransactionManager transactionManager;
+
+    private ProcessExecutionJournal journal;
+
+    @Before
+    public void setup() throws Exception
+    {
+        processRepository = mock(ProcessRepository.class);
+        transactionManager = mock(PlatformTransactionManager.class);
+
+        when(processRepository.createExecutionStep(anyLong(), any(ProcessExecutionStepRecord.class)))
+            .then(invocation -> executionRecord(invocation.getArgumentAt(1, ProcessExecutionStepRecord.class)));
+        when(processRepository.updateExecutionStep(anyLong(), anyInt(), any(ProcessExecutionStepRecord.class)))
+            .then(invocation -> executionRecord(invocation.getArgumentAt(2, ProcessExecutionStepRecord.class)));
+
+        journal = new ProcessExecutionJournal(
+            EXECUTION_ID, processRepository, new TransactionTemplate(transactionManager), tasks::add, 8);
+    }
+
+    private static ProcessExecutionRecord executionRecord(ProcessExecutionStepRecord stepRecord)
+    {
+        ProcessExecutionRecord record = new ProcessExecutionRecord(EXECUTION_ID, 1L, 1L);
+        record.addStep(new ProcessExecutionStepRecord(stepRecord));
+        return record;
+    }
+
+    private void drain()
+    {
+        while (!tasks.isEmpty())
+            tasks.poll().run();
+    }
+
+    private void submitStarted()
+    {
+        journal.submit(j -> {
+            ProcessExecutionStepRecord stepRecord = new ProcessExecutionStepRecord(STEP_KEY);
+            stepRecord.setStatus(EnumProcessExecutionStatus.RUNNING);
+            stepRecord.setStartedOn(ZonedDateTime.now());
+            j.putStep(stepRecord);
+        });
+    }
+
+    private void submitCompleted()
+    {
+        journal.submit(j -> {
+            ProcessExecutionStepRecord stepRecord = j.getStep(STEP_KEY);
+            stepRecord.setStatus(EnumProcessExecutionStatus.COMPLETED);
+            stepRecord.setCompletedOn(ZonedDateTime.now());
+            j.putStep(stepRecord);
+        });
+    }
+
+    @Test
+    public void testCoalescedIntoSingleTransaction() throws Exception
+    {
+        submitStarted();
+        submitCompleted();
+        journal.submit(j -> j.setStatus(EnumProcessExecutionStatus.COMPLETED, ZonedDateTime.now()));
+
+        // Nothing is written on the submitting thread
+        verify(processRepository, never()).createExecutionStep(anyLong(), any(ProcessExecutionStepRecord.class));
+        assertEquals(1, tasks.size());
+
+        drain();
+
+        InOrder inOrder = inOrder(processRepository);
+        inOrder.verify(processRepository, times(1)).createExecutionStep(
+            eq(EXECUTION_ID), any(ProcessExecutionStepRecord.class));
+        inOrder.verify(processRepository, times(1)).updateExecution(
+            eq(EXECUTION_ID), eq(EnumProcessExecutionStatus.COMPLETED), (ZonedDateTime) isNull(),
+            any(ZonedDateTime.class), (String) isNull());
+        verify(processRepository, never()).updateExecutionStep(
+            anyLong(), anyInt(), any(ProcessExecutionStepRecord.class));
+        verify(transactionManager, times(1)).commit(any());
+    }
+
+    @Test
+    public void testUpdateAfterCreate() throws Exception
+    {
+        submitStarted();
+        drain();
+        verify(processRepository, times(1)).createExecutionStep(
+            eq(EXECUTION_ID), any(ProcessExecutionStepRecord.class));
+
+        submitCompleted();
+        drain();
+        verify(processRepository, times(1)).createExecutionStep(
+            eq(EXECUTION_ID), any(ProcessExecutionStepRecord.class));
+        verify(processRepository, times(1)).updateExecutionStep(
+            eq(EXECUTION_ID), eq(STEP_KEY), any(ProcessExecutionStepRecord.class));
+
+        assertTrue(journal.getStep(STEP_KEY).getStatus() == EnumProcessExecutionStatus.COMPLETED);
+    }
+
+    @Test
+    public void testCallbackAfterWrite() throws Exception
+    {
+        final List<String> calls = new ArrayList<>();
+        when(processRepository.createExecutionStep(anyLong(), any(ProcessExecutionStepRecord.class)))
+            .then(invocation -> {
+                calls.add("create");
+                return executionRecord(invocation.getArgumentAt(1, ProcessExecutionStepRecord.class));
+            });
+
+        submitStarted();
+        journal.submit(j -> j.afterFlush(() -> calls.add("callback")));
+        assertTrue(calls.isEmpty());
+
+        drain();
+        assertEquals(Arrays.asList("create", "callback"), calls);
+    }
+}
@@ -0,0 +1,233 @@
+package eu.slipo.workbench.rpc.tests.unit.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import eu.slipo.workbench.common.model.poi.EnumTool;
+import eu.slipo.workbench.rpc.service.StepOutputCache;
+
+public class StepOutputCacheTests
+{
+    private static final List<String> OUTPUT_NAMES = Arrays.asList("1.nt", "1.csv");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path rootDir;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        rootDir = folder.getRoot().toPath().resolve("cache");
+    }
+
+    private StepOutputCache createCache(long maxSize) throws Exception
+    {
+        StepOutputCache cache = new StepOutputCache(rootDir, maxSize);
+        cache.initialize();
+        return cache;
+    }
+
+    private Path write(String name, String data) throws Exception
+    {
+        Path path = folder.getRoot().toPath().resolve(name);
+        Files.createDirectories(path.getParent());
+        Files.write(path, data.getBytes(StandardCharsets.UTF_8));
+        return path;
+    }
+
+    private static Properties parameters(String... pairs)
+    {
+        Properties p = new Properties();
+        for (int i = 0; i < pairs.length; i += 2)
+            p.setProperty(pairs[i], pairs[i + 1]);
+        return p;
+    }
+
+    private String computeKey(StepOutputCache cache, Properties parameters, Path input) throws Exception
+    {
+        return cache.computeKey(
+            EnumTool.TRIPLEGEO, parameters, Collections.singletonList(cache.digest(input)), OUTPUT_NAMES);
+    }
+
+    @Test
+    public void testKeyIsStable() throws Exception
+    {
+        StepOutputCache cache = createCache(1024L);
+        Path input = write("input/1.csv", "id,name\n1,foo\n");
+
+        // The order of parameters does not matter
+        String key1 = computeKey(cache, parameters("a", "1", "b", "2"), input);
+        String key2 = computeKey(cache, parameters("b", "2", "a", "1"), input);
+        assertEquals(key1, key2);
+
+        // A copy of the input (in another location) yields the same key
+        Path copy = write("other/1.csv", "id,name\n1,foo\n");
+        assertEquals(key1, computeKey(cache, parameters("a", "1", "b", "2"), copy));
+    }
+
+    @Test
+    public void testKeyChangesWithConfiguration() throws Exception
+    {
+        StepOutputCache cache = createCache(1024L);
+        Path input = write("input/1.csv", "id,name\n1,foo\n");
+
+        String key = computeKey(cache, parameters("a", "1"), input);
+        assertNotEquals(key, computeKey(cache, parameters("a", "2"), input));
+        assertNotEquals(key, computeKey(cache, parameters("a", "1", "b", "1"), input));
+        assertNotEquals(key,
+            cache.computeKey(EnumTool.LIMES, parameters("a", "1"),
+                Collections.singletonList(cache.digest(input)), OUTPUT_NAMES));
+        assertNotEquals(key,
+            cache.computeKey(EnumTool.TRIPLEGEO, parameters("a", "1"),
+                Collections.singletonList(cache.digest(input)), Collections.singletonList("1.nt")));
+    }
+
+    @Test
+    public void testKeyChangesWithInput() throws Exception
+    {
+        StepOutputCache cache = createCache(1024L);
+        Path input = write("input/1.csv", "id,name\n1,foo\n");
+
+        String key = computeKey(cache, parameters("a", "1"), input);
+
+        // Modify the input in place: the memoized digest must not be used
+        write("input/1.csv", "id,name\n1,bar\n");
+        Files.setLastModifiedTime(input, FileTime.fromMillis(System.currentTimeMillis() + 5000L));
+        assertNotEquals(key, computeKey(cache, parameters("a", "1"), input));
+    }
+
+    @Test
+    public void testKeyChangesWithContentOfParameterFile() throws Exception
+    {
+        StepOutputCache cache = createCache(1024L);
+        Path input = write("input/1.csv", "id,name\n1,foo\n");
+        Path mappings = write("config/mappings.yml", "name: foo\n");
+
+        Properties p = parameters("mappingSpec", mappings.toUri().toString());
+        String key = computeKey(cache, p, input);
+
+        write("config/mappings.yml", "name: foo\nid: id\n");
+        assertNotEquals(key, computeKey(cache, p, input));
+    }
+
+    @Test
+    public void testMiss() throws Exception
+    {
+        StepOutputCache cache = createCache(1024L);
+        Path targetDir = folder.getRoot().toPath().resolve("output");
+
+        assertNull(cache.materialize("0123456789abcdef", targetDir));
+        assertFalse(Files.exists(targetDir));
+    }
+
+    @Test
+    public void testStoreAndMaterialize() throws Exception
+    {
+        StepOutputCache cache = createCache(1024L);
+        Path input = write("input/1.csv", "id,name\n1,foo\n");
+        Path output1 = write("run1/output/1.nt", "<a> <b> <c> .\n");
+        Path output2 = write("run1/output/1.csv", "id\n1\n");
+
+        String key = computeKey(cache, parameters("a", "1"), input);
+        cache.store(key, 17L, Arrays.asList(output1, output2));
+        assertEquals(1, cache.getNumberOfEntries());
+        assertEquals(Files.size(output1) + Files.size(output2), cache.getSize());
+
+        // A step with the same tool, configuration and input hits the cache
+
+        Path copy = write("other/1.csv", "id,name\n1,foo\n");
+        Path targetDir = folder.getRoot().toPath().resolve("run2/output");
+        StepOutputCache.Entry entry =
+            cache.materialize(computeKey(cache, parameters("a", "1"), copy), targetDir);
+        assertNotNull(entry);
+        assertEquals(17L, entry.getJobExecutionId());
+        assertEquals("<a> <b> <c> .\n",
+            new String(Files.readAllBytes(targetDir.resolve("1.nt")), StandardCharsets.UTF_8));
+        assertEquals("id\n1\n",
+            new String(Files.readAllBytes(targetDir.resolve("1.csv")), StandardCharsets.UTF_8));
+        assertFalse(Files.exists(targetDir.resolve(StepOutputCache.ENTRY_FILE_NAME)));
+
+        // A step with another configuration misses the cache
+
+        Path otherDir = folder.getRoot().toPath().resolve("run3/output");
+        assertNull(cache.materialize(computeKey(cache, parameters("a", "2"), copy), otherDir));
+    }
+
+    @Test
+    public void testReloadEntries() throws Exception
+    {
+        StepOutputCache cache = createCache(1024L);
+        Path output = write("run1/output/1.nt", "<a> <b> <c> .\n");
+        String key = cache.computeKey(EnumTool.TRIPLEGEO, parameters("a", "1"),
+            Collections.singletonList("input"), Collections.singletonList("1.nt"));
+        cache.store(key, 17L, Collections.singletonList(output));
+
+        // Leave a partial write behind
+        Files.createDirectories(rootDir.resolve(".tmp-partial"));
+
+        StepOutputCache reloaded = createCache(1024L);
+        assertEquals(1, reloaded.getNumberOfEntries());
+        assertEquals(Files.size(output), reloaded.getSize());
+        assertFalse(Files.exists(rootDir.resolve(".tmp-partial")));
+
+        Path targetDir = folder.getRoot().toPath().resolve("run2/output");
+        assertNotNull(reloaded.materialize(key, targetDir));
+        assertTrue(Files.isRegularFile(targetDir.resolve("1.nt")));
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsed() throws Exception
+    {
+        StepOutputCache cache = createCache(20L);
+        Path targetDir = folder.getRoot().toPath().resolve("output");
+
+        String[] keys = new String[3];
+        for (int i = 0; i < 3; i++) {
+            Path output = write(String.format("run%d/output/%d.nt", i, i), "0123456789");
+            keys[i] = cache.computeKey(EnumTool.TRIPLEGEO, parameters("i", String.valueOf(i)),
+                Collections.singletonList("input"), Collections.singletonList(output.getFileName().toString()));
+            if (i == 2) {
+                // Access the first entry, so that the second is the least recently used
+                assertNotNull(cache.materialize(keys[0], targetDir));
+            }
+            cache.store(keys[i], i, Collections.singletonList(output));
+            Thread.sleep(20L);
+        }
+
+        assertEquals(2, cache.getNumberOfEntries());
+        assertEquals(20L, cache.getSize());
+        assertNotNull(cache.materialize(keys[0], targetDir));
+        assertNull(cache.materialize(keys[1], targetDir));
+        assertNotNull(cache.materialize(keys[2], targetDir));
+    }
+
+    @Test
+    public void testNotStoreLargerThanBudget() throws Exception
+    {
+        StepOutputCache cache = createCache(5L);
+        Path output = write("run1/output/1.nt", "0123456789");
+
+        cache.store("0123456789abcdef", 1L, Collections.singletonList(output));
+        assertEquals(0, cache.getNumberOfEntries());
+        assertEquals(0L, cache.getSize());
+    }
+}
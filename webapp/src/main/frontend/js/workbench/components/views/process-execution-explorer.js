@@ -49,6 +49,10 @@ import {
   message,
 } from '../../service';
 
+import {
+  default as processEvents,
+} from '../../service/process-events';
+
 /**
  * Browse and manage process executions
  *
@@ -67,6 +71,7 @@ class ProcessExecutionExplorer extends React.Component {
     this.viewMap = this.viewMap.bind(this);
 
     this.refreshIntervalId = null;
+    this.unsubscribe = null;
   }
 
   /**
@@ -76,8 +81,13 @@ class ProcessExecutionExplorer extends React.Component {
    * @memberof ProcessExplorer
    */
   componentWillMount() {
+    // Refresh on execution events; poll only if events are not received
+    this.unsubscribe = processEvents.subscribe(() => this.search());
+
     this.refreshIntervalId = setInterval(() => {
-      this.search();
+      if (!processEvents.isConnected()) {
+        this.search();
+      }
     }, UPDATE_INTERVAL_SECONDS * 1000);
 
     this.search();
@@ -88,6 +98,10 @@ class ProcessExecutionExplorer extends React.Component {
       clearInterval(this.refreshIntervalId);
       this.refreshIntervalId = null;
     }
+    if (this.unsubscribe) {
+      this.unsubscribe();
+      this.unsubscribe = null;
+    }
   }
 
   search() {
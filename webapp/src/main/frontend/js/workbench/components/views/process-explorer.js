@@ -47,6 +47,10 @@ import {
   message,
 } from '../../service';
 
+import {
+  default as processEvents,
+} from '../../service/process-events';
+
 // TODO: Add i18n support
 
 /**
@@ -69,6 +73,7 @@ class ProcessExplorer extends React.Component {
     this.stopExecution = this.stopExecution.bind(this);
 
     this.refreshIntervalId = null;
+    this.unsubscribe = null;
   }
 
   /**
@@ -78,8 +83,13 @@ class ProcessExplorer extends React.Component {
    * @memberof ProcessExplorer
    */
   componentWillMount() {
+    // Refresh on execution events; poll only if events are not received
+    this.unsubscribe = processEvents.subscribe(() => this.search());
+
     this.refreshIntervalId = setInterval(() => {
-      this.search();
+      if (!processEvents.isConnected()) {
+        this.search();
+      }
     }, UPDATE_INTERVAL_SECONDS * 1000);
 
     this.search();
@@ -90,6 +100,10 @@ class ProcessExplorer extends React.Component {
       clearInterval(this.refreshIntervalId);
       this.refreshIntervalId = null;
     }
+    if (this.unsubscribe) {
+      this.unsubscribe();
+      this.unsubscribe = null;
+    }
   }
 
   search() {
@@ -0,0 +1,60 @@
+import _ from 'lodash';
+
+const EVENTS_URL = '/action/process/events';
+
+// Delay (milliseconds) for coalescing bursts of events into a single notification
+const NOTIFY_DELAY = 500;
+
+const listeners = new Set();
+
+let source = null;
+
+const notify = _.debounce((event) => {
+  listeners.forEach(listener => listener(event));
+}, NOTIFY_DELAY);
+
+const open = () => {
+  if (source || typeof EventSource === 'undefined') {
+    return;
+  }
+  source = new EventSource(EVENTS_URL, { withCredentials: true });
+  source.addEventListener('execution', (e) => notify(JSON.parse(e.data)));
+};
+
+const close = () => {
+  if (source) {
+    source.close();
+    source = null;
+  }
+};
+
+/**
+ * Subscribes to state transitions of process executions. A single stream is shared by all
+ * subscribers (and is closed when the last subscriber leaves).
+ *
+ * @param {function} listener - a callback invoked with the (last) event of a burst of events
+ * @returns {function} a function for unsubscribing
+ */
+export function subscribe(listener) {
+  listeners.add(listener);
+  open();
+
+  return () => {
+    listeners.delete(listener);
+    if (listeners.size === 0) {
+      close();
+    }
+  };
+}
+
+/**
+ * Returns true if events are currently received (so that polling may be skipped)
+ */
+export function isConnected() {
+  return source !== null && source.readyState === EventSource.OPEN;
+}
+
+export default {
+  isConnected,
+  subscribe,
+};
@@ -18,6 +18,7 @@ import org.springframework.core.io.FileSystemResource;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.annotation.Secured;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -26,6 +27,7 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import eu.slipo.workbench.common.model.BasicErrorCode;
@@ -54,6 +56,7 @@ import eu.slipo.workbench.web.model.process.ProcessExecutionQueryRequest;
 import eu.slipo.workbench.web.model.process.ProcessExecutionRecordView;
 import eu.slipo.workbench.web.model.process.ProcessQueryRequest;
 import eu.slipo.workbench.web.model.process.ProcessRecordView;
+import eu.slipo.workbench.web.service.ProcessExecutionEventSubscriber;
 import eu.slipo.workbench.web.service.ProcessService;
 
 /**
@@ -72,6 +75,9 @@ public class ProcessController extends BaseController {
     @Autowired
     private ProcessService processService;
 
+    @Autowired
+    private ProcessExecutionEventSubscriber executionEvents;
+
     /**
      * Search for processes
      *
@@ -523,6 +529,17 @@ public class ProcessController extends BaseController {
         return this.createOrUpdateProcess(id, request);
     }
 
+    /**
+     * Streams state transitions of process executions (as server-sent events). Users receive
+     * events only for their own processes, while administrators receive all events.
+     *
+     * @return a stream of events
+     */
+    @GetMapping(value = "/action/process/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamEvents() {
+        return this.executionEvents.subscribe(this.isAdmin() ? null : this.currentUserId());
+    }
+
     /**
      * Starts the current version of the selected process.
      *
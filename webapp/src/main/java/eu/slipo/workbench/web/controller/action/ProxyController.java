@@ -5,11 +5,17 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import javax.servlet.http.HttpServletRequest;
@@ -78,7 +84,30 @@ public class ProxyController implements InitializingBean {
     @Value("${vector-data.default.geometry-simple-column:the_geom_simple}")
     private String defaultGeometrySimpleColumn;
 
-    private final Map<String, List<String>> tableColumns = new HashMap<String, List<String>>();
+    /**
+     * The columns of a table. Instances are immutable, so that they can be shared between
+     * request threads
+     */
+    private static final class TableColumns {
+
+        /**
+         * The columns returned as feature properties (i.e. all columns except geometries)
+         */
+        private final List<String> columns;
+
+        /**
+         * The type of each column (as reported by {@code information_schema.columns.data_type})
+         */
+        private final Map<String, String> types;
+
+        private TableColumns(List<String> columns, Map<String, String> types) {
+            this.columns = Collections.unmodifiableList(new ArrayList<String>(columns));
+            this.types = Collections.unmodifiableMap(new HashMap<String, String>(types));
+        }
+
+    }
+
+    private final Map<String, TableColumns> tableColumns = new ConcurrentHashMap<String, TableColumns>();
 
     @Autowired
     private MapConfiguration mapConfiguration;
@@ -208,10 +237,17 @@ public class ProxyController implements InitializingBean {
             }
 
             // Get table schema
-            List<String> columns = getColumns(tableName);
+            TableColumns table = getColumns(tableName);
+            List<String> columns = table.columns;
 
             // Create where clause
-            Pair<String, Object[]> filterAndArguments = this.getWhereClauseAndArguments(columns, filters);
+            Pair<String, Object[]> filterAndArguments;
+            try {
+                filterAndArguments = this.getWhereClauseAndArguments(columns, table.types, filters);
+            } catch (IllegalArgumentException ex) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST, ex.getMessage());
+                return;
+            }
 
             String where = "ST_Intersects(ST_Transform(ST_MakeEnvelope(%4$s, 3857), 4326), \"%6$s\") = true " + filterAndArguments.getLeft();
 
@@ -245,7 +281,9 @@ public class ProxyController implements InitializingBean {
         response.setStatus(HttpServletResponse.SC_OK);
     }
 
-    private Pair<String, Object[]> getWhereClauseAndArguments(List<String> columns, List<Triple<String, String, String>> filters) {
+    private Pair<String, Object[]> getWhereClauseAndArguments(
+        List<String> columns, Map<String, String> columnTypes, List<Triple<String, String, String>> filters
+    ) {
         String where = "";
 
         List<Object> arguments = new ArrayList<Object>();
@@ -253,45 +291,46 @@ public class ProxyController implements InitializingBean {
         if (!filters.isEmpty()) {
             for (Triple<String, String, String> filter : filters) {
                 if (columns.contains(filter.getLeft())) {
+                    final String column = filter.getLeft();
+                    final String type = columnTypes.get(column);
+                    final boolean isText = this.isTextType(type);
+                    // Text operators are applied to the text representation of typed columns
+                    final String textColumn = isText ? column : column + "::varchar";
+
                     String clause = " and ";
                     switch (filter.getMiddle()) {
                         case "null":
-                            clause += "(" + filter.getLeft() + " is null or " + filter.getLeft() + " = '')";
+                            clause += isText ? "(" + column + " is null or " + column + " = '')" : column + " is null";
                             break;
                         case "notNull":
-                            clause += "(" + filter.getLeft() + " is not null and " + filter.getLeft() + " <> '')";
+                            clause += isText ? "(" + column + " is not null and " + column + " <> '')" : column + " is not null";
                             break;
                         case "contains":
-                            clause += filter.getLeft() + " like ? ";
+                            clause += textColumn + " like ? ";
                             arguments.add("%" + filter.getRight() + "%");
                             break;
                         case "startsWith":
-                            clause += filter.getLeft() + " like ? ";
+                            clause += textColumn + " like ? ";
                             arguments.add(filter.getRight() + "%");
                             break;
                         case "endsWith":
-                            clause += filter.getLeft() + " like ? ";
+                            clause += textColumn + " like ? ";
                             arguments.add("%" + filter.getRight());
                             break;
                         case "equal":
-                            clause += filter.getLeft() + " = ? ";
-                            arguments.add(filter.getRight());
+                            clause += this.getComparison(column, type, "=", filter.getRight(), arguments);
                             break;
                         case "less":
-                            clause += filter.getLeft() + " < ? ";
-                            arguments.add(filter.getRight());
+                            clause += this.getComparison(column, type, "<", filter.getRight(), arguments);
                             break;
                         case "lessOrEqual":
-                            clause += filter.getLeft() + " <= ? ";
-                            arguments.add(filter.getRight());
+                            clause += this.getComparison(column, type, "<=", filter.getRight(), arguments);
                             break;
                         case "greater":
-                            clause += filter.getLeft() + " > ? ";
-                            arguments.add(filter.getRight());
+                            clause += this.getComparison(column, type, ">", filter.getRight(), arguments);
                             break;
                         case "greaterOrEqual":
-                            clause += filter.getLeft() + " >= ? ";
-                            arguments.add(filter.getRight());
+                            clause += this.getComparison(column, type, ">=", filter.getRight(), arguments);
                             break;
                         default:
                             continue;
@@ -304,29 +343,73 @@ public class ProxyController implements InitializingBean {
         return Pair.<String, Object[]>of(where, arguments.toArray(new Object[0]));
     }
 
-    private List<String> getColumns(String tableName) {
-        if (tableColumns.containsKey(tableName)) {
-            return tableColumns.get(tableName);
+    /**
+     * Creates a comparison of a column with a value. The value is converted to the type of the
+     * column, so that the comparison may use an index (and typed values are not compared as
+     * text).
+     *
+     * @throws IllegalArgumentException if the value cannot be converted to the type of the column
+     */
+    private String getComparison(String column, String type, String operator, String value, List<Object> arguments) {
+        Object argument = this.toArgument(type, value);
+        if (argument == null) {
+            throw new IllegalArgumentException(String.format(
+                "Value [%s] for column [%s] is not a valid %s", value, column, type));
+        }
+        arguments.add(argument);
+        return column + " " + operator + " ? ";
+    }
+
+    private Object toArgument(String type, String value) {
+        if (this.isTextType(type)) {
+            return value;
         }
-        synchronized (tableColumns) {
-            if (tableColumns.containsKey(tableName)) {
-                return tableColumns.get(tableName);
+        final String text = value.trim();
+        try {
+            switch (type) {
+                case "bigint":
+                    return Long.parseLong(text);
+                case "double precision":
+                    return Double.parseDouble(text);
+                case "boolean":
+                    return text.equalsIgnoreCase("true") ? Boolean.TRUE : text.equalsIgnoreCase("false") ? Boolean.FALSE : null;
+                case "timestamp without time zone":
+                    return Timestamp.valueOf(text.length() == 10 ?
+                        LocalDate.parse(text).atStartOfDay() : LocalDateTime.parse(text.replace(' ', 'T')));
+                default:
+                    return null;
             }
+        } catch (NumberFormatException | DateTimeParseException ex) {
+            return null;
+        }
+    }
 
-            String columnQuery = String.format(
-                "select column_name from information_schema.columns where table_name='%s'", tableName);
+    private boolean isTextType(String dataType) {
+        return dataType == null || dataType.equals("character varying") || dataType.equals("text");
+    }
 
-            List<Map<String, Object>> rows = jdbcTemplate.queryForList(columnQuery);
-            List<String> columns = rows.stream()
-                .map(r -> (String) r.get("column_name"))
-                .filter(c -> !c.equalsIgnoreCase(defaultGeometryColumn) &&
-                             !c.equalsIgnoreCase(defaultGeometrySimpleColumn))
-                .collect(Collectors.toList());
+    private TableColumns getColumns(String tableName) {
+        TableColumns result = tableColumns.get(tableName);
+        if (result != null) {
+            return result;
+        }
 
-            tableColumns.put(tableName, columns);
-            return columns;
+        String columnQuery = String.format(
+            "select column_name, data_type from information_schema.columns where table_name='%s'", tableName);
 
-        }
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(columnQuery);
+        List<String> columns = rows.stream()
+            .map(r -> (String) r.get("column_name"))
+            .filter(c -> !c.equalsIgnoreCase(defaultGeometryColumn) &&
+                         !c.equalsIgnoreCase(defaultGeometrySimpleColumn))
+            .collect(Collectors.toList());
+        Map<String, String> columnTypes = new HashMap<String, String>();
+        rows.forEach(r -> columnTypes.put((String) r.get("column_name"), (String) r.get("data_type")));
+
+        // If another request has already loaded the columns, keep the existing value
+        TableColumns loaded = new TableColumns(columns, columnTypes);
+        result = tableColumns.putIfAbsent(tableName, loaded);
+        return result != null ? result : loaded;
     }
 
     private void handleError(Exception ex, HttpServletResponse response) throws IOException {
@@ -2,8 +2,10 @@ package eu.slipo.workbench.web.repository;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -58,13 +60,16 @@ public class DefaultFeatureRepository implements FeatureRepository {
 
     private JdbcTemplate jdbcTemplate;
 
-    private final Map<String, List<String>> tableColumns = new HashMap<String, List<String>>();
+    /**
+     * Column types (as reported by {@code information_schema.columns.data_type}) per table
+     */
+    private final Map<String, Map<String, String>> tableColumns = new HashMap<String, Map<String, String>>();
 
     @Override
     public void update(
         Integer userId, UUID tableName, long id, Map<String, String> properties, Geometry geometry
     ) throws Exception {
-        List<String> columns = this.getColumns(tableName.toString());
+        Map<String, String> columns = this.getColumns(tableName.toString());
         if (columns.isEmpty()) {
             throw new Exception(String.format("Table %s was not found", tableName.toString()));
         }
@@ -80,8 +85,8 @@ public class DefaultFeatureRepository implements FeatureRepository {
         List<Map<String, Object>> rows = jdbcTemplate.queryForList(query, new Object[] { id });
         Map<String, String> current = new HashMap<String, String>();
         for (String key : properties.keySet()) {
-            if (columns.contains(key) && this.isUpdatable(key)) {
-                current.put(key, (String) rows.get(0).get(key));
+            if (columns.containsKey(key) && this.isUpdatable(key)) {
+                current.put(key, Objects.toString(rows.get(0).get(key), null));
             }
         }
 
@@ -111,8 +116,12 @@ public class DefaultFeatureRepository implements FeatureRepository {
 
         String update = "update \"%1$s\".\"%2$s\" set \n";
         for (String key : properties.keySet()) {
-            if (columns.contains(key) && this.isUpdatable(key)) {
-                update += (updateParams.isEmpty() ? "" : ",") + key + " = ? \n";
+            if (columns.containsKey(key) && this.isUpdatable(key)) {
+                // Values of typed columns are converted by the database; an empty value is
+                // converted to null
+                final String value = this.isTextType(columns.get(key)) ?
+                    "?" : String.format("CAST(NULLIF(?, '') AS %s)", columns.get(key));
+                update += (updateParams.isEmpty() ? "" : ",") + key + " = " + value + " \n";
                 updateParams.add(properties.get(key));
             }
         }
@@ -157,7 +166,7 @@ public class DefaultFeatureRepository implements FeatureRepository {
             .collect(Collectors.toList());
     }
 
-    private List<String> getColumns(String tableName) {
+    private Map<String, String> getColumns(String tableName) {
         if (tableColumns.containsKey(tableName)) {
             return tableColumns.get(tableName);
         }
@@ -167,13 +176,16 @@ public class DefaultFeatureRepository implements FeatureRepository {
                 return tableColumns.get(tableName);
             }
 
-            String columnQuery = "select column_name from information_schema.columns where table_name = ?";
+            String columnQuery = "select column_name, data_type from information_schema.columns where table_name = ?";
 
             List<Map<String, Object>> rows = jdbcTemplate.queryForList(columnQuery, new Object[] { tableName });
-            List<String> columns = rows.stream()
-                .map(r -> (String) r.get("column_name"))
-                .filter(c -> !c.equalsIgnoreCase(defaultGeometryColumn) && !c.equalsIgnoreCase(defaultGeometrySimpleColumn))
-                .collect(Collectors.toList());
+            Map<String, String> columns = new LinkedHashMap<String, String>();
+            rows.stream()
+                .filter(r -> {
+                    String c = (String) r.get("column_name");
+                    return !c.equalsIgnoreCase(defaultGeometryColumn) && !c.equalsIgnoreCase(defaultGeometrySimpleColumn);
+                })
+                .forEach(r -> columns.put((String) r.get("column_name"), (String) r.get("data_type")));
 
             tableColumns.put(tableName, columns);
 
@@ -181,6 +193,10 @@ public class DefaultFeatureRepository implements FeatureRepository {
         }
     }
 
+    private boolean isTextType(String dataType) {
+        return dataType == null || dataType.equals("character varying") || dataType.equals("text");
+    }
+
     private boolean isUpdatable(String column) {
         return (!column.equalsIgnoreCase(this.defaultIdColumn)) &&
                (!column.equalsIgnoreCase(this.defaultUriColumn)) &&
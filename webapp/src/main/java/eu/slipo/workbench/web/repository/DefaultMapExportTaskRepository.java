@@ -83,6 +83,8 @@ public class DefaultMapExportTaskRepository implements MapExportTaskRepository {
             case COMPLETED:
             case FAILED:
                 task.setCompletedOn(ZonedDateTime.now());
+                task.setLeaseOwner(null);
+                task.setLeaseExpiresOn(null);
                 break;
             case RUNNING:
                 task.setStartedOn(ZonedDateTime.now());
@@ -121,16 +123,97 @@ public class DefaultMapExportTaskRepository implements MapExportTaskRepository {
     }
 
     @Override
-    public void resetRunningTasks() {
-        String queryString = "FROM ProcessExecutionMapExport e WHERE e.status = :running";
+    public MapExportTask claim(String owner, int leaseSeconds) {
+        // Lock the candidate row, skipping rows locked by concurrent claims. The lock is held
+        // until the transaction commits
+        String selectString =
+            "SELECT m.id FROM public.process_execution_map_export m " +
+            "  JOIN public.process_execution e ON e.id = m.execution_workflow " +
+            "WHERE e.status = :completed AND " +
+            "      (m.status = :pending OR " +
+            "       (m.status = :running AND (m.lease_expires_on IS NULL OR m.lease_expires_on < now()))) " +
+            "ORDER BY m.created_on, m.id " +
+            "LIMIT 1 " +
+            "FOR UPDATE OF m SKIP LOCKED";
+
+        List<?> result = entityManager.createNativeQuery(selectString)
+            .setParameter("completed", EnumProcessExecutionStatus.COMPLETED.name())
+            .setParameter("pending", EnumMapExportStatus.PENDING.name())
+            .setParameter("running", EnumMapExportStatus.RUNNING.name())
+            .getResultList();
+
+        if (result.isEmpty()) {
+            return null;
+        }
+        long taskId = ((Number) result.get(0)).longValue();
+
+        // Lease expiration is computed by the database clock, which is shared by all workers
+        String updateString =
+            "UPDATE public.process_execution_map_export " +
+            "SET status = :running, started_on = now(), lease_owner = :owner, " +
+            "    lease_expires_on = now() + :seconds * interval '1 second' " +
+            "WHERE id = :id";
+
+        entityManager.createNativeQuery(updateString)
+            .setParameter("running", EnumMapExportStatus.RUNNING.name())
+            .setParameter("owner", owner)
+            .setParameter("seconds", leaseSeconds)
+            .setParameter("id", taskId)
+            .executeUpdate();
 
-        TypedQuery<ProcessExecutionMapExportEntity> query = entityManager
-            .createQuery(queryString, ProcessExecutionMapExportEntity.class)
-            .setParameter("running", EnumMapExportStatus.RUNNING);
+        ProcessExecutionMapExportEntity task = entityManager.find(ProcessExecutionMapExportEntity.class, taskId);
+        entityManager.refresh(task);
+
+        return task.toRecord();
+    }
+
+    @Override
+    public boolean renewLease(long taskId, String owner, int leaseSeconds) {
+        String updateString =
+            "UPDATE public.process_execution_map_export " +
+            "SET lease_expires_on = now() + :seconds * interval '1 second' " +
+            "WHERE id = :id AND status = :running AND lease_owner = :owner";
+
+        int count = entityManager.createNativeQuery(updateString)
+            .setParameter("seconds", leaseSeconds)
+            .setParameter("id", taskId)
+            .setParameter("running", EnumMapExportStatus.RUNNING.name())
+            .setParameter("owner", owner)
+            .executeUpdate();
+
+        return count == 1;
+    }
+
+    @Override
+    public void release(long taskId, String owner) {
+        String updateString =
+            "UPDATE public.process_execution_map_export " +
+            "SET status = :pending, lease_owner = NULL, lease_expires_on = NULL " +
+            "WHERE id = :id AND status = :running AND lease_owner = :owner";
+
+        entityManager.createNativeQuery(updateString)
+            .setParameter("pending", EnumMapExportStatus.PENDING.name())
+            .setParameter("id", taskId)
+            .setParameter("running", EnumMapExportStatus.RUNNING.name())
+            .setParameter("owner", owner)
+            .executeUpdate();
+    }
+
+    @Override
+    public boolean complete(long taskId, String owner, EnumMapExportStatus status) {
+        String updateString =
+            "UPDATE public.process_execution_map_export " +
+            "SET status = :status, completed_on = now(), lease_owner = NULL, lease_expires_on = NULL " +
+            "WHERE id = :id AND status = :running AND lease_owner = :owner";
+
+        int count = entityManager.createNativeQuery(updateString)
+            .setParameter("status", status.name())
+            .setParameter("id", taskId)
+            .setParameter("running", EnumMapExportStatus.RUNNING.name())
+            .setParameter("owner", owner)
+            .executeUpdate();
 
-        query.getResultList().stream().forEach(t -> {
-            t.setStatus(EnumMapExportStatus.PENDING);
-        });
+        return count == 1;
     }
 
 }
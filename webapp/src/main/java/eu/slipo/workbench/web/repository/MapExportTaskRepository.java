@@ -47,8 +47,49 @@ public interface MapExportTaskRepository {
     List<MapExportTask> getPendingTasks();
 
     /**
-     * Resets status for all running tasks
+     * Claims the least recent pending task, or a running task whose lease has expired (e.g.
+     * because its worker has crashed). The claimed task is marked as running and is leased to
+     * the given owner. Rows locked by concurrent claims are skipped, so that several workers
+     * (and several application instances) may safely share the same queue.
+     *
+     * @param owner The id of the claiming worker.
+     * @param leaseSeconds The lease duration in seconds.
+     * @return The claimed {@link MapExportTask}, or {@code null} if no task is available.
+     */
+    MapExportTask claim(String owner, int leaseSeconds);
+
+    /**
+     * Extends the lease of a running task
+     *
+     * @param taskId The export task id.
+     * @param owner The id of the worker holding the lease.
+     * @param leaseSeconds The lease duration in seconds (from now).
+     * @return {@code true} if the lease was renewed, or {@code false} if the lease is no longer
+     * held by the given owner.
+     */
+    boolean renewLease(long taskId, String owner, int leaseSeconds);
+
+    /**
+     * Releases the lease of a running task and resets its status to pending, so that it can be
+     * claimed again
+     *
+     * @param taskId The export task id.
+     * @param owner The id of the worker holding the lease.
+     */
+    void release(long taskId, String owner);
+
+    /**
+     * Sets the final status of a running task and releases its lease, provided that the lease
+     * is still held by the given owner. A worker whose lease has expired (and whose task may
+     * have been claimed by another worker) cannot overwrite the status of the task.
+     *
+     * @param taskId The export task id.
+     * @param owner The id of the worker holding the lease.
+     * @param status The final status (either {@link EnumMapExportStatus#COMPLETED} or
+     * {@link EnumMapExportStatus#FAILED}).
+     * @return {@code true} if the status was updated, or {@code false} if the lease is no longer
+     * held by the given owner.
      */
-    void resetRunningTasks();
+    boolean complete(long taskId, String owner, EnumMapExportStatus status);
 
 }
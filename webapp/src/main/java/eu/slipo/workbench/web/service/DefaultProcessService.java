@@ -2,8 +2,10 @@ package eu.slipo.workbench.web.service;
 
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringWriter;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
@@ -18,8 +20,10 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Properties;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
@@ -67,10 +71,10 @@ import eu.slipo.workbench.common.model.process.ProcessExecutionStepFileRecord;
 import eu.slipo.workbench.common.model.process.ProcessExecutionStepLogsRecord;
 import eu.slipo.workbench.common.model.process.ProcessExecutionStepRecord;
 import eu.slipo.workbench.common.model.process.ProcessExecutionStopException;
-import eu.slipo.workbench.common.model.process.ProcessIdentifier;
 import eu.slipo.workbench.common.model.process.ProcessNotFoundException;
 import eu.slipo.workbench.common.model.process.ProcessQuery;
 import eu.slipo.workbench.common.model.process.ProcessRecord;
+import eu.slipo.workbench.common.model.process.RunningProcessSet;
 import eu.slipo.workbench.common.model.process.Step;
 import eu.slipo.workbench.common.model.resource.DataSource;
 import eu.slipo.workbench.common.model.resource.EnumDataSourceType;
@@ -128,6 +132,11 @@ public class DefaultProcessService implements ProcessService {
     @Autowired
     private ImportService importService;
 
+    /**
+     * The last known set of running processes
+     */
+    private volatile RunningProcessSet runningProcessSet;
+
     private Integer currentUserId() {
         return authenticationFacade.getCurrentUserId();
     }
@@ -666,7 +675,13 @@ public class DefaultProcessService implements ProcessService {
         }
 
         try {
-            return FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+            if (!file.getName().endsWith(".gz")) {
+                return FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+            }
+            // Log files may be compressed by the rpc-server
+            try (InputStream in = new GZIPInputStream(new FileInputStream(file))) {
+                return IOUtils.toString(in, StandardCharsets.UTF_8);
+            }
         } catch (IOException ex) {
             String message = "Failed to access file";
             logger.error(message,ex);
@@ -674,21 +689,29 @@ public class DefaultProcessService implements ProcessService {
         }
     }
 
-    // TODO: Store process status in database redundant field to avoid querying RPC-server
-    // on every request
+    /**
+     * Returns the set of running processes. The set is cached and is only fetched again
+     * from the RPC server when its version has changed.
+     */
+    private RunningProcessSet runningProcesses() {
+        final RunningProcessSet cached = this.runningProcessSet;
+        final RunningProcessSet result = this.processOperator.listRunning(cached == null ? -1L : cached.getVersion());
+
+        if (result.isUnchanged()) {
+            return cached;
+        }
+        this.runningProcessSet = result;
+        return result;
+    }
 
     private void updateProcessRecords(List<ProcessRecord> records) {
         try {
-            final List<ProcessIdentifier> running = this.processOperator.list();
+            final RunningProcessSet running = this.runningProcesses();
 
             // Update most recent versions
             records.stream()
             .forEach(p -> {
-                final Optional<ProcessIdentifier> identifier = running.stream()
-                    .filter(e -> e.getId() == p.getId() && e.getVersion() == p.getVersion())
-                    .findFirst();
-
-                p.setRunning(identifier.isPresent());
+                p.setRunning(running.contains(p.getId(), p.getVersion()));
                 // Do not send definition data to the client
                 p.setDefinition(null);
             });
@@ -697,11 +720,7 @@ public class DefaultProcessService implements ProcessService {
             records.stream()
                 .flatMap(p -> p.getRevisions().stream())
                 .forEach(p -> {
-                    final Optional<ProcessIdentifier> identifier = running.stream()
-                        .filter(e -> e.getId() == p.getId() && e.getVersion() == p.getVersion())
-                        .findFirst();
-
-                    p.setRunning(identifier.isPresent());
+                    p.setRunning(running.contains(p.getId(), p.getVersion()));
                     // Do not send definition data to the client
                     p.setDefinition(null);
                 });
@@ -712,15 +731,11 @@ public class DefaultProcessService implements ProcessService {
 
     private void updateProcessExecutionRecords(List<ProcessExecutionRecord> records) {
         try {
-            final List<ProcessIdentifier> running = this.processOperator.list();
+            final RunningProcessSet running = this.runningProcesses();
 
             records.stream()
             .forEach(e -> {
-                final Optional<ProcessIdentifier> identifier = running.stream()
-                    .filter(r -> r.getId() == e.getProcess().getId() && r.getVersion() == e.getProcess().getVersion())
-                    .findFirst();
-
-                e.setRunning(identifier.isPresent());
+                e.setRunning(running.contains(e.getProcess().getId(), e.getProcess().getVersion()));
             });
         } catch(Exception ex) {
             // Ignore
@@ -729,15 +744,11 @@ public class DefaultProcessService implements ProcessService {
 
     private void updateProcessExecutionApiCallRecords(List<ProcessExecutionApiRecord> records) {
         try {
-            final List<ProcessIdentifier> running = this.processOperator.list();
+            final RunningProcessSet running = this.runningProcesses();
 
             records.stream()
             .forEach(e -> {
-                final Optional<ProcessIdentifier> identifier = running.stream()
-                    .filter(r -> r.getId() == e.getProcessId() && r.getVersion() == e.getProcessVersion())
-                    .findFirst();
-
-                e.setRunning(identifier.isPresent());
+                e.setRunning(running.contains(e.getProcessId(), e.getProcessVersion()));
             });
         } catch(Exception ex) {
             // Ignore
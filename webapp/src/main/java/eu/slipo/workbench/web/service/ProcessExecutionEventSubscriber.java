@@ -0,0 +1,340 @@
+package eu.slipo.workbench.web.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import eu.slipo.workbench.common.model.process.ProcessExecutionEvent;
+import eu.slipo.workbench.common.model.process.ProcessIdentifier;
+
+/**
+ * Subscribes (once) to the stream of execution events published by the RPC server, and fans the
+ * events out to local watchers (see {@link #watch(ProcessIdentifier)}) and to browser clients (see
+ * {@link #subscribe(Integer)}).
+ *
+ * <p>The subscription is kept open by a background thread; when the stream is interrupted, it is
+ * reopened asking for the events missed meanwhile. Since events may still be lost (e.g. when the
+ * RPC server restarts), a watcher is also woken up on every reconnection, and is always expected to
+ * read the actual state from the repository.
+ */
+@Service
+public class ProcessExecutionEventSubscriber {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProcessExecutionEventSubscriber.class);
+
+    private static final String EVENT_NAME = "execution";
+
+    private static final String RESET_EVENT_NAME = "reset";
+
+    private static final long MAX_RECONNECT_DELAY = 30000L;
+
+    /**
+     * A watch on the executions of a process revision
+     */
+    public class Watch implements AutoCloseable {
+
+        private final ProcessIdentifier processIdentifier;
+
+        private final Semaphore signal = new Semaphore(0);
+
+        private Watch(ProcessIdentifier processIdentifier) {
+            this.processIdentifier = processIdentifier;
+        }
+
+        private void signal() {
+            this.signal.release();
+        }
+
+        /**
+         * Waits until an event concerning the watched process arrives (or the stream was
+         * reconnected), or until the given timeout expires.
+         *
+         * @return {@code true} if an event has arrived (since the last call), {@code false} if the
+         *   timeout has expired
+         * @throws InterruptedException
+         */
+        public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+            final boolean signaled = this.signal.tryAcquire(timeout, unit);
+            this.signal.drainPermits();
+            return signaled;
+        }
+
+        @Override
+        public void close() {
+            ProcessExecutionEventSubscriber.this.watches.computeIfPresent(this.processIdentifier, (k, watches) -> {
+                watches.remove(this);
+                return watches.isEmpty() ? null : watches;
+            });
+        }
+    }
+
+    /**
+     * A browser client, receiving events for the processes of a user (or for all processes)
+     */
+    private static class Client {
+
+        private final SseEmitter emitter;
+
+        private final Integer userId;
+
+        Client(SseEmitter emitter, Integer userId) {
+            this.emitter = emitter;
+            this.userId = userId;
+        }
+
+        boolean accepts(ProcessExecutionEvent event) {
+            return this.userId == null || this.userId.equals(event.getCreatedBy());
+        }
+    }
+
+    @Value("${slipo.rpc-server.url:http://localhost:8080}")
+    private String rootUrl;
+
+    @Value("${slipo.rpc-server.events.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * The time after which a browser stream is closed (and is expected to be reopened by the client)
+     */
+    @Value("${slipo.rpc-server.events.client-timeout-seconds:600}")
+    private long clientTimeout;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final Map<ProcessIdentifier, Set<Watch>> watches = new ConcurrentHashMap<>();
+
+    private final Set<Client> clients = new CopyOnWriteArraySet<>();
+
+    private final ExecutorService clientSender =
+        Executors.newSingleThreadExecutor(new CustomizableThreadFactory("process-events-"));
+
+    private volatile boolean running;
+
+    private volatile HttpURLConnection connection;
+
+    private String lastEventId;
+
+    @PostConstruct
+    private void start() {
+        if (!this.enabled) {
+            return;
+        }
+        this.running = true;
+
+        final Thread thread = new Thread(this::run, "rpc-events");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @PreDestroy
+    private void stop() {
+        this.running = false;
+
+        final HttpURLConnection connection = this.connection;
+        if (connection != null) {
+            connection.disconnect();
+        }
+        this.clientSender.shutdownNow();
+    }
+
+    /**
+     * Returns {@code true} if events are received from the RPC server (so a watcher may wait
+     * longer before checking the state itself)
+     */
+    public boolean isConnected() {
+        return this.connection != null;
+    }
+
+    /**
+     * Starts watching for events concerning the executions of a process revision. The returned
+     * watch must be closed when no longer needed.
+     */
+    public Watch watch(ProcessIdentifier processIdentifier) {
+        final Watch watch = new Watch(processIdentifier);
+        this.watches.compute(processIdentifier, (k, watches) -> {
+            final Set<Watch> result = watches == null ? new CopyOnWriteArraySet<>() : watches;
+            result.add(watch);
+            return result;
+        });
+        return watch;
+    }
+
+    /**
+     * Creates a stream of events for a browser client
+     *
+     * @param userId The user whose processes are of interest, or {@code null} for all processes
+     */
+    public SseEmitter subscribe(Integer userId) {
+        final SseEmitter emitter = new SseEmitter(this.clientTimeout * 1000L);
+        final Client client = new Client(emitter, userId);
+
+        emitter.onCompletion(() -> this.clients.remove(client));
+        emitter.onTimeout(() -> this.clients.remove(client));
+        this.clients.add(client);
+
+        return emitter;
+    }
+
+    private void run() {
+        long delay = 1000L;
+
+        while (this.running) {
+            try {
+                this.receive();
+                delay = 1000L;
+            } catch (IOException ex) {
+                logger.warn("Lost stream of execution events from RPC server: {}", ex.getMessage());
+            } catch (Exception ex) {
+                logger.error("Failed to receive execution events from RPC server", ex);
+            } finally {
+                this.connection = null;
+            }
+
+            // Anything may have been missed: wake up every watcher
+            this.watches.values().stream().flatMap(Set::stream).forEach(Watch::signal);
+
+            if (!this.running) {
+                break;
+            }
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException ex) {
+                break;
+            }
+            delay = Math.min(delay * 2, MAX_RECONNECT_DELAY);
+        }
+    }
+
+    private void receive() throws IOException {
+        final URL url = URI.create(this.rootUrl).normalize().resolve("/api/proc/events").toURL();
+
+        final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestProperty("Accept", MediaType.TEXT_EVENT_STREAM_VALUE);
+        if (this.lastEventId != null) {
+            connection.setRequestProperty("Last-Event-ID", this.lastEventId);
+        }
+        connection.setConnectTimeout(5000);
+        // The server sends a heartbeat every few seconds
+        connection.setReadTimeout(60000);
+        connection.connect();
+        if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+            throw new IOException("Received HTTP " + connection.getResponseCode());
+        }
+        this.connection = connection;
+        logger.info("Receiving execution events from {}", url);
+
+        try (BufferedReader reader = new BufferedReader(
+            new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))
+        ) {
+            String id = null, name = null;
+            StringBuilder data = new StringBuilder();
+            String line;
+            while (this.running && (line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    // Dispatch event
+                    if (id != null) {
+                        this.lastEventId = id;
+                    }
+                    if (name != null || data.length() > 0) {
+                        this.dispatch(name == null ? "message" : name, data.toString());
+                    }
+                    id = null;
+                    name = null;
+                    data.setLength(0);
+                } else if (line.startsWith(":")) {
+                    // A comment (heartbeat)
+                } else {
+                    final int i = line.indexOf(':');
+                    final String field = i < 0 ? line : line.substring(0, i);
+                    String value = i < 0 ? "" : line.substring(i + 1);
+                    if (value.startsWith(" ")) {
+                        value = value.substring(1);
+                    }
+                    switch (field) {
+                        case "id":
+                            id = value;
+                            break;
+                        case "event":
+                            name = value;
+                            break;
+                        case "data":
+                            if (data.length() > 0) {
+                                data.append('\n');
+                            }
+                            data.append(value);
+                            break;
+                        default:
+                            // Ignore
+                            break;
+                    }
+                }
+            }
+        }
+    }
+
+    private void dispatch(String name, String data) throws IOException {
+        switch (name) {
+            case EVENT_NAME: {
+                final ProcessExecutionEvent event = this.objectMapper.readValue(data, ProcessExecutionEvent.class);
+                final ProcessIdentifier processIdentifier =
+                    ProcessIdentifier.of(event.getProcessId(), event.getProcessVersion());
+
+                final Set<Watch> watches = this.watches.get(processIdentifier);
+                if (watches != null) {
+                    watches.forEach(Watch::signal);
+                }
+                this.clientSender.execute(() -> this.send(event));
+                break;
+            }
+            case RESET_EVENT_NAME:
+                logger.info("Execution events were missed; notifying all watchers");
+                this.watches.values().stream().flatMap(Set::stream).forEach(Watch::signal);
+                break;
+            default:
+                // Ignore
+                break;
+        }
+    }
+
+    private void send(ProcessExecutionEvent event) {
+        for (Client client : this.clients) {
+            if (!client.accepts(event)) {
+                continue;
+            }
+            try {
+                client.emitter.send(SseEmitter.event().name(EVENT_NAME).data(event, MediaType.APPLICATION_JSON));
+            } catch (IOException | IllegalStateException ex) {
+                // The client has gone away
+                this.clients.remove(client);
+                client.emitter.completeWithError(ex);
+            }
+        }
+    }
+}
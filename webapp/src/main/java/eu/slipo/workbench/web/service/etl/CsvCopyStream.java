@@ -0,0 +1,110 @@
+package eu.slipo.workbench.web.service.etl;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+/**
+ * A {@code COPY ... FROM STDIN WITH (FORMAT csv)} operation fed row by row. Rows are encoded as
+ * CSV (with the default delimiter and quote characters) and sent in large chunks.
+ */
+class CsvCopyStream {
+
+    /**
+     * Size in characters of the buffer collected before data is sent to the server
+     */
+    private static final int FLUSH_SIZE = 1024 * 1024;
+
+    private final CopyIn copyIn;
+
+    private final StringBuilder buffer = new StringBuilder(FLUSH_SIZE + 4096);
+
+    private boolean firstValue = true;
+
+    CsvCopyStream(Connection connection, String sql) throws SQLException {
+        this.copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(sql);
+    }
+
+    CsvCopyStream value(long value) {
+        this.separate();
+        this.buffer.append(value);
+        return this;
+    }
+
+    CsvCopyStream value(String value) {
+        this.separate();
+        // An unquoted empty value is NULL; a quoted one is an empty string
+        if (value != null) {
+            this.buffer.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                final char c = value.charAt(i);
+                if (c == '"') {
+                    this.buffer.append('"');
+                }
+                this.buffer.append(c);
+            }
+            this.buffer.append('"');
+        }
+        return this;
+    }
+
+    /**
+     * Appends a value using its string representation (which must be accepted as input by the
+     * type of the target column)
+     */
+    CsvCopyStream value(Object value) {
+        if (value == null || value instanceof String) {
+            return this.value((String) value);
+        }
+        this.separate();
+        this.buffer.append(value.toString());
+        return this;
+    }
+
+    void endRow() throws SQLException {
+        this.buffer.append('\n');
+        this.firstValue = true;
+        if (this.buffer.length() >= FLUSH_SIZE) {
+            this.flush();
+        }
+    }
+
+    /**
+     * Completes the operation
+     *
+     * @return the number of rows copied
+     */
+    long end() throws SQLException {
+        this.flush();
+        return this.copyIn.endCopy();
+    }
+
+    void cancel() {
+        try {
+            if (this.copyIn.isActive()) {
+                this.copyIn.cancelCopy();
+            }
+        } catch (SQLException ex) {
+            // Ignore; the connection is closed anyway
+        }
+    }
+
+    private void separate() {
+        if (!this.firstValue) {
+            this.buffer.append(',');
+        }
+        this.firstValue = false;
+    }
+
+    private void flush() throws SQLException {
+        if (this.buffer.length() > 0) {
+            final byte[] data = this.buffer.toString().getBytes(StandardCharsets.UTF_8);
+            this.copyIn.writeToCopy(data, 0, data.length);
+            this.buffer.setLength(0);
+        }
+    }
+
+}
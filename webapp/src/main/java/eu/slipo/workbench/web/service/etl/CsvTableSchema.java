@@ -0,0 +1,354 @@
+package eu.slipo.workbench.web.service.etl;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.apache.commons.csv.CSVRecord;
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKBWriter;
+import com.vividsolutions.jts.io.WKTReader;
+
+/**
+ * The schema of a table created for an exported CSV file. Column types are inferred from a
+ * sample of the rows.
+ *
+ * <p>A simplified geometry (the convex hull of the geometry) may be added as a derived column,
+ * so that it is computed while loading rows instead of by updating the entire table afterwards.
+ *
+ * <p>A value that does not match the inferred type of its column (an outlier) is converted to
+ * {@code null}, and its original text is reported separately, so that it can be kept along with
+ * the row (see {@link #convert(CSVRecord, Map)}). The column keeps its inferred type.
+ */
+public class CsvTableSchema {
+
+    /**
+     * The column types that may be inferred
+     */
+    public enum ColumnType {
+
+        BIGINT("bigint"),
+        DOUBLE("double precision"),
+        BOOLEAN("boolean"),
+        TIMESTAMP("timestamp"),
+        TEXT("varchar"),
+        GEOMETRY("geometry");
+
+        // Only values in canonical form (i.e. rendered the same way by the database) are
+        // accepted as numbers, e.g. "+30210", "007", "1.50" or "1e3" are not
+        private static final Pattern INTEGER = Pattern.compile("0|-?[1-9][0-9]*");
+
+        private static final Pattern DECIMAL = Pattern.compile(
+            "-?([1-9][0-9]*\\.[0-9]*[1-9]|0\\.0{0,3}[1-9]([0-9]*[1-9])?)");
+
+        /**
+         * The maximum number of significant digits of a value that the database renders without
+         * an exponent (or rounding)
+         */
+        private static final int DECIMAL_MAX_DIGITS = 15;
+
+        private static final Pattern DATE_TIME = Pattern.compile(
+            "[0-9]{4}-[0-9]{2}-[0-9]{2}([T ][0-9]{2}:[0-9]{2}(:[0-9]{2}(\\.[0-9]{1,9})?)?)?");
+
+        private final String sqlType;
+
+        private ColumnType(String sqlType) {
+            this.sqlType = sqlType;
+        }
+
+        public String getSqlType() {
+            return this.sqlType;
+        }
+
+        /**
+         * Converts a (non blank) value to this type
+         *
+         * @return the converted value, or {@code null} if the value is not of this type
+         */
+        Object convert(String value) {
+            switch (this) {
+                case BIGINT:
+                    if (!INTEGER.matcher(value).matches()) {
+                        return null;
+                    }
+                    try {
+                        return Long.parseLong(value);
+                    } catch (NumberFormatException ex) {
+                        return null;
+                    }
+                case DOUBLE:
+                    if (INTEGER.matcher(value).matches()) {
+                        return value.replace("-", "").length() <= DECIMAL_MAX_DIGITS ? Double.parseDouble(value) : null;
+                    }
+                    if (!DECIMAL.matcher(value).matches()) {
+                        return null;
+                    }
+                    final String digits = StringUtils.stripStart(value.replace("-", "").replace(".", ""), "0");
+                    return digits.length() <= DECIMAL_MAX_DIGITS ? Double.parseDouble(value) : null;
+                case BOOLEAN:
+                    // As for numbers, only the canonical (lowercase) form is accepted
+                    if (value.equals("true")) {
+                        return Boolean.TRUE;
+                    }
+                    if (value.equals("false")) {
+                        return Boolean.FALSE;
+                    }
+                    return null;
+                case TIMESTAMP:
+                    if (!DATE_TIME.matcher(value).matches()) {
+                        return null;
+                    }
+                    try {
+                        return value.length() == 10 ?
+                            LocalDate.parse(value).atStartOfDay() :
+                            LocalDateTime.parse(value.replace(' ', 'T'));
+                    } catch (DateTimeParseException ex) {
+                        return null;
+                    }
+                case GEOMETRY:
+                    final Geometry geometry = parseEwkt(value);
+                    return geometry == null ? null : toEwkb(geometry);
+                default:
+                    return value;
+            }
+        }
+
+    }
+
+    /**
+     * Types tried (in order) when inferring the type of a column
+     */
+    private static final ColumnType[] CANDIDATE_TYPES = {
+        ColumnType.BIGINT, ColumnType.DOUBLE, ColumnType.BOOLEAN, ColumnType.TIMESTAMP
+    };
+
+    private final String[] columns;
+
+    private final ColumnType[] types;
+
+    /**
+     * The index of the geometry column, or -1 if no geometry column exists
+     */
+    private final int geometryIndex;
+
+    /**
+     * True if the last column is a derived simplified geometry
+     */
+    private final boolean simpleGeometryDerived;
+
+    private final Set<String> columnsWithOutliers = new LinkedHashSet<String>();
+
+    private CsvTableSchema(String[] columns, ColumnType[] types, int geometryIndex, boolean simpleGeometryDerived) {
+        this.columns = columns;
+        this.types = types;
+        this.geometryIndex = geometryIndex;
+        this.simpleGeometryDerived = simpleGeometryDerived;
+    }
+
+    /**
+     * Infers the schema of a CSV file
+     *
+     * @param columns The column names (from the header of the file).
+     * @param sample The first rows of the file.
+     * @param geometryColumn The name of the geometry column.
+     * @param simpleGeometryColumn The name of a simplified geometry column to derive from the
+     *   geometry column, or {@code null} if no column should be derived.
+     * @param textColumns Columns that are always created as text (e.g. identifiers).
+     * @return the inferred schema
+     */
+    public static CsvTableSchema infer(
+        String[] columns, List<CSVRecord> sample, String geometryColumn, String simpleGeometryColumn, Set<String> textColumns
+    ) {
+        final List<String> names = Arrays.asList(columns);
+        final int geometryIndex = names.indexOf(geometryColumn);
+        final boolean derived = geometryIndex >= 0 && simpleGeometryColumn != null && !names.contains(simpleGeometryColumn);
+
+        final String[] allColumns = derived ? ArrayUtils.add(columns, simpleGeometryColumn) : columns;
+        final ColumnType[] types = new ColumnType[allColumns.length];
+
+        for (int i = 0; i < columns.length; i++) {
+            if (i == geometryIndex) {
+                types[i] = ColumnType.GEOMETRY;
+            } else if (textColumns.contains(columns[i])) {
+                types[i] = ColumnType.TEXT;
+            } else {
+                types[i] = inferType(sample, i);
+            }
+        }
+        if (derived) {
+            types[columns.length] = ColumnType.GEOMETRY;
+        }
+
+        return new CsvTableSchema(allColumns, types, geometryIndex, derived);
+    }
+
+    private static ColumnType inferType(List<CSVRecord> sample, int index) {
+        boolean empty = true;
+
+        for (ColumnType type : CANDIDATE_TYPES) {
+            boolean accepted = true;
+            for (CSVRecord record : sample) {
+                final String value = index < record.size() ? record.get(index) : null;
+                if (StringUtils.isEmpty(value)) {
+                    continue;
+                }
+                empty = false;
+                if (type.convert(value) == null) {
+                    accepted = false;
+                    break;
+                }
+            }
+            if (empty) {
+                // No values to infer a type from
+                return ColumnType.TEXT;
+            }
+            if (accepted) {
+                return type;
+            }
+        }
+
+        return ColumnType.TEXT;
+    }
+
+    public String[] getColumns() {
+        return this.columns;
+    }
+
+    public boolean hasColumn(String column) {
+        return ArrayUtils.contains(this.columns, column);
+    }
+
+    public ColumnType getType(int index) {
+        return this.types[index];
+    }
+
+    /**
+     * Returns the columns for which outliers were found by {@link #convert(CSVRecord, Map)}
+     */
+    public Set<String> getColumnsWithOutliers() {
+        return Collections.unmodifiableSet(this.columnsWithOutliers);
+    }
+
+    /**
+     * Converts the values of a row to the types of their columns. Typed values are returned as
+     * {@link Long}, {@link Double}, {@link Boolean} or {@link LocalDateTime} objects, and
+     * geometries as hex-encoded EWKB strings.
+     *
+     * <p>An empty value is converted to {@code null}, unless its column is a text column. An
+     * outlier is converted to {@code null} and its original value is added to {@code outliers}
+     * (keyed by column). A geometry that cannot be parsed is passed on as is, to be parsed (or
+     * rejected) by the database; in this case, the derived simplified geometry (if any) is
+     * {@code null}.
+     *
+     * @param record The row.
+     * @param outliers A map that receives the outliers of this row.
+     * @return the converted values
+     */
+    public Object[] convert(CSVRecord record, Map<String, String> outliers) {
+        final Object[] values = new Object[this.columns.length];
+        final int count = this.simpleGeometryDerived ? this.columns.length - 1 : this.columns.length;
+
+        for (int i = 0; i < count; i++) {
+            final String value = i < record.size() ? record.get(i) : null;
+            final ColumnType type = this.types[i];
+
+            if (type == ColumnType.TEXT) {
+                values[i] = value;
+            } else if (StringUtils.isBlank(value)) {
+                values[i] = null;
+            } else if (i == this.geometryIndex) {
+                final Geometry geometry = parseEwkt(value);
+                values[i] = geometry == null ? value : toEwkb(geometry);
+                if (this.simpleGeometryDerived && geometry != null) {
+                    final Geometry simpleGeometry = geometry.convexHull();
+                    simpleGeometry.setSRID(geometry.getSRID());
+                    values[count] = toEwkb(simpleGeometry);
+                }
+            } else if (type == ColumnType.GEOMETRY) {
+                final Object geometry = type.convert(value);
+                values[i] = geometry == null ? value : geometry;
+            } else {
+                values[i] = type.convert(value);
+                if (values[i] == null) {
+                    outliers.put(this.columns[i], value);
+                    this.columnsWithOutliers.add(this.columns[i]);
+                }
+            }
+        }
+
+        return values;
+    }
+
+    /**
+     * Converts a value returned by {@link #convert(CSVRecord, Map)} to a JDBC parameter
+     */
+    public static Object toParameter(Object value) {
+        return value instanceof LocalDateTime ? Timestamp.valueOf((LocalDateTime) value) : value;
+    }
+
+    /**
+     * Returns a list of column definitions for a {@code CREATE TABLE} statement
+     */
+    public List<String> getColumnDefinitions() {
+        final List<String> definitions = new ArrayList<String>();
+        for (int i = 0; i < this.columns.length; i++) {
+            definitions.add(String.format("%s %s", this.columns[i], this.types[i].getSqlType()));
+        }
+        return definitions;
+    }
+
+    /**
+     * Parses an EWKT geometry (i.e. WKT optionally prefixed by <tt>SRID=&lt;srid&gt;;</tt>)
+     *
+     * @return the geometry, or {@code null} if the geometry cannot be parsed
+     */
+    private static Geometry parseEwkt(String ewkt) {
+        int srid = 0;
+        String wkt = ewkt.trim();
+
+        if (StringUtils.startsWithIgnoreCase(wkt, "SRID=")) {
+            final int separator = wkt.indexOf(';');
+            if (separator < 0) {
+                return null;
+            }
+            try {
+                srid = Integer.parseInt(wkt.substring(5, separator).trim());
+            } catch (NumberFormatException ex) {
+                return null;
+            }
+            wkt = wkt.substring(separator + 1);
+        }
+
+        try {
+            final Geometry geometry = new WKTReader().read(wkt);
+            geometry.setSRID(srid);
+            return geometry;
+        } catch (ParseException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Converts a geometry to a hex-encoded EWKB string
+     */
+    private static String toEwkb(Geometry geometry) {
+        final int dimension = Double.isNaN(geometry.getCoordinate() == null ?
+            Double.NaN : geometry.getCoordinate().z) ? 2 : 3;
+
+        return WKBWriter.toHex(new WKBWriter(dimension, geometry.getSRID() != 0).write(geometry));
+    }
+
+}
@@ -1,22 +1,35 @@
 package eu.slipo.workbench.web.service.etl;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
 import java.net.URISyntaxException;
-import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
@@ -26,21 +39,25 @@ import javax.sql.DataSource;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.util.Assert;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.common.base.CaseFormat;
+import com.google.common.collect.Iterators;
 
 import eu.slipo.workbench.common.model.etl.EnumMapExportStatus;
 import eu.slipo.workbench.common.model.etl.MapExportTask;
@@ -56,6 +73,7 @@ import eu.slipo.workbench.common.model.process.ProcessDefinitionBuilderFactory;
 import eu.slipo.workbench.common.model.process.ProcessExecutionRecord;
 import eu.slipo.workbench.common.model.process.ProcessExecutionStepFileRecord;
 import eu.slipo.workbench.common.model.process.ProcessExecutionStepRecord;
+import eu.slipo.workbench.common.model.process.ProcessIdentifier;
 import eu.slipo.workbench.common.model.process.ProcessRecord;
 import eu.slipo.workbench.common.model.process.Step.Input;
 import eu.slipo.workbench.common.model.resource.ResourceRecord;
@@ -68,24 +86,47 @@ import eu.slipo.workbench.common.repository.ProcessRepository;
 import eu.slipo.workbench.common.repository.ResourceRepository;
 import eu.slipo.workbench.web.repository.MapExportTaskRepository;
 import eu.slipo.workbench.web.service.DefaultWebFileNamingStrategry;
+import eu.slipo.workbench.web.service.ProcessExecutionEventSubscriber;
 import eu.slipo.workbench.web.service.ProcessService;
 
 @Service
-public class DefaultImportService implements ImportService, InitializingBean {
+public class DefaultImportService implements ImportService, InitializingBean, DisposableBean {
 
     private static final Logger logger = LoggerFactory.getLogger(DefaultImportService.class);
 
     /**
-     * Export operation polling interval in seconds
+     * Export operation polling interval in seconds (if execution events are not received)
      */
     private static final long POLL_INTERVAL = 10;
 
+    /**
+     * Export operation polling interval in seconds while execution events are received. Polling
+     * only guards against missed events.
+     */
+    private static final long EVENT_POLL_INTERVAL = 120;
+
     private static final String FAGI_LINKS_TABLE_SUFFIX = "links";
 
     private static final String FAGI_ACTIONS_TABLE_SUFFIX = "actions";
 
     private static final String DEFAULT_REVERSE_TRIPLEGEO_PROFILE = "SLIPO_default";
 
+    /**
+     * Interval in milliseconds for renewing the leases on running tasks
+     */
+    private static final long LEASE_RENEW_INTERVAL = 60000L;
+
+    /**
+     * Buffer size in bytes for streaming exported CSV data to the database
+     */
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Column for keeping values that do not match the inferred type of their column. The
+     * original values of a row are kept as a JSON object keyed by column
+     */
+    private static final String OUTLIERS_COLUMN = "__outliers";
+
     /**
      * Export operation timeout in seconds. Default value is 24 hours.
      */
@@ -98,6 +139,9 @@ public class DefaultImportService implements ImportService, InitializingBean {
     @Value("${vector-data.default.id-column:id}")
     private String defaultIdColumn;
 
+    @Value("${vector-data.default.uri-column:uri}")
+    private String defaultUriColumn;
+
     @Value("${vector-data.default.surrogate-id-column:__index}")
     private String defaultSurrogateIdColumn;
 
@@ -110,6 +154,10 @@ public class DefaultImportService implements ImportService, InitializingBean {
     @Value("${fagi-data.default.schema:fagi}")
     private String defaultFagiSchema;
 
+    /**
+     * If set, exported CSV data is streamed to the database using {@code COPY ... FROM STDIN}
+     * instead of batched inserts
+     */
     @Value("${map-export.use-copy:false}")
     private boolean useCopy;
 
@@ -122,6 +170,24 @@ public class DefaultImportService implements ImportService, InitializingBean {
     @Value("${map-export.batch-size:100}")
     private int batchSize;
 
+    /**
+     * Number of rows used for inferring column types
+     */
+    @Value("${map-export.schema-inference.sample-size:1000}")
+    private int sampleSize;
+
+    /**
+     * Order rows of imported tables by location
+     */
+    @Value("${map-export.optimization.cluster:true}")
+    private boolean clusterTables;
+
+    /**
+     * Update planner statistics of imported tables
+     */
+    @Value("${map-export.optimization.analyze:true}")
+    private boolean analyzeTables;
+
     @Autowired
     @Qualifier("defaultWebFileNamingStrategry")
     protected DefaultWebFileNamingStrategry fileNamingStrategy;
@@ -138,6 +204,9 @@ public class DefaultImportService implements ImportService, InitializingBean {
     @Autowired
     private ProcessService processService;
 
+    @Autowired
+    private ProcessExecutionEventSubscriber executionEvents;
+
     @Autowired
     private DataSource dataSource;
 
@@ -147,15 +216,60 @@ public class DefaultImportService implements ImportService, InitializingBean {
     @Autowired
     private ProcessDefinitionBuilderFactory processDefinitionBuilderFactory;
 
+    /**
+     * Number of map export tasks executed concurrently by this instance
+     */
+    @Value("${map-export.workers:2}")
+    private int workers;
+
+    /**
+     * Duration (in seconds) of the lease on a claimed task. A running task whose lease has not
+     * been renewed (e.g. because the application has crashed) is claimed again by any instance.
+     */
+    @Value("${map-export.lease-seconds:300}")
+    private int leaseSeconds;
+
     private JdbcTemplate jdbcTemplate;
 
-    private MapExportTask activeTask = null;
+    /**
+     * Identifies this instance as the owner of task leases
+     */
+    private final String workerId = StringUtils.left(
+        ManagementFactory.getRuntimeMXBean().getName() + "/" + UUID.randomUUID().toString(), 64
+    );
+
+    private ExecutorService workerPool;
+
+    private Semaphore freeWorkers;
+
+    /**
+     * Tasks currently leased by this instance
+     */
+    private final Map<Long, MapExportTask> leasedTasks = new ConcurrentHashMap<>();
 
     @Override
     public void afterPropertiesSet() throws Exception {
+        Assert.isTrue(this.workers > 0, "Expected a positive number of map export workers");
+        Assert.isTrue(this.leaseSeconds >= 2 * LEASE_RENEW_INTERVAL / 1000,
+            "Expected a lease duration of at least twice the lease renewal interval");
+
         jdbcTemplate = new JdbcTemplate(dataSource);
 
-        this.taskRepository.resetRunningTasks();
+        this.workerPool = Executors.newFixedThreadPool(this.workers, new CustomizableThreadFactory("map-export-"));
+        this.freeWorkers = new Semaphore(this.workers);
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        this.workerPool.shutdownNow();
+        this.workerPool.awaitTermination(10, TimeUnit.SECONDS);
+
+        // Release any remaining leases, so that tasks are resumed by another instance without
+        // waiting for the leases to expire
+        for (Long taskId : this.leasedTasks.keySet()) {
+            this.taskRepository.release(taskId, this.workerId);
+        }
+        this.leasedTasks.clear();
     }
 
     @Override
@@ -164,22 +278,41 @@ public class DefaultImportService implements ImportService, InitializingBean {
     }
 
     /**
-     * Checks for pending map generation tasks and initializes the execution of the least
-     * recent one.
+     * Claims pending map generation tasks (least recent first) while there are idle workers,
+     * and submits them for execution.
      */
     @Scheduled(fixedRate = 30000L, initialDelay = 5000L)
     public void checkScheduledTasks() {
         try {
-            synchronized (this) {
-                // Allow only a single task to run
-                if (activeTask != null) {
+            while (this.freeWorkers.tryAcquire()) {
+                final MapExportTask task;
+                try {
+                    task = this.taskRepository.claim(this.workerId, this.leaseSeconds);
+                } catch (Exception ex) {
+                    this.freeWorkers.release();
+                    throw ex;
+                }
+                if (task == null) {
+                    this.freeWorkers.release();
                     return;
                 }
-                // Start the least recent pending task
-                List<MapExportTask> tasks = this.taskRepository.getPendingTasks();
-                if (!tasks.isEmpty()) {
-                    activeTask = tasks.get(0);
-                    this.executeTask(activeTask);
+
+                this.leasedTasks.put(task.getId(), task);
+                try {
+                    this.workerPool.execute(() -> {
+                        try {
+                            this.executeTask(task);
+                        } finally {
+                            this.leasedTasks.remove(task.getId());
+                            this.freeWorkers.release();
+                        }
+                    });
+                } catch (RejectedExecutionException ex) {
+                    // The application is shutting down
+                    this.leasedTasks.remove(task.getId());
+                    this.taskRepository.release(task.getId(), this.workerId);
+                    this.freeWorkers.release();
+                    return;
                 }
             }
         } catch (Exception ex) {
@@ -187,10 +320,26 @@ public class DefaultImportService implements ImportService, InitializingBean {
         }
     }
 
+    /**
+     * Renews the leases of tasks executed by this instance.
+     */
+    @Scheduled(fixedRate = LEASE_RENEW_INTERVAL, initialDelay = LEASE_RENEW_INTERVAL)
+    public void renewLeases() {
+        for (Long taskId : this.leasedTasks.keySet()) {
+            try {
+                if (!this.taskRepository.renewLease(taskId, this.workerId, this.leaseSeconds)) {
+                    // The lease has expired and the task has been claimed by another worker
+                    logger.warn("Lost lease on map export task #{}", taskId);
+                    this.leasedTasks.remove(taskId);
+                }
+            } catch (Exception ex) {
+                logger.error(String.format("Failed to renew lease on map export task #%d", taskId), ex);
+            }
+        }
+    }
+
     private void executeTask(MapExportTask task) {
         try {
-            this.taskRepository.setStatus(task.getId(), EnumMapExportStatus.RUNNING);
-
             // Find workflow process and execution records
             final ProcessExecutionRecord execution = processRepository.findExecution(task.getWorkflow().getId());
             final ProcessRecord process = processRepository.findOne(execution.getProcess().getId(), execution.getProcess().getVersion());
@@ -202,17 +351,15 @@ public class DefaultImportService implements ImportService, InitializingBean {
                     break;
                 case FAILED:
                     // Mark export task as failed too
-                    this.taskRepository.setStatus(task.getId(), EnumMapExportStatus.FAILED);
-                    this.activeTask = null;
+                    this.completeTask(task, EnumMapExportStatus.FAILED);
                     return;
                 case STOPPED:
                     // User must initialize a map export task manually if a process
                     // execution has been stopped
                     this.taskRepository.remove(task.getId());
-                    this.activeTask = null;
                     return;
                 default:
-                    this.activeTask = null;
+                    this.taskRepository.release(task.getId(), this.workerId);
                     return;
             }
 
@@ -230,23 +377,28 @@ public class DefaultImportService implements ImportService, InitializingBean {
                 case RUNNING:
                     // Task will be resumed by the scheduler
                     logger.error("Failed to execute map export task for execution #{}. RDF transform process has timeout", execution.getId());
-                    activeTask = null;
-                    break;
+                    this.taskRepository.release(task.getId(), this.workerId);
+                    return;
                 case STOPPED:
                     // Task will be resumed by the scheduler
                     logger.error("Failed to execute map export task for execution #{}. RDF transform process was stopped", execution.getId());
-                    activeTask = null;
-                    break;
+                    this.taskRepository.release(task.getId(), this.workerId);
+                    return;
                 default:
                     // User must start a new export task
                     logger.error("Failed to execute map export task for execution #{}. RDF transform process has failed", execution.getId());
-                    this.taskRepository.setStatus(task.getId(), EnumMapExportStatus.FAILED);
-                    activeTask = null;
-                    break;
+                    this.completeTask(task, EnumMapExportStatus.FAILED);
+                    return;
+            }
+
+            // Do not import data if the task has meanwhile been claimed by another worker
+            if (!this.leasedTasks.containsKey(task.getId())) {
+                logger.warn("Skipping import for map export task #{} since its lease was lost", task.getId());
+                return;
             }
 
             // Import CSV files to PostgreSQL and update tables
-            this.importTransformedFiles(process, execution, transform);
+            this.importTransformedFiles(task, process, execution, transform);
 
             // Import fusion logs
             List<ProcessExecutionStepRecord> fagiSteps = execution
@@ -259,17 +411,23 @@ public class DefaultImportService implements ImportService, InitializingBean {
                 ProcessExecutionStepFileRecord file = step.getOutputFile(EnumStepFile.LOG, EnumFagiOutputPart.LOG.key());
                 final Path path = fileNamingStrategy.resolveExecutionPath(file.getFilePath());
 
-                this.importFusionLog(execution.getId(), step, defaultFagiSchema, path.toString());
+                this.importFusionLog(task, execution.getId(), step, defaultFagiSchema, path.toString());
             };
 
             // Update task status
-            this.taskRepository.setStatus(task.getId(), EnumMapExportStatus.COMPLETED);
+            this.completeTask(task, EnumMapExportStatus.COMPLETED);
         } catch (Exception ex) {
-            this.taskRepository.setStatus(task.getId(), EnumMapExportStatus.FAILED);
+            this.completeTask(task, EnumMapExportStatus.FAILED);
             logger.error("Unknown error has occured during processing map export task", ex);
-        } finally {
-            // Reset task
-            this.activeTask = null;
+        }
+    }
+
+    /**
+     * Sets the final status of a task, unless its lease has meanwhile been lost
+     */
+    private void completeTask(MapExportTask task, EnumMapExportStatus status) {
+        if (!this.taskRepository.complete(task.getId(), this.workerId, status)) {
+            logger.warn("Failed to set status {} for map export task #{} since its lease was lost", status, task.getId());
         }
     }
 
@@ -471,7 +629,6 @@ public class DefaultImportService implements ImportService, InitializingBean {
     }
 
     private ProcessExecutionRecord waitForExecution(MapExportTask task, ProcessExecutionRecord execution) throws Exception {
-        long counter = 0;
         ProcessExecutionRecord current = execution;
 
         try {
@@ -479,7 +636,7 @@ public class DefaultImportService implements ImportService, InitializingBean {
                 case COMPLETED:
                     return current;
                 case FAILED:
-                    this.taskRepository.setStatus(task.getId(), EnumMapExportStatus.FAILED);
+                    // The task is marked as failed by the caller
                     return current;
                 case STOPPED:
                     current = processService.start(
@@ -493,25 +650,35 @@ public class DefaultImportService implements ImportService, InitializingBean {
                     break;
             }
 
-            while (true) {
-                if (current.getStatus() == EnumProcessExecutionStatus.RUNNING) {
-                    try {
-                        Thread.sleep(POLL_INTERVAL * 1000);
-                    } catch (InterruptedException e) {
-                        // Ignore exception
-                    }
-                    counter += POLL_INTERVAL;
+            // Wait for execution events (still re-reading the execution state periodically,
+            // in case events are missed). The state is read after the watch is registered, so
+            // that no transition is missed in between.
+            final ProcessIdentifier processIdentifier =
+                ProcessIdentifier.of(current.getProcess().getId(), current.getProcess().getVersion());
+
+            try (ProcessExecutionEventSubscriber.Watch watch = this.executionEvents.watch(processIdentifier)) {
+                final long startedAt = System.currentTimeMillis();
 
+                while (current.getStatus() == EnumProcessExecutionStatus.RUNNING) {
                     current = this.processRepository.getExecutionCompactView(
                         current.getProcess().getId(),
                         current.getProcess().getVersion()
                     );
 
-                    if (counter > TRANSFORM_EXECUTION_TIMEOUT) {
+                    if ((current.getStatus() != EnumProcessExecutionStatus.RUNNING) ||
+                        (System.currentTimeMillis() - startedAt > TRANSFORM_EXECUTION_TIMEOUT * 1000)) {
+                        break;
+                    }
+
+                    try {
+                        watch.await(
+                            this.executionEvents.isConnected() ? EVENT_POLL_INTERVAL : POLL_INTERVAL, TimeUnit.SECONDS
+                        );
+                    } catch (InterruptedException e) {
+                        // The application is shutting down; the task will be resumed
+                        Thread.currentThread().interrupt();
                         break;
                     }
-                } else {
-                    break;
                 }
             }
         } catch (Exception ex) {
@@ -523,7 +690,7 @@ public class DefaultImportService implements ImportService, InitializingBean {
     }
 
     private void importTransformedFiles(
-        ProcessRecord workflowProcess, ProcessExecutionRecord workflowExecution, ProcessExecutionRecord transformExecution
+        MapExportTask task, ProcessRecord workflowProcess, ProcessExecutionRecord workflowExecution, ProcessExecutionRecord transformExecution
     ) throws Exception {
         List<ExportFile> exportedFiles = transformExecution.getSteps().stream()
             .filter(s -> s.getTool() == EnumTool.REVERSE_TRIPLEGEO)
@@ -573,7 +740,7 @@ public class DefaultImportService implements ImportService, InitializingBean {
             }
             if (e instanceof StepExportFile) {
                 StepExportFile s = (StepExportFile) e;
-                this.updateStep(workflowProcess, workflowExecution, s.getStepKey(), s.getFileId(), s.getPath());
+                this.updateStep(task, workflowProcess, workflowExecution, s.getStepKey(), s.getFileId(), s.getPath());
             }
         }
     }
@@ -582,7 +749,6 @@ public class DefaultImportService implements ImportService, InitializingBean {
         ProcessRecord process, ProcessExecutionRecord execution, long id, long version, Path path
     ) throws Exception {
 
-        File csv = null;
         try {
             // Check if resource revision instance has already been exported
             ResourceRecord resource = this.resourceRepository.findOne(id, version);
@@ -590,12 +756,10 @@ public class DefaultImportService implements ImportService, InitializingBean {
                 return;
             }
 
-            // Get CSV file
-            csv = getCsvFileFromZip(path);
             UUID tableName = UUID.randomUUID();
 
             long rowCount = this.importCsvFile(
-                this.defaultGeometrySchema, tableName.toString(), csv.toString(), this.defaultGeometryColumn, this.useCopy
+                this.defaultGeometrySchema, tableName.toString(), path, this.defaultGeometryColumn, this.useCopy
             );
 
             // Update resource revision record
@@ -622,30 +786,23 @@ public class DefaultImportService implements ImportService, InitializingBean {
         } catch(Exception ex) {
             logger.error(String.format("Failed to import data for resource %d-%d (id-version)", id, version), ex);
             throw ex;
-        } finally {
-            if (csv != null) {
-                FileUtils.deleteQuietly(csv.getParentFile());
-            }
         }
     }
 
     private void updateStep(
-        ProcessRecord process, ProcessExecutionRecord execution, int stepKey, long fileId, Path path
+        MapExportTask task, ProcessRecord process, ProcessExecutionRecord execution, int stepKey, long fileId, Path path
     ) throws Exception {
 
-        File csv = null;
         try {
-            // Get CSV file
-            csv = getCsvFileFromZip(path);
             UUID tableName = UUID.randomUUID();
 
             // Store step key to table name mapping. Table name may be reused when
             // importing FAGI logs
-            this.activeTask.addStepToTableNameMapping(stepKey, tableName);
+            task.addStepToTableNameMapping(stepKey, tableName);
 
             // Import CSV data to table
             long rowCount = this.importCsvFile(
-                defaultGeometrySchema, tableName.toString(), csv.toString(), defaultGeometryColumn, this.useCopy
+                defaultGeometrySchema, tableName.toString(), path, defaultGeometryColumn, this.useCopy
             );
 
             // Get step file
@@ -674,288 +831,351 @@ public class DefaultImportService implements ImportService, InitializingBean {
         } catch(Exception ex) {
             logger.error(String.format("Failed to import data for step file %d-%d-%d (execution-step key-file id)", execution.getId(), stepKey, fileId), ex);
             throw ex;
-        } finally {
-            if (csv != null) {
-                FileUtils.deleteQuietly(csv.getParentFile());
-            }
         }
     }
 
-    private File getCsvFileFromZip(Path zip) throws Exception {
-        File destinationDir = null;
-        File csv = null;
-
-        destinationDir = new File(createTempDir().toString());
-        destinationDir.mkdirs();
-
-        byte[] buffer = new byte[1024];
-        ZipInputStream zis = new ZipInputStream(new FileInputStream(zip.toString()));
+    /**
+     * Positions a ZIP stream at the first CSV entry
+     *
+     * @param zis The ZIP stream.
+     * @return The CSV entry, or {@code null} if no CSV entry exists.
+     * @throws IOException
+     */
+    private ZipEntry getCsvEntry(ZipInputStream zis) throws IOException {
         ZipEntry zipEntry = zis.getNextEntry();
         while (zipEntry != null) {
             // Get CSV file only
             if (zipEntry.getName().endsWith(".csv")) {
-                csv = this.getFile(destinationDir, zipEntry);
-                FileOutputStream fos = new FileOutputStream(csv);
-                int len;
-                while ((len = zis.read(buffer)) > 0) {
-                    fos.write(buffer, 0, len);
-                }
-                fos.close();
-                break;
+                return zipEntry;
             }
             zipEntry = zis.getNextEntry();
         }
-        zis.closeEntry();
-        zis.close();
-
-        return csv;
+        return null;
     }
 
-    private Path createTempDir() {
-        return Paths.get("/tmp", UUID.randomUUID().toString());
-    }
+    /**
+     * Imports the CSV entry of a ZIP archive to a new table. The entry is read as a stream (no
+     * temporary file is created). Column types are inferred from the first rows of the file.
+     * Values not matching the inferred type of their column are loaded as {@code null}, and
+     * their original text is kept in a JSON column of the row (see {@link #OUTLIERS_COLUMN}).
+     *
+     * @return the number of rows imported
+     */
+    private long importCsvFile(
+        String schema, String tableName, Path zip, String geomColumn, boolean useCopy
+    ) throws Exception {
+        final long startedAt = System.currentTimeMillis();
+        final long rowCount;
+        final CsvTableSchema tableSchema;
 
-    public File getFile(File destinationDir, ZipEntry zipEntry) throws IOException {
-        File destFile = new File(destinationDir, zipEntry.getName());
+        // Helper variables
+        CSVFormat format = CSVFormat.DEFAULT
+            .withIgnoreEmptyLines()
+            .withFirstRecordAsHeader()
+            .withDelimiter(this.defaultDelimiter.charAt(0))
+            .withQuote(this.defaultQuote.charAt(0))
+            .withTrim();
 
-        String destDirPath = destinationDir.getCanonicalPath();
-        String destFilePath = destFile.getCanonicalPath();
+        try (CSVParser parser = this.openCsvFile(zip, format)) {
+            final String[] fields = parser.getHeaderMap().keySet().toArray(new String[0]);
+            final Iterator<CSVRecord> records = parser.iterator();
 
-        if (!destFilePath.startsWith(destDirPath + File.separator)) {
-            throw new IOException("Entry is outside of the target dir: " + zipEntry.getName());
+            // Infer column types from the first rows
+            final List<CSVRecord> sample = new ArrayList<CSVRecord>();
+            while (sample.size() < this.sampleSize && records.hasNext()) {
+                sample.add(records.next());
+            }
+
+            final Set<String> textColumns = new HashSet<String>(Arrays.asList(this.defaultIdColumn, this.defaultUriColumn));
+            tableSchema = CsvTableSchema.infer(fields, sample, geomColumn, defaultGeometrySimpleColumn, textColumns);
+
+            // Create table
+            String creteTableSql = this.createSpatialTableScript(schema, tableName, tableSchema);
+            jdbcTemplate.execute(creteTableSql);
+
+            // Import data
+            final Iterator<CSVRecord> rows = Iterators.concat(sample.iterator(), records);
+            if (useCopy) {
+                rowCount = this.copyRows(schema, tableName, tableSchema, rows);
+            } else {
+                rowCount = this.insertRows(schema, tableName, tableSchema, rows);
+            }
+        } catch (Exception ex) {
+            logger.error(String.format("Failed to import data from archive [%s]", zip), ex);
+            throw ex;
         }
 
-        return destFile;
-    }
+        this.resolveOutliers(schema, tableName, tableSchema);
 
-    private long importCsvFile(
-        String schema, String tableName, String fileName, String geomColumn, boolean useCopy
-    ) throws Exception {
-        long rowCount = 0;
+        this.optimizeTable(schema, tableName, tableSchema, rowCount, System.currentTimeMillis() - startedAt);
 
-        // Create table
-        String creteTableSql = this.createSpatialTableScript(schema, tableName, fileName, useCopy);
-        jdbcTemplate.execute(creteTableSql);
+        return rowCount;
+    }
 
-        // Import data
-        if(useCopy) {
-            String copySql = String.format(
-                    "COPY \"%s\".\"%s\" FROM '%s' CSV HEADER DELIMITER '%s' QUOTE '%s' NULL '' ENCODING '%s';",
-                    schema, tableName, fileName, this.defaultDelimiter, this.defaultQuote, "UTF-8");
+    /**
+     * Opens a parser for the CSV entry of a ZIP archive
+     */
+    private CSVParser openCsvFile(Path zip, CSVFormat format) throws IOException {
+        final ZipInputStream zis = new ZipInputStream(new BufferedInputStream(Files.newInputStream(zip), COPY_BUFFER_SIZE));
+        try {
+            if (this.getCsvEntry(zis) == null) {
+                throw new FileNotFoundException(String.format("No CSV file was found in archive [%s]", zip));
+            }
+            final Reader reader = new BufferedReader(new InputStreamReader(zis, StandardCharsets.UTF_8), COPY_BUFFER_SIZE);
+            return new CSVParser(reader, format);
+        } catch (IOException | RuntimeException ex) {
+            zis.close();
+            throw ex;
+        }
+    }
 
-            jdbcTemplate.execute(copySql);
+    /**
+     * Drops the outliers column of a loaded table, if no outliers were found. Otherwise, the
+     * column is kept, so that the original values of outliers are available (e.g. as
+     * {@code __outliers->>'column'}).
+     */
+    private void resolveOutliers(String schema, String tableName, CsvTableSchema tableSchema) {
+        if (tableSchema.getColumnsWithOutliers().isEmpty()) {
+            jdbcTemplate.execute(String.format(
+                "ALTER TABLE \"%s\".\"%s\" DROP COLUMN %s;", schema, tableName, OUTLIERS_COLUMN));
         } else {
-            rowCount = this.insertRowsFromFile(schema, tableName, fileName);
+            logger.warn("Columns {} of table {} have values not matching their inferred types. Original values are kept in column {}",
+                tableSchema.getColumnsWithOutliers(), tableName, OUTLIERS_COLUMN);
         }
+    }
 
-        // Add simplified geometry column
-        this.addSimplifiedGeometryColumn(schema, tableName);
+    /**
+     * Returns the columns of a new table in the order of the values of a row
+     */
+    private List<String> getLoadedColumns(CsvTableSchema tableSchema) {
+        List<String> columns = new ArrayList<String>();
 
-        // Add indexes
-        this.addGeometryIndexes(schema, tableName);
+        columns.add(defaultSurrogateIdColumn);
+        columns.addAll(Arrays.asList(tableSchema.getColumns()));
+        columns.add(OUTLIERS_COLUMN);
 
-        return rowCount;
+        return columns;
     }
 
-    private long insertRowsFromFile(
-        String schema, String tableName, String fileName
+    private String outliersToJson(Map<String, String> outliers) {
+        if (outliers.isEmpty()) {
+            return null;
+        }
+        try {
+            return this.objectMapper.writeValueAsString(outliers);
+        } catch (JsonProcessingException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Streams rows to a table using {@code COPY ... FROM STDIN}. The data is sent through the
+     * JDBC connection, hence the database server does not need access to the exported files.
+     *
+     * @return the number of rows copied
+     */
+    private long copyRows(
+        String schema, String tableName, CsvTableSchema tableSchema, Iterator<CSVRecord> records
     ) throws Exception {
-        final String insertSql = this.createInsertRowScript(schema, tableName, fileName);
-        final List<String> columns = this.getColumns(tableName);
-        final List<Object> params = new ArrayList<Object>();
+        final String copySql = String.format(
+            "COPY \"%s\".\"%s\" (%s) FROM STDIN WITH (FORMAT csv)",
+            schema, tableName, String.join(",", this.getLoadedColumns(tableSchema)));
 
-        int size = 0;
-        long id = 0;
+        return jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+            final CsvCopyStream copy = new CsvCopyStream(connection, copySql);
 
-        String lines = "";
+            final Map<String, String> outliers = new HashMap<String, String>();
 
-        // Helper variables
-        CSVFormat format = CSVFormat.DEFAULT
-            .withIgnoreEmptyLines()
-            .withFirstRecordAsHeader()
-            .withDelimiter(this.defaultDelimiter.charAt(0))
-            .withQuote(this.defaultQuote.charAt(0))
-            .withTrim();
+            try {
+                long id = 0;
+                while (records.hasNext()) {
+                    final Object[] values = tableSchema.convert(records.next(), outliers);
 
-        try (
-            Reader reader = Files.newBufferedReader(Paths.get(fileName), Charset.forName("UTF-8"));
-            CSVParser parser = new CSVParser(reader, format);
-        ) {
-            for (final CSVRecord record : parser) {
-                size++;
-                id++;
-
-                lines += String.format("Line %10d: %s\n", id, record.toString());
-
-                // Add surrogate key
-                params.add(id);
-
-                // Add exported fields
-                for (int colIndex = 0; colIndex < record.size(); colIndex++) {
-                    final String value = record.get(colIndex);
-                    final String column = columns.get(colIndex + 1); // Add one for the surrogate key column
-
-                    if ((column.equals(defaultGeometryColumn)) && (StringUtils.isBlank(value))) {
-                        // Set null since an empty string will result in ERROR: parse error - invalid geometry
-                        params.add(null);
-                    } else {
-                        params.add(value);
+                    copy.value(++id);
+                    for (Object value : values) {
+                        copy.value(value);
                     }
+                    copy.value(this.outliersToJson(outliers));
+                    copy.endRow();
+
+                    outliers.clear();
                 }
+                return copy.end();
+            } catch (SQLException | RuntimeException ex) {
+                copy.cancel();
+                throw ex;
+            }
+        });
+    }
 
-                if (size == this.batchSize) {
-                    jdbcTemplate.update(StringUtils.repeat(insertSql, size), params.toArray(new Object[0]));
-                    size = 0;
-                    params.clear();
+    /**
+     * Inserts rows to a table using batches of {@code INSERT} statements
+     *
+     * @return the number of rows inserted
+     */
+    private long insertRows(
+        String schema, String tableName, CsvTableSchema tableSchema, Iterator<CSVRecord> records
+    ) throws Exception {
+        final String insertSql = this.createInsertRowScript(schema, tableName, tableSchema);
+        final List<Object[]> batch = new ArrayList<Object[]>(this.batchSize);
+        final Map<String, String> outliers = new HashMap<String, String>();
 
-                    lines = "";
-                }
+        long id = 0;
+        while (records.hasNext()) {
+            final Object[] values = tableSchema.convert(records.next(), outliers);
+            final Object[] params = new Object[values.length + 2];
+
+            // Add surrogate key
+            params[0] = ++id;
+            // Add exported fields
+            for (int i = 0; i < values.length; i++) {
+                params[i + 1] = CsvTableSchema.toParameter(values[i]);
             }
+            // Add outliers
+            params[values.length + 1] = this.outliersToJson(outliers);
 
-            // Insert remaining rows
-            if (size != 0) {
-                jdbcTemplate.update(StringUtils.repeat(insertSql, size), params.toArray(new Object[0]));
+            batch.add(params);
+            outliers.clear();
+
+            if (batch.size() == this.batchSize) {
+                jdbcTemplate.batchUpdate(insertSql, batch);
+                batch.clear();
             }
+        }
 
-            return id;
-        } catch (Exception ex) {
-            logger.error(String.format("Failed to insert rows from file [%s].\n\n%s", fileName, lines), ex);
-            throw ex;
+        // Insert remaining rows
+        if (!batch.isEmpty()) {
+            jdbcTemplate.batchUpdate(insertSql, batch);
         }
-    }
 
-    private void addSimplifiedGeometryColumn(String schema, String tableName) {
-        String createColumnSql = String.format(
-            "ALTER TABLE \"%1$s\".\"%2$s\" ADD COLUMN %3$s geometry",
-            schema, tableName, defaultGeometrySimpleColumn);
+        return id;
+    }
 
-        jdbcTemplate.execute(createColumnSql);
+    /**
+     * Optimizes a loaded table for the queries of the map viewer: creates spatial indexes and
+     * indexes for looking up features (by URI and id), orders rows by location (using the
+     * spatial index) and updates planner statistics. The time spent on each stage is logged.
+     */
+    private void optimizeTable(String schema, String tableName, CsvTableSchema tableSchema, long rowCount, long loadTime) {
+        final Map<String, Long> timings = new LinkedHashMap<String, Long>();
+        timings.put("load", loadTime);
+        long startedAt = System.currentTimeMillis();
 
+        // Simplified geometries are computed while loading; compute any geometry that could
+        // only be parsed by the database
         String updateColumnSql = String.format(
-            "update \"%1$s\".\"%2$s\" set %3$s = case when %4$s is null then null else ST_ConvexHull(%4$s) end;",
+            "update \"%1$s\".\"%2$s\" set %3$s = ST_ConvexHull(%4$s) where %3$s is null and %4$s is not null;",
             schema, tableName, defaultGeometrySimpleColumn, defaultGeometryColumn);
 
         jdbcTemplate.execute(updateColumnSql);
-    }
-
-    private void addGeometryIndexes(String schema, String tableName) {
-        String createIndexGeom = String.format(
-            "CREATE INDEX \"%2$s_%3$s\" ON \"%1$s\".\"%2$s\" USING GIST (%3$s);",
-            schema, tableName, defaultGeometryColumn);
-
-        jdbcTemplate.execute(createIndexGeom);
+        startedAt = this.recordTiming(timings, "simplify", startedAt);
 
-        String createIndexGeomSimplified = String.format(
-            "CREATE INDEX \"%2$s_%3$s\" ON \"%1$s\".\"%2$s\" USING GIST (%3$s);",
-            schema, tableName, defaultGeometrySimpleColumn);
+        // Create the spatial index and order rows by it, so that features close to each other
+        // are stored in the same pages
+        final String geometryIndex = this.createIndex(schema, tableName, defaultGeometryColumn, "GIST");
+        startedAt = this.recordTiming(timings, "spatial-index", startedAt);
 
-        jdbcTemplate.execute(createIndexGeomSimplified);
-    }
-
-    private String createSpatialTableScript(
-        String schema, String tableName, String fileName, boolean useCopy
-    ) throws Exception {
-
-        StringBuilder script = new StringBuilder();
+        if (this.clusterTables) {
+            jdbcTemplate.execute(String.format("CLUSTER \"%1$s\".\"%2$s\" USING \"%3$s\";", schema, tableName, geometryIndex));
+            startedAt = this.recordTiming(timings, "cluster", startedAt);
+        }
 
-        // Helper variables
-        CSVFormat format = CSVFormat.DEFAULT
-            .withIgnoreEmptyLines()
-            .withFirstRecordAsHeader()
-            .withDelimiter(this.defaultDelimiter.charAt(0))
-            .withQuote(this.defaultQuote.charAt(0))
-            .withTrim();
+        // Create remaining indexes (after ordering rows, which rebuilds existing indexes)
+        this.createIndex(schema, tableName, defaultGeometrySimpleColumn, "GIST");
+        for (String column : Arrays.asList(defaultUriColumn, defaultIdColumn)) {
+            if (tableSchema.hasColumn(column)) {
+                this.createIndex(schema, tableName, column, "BTREE");
+            }
+        }
+        startedAt = this.recordTiming(timings, "indexes", startedAt);
 
-        // Scan the CSV file to extract columns names (the first line is assumed to
-        // contain the column names)
-        try (
-            Reader reader = Files.newBufferedReader(Paths.get(fileName), Charset.forName("UTF-8"));
-            CSVParser parser = new CSVParser(reader, format);
-        ) {
+        if (this.analyzeTables) {
+            jdbcTemplate.execute(String.format("ANALYZE \"%1$s\".\"%2$s\";", schema, tableName));
+            startedAt = this.recordTiming(timings, "analyze", startedAt);
+        }
 
-            String[] fields = parser.getHeaderMap().keySet().toArray(new String[] {});
-            boolean geometryExists = false;
+        logger.info("Imported table {}.{} ({} rows). Timings: {}", schema, tableName, rowCount,
+            timings.entrySet().stream()
+                .map(e -> String.format("%s=%d ms", e.getKey(), e.getValue()))
+                .collect(Collectors.joining(", ")));
+    }
 
+    private long recordTiming(Map<String, Long> timings, String stage, long startedAt) {
+        final long now = System.currentTimeMillis();
+        timings.put(stage, now - startedAt);
+        return now;
+    }
 
-            // Build SQL script for creating the table
-            script.append(String.format("CREATE TABLE \"%s\".\"%s\" (\n", schema, tableName));
+    /**
+     * Creates an index on a single column
+     *
+     * @return the name of the index
+     */
+    private String createIndex(String schema, String tableName, String column, String method) {
+        final String indexName = String.format("%s_%s", tableName, column);
 
-            // Append all columns
-            int index = 0;
+        String createIndexSql = String.format(
+            "CREATE INDEX \"%3$s\" ON \"%1$s\".\"%2$s\" USING %5$s (%4$s);",
+            schema, tableName, indexName, column, method);
 
-            if(!useCopy) {
-                // Do not add extra columns if COPY is used
-                script.append(String.format("%s bigint PRIMARY KEY,\n",defaultSurrogateIdColumn));
-            }
+        jdbcTemplate.execute(createIndexSql);
 
-            for (String field : fields) {
-                if (field.equals(defaultGeometryColumn)) {
-                    script.append(String.format("%s geometry", defaultGeometryColumn));
-                    geometryExists= true;
-                } else {
-                    script.append(String.format("%s varchar", field));
-                }
-                script.append(++index == fields.length ? "\n" : ",\n");
-            }
+        return indexName;
+    }
 
-            script.append(");\n");
+    private String createSpatialTableScript(
+        String schema, String tableName, CsvTableSchema tableSchema
+    ) throws Exception {
 
-            // Longitude and Latitude attributes are required
-            if (!geometryExists) {
-                throw new Exception(String.format("Geometry attribute [%s] was not found", defaultGeometryColumn));
-            }
-        } catch (FileNotFoundException fileEx) {
-            logger.error(String.format("File [%s] was not found", fileName), fileEx);
-            throw fileEx;
-        } catch (Exception ex) {
-            logger.error(String.format("Failed to parse file [%s]", fileName), ex);
-            throw ex;
+        // Longitude and Latitude attributes are required
+        if (!tableSchema.hasColumn(defaultGeometryColumn)) {
+            throw new Exception(String.format("Geometry attribute [%s] was not found", defaultGeometryColumn));
         }
 
-        return script.toString();
+        // Build SQL script for creating the table. Values not matching the type of their
+        // column are kept in a separate JSON column
+        List<String> columns = new ArrayList<String>();
+        columns.add(String.format("%s bigint PRIMARY KEY", defaultSurrogateIdColumn));
+        columns.addAll(tableSchema.getColumnDefinitions());
+        columns.add(String.format("%s jsonb", OUTLIERS_COLUMN));
+
+        return String.format("CREATE TABLE \"%s\".\"%s\" (\n%s\n);\n", schema, tableName, String.join(",\n", columns));
     }
 
-    private String createInsertRowScript(String schema, String tableName, String fileName) {
-        List<String> columns = this.getColumns(tableName);
+    private String createInsertRowScript(String schema, String tableName, CsvTableSchema tableSchema) {
         List<String> values = new ArrayList<String>();
 
-        for (String c : columns) {
-            if (c.equals(defaultGeometryColumn)) {
-                values.add("ST_GeomFromEWKT(?)");
-            } else {
-                values.add("?");
-            }
+        // Geometries are sent as hex-encoded EWKB
+        values.add("?");
+        for (int i = 0; i < tableSchema.getColumns().length; i++) {
+            values.add(tableSchema.getType(i) == CsvTableSchema.ColumnType.GEOMETRY ? "CAST(? AS geometry)" : "?");
         }
+        values.add("CAST(? AS jsonb)");
 
-        return String.format("insert into \"%1$s\".\"%2$s\" (%3$s) values (%4$s);",
+        return String.format("insert into \"%1$s\".\"%2$s\" (%3$s) values (%4$s)",
             schema,
             tableName,
-            String.join(",", columns),
+            String.join(",", this.getLoadedColumns(tableSchema)),
             String.join(",", values));
     }
 
-    private List<String> getColumns(String tableName) {
-        String columnQuery = "select column_name from information_schema.columns where table_name = ? order by ordinal_position";
-
-        List<Map<String, Object>> rows = jdbcTemplate.queryForList(columnQuery, new Object[] { tableName });
-        List<String> columns = rows.stream()
-            .map(r -> (String) r.get("column_name"))
-            .collect(Collectors.toList());
-
-        return columns;
-    }
-
     private void importFusionLog(
-        long executionId, ProcessExecutionStepRecord step, String schema, String fileName
+        MapExportTask task, long executionId, ProcessExecutionStepRecord step, String schema, String fileName
     ) throws Exception {
-        final String tableNamePrefix = this.activeTask.getTableNameForStep(step.getKey()) != null ?
-            this.activeTask.getTableNameForStep(step.getKey()).toString() : UUID.randomUUID().toString();
+        final String tableNamePrefix = task.getTableNameForStep(step.getKey()) != null ?
+            task.getTableNameForStep(step.getKey()).toString() : UUID.randomUUID().toString();
 
-        // Create table
+        // Create tables
         String creteTableSql = this.createFusionLogTableScript(schema, tableNamePrefix);
         jdbcTemplate.execute(creteTableSql);
 
         this.importFagiFusionLog(fileName, schema, tableNamePrefix);
+
+        // Constraints and indexes are created after loading, since maintaining them while
+        // loading is much slower
+        String createConstraintsSql = this.createFusionLogConstraintScript(schema, tableNamePrefix);
+        jdbcTemplate.execute(createConstraintsSql);
+
         this.updateFagiStepFile(executionId, step, schema, tableNamePrefix);
     }
 
@@ -967,8 +1187,7 @@ public class DefaultImportService implements ImportService, InitializingBean {
             "   right_uri varchar,\n" +
             "   default_fusion_action varchar,\n" +
             "   validation_action varchar,\n" +
-            "   confidence_score varchar,\n" +
-            "   CONSTRAINT \"pk_%2$s\" PRIMARY KEY (id));\n" +
+            "   confidence_score varchar);\n" +
             "CREATE TABLE \"%1$s\".\"%3$s\" (\n" +
             "   id bigint,\n" +
             "   parent bigint,\n" +
@@ -976,60 +1195,39 @@ public class DefaultImportService implements ImportService, InitializingBean {
             "   fusion_action varchar,\n" +
             "   left_value varchar,\n" +
             "   right_value varchar,\n" +
-            "   fused_value varchar,\n" +
-            "   CONSTRAINT \"pk_%3$s\" PRIMARY KEY (id),\n" +
-            "   CONSTRAINT \"fk_%3$s\" FOREIGN KEY (parent)\n" +
-            "       REFERENCES \"%1$s\".\"%2$s\" (id) MATCH SIMPLE\n" +
-            "       ON UPDATE CASCADE ON DELETE CASCADE);\n",
+            "   fused_value varchar);\n",
             schema, tableNamePrefix + "_" + FAGI_LINKS_TABLE_SUFFIX, tableNamePrefix + "_" + FAGI_ACTIONS_TABLE_SUFFIX);
 
         return sql;
     }
 
-    private void importFagiFusionLog(String fileName, String schema, String tableNamePrefix) throws IOException {
-        long logId = 0;
-        long actionId = 0;
-
-        try (
-            FileInputStream fis = new FileInputStream(fileName);
-            InputStreamReader isr = new InputStreamReader(fis, "UTF-8");
-            BufferedReader br = new BufferedReader(isr);
-        ) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                if (StringUtils.isBlank(line)) {
-                    continue;
-                }
-
-                FusionLog log = objectMapper.readValue(line, FusionLog.class);
-
-                final String logSql = String.format(
-                    "insert into \"%1$s\".\"%2$s\" values (?, ? ,?, ?, ? ,?);",
-                    schema, tableNamePrefix + "_" + FAGI_LINKS_TABLE_SUFFIX);
-
-                final Object[] logParams = {
-                        ++logId,
-                        log.leftURI, log.rightURI,
-                        log.defaultFusionAction, log.validationAction, log.confidenceScore
-                    };
+    private String createFusionLogConstraintScript(String schema, String tableNamePrefix) {
+        // Links are searched by URI and actions by link (see ProvenanceService)
+        String sql = String.format(
+            "ALTER TABLE \"%1$s\".\"%2$s\" ADD CONSTRAINT \"pk_%2$s\" PRIMARY KEY (id);\n" +
+            "ALTER TABLE \"%1$s\".\"%3$s\" ADD CONSTRAINT \"pk_%3$s\" PRIMARY KEY (id),\n" +
+            "   ADD CONSTRAINT \"fk_%3$s\" FOREIGN KEY (parent)\n" +
+            "       REFERENCES \"%1$s\".\"%2$s\" (id) MATCH SIMPLE\n" +
+            "       ON UPDATE CASCADE ON DELETE CASCADE;\n" +
+            "CREATE INDEX \"%2$s_left_uri\" ON \"%1$s\".\"%2$s\" (left_uri);\n" +
+            "CREATE INDEX \"%2$s_right_uri\" ON \"%1$s\".\"%2$s\" (right_uri);\n" +
+            "CREATE INDEX \"%3$s_parent\" ON \"%1$s\".\"%3$s\" (parent);\n",
+            schema, tableNamePrefix + "_" + FAGI_LINKS_TABLE_SUFFIX, tableNamePrefix + "_" + FAGI_ACTIONS_TABLE_SUFFIX);
 
-                jdbcTemplate.update(logSql, logParams);
+        return sql;
+    }
 
-                for(FusionAction action : log.actions) {
-                    final String actionSql = String.format(
-                        "insert into \"%1$s\".\"%2$s\" values (?, ?, ?, ?, ?, ?, ?);",
-                        schema, tableNamePrefix + "_" + FAGI_ACTIONS_TABLE_SUFFIX);
+    private void importFagiFusionLog(String fileName, String schema, String tableNamePrefix) throws Exception {
+        final long startedAt = System.currentTimeMillis();
 
-                    final Object[] actionParams = {
-                        ++actionId, logId,
-                        action.attribute, CaseFormat.LOWER_HYPHEN.to(CaseFormat.UPPER_UNDERSCORE, action.fusionAction),
-                        action.valueA, action.valueB, action.fusedValue
-                    };
+        FusionLogLoader.Result result = new FusionLogLoader(this.dataSource, this.objectMapper).load(
+            Paths.get(fileName),
+            String.format("\"%s\".\"%s\"", schema, tableNamePrefix + "_" + FAGI_LINKS_TABLE_SUFFIX),
+            String.format("\"%s\".\"%s\"", schema, tableNamePrefix + "_" + FAGI_ACTIONS_TABLE_SUFFIX)
+        );
 
-                    jdbcTemplate.update(actionSql, actionParams);
-                }
-            }
-        }
+        logger.info("Loaded {} links and {} fusion actions from [{}] in {} ms",
+            result.getLinkCount(), result.getActionCount(), fileName, System.currentTimeMillis() - startedAt);
     }
 
     private void updateFagiStepFile(long executionId, ProcessExecutionStepRecord step, String schema, String tableName) {
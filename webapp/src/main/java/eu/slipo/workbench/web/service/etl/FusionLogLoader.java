@@ -0,0 +1,135 @@
+package eu.slipo.workbench.web.service.etl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.CaseFormat;
+
+/**
+ * Bulk loader for FAGI fusion logs.
+ *
+ * <p>A fusion log is a file of JSON objects (one per link), each one with a nested array of
+ * fusion actions. The file is parsed as a stream, and links and actions are written to their
+ * tables through two {@code COPY ... FROM STDIN} operations, each on its own connection, so that
+ * both tables are loaded concurrently by the database server.
+ *
+ * <p>The target tables are expected to have no constraints or indexes; these should be created
+ * after the load completes.
+ */
+public class FusionLogLoader {
+
+    /**
+     * Load result
+     */
+    public static class Result {
+
+        private final long linkCount;
+
+        private final long actionCount;
+
+        private Result(long linkCount, long actionCount) {
+            this.linkCount = linkCount;
+            this.actionCount = actionCount;
+        }
+
+        public long getLinkCount() {
+            return this.linkCount;
+        }
+
+        public long getActionCount() {
+            return this.actionCount;
+        }
+
+    }
+
+    private final DataSource dataSource;
+
+    private final ObjectMapper objectMapper;
+
+    public FusionLogLoader(DataSource dataSource, ObjectMapper objectMapper) {
+        this.dataSource = dataSource;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Loads a fusion log
+     *
+     * @param path The fusion log file.
+     * @param linksTable The qualified (and quoted, if needed) name of the links table.
+     * @param actionsTable The qualified (and quoted, if needed) name of the actions table.
+     * @return the number of links and actions loaded
+     * @throws IOException if the file cannot be read or parsed
+     * @throws SQLException if loading data fails
+     */
+    public Result load(Path path, String linksTable, String actionsTable) throws IOException, SQLException {
+        long linkId = 0;
+        long actionId = 0;
+
+        try (
+            Connection linksConnection = this.dataSource.getConnection();
+            Connection actionsConnection = this.dataSource.getConnection();
+            BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+            MappingIterator<FusionLog> iterator = this.objectMapper.readerFor(FusionLog.class).readValues(reader);
+        ) {
+            final CsvCopyStream links = new CsvCopyStream(linksConnection, String.format(
+                "COPY %s (id, left_uri, right_uri, default_fusion_action, validation_action, confidence_score) " +
+                "FROM STDIN WITH (FORMAT csv)", linksTable));
+            final CsvCopyStream actions;
+            try {
+                actions = new CsvCopyStream(actionsConnection, String.format(
+                    "COPY %s (id, parent, attribute, fusion_action, left_value, right_value, fused_value) " +
+                    "FROM STDIN WITH (FORMAT csv)", actionsTable));
+            } catch (SQLException ex) {
+                links.cancel();
+                throw ex;
+            }
+
+            try {
+                while (iterator.hasNextValue()) {
+                    final FusionLog log = iterator.nextValue();
+
+                    links
+                        .value(++linkId)
+                        .value(log.leftURI)
+                        .value(log.rightURI)
+                        .value(log.defaultFusionAction)
+                        .value(log.validationAction)
+                        .value(log.confidenceScore)
+                        .endRow();
+
+                    if (log.actions == null) {
+                        continue;
+                    }
+                    for (FusionAction action : log.actions) {
+                        actions
+                            .value(++actionId)
+                            .value(linkId)
+                            .value(action.attribute)
+                            .value(action.fusionAction == null ?
+                                null : CaseFormat.LOWER_HYPHEN.to(CaseFormat.UPPER_UNDERSCORE, action.fusionAction))
+                            .value(action.valueA)
+                            .value(action.valueB)
+                            .value(action.fusedValue)
+                            .endRow();
+                    }
+                }
+
+                return new Result(links.end(), actions.end());
+            } catch (IOException | SQLException | RuntimeException ex) {
+                links.cancel();
+                actions.cancel();
+                throw ex;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,163 @@
+package eu.slipo.workbench.web.tests.unit.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.WKBReader;
+import com.vividsolutions.jts.io.WKTReader;
+
+import eu.slipo.workbench.web.service.etl.CsvTableSchema;
+import eu.slipo.workbench.web.service.etl.CsvTableSchema.ColumnType;
+
+public class CsvTableSchemaTests {
+
+    private static final String GEOMETRY_COLUMN = "the_geom";
+
+    private static final String SIMPLE_GEOMETRY_COLUMN = "the_geom_simple";
+
+    private static List<CSVRecord> parse(String header, String... rows) throws Exception {
+        CSVFormat format = CSVFormat.DEFAULT
+            .withFirstRecordAsHeader()
+            .withDelimiter('|')
+            .withTrim();
+
+        return CSVParser.parse(header + "\n" + String.join("\n", rows), format).getRecords();
+    }
+
+    private static CsvTableSchema infer(String header, List<CSVRecord> records, String simpleGeometryColumn) {
+        String[] columns = header.split("\\|");
+
+        return CsvTableSchema.infer(columns, records, GEOMETRY_COLUMN, simpleGeometryColumn, Collections.singleton("id"));
+    }
+
+    private static Geometry fromEwkb(Object value) throws Exception {
+        return new WKBReader().read(WKBReader.hexToBytes((String) value));
+    }
+
+    @Test
+    public void testInferTypes() throws Exception {
+        String header = "id|count|score|open|created|name|empty|the_geom";
+        List<CSVRecord> records = parse(
+            header,
+            "1|12|1.5|true|2020-01-01|A||POINT (1 2)",
+            "2|-3|2|false|2020-01-02 10:30:00||",
+            "3|0|-0.25||2020-01-03T10:30|C||");
+
+        CsvTableSchema schema = infer(header, records, null);
+
+        assertArrayEquals(
+            new String[] { "id", "count", "score", "open", "created", "name", "empty", "the_geom" }, schema.getColumns());
+        assertEquals(ColumnType.TEXT, schema.getType(0));
+        assertEquals(ColumnType.BIGINT, schema.getType(1));
+        assertEquals(ColumnType.DOUBLE, schema.getType(2));
+        assertEquals(ColumnType.BOOLEAN, schema.getType(3));
+        assertEquals(ColumnType.TIMESTAMP, schema.getType(4));
+        assertEquals(ColumnType.TEXT, schema.getType(5));
+        assertEquals(ColumnType.TEXT, schema.getType(6));
+        assertEquals(ColumnType.GEOMETRY, schema.getType(7));
+
+        Object[] values = schema.convert(records.get(1), new HashMap<String, String>());
+        assertEquals("2", values[0]);
+        assertEquals(-3L, values[1]);
+        assertEquals(2.0, values[2]);
+        assertEquals(Boolean.FALSE, values[3]);
+        assertEquals(LocalDateTime.of(2020, 1, 2, 10, 30), values[4]);
+        assertEquals("", values[5]);
+        assertNull(values[7]);
+
+        assertTrue(schema.getColumnsWithOutliers().isEmpty());
+    }
+
+    @Test
+    public void testNonCanonicalValuesAreText() throws Exception {
+        for (String value : Arrays.asList("+302101234567", "007", "1.50", "1e3", "1E+3", "-0", ".5", "0.00001", "TRUE")) {
+            String header = "id|value|the_geom";
+            List<CSVRecord> records = parse(header, "1|" + value + "|");
+            assertEquals("Expected text for value " + value, ColumnType.TEXT, infer(header, records, null).getType(1));
+        }
+    }
+
+    @Test
+    public void testOutliers() throws Exception {
+        String header = "id|code|score|the_geom";
+        List<CSVRecord> sample = parse(header, "1|100|1.5|", "2|200|2.5|");
+        List<CSVRecord> records = parse(header, "3|+30210|3.5|", "4|300|x|");
+
+        CsvTableSchema schema = infer(header, sample, null);
+        assertEquals(ColumnType.BIGINT, schema.getType(1));
+        assertEquals(ColumnType.DOUBLE, schema.getType(2));
+
+        // An outlier is reported along with its row; the column keeps its type
+        Map<String, String> outliers = new HashMap<String, String>();
+        Object[] values = schema.convert(records.get(0), outliers);
+        assertNull(values[1]);
+        assertEquals(3.5, values[2]);
+        assertEquals(Collections.singletonMap("code", "+30210"), outliers);
+
+        outliers.clear();
+        values = schema.convert(records.get(1), outliers);
+        assertEquals(300L, values[1]);
+        assertNull(values[2]);
+        assertEquals(Collections.singletonMap("score", "x"), outliers);
+
+        assertEquals(new HashSet<String>(Arrays.asList("code", "score")), schema.getColumnsWithOutliers());
+
+        outliers.clear();
+        values = schema.convert(sample.get(0), outliers);
+        assertEquals(100L, values[1]);
+        assertTrue(outliers.isEmpty());
+        assertEquals(ColumnType.BIGINT, schema.getType(1));
+    }
+
+    @Test
+    public void testConvertGeometry() throws Exception {
+        String header = "id|the_geom";
+        List<CSVRecord> records = parse(
+            header,
+            "1|SRID=4326;POLYGON ((0 0, 2 0, 1 1, 2 2, 0 2, 0 0))",
+            "2|POINT (1 2)",
+            "3|NOT A GEOMETRY");
+
+        CsvTableSchema schema = infer(header, records, SIMPLE_GEOMETRY_COLUMN);
+
+        assertArrayEquals(new String[] { "id", "the_geom", "the_geom_simple" }, schema.getColumns());
+        assertEquals(ColumnType.GEOMETRY, schema.getType(1));
+        assertEquals(ColumnType.GEOMETRY, schema.getType(2));
+
+        Object[] values = schema.convert(records.get(0), new HashMap<String, String>());
+        Geometry geometry = fromEwkb(values[1]);
+        assertEquals(4326, geometry.getSRID());
+        assertTrue(geometry.equalsExact(new WKTReader().read("POLYGON ((0 0, 2 0, 1 1, 2 2, 0 2, 0 0))")));
+
+        // The simplified geometry is the convex hull, in the same reference system
+        Geometry simpleGeometry = fromEwkb(values[2]);
+        assertEquals(4326, simpleGeometry.getSRID());
+        assertTrue(simpleGeometry.equalsTopo(new WKTReader().read("POLYGON ((0 0, 2 0, 2 2, 0 2, 0 0))")));
+
+        values = schema.convert(records.get(1), new HashMap<String, String>());
+        assertEquals(0, fromEwkb(values[1]).getSRID());
+        assertTrue(fromEwkb(values[1]).equalsExact(new WKTReader().read("POINT (1 2)")));
+
+        // A geometry that cannot be parsed is passed on as is
+        values = schema.convert(records.get(2), new HashMap<String, String>());
+        assertEquals("NOT A GEOMETRY", values[1]);
+        assertNull(values[2]);
+    }
+
+}